@@ -19,11 +19,14 @@ package nl.bluevoid.genpro;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Random;
 
 import nl.bluevoid.genpro.cell.Cell;
 import nl.bluevoid.genpro.cell.NoCellFoundException;
 import nl.bluevoid.genpro.cell.NoCellOfTypeFoundException;
 import nl.bluevoid.genpro.cell.ValueCell;
+import nl.bluevoid.genpro.util.Debug;
 /**
  * @author Rob van der Veer
  * @since 1.0
@@ -31,14 +34,28 @@ import nl.bluevoid.genpro.cell.ValueCell;
 public class CellMap {
   private HashMap<String, Cell> map = new HashMap<String, Cell>();
   private HashMap<Class<?>, ArrayList<ValueCell>> mapByValuetype = new HashMap<Class<?>, ArrayList<ValueCell>>();
+  // copies by the cell they were cloned from, see putCopy
+  private IdentityHashMap<Cell, Cell> copies = new IdentityHashMap<Cell, Cell>();
+  private final Random random;
 
   public CellMap(ArrayList<? extends Cell> cells) {
+    this();
     for (Cell c : cells) {
       putByName(c);
     }
   }
 
   public CellMap() {
+    this.random = null;
+  }
+
+  /**
+   * @param random
+   *          draws the cells of getRandomValueCell
+   */
+  public CellMap(Random random) {
+    Debug.checkNotNull(random, "random");
+    this.random = random;
   }
 
   public void putByName(Cell c) {
@@ -59,6 +76,14 @@ public class CellMap {
     }
   }
 
+  /**
+   * Lets getByNameOrValueType return the copy for the original, whatever its name. Names of cells need not be
+   * unique, two constants can share a name.
+   */
+  public void putCopy(Cell original, Cell copy) {
+    copies.put(original, copy);
+  }
+
   public boolean containsCell(Cell cell) {
     return map.containsValue(cell);
   }
@@ -75,11 +100,15 @@ public class CellMap {
   }
 
   /*
-   * Tries to find a cell with the same name and type, if not found will return a random cell with the same
-   * valuetype as c has. throws CellNotFoundException if no cell found.
+   * Returns the copy of c if it was put, else tries to find a cell with the same name and type, if not found
+   * will return a random cell with the same valuetype as c has. throws CellNotFoundException if no cell found.
    */
 
   public ValueCell getByNameOrValueType(ValueCell c) throws NoCellFoundException {
+    Cell copy = copies.get(c);
+    if (copy != null) {
+      return (ValueCell) copy;
+    }
     ValueCell vc = (ValueCell) getByName(c);
     Class<?> type = c.getValueType();
     if (vc.getValueType().equals(type))
@@ -90,11 +119,12 @@ public class CellMap {
   }
 
   public ValueCell getRandomValueCell(Class<?> type) throws NoCellOfTypeFoundException {
+    Debug.checkNotNull(random, "random");
     ArrayList<ValueCell> cells = mapByValuetype.get(type);
     if (cells == null)
       throw new NoCellOfTypeFoundException("No cell found of type:" + type);
     try {
-      return Util.getRandomCell(cells);
+      return Util.getRandomCell(cells, random);
     } catch (NoCellFoundException e) {
       throw new NoCellOfTypeFoundException("No cell found of type:" + type, e);
     }
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import nl.bluevoid.genpro.util.RandomStreams;
+
+/**
+ * A generation of a run with its grids, their scores, the best grid of the run, the random seed and the time
+ * the run took. The grids are encoded with GridCodec when the checkpoint is taken, so the run can go on while
+ * the checkpoint is written. Written as a gzipped file, first to a temporary file that replaces the old
+ * checkpoint when complete.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class Checkpoint {
+
+  private static final int MAGIC = 0x47504350; // GPCP
+  private static final int VERSION = 1;
+
+  private final String setupName;
+  private final long randomSeed;
+  private final int generationNr;
+  private final long elapsedMillis;
+  private final byte[] bestSolution;
+  private final byte[][] grids;
+
+  private Checkpoint(final String setupName, final long randomSeed, final int generationNr,
+      final long elapsedMillis, final byte[] bestSolution, final byte[][] grids) {
+    this.setupName = setupName;
+    this.randomSeed = randomSeed;
+    this.generationNr = generationNr;
+    this.elapsedMillis = elapsedMillis;
+    this.bestSolution = bestSolution;
+    this.grids = grids;
+  }
+
+  /**
+   * Takes a snapshot of the evaluated generation.
+   * 
+   * @param bestSolution
+   *          the best grid of the run so far, may be null
+   */
+  public static Checkpoint take(final Setup setup, final long randomSeed, final Generation gen,
+      final Grid bestSolution, final long elapsedMillis) {
+    final List<Grid> solutions = gen.getSolutions();
+    final byte[][] grids = new byte[solutions.size()][];
+    for (int i = 0; i < grids.length; i++) {
+      grids[i] = GridCodec.encode(solutions.get(i));
+    }
+    return new Checkpoint(setup.getName(), randomSeed, gen.getNr(), elapsedMillis,
+        bestSolution == null ? null : GridCodec.encode(bestSolution), grids);
+  }
+
+  public void write(final File file) throws IOException {
+    final File tmp = new File(file.getPath() + ".tmp");
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(
+        new FileOutputStream(tmp), 1 << 16)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(setupName);
+      out.writeLong(randomSeed);
+      out.writeInt(generationNr);
+      out.writeLong(elapsedMillis);
+      writeBytes(bestSolution, out);
+      out.writeInt(grids.length);
+      for (final byte[] grid : grids) {
+        writeBytes(grid, out);
+      }
+    } finally {
+      out.close();
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * @throws IllegalArgumentException
+   *           when the file is not a checkpoint
+   */
+  public static Checkpoint read(final File file) throws IOException {
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+        new FileInputStream(file), 1 << 16)));
+    try {
+      if (in.readInt() != MAGIC) {
+        throw new IllegalArgumentException("not a checkpoint:" + file);
+      }
+      final int version = in.readInt();
+      if (version != VERSION) {
+        throw new IllegalArgumentException("unknown checkpoint version:" + version);
+      }
+      final String setupName = in.readUTF();
+      final long randomSeed = in.readLong();
+      final int generationNr = in.readInt();
+      final long elapsedMillis = in.readLong();
+      final byte[] bestSolution = readBytes(in);
+      final byte[][] grids = new byte[in.readInt()][];
+      for (int i = 0; i < grids.length; i++) {
+        grids[i] = readBytes(in);
+      }
+      return new Checkpoint(setupName, randomSeed, generationNr, elapsedMillis, bestSolution, grids);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void writeBytes(final byte[] bytes, final DataOutputStream out) throws IOException {
+    out.writeInt(bytes == null ? -1 : bytes.length);
+    if (bytes != null) {
+      out.write(bytes);
+    }
+  }
+
+  private static byte[] readBytes(final DataInputStream in) throws IOException {
+    final int length = in.readInt();
+    if (length == -1) {
+      return null;
+    }
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  /**
+   * @return the evaluated generation of the checkpoint
+   * @throws IllegalArgumentException
+   *           when the checkpoint was taken with another setup
+   */
+  public Generation getGeneration(final Setup setup, final TestSetSolutionEvaluator evaluator,
+      final RandomStreams randomStreams) {
+    checkSetup(setup);
+    final ArrayList<Grid> solutions = new ArrayList<Grid>(grids.length);
+    for (final byte[] grid : grids) {
+      solutions.add(GridCodec.decode(setup, grid));
+    }
+    return Generation.restore(setup, generationNr, solutions, evaluator, randomStreams);
+  }
+
+  /**
+   * @return the best grid of the run, null if there was none
+   */
+  public Grid getBestSolution(final Setup setup) {
+    checkSetup(setup);
+    return bestSolution == null ? null : GridCodec.decode(setup, bestSolution);
+  }
+
+  private void checkSetup(final Setup setup) {
+    if (!setup.getName().equals(setupName)) {
+      throw new IllegalArgumentException("checkpoint of setup " + setupName + " can not be used for "
+          + setup.getName());
+    }
+  }
+
+  public long getRandomSeed() {
+    return randomSeed;
+  }
+
+  public int getGenerationNr() {
+    return generationNr;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro;
+
+import java.lang.reflect.Method;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nl.bluevoid.genpro.cell.CallCell;
+import nl.bluevoid.genpro.cell.CellTypeEnum;
+import nl.bluevoid.genpro.cell.ReferenceCell;
+import nl.bluevoid.genpro.cell.ValueCell;
+import nl.bluevoid.genpro.cell.switx.SwitchCell;
+import nl.bluevoid.genpro.cell.switx.SwitchOption;
+import nl.bluevoid.genpro.metrics.Metrics;
+import nl.bluevoid.genpro.util.Debug;
+import nl.bluevoid.genpro.util.ParallelLoopPool;
+
+/**
+ * Remembers the score of grids by their canonical structure: the cells reachable from the outputs, their
+ * call targets, value types and constant values. Names and positions of cells are not part of the key, so
+ * unmutated clones, the re-added best solution and crossings that reproduce a parent are not evaluated
+ * again.
+ * 
+ * The cache is cleared when another evaluator or TestSet is used, when test cases are added or when the
+ * evaluator reports a change (scoring type, incremental involvement). Grids that call non-deterministic
+ * methods (Math.random) get the score of their first evaluation.
+ * 
+ * Evaluators that use subsampling score on another subsample each generation, so their scores are not
+ * cached.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class FitnessCache {
+
+  private final int maxSize;
+  private final LinkedHashMap<String, Double> scores;
+  private long hits = 0;
+  private long misses = 0;
+
+  // what the cached scores were calculated with
+  private TestSetSolutionEvaluator evaluator;
+  private TestSet testSet;
+  private int numberOfTestCases;
+  private int evaluatorModifications;
+  private boolean subsamplingReported = false;
+
+  /**
+   * @param maxSize
+   *          the least recently used score is dropped when the cache grows beyond this size
+   */
+  public FitnessCache(final int maxSize) {
+    Debug.checkRange(maxSize, 1, Integer.MAX_VALUE);
+    this.maxSize = maxSize;
+    scores = new LinkedHashMap<String, Double>(Math.min(maxSize, 1000), 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, Double> eldest) {
+        return size() > FitnessCache.this.maxSize;
+      }
+    };
+  }
+
+  /**
+   * @return the cached score of the grid, or the score calculated by the evaluator
+   */
+  public double evaluate(final TestSetSolutionEvaluator evaluator, final Grid grid) {
+    return evaluate(evaluator, grid, Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Like evaluate(evaluator, grid), using evaluator.evaluate(grid, rejectionThreshold). Scores higher than
+   * the threshold can be lower bounds and are not cached.
+   */
+  public double evaluate(final TestSetSolutionEvaluator evaluator, final Grid grid,
+      final double rejectionThreshold) {
+    return evaluate(evaluator, grid, rejectionThreshold, null, 0);
+  }
+
+  /**
+   * Like evaluate(evaluator, grid, rejectionThreshold), scoring with the test cases split into shards, see
+   * TestSetSolutionEvaluator.evaluate(grid, rejectionThreshold, pool, shardSize).
+   */
+  public double evaluate(final TestSetSolutionEvaluator evaluator, final Grid grid,
+      final double rejectionThreshold, final ParallelLoopPool pool, final int shardSize) {
+    if (evaluator.isSubsampling()) {
+      reportSubsampling();
+      return evaluator.evaluate(grid, rejectionThreshold, pool, shardSize);
+    }
+    final String key = getKey(grid);
+    if (key == null) {
+      return evaluator.evaluate(grid, rejectionThreshold, pool, shardSize);
+    }
+    synchronized (scores) {
+      validate(evaluator);
+      final Double score = scores.get(key);
+      if (score != null) {
+        hits++;
+        Metrics.CACHE_HITS.increment();
+        return score;
+      }
+      misses++;
+      Metrics.CACHE_MISSES.increment();
+    }
+    final double score = evaluator.evaluate(grid, rejectionThreshold, pool, shardSize);
+    synchronized (scores) {
+      // the evaluator may have changed while evaluating
+      if (isValid(evaluator) && !(score > rejectionThreshold)) {
+        scores.put(key, score);
+      }
+    }
+    return score;
+  }
+
+  private void reportSubsampling() {
+    synchronized (scores) {
+      if (!subsamplingReported) {
+        subsamplingReported = true;
+        Debug.println("fitness cache is off, the evaluator uses subsampling");
+      }
+    }
+  }
+
+  private void validate(final TestSetSolutionEvaluator evaluator) {
+    if (!isValid(evaluator)) {
+      scores.clear();
+      this.evaluator = evaluator;
+      testSet = evaluator.getTestSet();
+      numberOfTestCases = testSet.getNumberOfTestCases();
+      evaluatorModifications = evaluator.getModificationCount();
+    }
+  }
+
+  private boolean isValid(final TestSetSolutionEvaluator evaluator) {
+    return this.evaluator == evaluator && testSet == evaluator.getTestSet()
+        && numberOfTestCases == testSet.getNumberOfTestCases()
+        && evaluatorModifications == evaluator.getModificationCount();
+  }
+
+  public void clear() {
+    synchronized (scores) {
+      scores.clear();
+      hits = 0;
+      misses = 0;
+    }
+  }
+
+  public long getHits() {
+    synchronized (scores) {
+      return hits;
+    }
+  }
+
+  public long getMisses() {
+    synchronized (scores) {
+      return misses;
+    }
+  }
+
+  public int getSize() {
+    synchronized (scores) {
+      return scores.size();
+    }
+  }
+
+  /**
+   * The canonical structure of the used part of a grid. Cells are numbered in the order they are reached
+   * from the outputs, a cell reached again is referred to by its number.
+   * 
+   * @return the key, null if the grid has cells that can not be described (IfCell, SubroutineCell)
+   */
+  public static String getKey(final Grid grid) {
+    final StringBuilder key = new StringBuilder();
+    final IdentityHashMap<ValueCell, Integer> ids = new IdentityHashMap<ValueCell, Integer>();
+    for (final ReferenceCell out : grid.getOutputCells()) {
+      key.append(out.getName()).append('=');
+      if (!appendCell(out.getReferedCell(), key, ids)) {
+        return null;
+      }
+      key.append(';');
+    }
+    return key.toString();
+  }
+
+  private static boolean appendCell(final ValueCell cell, final StringBuilder key,
+      final IdentityHashMap<ValueCell, Integer> ids) {
+    if (cell == null) {
+      key.append("null");
+      return true;
+    }
+    final Integer id = ids.get(cell);
+    if (id != null) {
+      key.append('#').append(id);
+      return true;
+    }
+    ids.put(cell, ids.size());
+    final CellTypeEnum type = cell.getCellType();
+    if (type == CellTypeEnum.InputCell || type == CellTypeEnum.LibraryCell) {
+      key.append(cell.getName());
+    } else if (type == CellTypeEnum.ConstantCell) {
+      key.append(cell.getValueType().getSimpleName()).append(':').append(cell.getValue());
+    } else if (cell instanceof SwitchCell) {
+      final SwitchCell switchCell = (SwitchCell) cell;
+      key.append(cell.getClass().getSimpleName()).append(':');
+      key.append(cell.getValueType().getName()).append('[');
+      if (!appendCell(switchCell.getSwitchValueCell(), key, ids)) {
+        return false;
+      }
+      for (final SwitchOption option : switchCell.getOptions()) {
+        key.append('|').append(option.getSwitchCaseValue()).append(':');
+        if (!appendCall(option, key, ids)) {
+          return false;
+        }
+      }
+      key.append(']');
+    } else if (cell instanceof CallCell) {
+      return appendCall((CallCell) cell, key, ids);
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  private static boolean appendCall(final CallCell cell, final StringBuilder key,
+      final IdentityHashMap<ValueCell, Integer> ids) {
+    final Method method = cell.getTargetMethod();
+    key.append(cell.getValueType().getName()).append(':');
+    key.append(method.getDeclaringClass().getName()).append('.').append(method.getName());
+    for (final Class<?> param : method.getParameterTypes()) {
+      key.append(',').append(param.getName());
+    }
+    key.append('@');
+    if (!appendCell(cell.getTargetCell(), key, ids)) {
+      return false;
+    }
+    key.append('(');
+    for (final ValueCell param : cell.getParams()) {
+      if (!appendCell(param, key, ids)) {
+        return false;
+      }
+      key.append(',');
+    }
+    key.append(')');
+    return true;
+  }
+}
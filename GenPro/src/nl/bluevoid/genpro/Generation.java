@@ -18,13 +18,16 @@ package nl.bluevoid.genpro;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 
 import nl.bluevoid.genpro.cell.NoCellFoundException;
+import nl.bluevoid.genpro.metrics.Metrics;
 import nl.bluevoid.genpro.util.Calc;
 import nl.bluevoid.genpro.util.Debug;
 import nl.bluevoid.genpro.util.GewogenKansSelector;
-import nl.bluevoid.genpro.util.ParallelLoopExecutor;
+import nl.bluevoid.genpro.util.ParallelLoopPool;
+import nl.bluevoid.genpro.util.RandomStreams;
 import nl.bluevoid.genpro.util.Sneak;
 
 /**
@@ -38,25 +41,72 @@ public class Generation {
   private final int nr;
   private Grid bestSolution;
   private double bestScore = Double.MAX_VALUE;
-  private boolean stopRunning = false;
+  private volatile boolean stopRunning = false;
   public int nanAndInfinateCounter = 0;
 
   private final Setup setup;
+  // draws the offspring, passed on to the next generation
+  private final RandomStreams randomStreams;
   private GewogenKansSelector<Grid> gws;
 
   private boolean sorted = false;
   private boolean evaluated = false;
+  private FitnessCache fitnessCache;
+  private TestSetSolutionEvaluator evaluator;
 
-  private static Random random = new Random();
+  // racing: grids scoring higher can not be selected in the previous generation, see Setup.setRacing
+  private double rejectionThreshold = Double.POSITIVE_INFINITY;
+  private double selectionCutoff = Double.POSITIVE_INFINITY;
+  private int abortedCounter = 0;
+
+  // pairs of offspring created by a thread at least, creating a grid is cheap compared to evaluating it
+  private static final int BREED_PAIRS = 4;
+  // grids per evaluation thread below which the test cases of a grid are split, see Setup.setTestCaseShardSize
+  private static final int GRIDS_PER_THREAD = 4;
 
   public Generation(Setup setup) {
-    this.setup = setup;
-    nr = 1;
+    this(setup, new RandomStreams(setup.getRandomSeed()));
+  }
+
+  /**
+   * @param randomStreams
+   *          the streams of the run, see GenerationRunner.getRandomStreams
+   */
+  public Generation(Setup setup, RandomStreams randomStreams) {
+    this(1, setup, randomStreams);
   }
 
-  private Generation(int nr, Setup setup) {
+  private Generation(int nr, Setup setup, RandomStreams randomStreams) {
+    Debug.checkNotNull(randomStreams, "randomStreams");
     this.nr = nr;
     this.setup = setup;
+    this.randomStreams = randomStreams;
+  }
+
+  /**
+   * Creates an evaluated generation from grids that have their score, for instance read from a checkpoint.
+   * 
+   * @param evaluator
+   *          used to resolve score bounds
+   */
+  static Generation restore(final Setup setup, final int nr, final List<Grid> grids,
+      final TestSetSolutionEvaluator evaluator, final RandomStreams randomStreams) {
+    final Generation gen = new Generation(nr, setup, randomStreams);
+    gen.evaluator = evaluator;
+    final EvaluationResult result = new EvaluationResult();
+    for (final Grid sol : grids) {
+      gen.addSolution(sol);
+      if (sol.isScoreBound()) {
+        result.abortedCounter++;
+      } else if (Calc.isNaNorInfinite(sol.getScore())) {
+        result.nanAndInfinateCounter++;
+      } else if (sol.getScore() < result.bestScore) {
+        result.bestScore = sol.getScore();
+        result.bestSolution = sol;
+      }
+    }
+    gen.apply(result);
+    return gen;
   }
 
   public void addSolution(Grid s) {
@@ -64,27 +114,44 @@ public class Generation {
   }
 
   public Generation next() {
+    return next(null);
+  }
+
+  /**
+   * @param pool
+   *          when not null the offspring is created by the threads of the pool
+   */
+  public Generation next(final ParallelLoopPool pool) {
     // printProgramsWithSameScore(4);
     gws = getSelector();
     // create next gen
-    final Generation next = new Generation(nr + 1, setup);
+    final Generation next = new Generation(nr + 1, setup, randomStreams);
+    if (setup.isRacing()) {
+      next.rejectionThreshold = selectionCutoff;
+    }
     final String histPrefix = "Generation " + next.getNr() + ": ";
     // Debug.println("Adding best solution:" + bestSolution.getScore()+ " "+bestSolution.toString());
     // add best solution + mutated
-    bestSolution.resetCellCallCounters();
-    bestSolution.resetGridExecutionErrors();
-    next.addSolution(bestSolution);
+    // scored again on the next subsample, which gives another score
+    final Grid best = evaluator != null && evaluator.isSubsampling() ? bestSolution.clone() : bestSolution;
+    best.resetCellCallCounters();
+    best.resetGridExecutionErrors();
+    next.addSolution(best);
 
     // TODO beste herberekenen gaat fout in multithreading
 
+    final long cloning = Metrics.CLONING.start();
     final Grid b2 = bestSolution.clone();
+    Metrics.CLONING.stop(cloning);
     b2.resetCellCallCounters();
     b2.resetGridExecutionErrors();
     try {
-      b2.mutate(histPrefix);
+      b2.mutate(histPrefix, setup.isDeterministic() ? randomStreams.getStream(next.getNr(), -1) : randomStreams
+          .getStream());
       next.addSolution(b2);
     } catch (NoCellFoundException e) {
       // mutation failed, so skip
+      Metrics.MUTATION_FAILURES.increment();
     }
 
     final int maxIndividuals = setup.getGenerationSize() - next.getSize();
@@ -93,21 +160,77 @@ public class Generation {
       Debug.printErrln("gws.size():" + gws.size());
     }
 
-    final String historyString = histPrefix + "Created by crossing";
+    // the offspring is created in pairs
+    final int pairs = (maxIndividuals + 1) / 2;
+    if (pool == null || pairs < BREED_PAIRS * 2) {
+      next.solutions.addAll(breed(0, pairs, maxIndividuals, next.getNr(), histPrefix));
+    } else {
+      // every range gets its own list of grids, every thread its own random stream
+      final ParallelLoopPool.Loop<ArrayList<Grid>> breeding = new ParallelLoopPool.Loop<ArrayList<Grid>>() {
+        @Override
+        public ArrayList<Grid> loopDoRange(final int start, final int end) {
+          return breed(start, end, maxIndividuals, next.getNr(), histPrefix);
+        }
+
+        @Override
+        public ArrayList<Grid> combine(final ArrayList<Grid> left, final ArrayList<Grid> right) {
+          left.addAll(right);
+          return left;
+        }
+      };
+      next.solutions.addAll(pool.execute(0, pairs, BREED_PAIRS, breeding));
+    }
+    return next;
+  }
+
+  /**
+   * Creates the pairs of grids from firstPair till endPair by crossing and mutating selected grids of this
+   * generation. Does not change this generation, so several threads can breed at once.
+   * 
+   * @param count
+   *          the number of grids all pairs create, the last pair creates one grid if it is odd
+   */
+  private ArrayList<Grid> breed(final int firstPair, final int endPair, final int count, final int nextNr,
+      final String histPrefix) {
+    final ArrayList<Grid> offspring = new ArrayList<Grid>((endPair - firstPair) * 2);
+    for (int pair = firstPair; pair < endPair; pair++) {
+      // deterministic: the pair only depends on the seed, the generation and the pair number
+      final Random random = setup.isDeterministic() ? randomStreams.getStream(nextNr, pair) : randomStreams
+          .getStream();
+      breedPair(Math.min(2, count - pair * 2), histPrefix, random, offspring);
+    }
+    return offspring;
+  }
 
+  private void breedPair(final int count, final String histPrefix, final Random random,
+      final ArrayList<Grid> offspring) {
+    final String historyString = histPrefix + "Created by crossing";
     int added = 0;
-    while (added < maxIndividuals) {
-      final Grid s1 = gws.getRandomItem();
-      final Grid s2 = gws.getRandomItem();
+    while (added < count) {
+      final Grid s1 = gws.getRandomItem(random);
+      final Grid s2 = gws.getRandomItem(random);
 
-      final Grid g1 = s1.clone();
-      final Grid g2 = s2.clone();
       final boolean cross = random.nextInt(100) < setup.getCrossingPercentage();
-      final Grid[] s34 = cross ? g1.cross(g2, getNr()) : new Grid[] { g1, g2 };
+      // cross clones both grids itself
+      final Grid[] s34;
+      if (cross) {
+        final long crossing = Metrics.CROSSING.start();
+        s34 = s1.cross(s2, getNr(), random);
+        Metrics.CROSSING.stop(crossing);
+        for (final Grid grid : s34) {
+          if (grid == null) {
+            Metrics.CROSSING_FAILURES.increment();
+          }
+        }
+      } else {
+        final long cloning = Metrics.CLONING.start();
+        s34 = new Grid[] { s1.clone(), s2.clone() };
+        Metrics.CLONING.stop(cloning);
+      }
 
       // grids might be null!!!!
       for (final Grid grid : s34) {
-        if (grid != null) {
+        if (grid != null && added < count) {
           try {
             if (cross && setup.isGridHistoryTrackingOn()) {
               grid.addToHistory(historyString);
@@ -115,35 +238,94 @@ public class Generation {
             if (!cross) {// TODO fix this: cross has a overhand on mutate!!
               final boolean mutate = random.nextInt(100) < setup.getMutatePercentage();
               if (mutate) {
-                grid.mutate(histPrefix);
+                grid.mutate(histPrefix, random);
               }
             }
-            next.addSolution(grid);
-
+            offspring.add(grid);
             added++;
           } catch (NoCellFoundException e) {
             // mutation failed, not added to generation next, so skip
+            Metrics.MUTATION_FAILURES.increment();
           }
         }
       }
     }
-    return next;
   }
 
   public void evaluate( TestSetSolutionEvaluator evaluator) {
+    evaluate(evaluator, (FitnessCache) null);
+  }
+
+  /**
+   * @param fitnessCache
+   *          may be null, otherwise scores of grids with a known structure are taken from the cache
+   */
+  public void evaluate(TestSetSolutionEvaluator evaluator, FitnessCache fitnessCache) {
+    evaluate(evaluator, fitnessCache, null);
+  }
+
+  /**
+   * @param pool
+   *          the threads evaluating when Setup.evaluateMultiThreaded(), when null a pool is started for this
+   *          generation only
+   */
+  public void evaluate(TestSetSolutionEvaluator evaluator, FitnessCache fitnessCache, ParallelLoopPool pool) {
+    this.fitnessCache = fitnessCache;
+    this.evaluator = evaluator;
+    final EvaluationResult result;
     if (setup.evaluateMultiThreaded()) {
-      evaluateMultiThreaded(evaluator);
-      evaluated = true;// TODO not correct find end of threadruns
+      if (pool == null) {
+        final ParallelLoopPool generationPool = new ParallelLoopPool("evaluator", setup.getEvaluationThreads());
+        try {
+          result = evaluateMultiThreaded(evaluator, generationPool);
+        } finally {
+          generationPool.shutdown();
+        }
+      } else {
+        result = evaluateMultiThreaded(evaluator, pool);
+      }
     } else {
-      evaluateSingleThreaded(evaluator);
-      evaluated = true;
+      result = evaluateSingleThreaded(evaluator);
+    }
+    if (result != null) {
+      apply(result);
+    }
+    evaluated = true;
+  }
+
+  /**
+   * Evaluates the grids on another evaluator, for instance on worker processes. The fitness cache is not
+   * used.
+   * 
+   * @param evaluator
+   *          the local evaluator, used to resolve score bounds
+   */
+  public void evaluate(final TestSetSolutionEvaluator evaluator, final GridBatchEvaluator batchEvaluator) {
+    this.fitnessCache = null;
+    this.evaluator = evaluator;
+    final EvaluationResult result = new EvaluationResult();
+    final double[] scores = batchEvaluator.evaluate(getSolutions(), rejectionThreshold);
+    for (int i = 0; i < scores.length; i++) {
+      record(solutions.get(i), scores[i], result);
+    }
+    apply(result);
+  }
+
+  private void apply(final EvaluationResult result) {
+    if (result.bestScore < bestScore) {
+      bestScore = result.bestScore;
+      bestSolution = result.bestSolution;
     }
+    nanAndInfinateCounter += result.nanAndInfinateCounter;
+    abortedCounter += result.abortedCounter;
+    evaluated = true;
   }
 
-  private void evaluateSingleThreaded(TestSetSolutionEvaluator evaluator) {
+  private EvaluationResult evaluateSingleThreaded(TestSetSolutionEvaluator evaluator) {
+    final EvaluationResult result = new EvaluationResult();
     for (Grid sol : getSolutions()) {
       try {
-        evaluate(evaluator, sol);
+        evaluate(evaluator, sol, result, null);
         if (stopRunning)
           break;
       } catch (Throwable e) {
@@ -151,77 +333,65 @@ public class Generation {
         System.exit(0);
       }
     }
+    return result;
   }
 
-  private void evaluateMultiThreaded(final TestSetSolutionEvaluator evaluator) {
-    // create ThreadLocal so every thread gets a clone of testset, initialValue is called when get() is called
-    final ThreadLocal<TestSetSolutionEvaluator> tl = new ThreadLocal<TestSetSolutionEvaluator>() {
-      @Override
-      public TestSetSolutionEvaluator initialValue() {
-        return evaluator; //TODO do we need a clone here? .clone()
+  private EvaluationResult evaluateMultiThreaded(final TestSetSolutionEvaluator evaluator,
+      final ParallelLoopPool pool) {
+    if (isShardingTestCases(evaluator, pool)) {
+      // one grid at a time, its test cases divided over the threads
+      final EvaluationResult result = new EvaluationResult();
+      for (int i = 0; i < getSolutions().size() && !stopRunning; i++) {
+        evaluate(evaluator, solutions.get(i), result, pool);
       }
-    };
-
-    // final ArrayList<Grid> grids = new ArrayList<Grid>();
-
-    ParallelLoopExecutor ple = new ParallelLoopExecutor(0, getSolutions().size(), 2,
-        ParallelLoopExecutor.Scheduling.DYNAMIC_SCHEDULING) {
+      return result;
+    }
+    return pool.execute(0, getSolutions().size(), 1, new ParallelLoopPool.Loop<EvaluationResult>() {
       @Override
-      public void loopDoRange(final int start, final int end) {
+      public EvaluationResult loopDoRange(final int start, final int end) {
         // Debug.println("Starting execution from "+start+" to "+end);
-        int i = start;
-        Grid gr = null;
-        try {
-          final TestSetSolutionEvaluator localTestSet = tl.get();
-          for (; i < end; i++) {
-            // System.out.println("eval:" + i + " " + Thread.currentThread().getName());
-            // System.out.flush();
-            gr = solutions.get(i);
-            // grids.add(gr);
-            evaluate(localTestSet, gr);
-            if (stopRunning)
-              break;
-            if (!continuRunning) {
-              JavaGenerator.printJavaProgram(gr, "last " + i + " from " + Thread.currentThread().getName(),
-                  "nl.bluevoid.gp", true);
-              System.out.flush();
-              break;
-            }
-          }
-        } catch (Throwable e) {
-          stopAllThreads();
-          Debug.printFullStackTrace(e);
-          JavaGenerator.printJavaProgram(gr, "fail " + i + " " + Thread.currentThread().getName(),
-              "nl.bluevoid.gp", true);
-          System.out.flush();
-          System.exit(1);
+        final EvaluationResult result = new EvaluationResult();
+        for (int i = start; i < end && !stopRunning; i++) {
+          evaluate(evaluator, solutions.get(i), result, null);
         }
+        return result;
       }
-    };
 
-    try {
-      ple.excuteParallelLoops();
-    } catch (InterruptedException e) {
-      e.printStackTrace();
+      @Override
+      public EvaluationResult combine(final EvaluationResult left, final EvaluationResult right) {
+        left.add(right);
+        return left;
+      }
+    });
+  }
+
+  /**
+   * @return true if the grids should be evaluated one at a time with their test cases split over the threads,
+   *         false to give every thread its own grids
+   */
+  private boolean isShardingTestCases(final TestSetSolutionEvaluator evaluator, final ParallelLoopPool pool) {
+    final int shardSize = setup.getTestCaseShardSize();
+    if (shardSize == 0 || setup.isDeterministic()) {
+      return false;
     }
+    return getSolutions().size() < pool.getThreads() * GRIDS_PER_THREAD
+        && evaluator.getShardCount(shardSize) > 1;
   }
 
-  private void evaluate(final TestSetSolutionEvaluator evaluator, final Grid sol) {
+  /**
+   * @param shardPool
+   *          the threads to split the test cases of the grid over, null to evaluate on this thread
+   */
+  private void evaluate(final TestSetSolutionEvaluator evaluator, final Grid sol, final EvaluationResult result,
+      final ParallelLoopPool shardPool) {
     // Debug.println("score:" + score);
     try {
-      final double score = evaluator.evaluate(sol);
-      sol.setScore(score);
-
-      if (Calc.isNaNorInfinite(score)) {
-        nanAndInfinateCounter++;
-      } else {
-        synchronized (this) {
-          if (score < bestScore) {
-            bestScore = score;
-            bestSolution = sol;
-          }
-        }
-      }
+      final int shardSize = setup.getTestCaseShardSize();
+      final long start = Metrics.GRID_EVALUATION.start();
+      final double score = fitnessCache == null ? evaluator.evaluate(sol, rejectionThreshold, shardPool,
+          shardSize) : fitnessCache.evaluate(evaluator, sol, rejectionThreshold, shardPool, shardSize);
+      Metrics.GRID_EVALUATION.stop(start);
+      record(sol, score, result);
     } catch (Throwable t) {
       System.err.println(JavaMethodGenerator.getJavaProgram(sol, "errorClass", "nl.bluevoid.gp", null, t
           .getMessage(), setup.isDebugInfoVisible(), setup.isJunkDnaShown()));
@@ -229,6 +399,53 @@ public class Generation {
     }
   }
 
+  private void record(final Grid sol, final double score, final EvaluationResult result) {
+    // an infinite score is above any threshold, but it is not a bound
+    if (!Calc.isNaNorInfinite(score) && score > rejectionThreshold) {
+      // may be a bound, but worse than anything selected in the previous generation
+      sol.setScoreBound(score);
+      result.abortedCounter++;
+    } else {
+      sol.setScore(score);
+    }
+
+    if (sol.isScoreBound()) {
+      // never the best
+    } else if (Calc.isNaNorInfinite(score)) {
+      result.nanAndInfinateCounter++;
+    } else if (score < result.bestScore) {
+      result.bestScore = score;
+      result.bestSolution = sol;
+    }
+  }
+
+  /**
+   * Best solution and counters of the grids evaluated by one thread, combined when all are evaluated.
+   */
+  private static class EvaluationResult {
+    Grid bestSolution;
+    double bestScore = Double.MAX_VALUE;
+    int nanAndInfinateCounter;
+    int abortedCounter;
+
+    /**
+     * @param other
+     *          result of the grids after these, may be null
+     */
+    void add(final EvaluationResult other) {
+      if (other == null) {
+        return;
+      }
+      // on equal scores the first grid wins, like when evaluating single threaded
+      if (other.bestScore < bestScore) {
+        bestScore = other.bestScore;
+        bestSolution = other.bestSolution;
+      }
+      nanAndInfinateCounter += other.nanAndInfinateCounter;
+      abortedCounter += other.abortedCounter;
+    }
+  }
+
   public void printChooseResult() {
     gws.printChooseResult();
   }
@@ -237,10 +454,10 @@ public class Generation {
     sortSolutions();
     // schaal naar 0-1 (fitness delen door max)
     final GewogenKansSelector<Grid> gws = new GewogenKansSelector<Grid>(setup);
-    final int size = sortedSolutions.size();
-    final int selectmax = size - Math.max(size / 100, 1);
+    final int selectmax = getSelectMax();
     final double min = sortedSolutions.get(0).getScore();
     final double max = sortedSolutions.get(selectmax - 1).getScore();
+    selectionCutoff = max;
     for (int i = 0; i < selectmax; i++) {
       final Grid s = sortedSolutions.get(i);
       final double score = s.getScore();
@@ -267,8 +484,14 @@ public class Generation {
     return (int) Math.pow((100 - (zeroto1 * 100)), 2);
   }
 
+  private int getSelectMax() {
+    final int size = sortedSolutions.size();
+    return size - Math.max(size / 100, 1);
+  }
+
   /**
-   * sortedSolutions does NOT contain solutions with NAN AND INFINITE scores!!!!
+   * sortedSolutions does NOT contain solutions with NAN AND INFINITE scores!!!! Grids with a bound as score
+   * that sort into the selectable part are evaluated completely, so the selection only sees exact scores.
    */
   private void sortSolutions() {
     if (!sorted) {
@@ -284,10 +507,35 @@ public class Generation {
           sortedSolutions.add(g);
       }
       Collections.sort(sortedSolutions);
+      while (resolveScoreBound()) {
+        Collections.sort(sortedSolutions);
+      }
       sorted = true;
     }
   }
 
+  /**
+   * Evaluates the first grid with a bound as score in the selectable part completely.
+   * 
+   * @return true if a grid was evaluated
+   */
+  private boolean resolveScoreBound() {
+    final int selectmax = getSelectMax();
+    for (int i = 0; i < selectmax; i++) {
+      final Grid g = sortedSolutions.get(i);
+      if (g.isScoreBound()) {
+        final double score = evaluator.evaluate(g);
+        g.setScore(score);
+        if (Calc.isNaNorInfinite(score)) {
+          sortedSolutions.remove(i);
+          nanAndInfinateCounter++;
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Returns the avarage score from a part of the solutions, this takes out the varies high scores at the end
    * of the population and gives a general feel of how the generations are evolving
@@ -312,6 +560,30 @@ public class Generation {
     return solutions;
   }
 
+  /**
+   * @return the n best grids, best first, fewer when fewer have a score that is a number
+   */
+  public ArrayList<Grid> getBestSolutions(final int n) {
+    sortSolutions();
+    return new ArrayList<Grid>(sortedSolutions.subList(0, Math.min(n, sortedSolutions.size())));
+  }
+
+  /**
+   * Replaces the last offspring by grids from another population, the best solution and its mutation that
+   * start a generation are kept.
+   */
+  public void addMigrants(final List<Grid> migrants) {
+    Debug.errorOnTrue(evaluated, "migrants are added before evaluating");
+    int place = solutions.size() - 1;
+    for (final Grid migrant : migrants) {
+      if (place >= 2) {
+        solutions.set(place--, migrant);
+      } else {
+        solutions.add(migrant);
+      }
+    }
+  }
+
   public int getNr() {
     return nr;
   }
@@ -320,6 +592,14 @@ public class Generation {
     return bestSolution;
   }
 
+  /**
+   * @return the number of grids that scored higher than the rejection threshold, their evaluation may have
+   *         been stopped early
+   */
+  public int getAbortedCounter() {
+    return abortedCounter;
+  }
+
   public int getSize() {
     return solutions.size();
   }
@@ -16,10 +16,16 @@
 
 package nl.bluevoid.genpro;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 
+import nl.bluevoid.genpro.metrics.Metrics;
+import nl.bluevoid.genpro.metrics.MetricsCsvWriter;
 import nl.bluevoid.genpro.util.Calc;
 import nl.bluevoid.genpro.util.Debug;
+import nl.bluevoid.genpro.util.ParallelLoopPool;
+import nl.bluevoid.genpro.util.RandomStreams;
 
 /**
  * @author Rob van der Veer
@@ -41,11 +47,71 @@ public class GenerationRunner extends Thread {
   private long lastStatsTime=0;
   private long statsInterval=10000;
   private final TestSetSolutionEvaluator evaluator;
+  private final FitnessCache fitnessCache;
+  private ParallelLoopPool evaluationPool;
+  private final RandomStreams randomStreams;
+  private GridBatchEvaluator remoteEvaluator;
+  // run time before a resume, see resume
+  private long resumedMillis = 0;
+  private volatile Thread checkpointWriter;
+  // guarded by this, the snapshot the writer writes next
+  private Checkpoint pendingCheckpoint;
+  private boolean checkpointWriting = false;
+  private final MetricsCsvWriter metricsWriter;
 
   public GenerationRunner(Setup setup, TestSetSolutionEvaluator evaluator ) {
     this.setup = setup;
     //this.testSet = testSet;
     this.evaluator = evaluator;
+    fitnessCache = setup.getFitnessCacheSize() > 0 ? new FitnessCache(setup.getFitnessCacheSize()) : null;
+    randomStreams = new RandomStreams(setup.getRandomSeed());
+    if (setup.getMetricsFile() != null) {
+      Metrics.setOn(true);
+      metricsWriter = new MetricsCsvWriter(setup.getMetricsFile());
+    } else {
+      metricsWriter = null;
+    }
+    // needed to repeat a deterministic run
+    Debug.info(setup.isDeterministic() || setup.isDebugInfoVisible(), "Random seed=", setup.getRandomSeed());
+  }
+
+  /**
+   * Creates a runner that continues the run of a checkpoint, see Setup.setCheckpoint. The random seed of the
+   * setup is set to the seed of the run, so deterministic runs continue with the same generations.
+   */
+  public static GenerationRunner resume(final Setup setup, final TestSetSolutionEvaluator evaluator,
+      final File checkpointFile) throws IOException {
+    final Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+    setup.setRandomSeed(checkpoint.getRandomSeed());
+    final GenerationRunner runner = new GenerationRunner(setup, evaluator);
+    runner.curGen = checkpoint.getGeneration(setup, evaluator, runner.randomStreams);
+    runner.bestSolution = checkpoint.getBestSolution(setup);
+    if (runner.bestSolution == null) {
+      runner.bestSolution = runner.curGen.getBestSolution();
+    }
+    runner.bestScore = runner.bestSolution.getScore();
+    runner.resumedMillis = checkpoint.getElapsedMillis();
+    Debug.info(true, "Resumed at generation ", checkpoint.getGenerationNr(), " best score ", runner.bestScore);
+    return runner;
+  }
+
+  /**
+   * @return the random streams of this run, passed to its generations
+   */
+  public RandomStreams getRandomStreams() {
+    return randomStreams;
+  }
+
+  /**
+   * Lets the generations be scored by the given evaluator instead of on the threads of this JVM.
+   * 
+   * @param remoteEvaluator
+   *          null to evaluate locally again
+   */
+  public void setRemoteEvaluator(final GridBatchEvaluator remoteEvaluator) {
+    Debug.checkParam(remoteEvaluator != null && evaluator.isSubsampling(),
+        "subsampling is not supported by remote evaluation", remoteEvaluator);
+    this.remoteEvaluator = remoteEvaluator;
   }
 
   public void stopRunning() {
@@ -55,30 +121,128 @@ public class GenerationRunner extends Thread {
   }
 
   public void runGenerations() {
-    startTotal = System.currentTimeMillis();
+    startTotal = System.currentTimeMillis() - resumedMillis;
     curGen = getCurGen();
 
     // create generations and evaluate
 
     final long maxGen = setup.getStopAtGeneration() == -1 ? Long.MAX_VALUE : setup.getStopAtGeneration();
 
-    while (curGen.getNr() < maxGen) {
-      newGen = curGen.next();
-      evaluateGeneration(newGen);
-      if (setup.getStopAtScore() != -1 && newGen.getBestSolution().getScore() < setup.getStopAtScore())
-        break;
-      curGen = newGen;
-      if (stopRunning)
-        break;
+    try {
+      while (curGen.getNr() < maxGen) {
+        final long breeding = Metrics.BREEDING.start();
+        newGen = curGen.next(getEvaluationPool());
+        Metrics.BREEDING.stop(breeding);
+        evaluateGeneration(newGen);
+        if (setup.getCheckpointInterval() > 0 && newGen.getNr() % setup.getCheckpointInterval() == 0) {
+          checkpoint(newGen);
+        }
+        if (setup.getStopAtScore() != -1 && bestScore < setup.getStopAtScore())
+          break;
+        curGen = newGen;
+        if (stopRunning)
+          break;
+      }
+    } finally {
+      shutdown();
+    }
+  }
+
+  /**
+   * Takes a snapshot of the evaluated generation and writes it to Setup.getCheckpointFile() on another
+   * thread. A snapshot that is not written yet when the next one is taken is replaced by it.
+   */
+  private void checkpoint(final Generation gen) {
+    final long elapsed = System.currentTimeMillis() - startTotal;
+    final Checkpoint checkpoint = Checkpoint.take(setup, randomStreams.getSeed(), gen, bestSolution, elapsed);
+    final File file = setup.getCheckpointFile();
+    synchronized (this) {
+      pendingCheckpoint = checkpoint;
+      if (checkpointWriting) {
+        return;
+      }
+      checkpointWriting = true;
+    }
+    checkpointWriter = new Thread("checkpoint writer") {
+      @Override
+      public void run() {
+        while (true) {
+          final Checkpoint next;
+          synchronized (GenerationRunner.this) {
+            next = pendingCheckpoint;
+            pendingCheckpoint = null;
+            if (next == null) {
+              checkpointWriting = false;
+              return;
+            }
+          }
+          try {
+            next.write(file);
+          } catch (IOException e) {
+            Debug.printErrln("checkpoint not written to " + file + ": " + e);
+          }
+        }
+      }
+    };
+    checkpointWriter.start();
+  }
+
+  /**
+   * Stops the threads breeding and evaluating the generations, they are started again when needed. Waits
+   * for a checkpoint being written.
+   */
+  public void shutdown() {
+    synchronized (this) {
+      if (evaluationPool != null) {
+        evaluationPool.shutdown();
+        evaluationPool = null;
+      }
+    }
+    // the writer needs the lock to finish
+    final Thread writer = checkpointWriter;
+    if (writer != null) {
+      try {
+        writer.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
     }
   }
 
+  /**
+   * @return the threads breeding and evaluating the generations, null when evaluating single threaded
+   */
+  private synchronized ParallelLoopPool getEvaluationPool() {
+    if (setup.evaluateMultiThreaded() && evaluationPool == null) {
+      evaluationPool = new ParallelLoopPool("evaluator", setup.getEvaluationThreads());
+    }
+    return evaluationPool;
+  }
+
   public void evaluateGeneration(Generation newGen) {
-    newGen.evaluate(evaluator);
+    if (evaluator.isSubsampling()) {
+      evaluator.nextSubsample(setup.isDeterministic() ? randomStreams.getStream(newGen.getNr(), -2)
+          : randomStreams.getStream());
+    }
+    final long evaluation = Metrics.EVALUATION.start();
+    if (remoteEvaluator != null) {
+      newGen.evaluate(evaluator, remoteEvaluator);
+    } else {
+      newGen.evaluate(evaluator, fitnessCache, getEvaluationPool());
+    }
+    Metrics.EVALUATION.stop(evaluation);
+    Metrics.NAN_OR_INFINITE.add(newGen.nanAndInfinateCounter);
+    Metrics.GENERATIONS.increment();
 
     // process result of this generation
-    if (newGen.getBestSolution().getScore() < bestScore) {
-      bestSolution = newGen.getBestSolution();
+    Grid genBest = newGen.getBestSolution();
+    if (evaluator.isSubsampling()) {
+      // only scores on all test cases are comparable between generations
+      genBest = genBest.clone();
+      genBest.setScore(evaluator.evaluateFull(genBest));
+    }
+    if (genBest.getScore() < bestScore) {
+      bestSolution = genBest;
       bestScore = bestSolution.getScore();
       notifyResultListenersOnNewBest();
     }
@@ -87,6 +251,13 @@ public class GenerationRunner extends Thread {
     final long avgMillisPerGeneration = (System.currentTimeMillis() - startTotal) / genNr;
 
     notifyResultListenersOnStats((int) genNr, avgMillisPerGeneration);
+    if (metricsWriter != null && Metrics.isOn()) {
+      try {
+        metricsWriter.write(genNr);
+      } catch (IOException e) {
+        Debug.printErrln("metrics not written to " + metricsWriter.getFile() + ": " + e);
+      }
+    }
     final long timeNow=System.currentTimeMillis();
     // print statistics
     if ((timeNow-lastStatsTime)>statsInterval && genNr!=1) {
@@ -95,6 +266,10 @@ public class GenerationRunner extends Thread {
       curGen.printChooseResult();
       Debug.println("gen:" + genNr + " time per gen:" + avgMillisPerGeneration
           + " millis  avg. score of top 80%:" + newGen.getAverageScore(0.8));
+      if (fitnessCache != null) {
+        Debug.println("fitness cache hits:" + fitnessCache.getHits() + " misses:" + fitnessCache.getMisses()
+            + " size:" + fitnessCache.getSize());
+      }
       // request garbagecollect
       System.gc();
       // give time to start gc
@@ -118,9 +293,10 @@ public class GenerationRunner extends Thread {
   }
 
   protected Generation createStartGeneration() {
-    Generation gen = new Generation(setup);
+    Generation gen = new Generation(setup, randomStreams);
     for (int i = 0; i < setup.getGenerationSize(); i++) {
-      Grid grid = setup.generateSolution();
+      Grid grid = setup.generateSolution(setup.isDeterministic() ? randomStreams.getStream(gen.getNr(), i)
+          : randomStreams.getStream());
 
       gen.addSolution(grid);
       if(setup.isGridHistoryTrackingOn()){
@@ -134,6 +310,13 @@ public class GenerationRunner extends Thread {
     return gen;
   }
 
+  /**
+   * @return the cache of scores, null if Setup.getFitnessCacheSize() is 0
+   */
+  public FitnessCache getFitnessCache() {
+    return fitnessCache;
+  }
+
   public Generation getCurGen() {
     if (curGen == null) {
       curGen = createStartGeneration();
@@ -25,6 +25,7 @@ import java.util.Random;
 
 import nl.bluevoid.genpro.cell.Calculable;
 import nl.bluevoid.genpro.cell.CallCell;
+import nl.bluevoid.genpro.cell.CallInvocation;
 import nl.bluevoid.genpro.cell.Cell;
 import nl.bluevoid.genpro.cell.CellInterface;
 import nl.bluevoid.genpro.cell.ConstantCell;
@@ -38,6 +39,15 @@ import nl.bluevoid.genpro.cell.ValueCell;
 import nl.bluevoid.genpro.cell.switx.BooleanSwitchCell;
 import nl.bluevoid.genpro.cell.switx.NumberSwitchCell;
 import nl.bluevoid.genpro.cell.switx.SwitchCell;
+import nl.bluevoid.genpro.cell.switx.SwitchOption;
+import nl.bluevoid.genpro.engine.CompiledGrid;
+import nl.bluevoid.genpro.engine.GridCompiler;
+import nl.bluevoid.genpro.engine.BatchGrid;
+import nl.bluevoid.genpro.engine.CellResults;
+import nl.bluevoid.genpro.engine.PrimitiveCompiledGrid;
+import nl.bluevoid.genpro.engine.PrimitiveFrame;
+import nl.bluevoid.genpro.engine.PrimitiveGridCompiler;
+import nl.bluevoid.genpro.engine.SlotGrid;
 import nl.bluevoid.genpro.util.Sneak;
 import nl.bluevoid.genpro.util.XMLBuilder;
 
@@ -46,10 +56,13 @@ import nl.bluevoid.genpro.util.XMLBuilder;
  * @since 1.0
  */
 public class Grid implements Cloneable, Comparable<Grid> {
-  public static final Random random = new Random(System.currentTimeMillis());
+
+  private static final int MAX_SWITCH_OPTIONS = 10;// TODO make configurable
 
   private final Setup setup;
   private double score = -1;
+  // the score is a lower bound, evaluation was stopped early, see Setup.setRacing
+  private boolean scoreBound = false;
 
   public String name;
   // calc execution
@@ -75,6 +88,24 @@ public class Grid implements Cloneable, Comparable<Grid> {
 
   private ArrayList<GridExecutionError> errors = new ArrayList<GridExecutionError>();
 
+  // compiled evaluation, see Setup.setCompiledEvaluation
+  private CompiledGrid compiledGrid;
+  private boolean compiledGridChecked = false;
+  private Object[] slots;
+
+  // primitive evaluation, see Setup.setPrimitiveEvaluation
+  private PrimitiveCompiledGrid primitiveCompiledGrid;
+  private boolean primitiveCompiledGridChecked = false;
+  private PrimitiveFrame primitiveFrame;
+
+  // batch evaluation, see Setup.setBatchEvaluation
+  private BatchGrid batchGrid;
+  private boolean batchGridChecked = false;
+  // thread-confined evaluation, see EvaluationFrame
+  private SlotGrid slotGrid;
+  // kept by incremental evaluation and shared with clones, see Setup.setIncrementalEvaluation
+  private CellResults cellResults;
+
   // benodigde weergaves:
 
   // inOutCellsMap: inputs en outputs. Lijst voor input/result voor en na berekenen.
@@ -108,12 +139,35 @@ public class Grid implements Cloneable, Comparable<Grid> {
   }
 
   public void calc() throws GridExecutionError {
+    if (setup.isPrimitiveEvaluation() && calcPrimitive() != null) {
+      // write back, outputs and statistics read the cells
+      final int offset = GridCompiler.getCallCellSlotOffset(this);
+      for (int i = 0; i < callCells.length; i++) {
+        if (callCells[i].isUsedForOutput()) {
+          ((ValueCell) callCells[i]).setValue(primitiveFrame.getValue(offset + i));
+        }
+      }
+      return;
+    }
+    if (setup.isCompiledEvaluation() && getCompiledGrid() != null) {
+      calcCompiled();
+      return;
+    }
+    calcCounted();
+  }
+
+  /**
+   * Calculates with reflection or method handles, the compiled paths do not update the call and error
+   * counters of the cells.
+   */
+  public void calcCounted() throws GridExecutionError {
+    final CallInvocation invocation = setup.getCallInvocation();
     // list calcCells & call calculate
     try {
       for (final Calculable cell : callCells) {
         try {
           if (cell.isUsedForOutput()) {// only call calc on cells that are really used
-            cell.calc();
+            cell.calc(invocation);
           }
         } catch (final GridExecutionError e) {
           errors.add(e);
@@ -131,14 +185,148 @@ public class Grid implements Cloneable, Comparable<Grid> {
     }
   }
 
+  private void calcCompiled() throws GridExecutionError {
+    if (slots == null) {
+      slots = new Object[GridCompiler.getSlotCount(this)];
+    }
+    GridCompiler.fillSlots(this, slots);
+    try {
+      compiledGrid.calc(slots);
+    } catch (final GridExecutionError e) {
+      errors.add(e);
+      throw e;
+    } catch (final RuntimeException e) {
+      e.printStackTrace();
+      printSolution();
+      throw e;
+    } catch (Exception e) {
+      Sneak.sneakyThrow(e);
+    } finally {
+      // write back, outputs and statistics read the cells
+      final int offset = GridCompiler.getCallCellSlotOffset(this);
+      for (int i = 0; i < callCells.length; i++) {
+        if (callCells[i].isUsedForOutput()) {
+          ((ValueCell) callCells[i]).setValue(slots[offset + i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the compiled version of this grid, null if it can not be compiled
+   */
+  public synchronized CompiledGrid getCompiledGrid() {
+    if (!compiledGridChecked) {
+      compiledGrid = GridCompiler.compile(this);
+      compiledGridChecked = true;
+    }
+    return compiledGrid;
+  }
+
+  /**
+   * Calculates on primitive slots. The values are not written back to the cells, read them from the returned
+   * frame with getCallCellSlot.
+   * 
+   * @return the frame holding the results, null if this grid can not be calculated primitively
+   */
+  public PrimitiveFrame calcPrimitive() {
+    if (getPrimitiveCompiledGrid() == null) {
+      return null;
+    }
+    if (primitiveFrame == null) {
+      primitiveFrame = new PrimitiveFrame(this);
+    }
+    primitiveFrame.fill(this);
+    try {
+      primitiveFrame.calc(primitiveCompiledGrid);
+    } catch (final RuntimeException e) {
+      e.printStackTrace();
+      printSolution();
+      throw e;
+    } catch (Exception e) {
+      Sneak.sneakyThrow(e);
+    }
+    return primitiveFrame;
+  }
+
+  /**
+   * @return the primitive version of this grid, null if it can not be compiled primitively
+   */
+  public synchronized PrimitiveCompiledGrid getPrimitiveCompiledGrid() {
+    if (!primitiveCompiledGridChecked) {
+      primitiveCompiledGrid = PrimitiveGridCompiler.compile(this);
+      primitiveCompiledGridChecked = true;
+    }
+    return primitiveCompiledGrid;
+  }
+
+  /**
+   * @return the batch version of this grid, null if it can not be calculated on primitive columns
+   */
+  public synchronized BatchGrid getBatchGrid() {
+    if (!batchGridChecked) {
+      batchGrid = BatchGrid.create(this);
+      batchGridChecked = true;
+    }
+    return batchGrid;
+  }
+
+  /**
+   * @return the plan to calculate this grid on slots without touching its cells, see EvaluationFrame
+   */
+  public synchronized SlotGrid getSlotGrid() {
+    if (slotGrid == null) {
+      slotGrid = SlotGrid.create(this);
+    }
+    return slotGrid;
+  }
+
+  /**
+   * @return the columns of the last incremental evaluation of this grid or the grid it was cloned from, may
+   *         be null
+   */
+  public CellResults getCellResults() {
+    return cellResults;
+  }
+
+  public void setCellResults(final CellResults cellResults) {
+    this.cellResults = cellResults;
+  }
+
+  /**
+   * @return the slot of a callcell in the compiled frames, -1 if it is not a callcell of this grid
+   */
+  public int getCallCellSlot(final ValueCell cell) {
+    for (int i = 0; i < callCells.length; i++) {
+      if (callCells[i] == cell) {
+        return GridCompiler.getCallCellSlotOffset(this) + i;
+      }
+    }
+    return -1;
+  }
+
+  private void invalidateCompiledGrid() {
+    compiledGrid = null;
+    compiledGridChecked = false;
+    slots = null;
+    primitiveCompiledGrid = null;
+    primitiveCompiledGridChecked = false;
+    primitiveFrame = null;
+    batchGrid = null;
+    batchGridChecked = false;
+    slotGrid = null;
+  }
+
   /**
    * 
    * @param grid
    * @param generationNr
+   * @param random
+   *          draws the cut and the reconnections
    * @return an Array of Grids, where some might be null! This happens when crossing fails to give a working
    *         result
    */
-  public synchronized Grid[] cross(final Grid grid, int generationNr) {
+  public Grid[] cross(final Grid grid, int generationNr, final Random random) {
     Grid g1 = grid.clone();
     Grid g2 = this.clone();
 
@@ -159,8 +347,8 @@ public class Grid implements Cloneable, Comparable<Grid> {
     child2.addAll(gCells2.subList(0, cut));
     child2.addAll(gCells1.subList(cut, gCells1.size()));
 
-    g1 = g1.tryToSet(child);
-    g2 = g2.tryToSet(child2);
+    g1 = g1.tryToSet(child, random);
+    g2 = g2.tryToSet(child2, random);
 
     return new Grid[] { g2, g1 };
   }
@@ -171,7 +359,7 @@ public class Grid implements Cloneable, Comparable<Grid> {
    * @param child
    * @return null on error!! or this on succes!
    */
-  private Grid tryToSet(final ArrayList<Cell> child) {
+  private Grid tryToSet(final ArrayList<Cell> child, final Random random) {
     try {
       // divide cells: constants, callcells, outputcells
       final ArrayList<ConstantCell> constant = new ArrayList<ConstantCell>();
@@ -198,9 +386,9 @@ public class Grid implements Cloneable, Comparable<Grid> {
       constantCells = constant.toArray(new ConstantCell[constant.size()]);
       callCells = call.toArray(new Calculable[call.size()]);
       setOutPutCells(output.toArray(new ReferenceCell[output.size()]));
-      restoreConnections();
+      restoreConnections(new CellMap(random));
       history.clear();
-      recalcAndFixConnectivity();
+      recalcAndFixConnectivity(random);
     } catch (UnconnectableGridException t) {
       return null;
     } catch (NoCellFoundException e) {
@@ -220,9 +408,14 @@ public class Grid implements Cloneable, Comparable<Grid> {
     return cells;
   }
 
-  private void restoreConnections() throws NoCellFoundException {
-    final CellMap hm = new CellMap();
+  private static void putCopies(final CellInterface[] originals, final CellInterface[] copies,
+      final CellMap map) {
+    for (int i = 0; i < originals.length; i++) {
+      map.putCopy((Cell) originals[i], (Cell) copies[i]);
+    }
+  }
 
+  private void restoreConnections(final CellMap hm) throws NoCellFoundException {
     // add inputs
     for (final ValueCell valueCell : inputCells) {
       hm.putByName(valueCell);
@@ -246,7 +439,7 @@ public class Grid implements Cloneable, Comparable<Grid> {
     }
   }
 
-  public void mutate(final String historyPrefix) throws NoCellFoundException {
+  public void mutate(final String historyPrefix, final Random random) throws NoCellFoundException {
     final int num = constantCells.length + callCells.length;
 
     if (num == 0)
@@ -255,7 +448,7 @@ public class Grid implements Cloneable, Comparable<Grid> {
     if (choice < constantCells.length) {
       // mutate constant
       if (constantCells[choice].canMutate()) {// TODO make this not select-able
-        constantCells[choice].mutate();
+        constantCells[choice].mutate(random);
         mutatedConstants++;
         if (setup.isGridHistoryTrackingOn()) {
           addToHistory(historyPrefix + "mutated constant " + constantCells[choice].getName());
@@ -263,7 +456,7 @@ public class Grid implements Cloneable, Comparable<Grid> {
       }
       // TODO this is absolutely weird but needed to keep good solutions, why? doe sthe clone of bestsolution
       // need a fix??
-      recalcAndFixConnectivity();
+      recalcAndFixConnectivity(random);
     } else {
       // mutate callcell
       final int place2 = choice - constantCells.length;
@@ -271,11 +464,11 @@ public class Grid implements Cloneable, Comparable<Grid> {
       final ArrayList<ValueCell> paramCells = getParamsTillCallcell(place2);
       final HashMap<Class<?>, ArrayList<CallTarget>> callTargetsByReturnType = getCallTargetsTillCallCell(place2);
 
-      callCells[place2].mutate(callTargetsByReturnType, paramCells);
+      callCells[place2].mutate(callTargetsByReturnType, paramCells, random);
       if (setup.isGridHistoryTrackingOn()) {
         addToHistory(historyPrefix + "mutated callcell " + callCells[place2].getName());
       }
-      recalcAndFixConnectivity();
+      recalcAndFixConnectivity(random);
     }
 
     // TODO: delete Cell
@@ -311,6 +504,9 @@ public class Grid implements Cloneable, Comparable<Grid> {
       }
     }
     constantCells = consts.toArray(new ConstantCell[consts.size()]);
+    invalidateCompiledGrid();
+    // slots have moved
+    cellResults = null;
   }
 
   /**
@@ -345,12 +541,12 @@ public class Grid implements Cloneable, Comparable<Grid> {
     return paramCells;
   }
 
-  public synchronized void createSolution() {
+  public void createSolution(final Random random) {
     boolean success = false;
     int tries = 0;
     while (!success)
       try {
-        tryToCreateSolution();
+        tryToCreateSolution(random);
         recalcIsUsedForOutput();
         success = true;
       } catch (NoCellFoundException e) {
@@ -360,7 +556,7 @@ public class Grid implements Cloneable, Comparable<Grid> {
       }
   }
 
-  private void tryToCreateSolution() throws NoCellFoundException {
+  private void tryToCreateSolution(final Random random) throws NoCellFoundException {
     final ArrayList<ValueCell> paramCells = new ArrayList<ValueCell>();
     final HashMap<Class<?>, ArrayList<CallTarget>> callTargetsByReturnType = new HashMap<Class<?>, ArrayList<CallTarget>>();
 
@@ -387,7 +583,7 @@ public class Grid implements Cloneable, Comparable<Grid> {
     // create new constants with different value
     for (int i = 0; i < constantCells.length; i++) {
       if (constantCells[i].canMutate()) {
-        constantCells[i].setRandomValue();
+        constantCells[i].setRandomValue(random);
       }
     }
     Util.addCells(constantCells, paramCells);
@@ -401,17 +597,17 @@ public class Grid implements Cloneable, Comparable<Grid> {
     for (int i = 0; i < setup.getCallCellNumber(); i++) {
       String name = setup.getCallCellNamePrefix() + (i + 1);
       if (switchNrAdded < setup.getMaxSwitchCellNr() && random.nextDouble() < switchNrRatio) {
-        gridCells_local.add(getSwitchCell(name));
+        gridCells_local.add(getSwitchCell(name, random));
         switchNrAdded++;
       } else {
-        gridCells_local.add(new CallCell(name, setup.getRandomCallCellType()));
+        gridCells_local.add(new CallCell(name, setup.getRandomCallCellType(random)));
       }
     }
 
     // connect callcells
     for (final Calculable cell : gridCells_local) {
       // Debug.println("Connecting:" + cell);
-      cell.connectCell(callTargetsByReturnType, paramCells);
+      cell.connectCell(callTargetsByReturnType, paramCells, random);
       switch (cell.getCellType()) {
       case CallCell:
       case NumberSwitchCell:
@@ -443,17 +639,17 @@ public class Grid implements Cloneable, Comparable<Grid> {
     }
     // connect outputcells, we only connect to callcells, so expect 1 callcell at least!!
     for (ReferenceCell output : outputs_local) {
-      connectOutput(output);
+      connectOutput(output, random);
     }
     setOutPutCells(outputs_local);
   }
 
-  private void connectOutput(ReferenceCell output) throws NoCellFoundException {
+  private void connectOutput(ReferenceCell output, final Random random) throws NoCellFoundException {
     int tries = 0;
     final int maxTries = callCells.length * 2;
     while (true) {
       // we search for a cell that connects to an input otherwise it will be a dead grid
-      ValueCell cell = Util.getRandomCellFromCalculables(output.getValueType(), callCells, true);
+      ValueCell cell = Util.getRandomCellFromCalculables(output.getValueType(), callCells, true, random);
 
       if (cell.isLeadsToInputCell()) {
         output.setReferedCell(cell);
@@ -468,19 +664,43 @@ public class Grid implements Cloneable, Comparable<Grid> {
     }
   }
 
-  private SwitchCell getSwitchCell(String name) {
-    Class<?> type = setup.getRandomCallCellTypeForSwitch();
-    Class<?> valueType = setup.getRandomCallCellType();
+  private SwitchCell getSwitchCell(String name, final Random random) {
+    return createSwitchCell(name, setup.getRandomCallCellTypeForSwitch(random), setup
+        .getRandomCallCellType(random), random.nextInt(MAX_SWITCH_OPTIONS - 1) + 2);
+  }
 
+  /**
+   * @param startOptions
+   *          the number of options connectCell creates, a boolean switch always has 2
+   * @return a switch without options
+   */
+  static SwitchCell createSwitchCell(String name, Class<?> type, Class<?> valueType, int startOptions) {
     if (type.equals(Boolean.class)) {
       return new BooleanSwitchCell(name, valueType);
     } else if (Number.class.isAssignableFrom(type)) {
-      return new NumberSwitchCell(name, valueType, 10, -10000, +10000);// TODO make configurable
+      return new NumberSwitchCell(name, valueType, MAX_SWITCH_OPTIONS, startOptions, -10000, +10000);
     } else {
       throw new IllegalStateException("unsupported type:" + type.getName());
     }
   }
 
+  /**
+   * Sets the cells of a grid created by Setup.createGrid, see GridCodec. The cells must be connected to each
+   * other, the library cells and the given inputs and constants.
+   */
+  void setCells(final InputCell[] inputs, final ConstantCell[] constants, final Calculable[] calls,
+      final ReferenceCell[] outputs) {
+    inputCells = inputs;
+    for (final InputCell cell : inputs) {
+      inOutCellsMap.put(cell.getName(), cell);
+    }
+    constantCells = constants;
+    callCells = calls;
+    setOutPutCells(outputs);
+    recalcIsLeadsToInputCell();
+    recalcIsUsedForOutput();
+  }
+
   private void setOutPutCells(final ReferenceCell[] outputs) {
     outputCells = outputs;
     for (final ReferenceCell outputCell : outputCells) {
@@ -510,6 +730,7 @@ public class Grid implements Cloneable, Comparable<Grid> {
       clone.errors = new ArrayList<GridExecutionError>();
       clone.history = (ArrayList<String>) history.clone();
       clone.score = -1;
+      clone.scoreBound = false;
 
       for (final ValueCell cell : clone.outputCells) {
         clone.inOutCellsMap.put(cell.getName(), cell);
@@ -517,7 +738,30 @@ public class Grid implements Cloneable, Comparable<Grid> {
       for (final ValueCell cell : clone.inputCells) {
         clone.inOutCellsMap.put(cell.getName(), cell);
       }
-      clone.restoreConnections();
+      // by identity, cells of a grid can share a name
+      final CellMap copies = new CellMap();
+      putCopies(inputCells, clone.inputCells, copies);
+      putCopies(constantCells, clone.constantCells, copies);
+      putCopies(callCells, clone.callCells, copies);
+      clone.restoreConnections(copies);
+      // cloned cells are not marked as used
+      clone.recalcIsUsedForOutput();
+      // same structure, so the same compiled grid. If there is none yet the clone asks again, the compiler
+      // counts how often a structure is seen
+      if (compiledGrid != null) {
+        clone.compiledGrid = compiledGrid;
+        clone.compiledGridChecked = true;
+      }
+      if (primitiveCompiledGrid != null) {
+        clone.primitiveCompiledGrid = primitiveCompiledGrid;
+        clone.primitiveCompiledGridChecked = true;
+      }
+      if (batchGrid != null) {
+        clone.batchGrid = batchGrid;
+        clone.batchGridChecked = true;
+      }
+      // holds the cells of this grid
+      clone.slotGrid = null;
       return clone;
     } catch (CloneNotSupportedException e) {
       Sneak.sneakyThrow(e);
@@ -529,14 +773,35 @@ public class Grid implements Cloneable, Comparable<Grid> {
   }
 
   public void setScore(final double score) {
-    if (this.score != -1 && Math.abs(this.score - score) > 0.001) {// a score was set already
+    if (this.score != -1 && !scoreBound && Math.abs(this.score - score) > 0.001) {// a score was set already
       throw new IllegalArgumentException("score was " + this.score + " and now set to " + score + " diff="
           + Math.abs(this.score - score) + " by thread " + Thread.currentThread().getName());
     }
     this.score = score;
+    scoreBound = false;
+    calculatedBy = Thread.currentThread();
+  }
+
+  /**
+   * Sets a lower bound as score, the real score is at least this high. An exact score that was set before is
+   * kept.
+   */
+  public void setScoreBound(final double bound) {
+    if (this.score != -1 && !scoreBound) {
+      return;
+    }
+    this.score = bound;
+    scoreBound = true;
     calculatedBy = Thread.currentThread();
   }
 
+  /**
+   * @return true if getScore() is a lower bound instead of the exact score
+   */
+  public boolean isScoreBound() {
+    return scoreBound;
+  }
+
   public void resetGridExecutionErrors() {
     errors.clear();
   }
@@ -586,7 +851,7 @@ public class Grid implements Cloneable, Comparable<Grid> {
   }
 
   public int compareTo(Grid o) {
-    return (o.score - score <= 0) ? 1 : -1;
+    return Double.compare(score, o.score);
   }
 
   public int getMutatedConstants() {
@@ -627,18 +892,34 @@ public class Grid implements Cloneable, Comparable<Grid> {
     return x.toString();
   }
 
-  private void recalcAndFixConnectivity() throws NoCellFoundException {
+  private void recalcAndFixConnectivity(final Random random) throws NoCellFoundException {
     recalcIsLeadsToInputCell();
     for (ReferenceCell output : outputCells) {
       if (!output.getReferedCell().isLeadsToInputCell()) {
         // not leading to input: reconnect!
-        connectOutput(output);
+        connectOutput(output, random);
       }
     }
     recalcIsUsedForOutput();
   }
 
   public void recalcIsUsedForOutput() {
+    invalidateCompiledGrid();
+    // reset first, cells disconnected by a mutation or cross are no longer used
+    for (Calculable c : callCells) {
+      ((ValueCell) c).setUsedForOutput(false);
+      if (c instanceof SwitchCell) {
+        for (SwitchOption option : ((SwitchCell) c).getOptions()) {
+          option.setUsedForOutput(false);
+        }
+      }
+    }
+    for (ValueCell c : inputCells) {
+      c.setUsedForOutput(false);
+    }
+    for (ValueCell c : constantCells) {
+      c.setUsedForOutput(false);
+    }
     for (ReferenceCell c : outputCells) {
       c.setCascadeUsedForOutput();
     }
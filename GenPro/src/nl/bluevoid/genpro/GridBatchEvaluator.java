@@ -0,0 +1,35 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro;
+
+import java.util.List;
+
+/**
+ * Scores the grids of a generation somewhere else than on the threads of the generation.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public interface GridBatchEvaluator {
+
+  /**
+   * @param threshold
+   *          scores above it may be returned as a bound, see TestSetSolutionEvaluator.evaluate(Grid, double)
+   * @return the score of each grid, in the order of the grids
+   */
+  public double[] evaluate(List<Grid> grids, double threshold);
+}
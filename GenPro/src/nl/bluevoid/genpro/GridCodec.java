@@ -0,0 +1,436 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import nl.bluevoid.genpro.cell.Calculable;
+import nl.bluevoid.genpro.cell.CallCell;
+import nl.bluevoid.genpro.cell.CellTypeEnum;
+import nl.bluevoid.genpro.cell.ConstantCell;
+import nl.bluevoid.genpro.cell.InputCell;
+import nl.bluevoid.genpro.cell.LibraryCell;
+import nl.bluevoid.genpro.cell.ReferenceCell;
+import nl.bluevoid.genpro.cell.ValueCell;
+import nl.bluevoid.genpro.cell.switx.SwitchCell;
+import nl.bluevoid.genpro.cell.switx.SwitchOption;
+import nl.bluevoid.genpro.util.Sneak;
+
+/**
+ * Writes the structure, constant values and score of a grid in a compact binary form, and reads it back into
+ * a grid of the same Setup, for instance in another JVM or from a checkpoint. Cells refer to each other by
+ * their index in the order inputs, library cells, constants and callcells. Classes and methods are written
+ * once in a table at the start and referred to by their index. History and statistics are not written.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class GridCodec {
+
+  private static final int VERSION = 2;
+
+  private static final int CALL = 0;
+  private static final int NUMBER_SWITCH = 1;
+  private static final int BOOLEAN_SWITCH = 2;
+
+  private static final int NULL = 0;
+  private static final int DOUBLE = 1;
+  private static final int INTEGER = 2;
+  private static final int BOOLEAN = 3;
+  private static final int STRING = 4;
+
+  private static final HashMap<String, Class<?>> primitives = new HashMap<String, Class<?>>();
+  static {
+    for (final Class<?> c : new Class<?>[] { boolean.class, byte.class, char.class, short.class, int.class,
+        long.class, float.class, double.class, void.class }) {
+      primitives.put(c.getName(), c);
+    }
+  }
+
+  // resolved methods by signature, shared by all threads
+  private static final ConcurrentHashMap<String, Method> methods = new ConcurrentHashMap<String, Method>();
+
+  public static byte[] encode(final Grid grid) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    try {
+      write(grid, new DataOutputStream(bytes));
+    } catch (IOException e) {
+      // not thrown by a byte array
+      Sneak.sneakyThrow(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  public static Grid decode(final Setup setup, final byte[] encoded) {
+    try {
+      return read(setup, new DataInputStream(new ByteArrayInputStream(encoded)));
+    } catch (IOException e) {
+      throw new IllegalArgumentException("not an encoded grid", e);
+    }
+  }
+
+  public static void write(final Grid grid, final DataOutput out) throws IOException {
+    final Table table = new Table(grid);
+    final IdentityHashMap<ValueCell, Integer> refs = new IdentityHashMap<ValueCell, Integer>();
+    final HashMap<String, Integer> libraryRefs = new HashMap<String, Integer>();
+    out.writeByte(VERSION);
+    out.writeBoolean(grid.name != null);
+    if (grid.name != null) {
+      out.writeUTF(grid.name);
+    }
+    out.writeDouble(grid.getScore());
+    out.writeBoolean(grid.isScoreBound());
+    table.write(out);
+
+    out.writeShort(grid.getInputCells().length);
+    for (final InputCell c : grid.getInputCells()) {
+      out.writeUTF(c.getName());
+      refs.put(c, refs.size());
+    }
+    for (final LibraryCell c : grid.getLibraryCells()) {
+      libraryRefs.put(c.getName(), refs.size());
+      refs.put(c, refs.size());
+    }
+    out.writeShort(grid.getConstantCells().length);
+    for (final ConstantCell c : grid.getConstantCells()) {
+      out.writeUTF(c.getName());
+      writeValue(c.getValue(), out);
+      refs.put(c, refs.size());
+    }
+    out.writeShort(grid.getCallCells().length);
+    for (final Calculable c : grid.getCallCells()) {
+      final ValueCell cell = (ValueCell) c;
+      if (c.getCellType() == CellTypeEnum.CallCell) {
+        out.writeByte(CALL);
+        out.writeUTF(cell.getName());
+        out.writeShort(table.classes.get(cell.getValueType()));
+        writeCall((CallCell) c, table, refs, libraryRefs, out);
+      } else {
+        final SwitchCell switchCell = (SwitchCell) c;
+        out.writeByte(c.getCellType() == CellTypeEnum.BooleanSwitchCell ? BOOLEAN_SWITCH : NUMBER_SWITCH);
+        out.writeUTF(cell.getName());
+        out.writeShort(table.classes.get(cell.getValueType()));
+        writeRef(switchCell.getSwitchValueCell(), refs, libraryRefs, out);
+        out.writeShort(switchCell.getOptions().size());
+        for (final SwitchOption option : switchCell.getOptions()) {
+          writeValue(option.getSwitchCaseValue(), out);
+          writeCall(option, table, refs, libraryRefs, out);
+        }
+      }
+      refs.put(cell, refs.size());
+    }
+    out.writeShort(grid.getOutputCells().length);
+    for (final ReferenceCell c : grid.getOutputCells()) {
+      out.writeUTF(c.getName());
+      writeRef(c.getReferedCell(), refs, libraryRefs, out);
+    }
+  }
+
+  /**
+   * @throws IllegalArgumentException
+   *           when the grid does not fit the setup
+   */
+  public static Grid read(final Setup setup, final DataInput in) throws IOException {
+    final int version = in.readByte();
+    if (version != VERSION) {
+      throw new IllegalArgumentException("unknown grid version:" + version);
+    }
+    final Grid grid = setup.createGrid();
+    if (in.readBoolean()) {
+      grid.name = in.readUTF();
+    }
+    final double score = in.readDouble();
+    if (in.readBoolean()) {
+      grid.setScoreBound(score);
+    } else {
+      grid.setScore(score);
+    }
+    final Class<?>[] classes = new Class<?>[in.readShort()];
+    for (int i = 0; i < classes.length; i++) {
+      classes[i] = getClass(in.readUTF());
+    }
+    final Method[] methods = new Method[in.readShort()];
+    for (int i = 0; i < methods.length; i++) {
+      final Class<?> declaring = classes[in.readShort()];
+      final String name = in.readUTF();
+      final Class<?>[] params = new Class<?>[in.readByte()];
+      for (int p = 0; p < params.length; p++) {
+        params[p] = classes[in.readShort()];
+      }
+      methods[i] = getMethod(declaring, name, params);
+    }
+    final ArrayList<ValueCell> refs = new ArrayList<ValueCell>();
+
+    final InputCell[] inputs = new InputCell[in.readShort()];
+    for (int i = 0; i < inputs.length; i++) {
+      final String name = in.readUTF();
+      final Class<?> type = setup.inputCellDataMap.get(name);
+      if (type == null) {
+        throw new IllegalArgumentException("no input in setup:" + name);
+      }
+      inputs[i] = new InputCell(name, type);
+      refs.add(inputs[i]);
+    }
+    for (final LibraryCell c : grid.getLibraryCells()) {
+      refs.add(c);
+    }
+    final HashMap<String, ConstantCell> setupConstants = new HashMap<String, ConstantCell>();
+    for (final ConstantCell c : grid.getConstantCells()) {
+      setupConstants.put(c.getName(), c);
+    }
+    final ConstantCell[] constants = new ConstantCell[in.readShort()];
+    for (int i = 0; i < constants.length; i++) {
+      final String name = in.readUTF();
+      constants[i] = setupConstants.get(name);
+      if (constants[i] == null) {
+        throw new IllegalArgumentException("no constant in setup:" + name);
+      }
+      constants[i].setValue(readValue(in));
+      refs.add(constants[i]);
+    }
+    final Calculable[] calls = new Calculable[in.readShort()];
+    for (int i = 0; i < calls.length; i++) {
+      final int kind = in.readByte();
+      final String name = in.readUTF();
+      final Class<?> valueType = classes[in.readShort()];
+      if (kind == CALL) {
+        final CallCell cell = new CallCell(name, valueType);
+        readCall(cell, methods, refs, in);
+        calls[i] = cell;
+      } else if (kind == NUMBER_SWITCH || kind == BOOLEAN_SWITCH) {
+        final SwitchCell cell = Grid.createSwitchCell(name, kind == BOOLEAN_SWITCH ? Boolean.class : Number.class,
+            valueType, SwitchCell.MIN_OPTIONS);
+        cell.setSwitchValueCell(readRef(refs, in));
+        final int options = in.readShort();
+        for (int o = 0; o < options; o++) {
+          readCall(cell.addOption((Comparable<?>) readValue(in)), methods, refs, in);
+        }
+        calls[i] = cell;
+      } else {
+        throw new IllegalArgumentException("unknown cell kind:" + kind);
+      }
+      refs.add((ValueCell) calls[i]);
+    }
+    final ReferenceCell[] outputs = new ReferenceCell[in.readShort()];
+    for (int i = 0; i < outputs.length; i++) {
+      final String name = in.readUTF();
+      final Class<?> type = setup.outputCellDataMap.get(name);
+      if (type == null) {
+        throw new IllegalArgumentException("no output in setup:" + name);
+      }
+      outputs[i] = new ReferenceCell(name, type);
+      outputs[i].setReferedCell(readRef(refs, in));
+    }
+    grid.setCells(inputs, constants, calls, outputs);
+    return grid;
+  }
+
+  /**
+   * The classes and methods used by the callcells of a grid, numbered in order of first use.
+   */
+  private static class Table {
+    final HashMap<Class<?>, Integer> classes = new HashMap<Class<?>, Integer>();
+    final HashMap<Method, Integer> methods = new HashMap<Method, Integer>();
+    final ArrayList<Class<?>> classList = new ArrayList<Class<?>>();
+    final ArrayList<Method> methodList = new ArrayList<Method>();
+
+    Table(final Grid grid) {
+      for (final Calculable c : grid.getCallCells()) {
+        add(((ValueCell) c).getValueType());
+        if (c.getCellType() == CellTypeEnum.CallCell) {
+          add(((CallCell) c).getTargetMethod());
+        } else {
+          for (final SwitchOption option : ((SwitchCell) c).getOptions()) {
+            add(option.getTargetMethod());
+          }
+        }
+      }
+    }
+
+    private void add(final Class<?> c) {
+      if (!classes.containsKey(c)) {
+        classes.put(c, classList.size());
+        classList.add(c);
+      }
+    }
+
+    private void add(final Method m) {
+      if (!methods.containsKey(m)) {
+        methods.put(m, methodList.size());
+        methodList.add(m);
+        add(m.getDeclaringClass());
+        for (final Class<?> param : m.getParameterTypes()) {
+          add(param);
+        }
+      }
+    }
+
+    void write(final DataOutput out) throws IOException {
+      out.writeShort(classList.size());
+      for (final Class<?> c : classList) {
+        out.writeUTF(c.getName());
+      }
+      out.writeShort(methodList.size());
+      for (final Method m : methodList) {
+        out.writeShort(classes.get(m.getDeclaringClass()));
+        out.writeUTF(m.getName());
+        final Class<?>[] params = m.getParameterTypes();
+        out.writeByte(params.length);
+        for (final Class<?> param : params) {
+          out.writeShort(classes.get(param));
+        }
+      }
+    }
+  }
+
+  private static void writeCall(final CallCell cell, final Table table,
+      final IdentityHashMap<ValueCell, Integer> refs, final HashMap<String, Integer> libraryRefs,
+      final DataOutput out) throws IOException {
+    out.writeShort(table.methods.get(cell.getTargetMethod()));
+    writeRef(cell.getTargetCell(), refs, libraryRefs, out);
+    final ValueCell[] params = cell.getParams();
+    out.writeByte(params.length);
+    for (final ValueCell param : params) {
+      writeRef(param, refs, libraryRefs, out);
+    }
+  }
+
+  private static void readCall(final CallCell cell, final Method[] methods, final ArrayList<ValueCell> refs,
+      final DataInput in) throws IOException {
+    final int method = in.readShort();
+    if (method < 0 || method >= methods.length) {
+      throw new IllegalArgumentException("reference to unknown method:" + method);
+    }
+    cell.setTargetMethod(methods[method]);
+    final ValueCell target = readRef(refs, in);
+    if (target != null) {
+      cell.setTargetCell(target);
+    }
+    final ValueCell[] params = new ValueCell[in.readByte()];
+    for (int i = 0; i < params.length; i++) {
+      params[i] = readRef(refs, in);
+    }
+    cell.setParams(params);
+  }
+
+  private static void writeRef(final ValueCell cell, final IdentityHashMap<ValueCell, Integer> refs,
+      final HashMap<String, Integer> libraryRefs, final DataOutput out) throws IOException {
+    if (cell == null) {
+      out.writeShort(-1);
+      return;
+    }
+    Integer ref = refs.get(cell);
+    if (ref == null && cell.getCellType() == CellTypeEnum.LibraryCell) {
+      // params keep pointing at the library cells of the setup
+      ref = libraryRefs.get(cell.getName());
+    }
+    if (ref == null) {
+      throw new IllegalArgumentException("cell refers to a cell outside the grid or after it:" + cell);
+    }
+    out.writeShort(ref);
+  }
+
+  private static ValueCell readRef(final ArrayList<ValueCell> refs, final DataInput in) throws IOException {
+    final int ref = in.readShort();
+    if (ref == -1) {
+      return null;
+    }
+    if (ref < 0 || ref >= refs.size()) {
+      throw new IllegalArgumentException("reference to unknown cell:" + ref);
+    }
+    return refs.get(ref);
+  }
+
+  private static void writeValue(final Object value, final DataOutput out) throws IOException {
+    if (value == null) {
+      out.writeByte(NULL);
+    } else if (value instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) value);
+    } else if (value instanceof Integer) {
+      out.writeByte(INTEGER);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Boolean) {
+      out.writeByte(BOOLEAN);
+      out.writeBoolean((Boolean) value);
+    } else if (value instanceof String) {
+      out.writeByte(STRING);
+      out.writeUTF((String) value);
+    } else {
+      throw new IllegalArgumentException("value can not be encoded:" + value.getClass().getName());
+    }
+  }
+
+  private static Object readValue(final DataInput in) throws IOException {
+    final int type = in.readByte();
+    switch (type) {
+    case NULL:
+      return null;
+    case DOUBLE:
+      return in.readDouble();
+    case INTEGER:
+      return in.readInt();
+    case BOOLEAN:
+      return in.readBoolean();
+    case STRING:
+      return in.readUTF();
+    default:
+      throw new IllegalArgumentException("unknown value type:" + type);
+    }
+  }
+
+  private static Method getMethod(final Class<?> declaring, final String name, final Class<?>[] params) {
+    final StringBuilder key = new StringBuilder(declaring.getName()).append('.').append(name).append('(');
+    for (final Class<?> param : params) {
+      key.append(param.getName()).append(',');
+    }
+    final String signature = key.append(')').toString();
+    Method method = methods.get(signature);
+    if (method == null) {
+      try {
+        method = declaring.getDeclaredMethod(name, params);
+      } catch (NoSuchMethodException e) {
+        throw new IllegalArgumentException("unknown method:" + signature, e);
+      }
+      methods.put(signature, method);
+    }
+    return method;
+  }
+
+  private static Class<?> getClass(final String name) {
+    final Class<?> primitive = primitives.get(name);
+    if (primitive != null) {
+      return primitive;
+    }
+    try {
+      return Class.forName(name, false, GridCodec.class.getClassLoader());
+    } catch (ClassNotFoundException e) {
+      throw new IllegalArgumentException("unknown class:" + name, e);
+    }
+  }
+}
@@ -1,13 +1,35 @@
 package nl.bluevoid.genpro;
 
+import nl.bluevoid.genpro.cell.InputCell;
 import nl.bluevoid.genpro.cell.ReferenceCell;
+import nl.bluevoid.genpro.engine.BatchFrame;
+import nl.bluevoid.genpro.engine.BatchGrid;
+import nl.bluevoid.genpro.engine.CellResults;
+import nl.bluevoid.genpro.engine.EvaluationFrame;
+import nl.bluevoid.genpro.engine.PrimitiveFrame;
 import nl.bluevoid.genpro.util.Calc;
+import nl.bluevoid.genpro.util.ParallelLoopPool;
 
 public abstract class GridSolutionEvaluator extends TestSetSolutionEvaluator {
 
-  private GridExecutionError lastException;
   private int evalTillTestSetNr = -1;
 
+  // evaluate() is called from several threads, each gets its own columns
+  private final ThreadLocal<BatchFrame> batchFrames = new ThreadLocal<BatchFrame>() {
+    @Override
+    protected BatchFrame initialValue() {
+      return new BatchFrame();
+    }
+  };
+
+  // and its own slots, reset for every grid
+  private final ThreadLocal<EvaluationFrame> evaluationFrames = new ThreadLocal<EvaluationFrame>() {
+    @Override
+    protected EvaluationFrame initialValue() {
+      return new EvaluationFrame();
+    }
+  };
+
   public GridSolutionEvaluator() {
     super();
     evalTillTestSetNr = getTestSet().getNumberOfTestCases();
@@ -18,11 +40,15 @@ public abstract class GridSolutionEvaluator extends TestSetSolutionEvaluator {
     grid.resetGridExecutionErrors();
     grid.resetCellCallCounters();
 
+    final InputCell[] inputCells = bindInputCells(grid);
+    final TestSetColumn[] inputColumns = getColumns(getTestSet().getInputColumnIndices());
+    final String[] outputNames = getTestSet().getOutputCellNames();
+    final ReferenceCell[] outputCells = bindOutputCells(grid);
+    final TestSetColumn[] outputColumns = getColumns(getTestSet().getOutputColumnIndices());
+
     for (int valueNr = 0; valueNr < getTestSet().getNumberOfTestCases(); valueNr++) {
       // set inputs
-      for (final String name : getTestSet().getInputCellNames()) {
-        grid.getInputCell(name).setValue(getTestSet().getValue(name, valueNr));
-      }
+      setInputs(inputCells, inputColumns, valueNr);
 
       // TODO reset outputs without reseting constants
       // set outputs (their refered cells) to null
@@ -30,17 +56,25 @@ public abstract class GridSolutionEvaluator extends TestSetSolutionEvaluator {
       // grid.getOutputCell(name).getReferedCell().setValue(null);
       // }
 
-      lastException = null;
-      double testcasescore = executeAndScoreTestCase(grid, valueNr);
+      // calculated on the cells, their call counters are reported with the solution
+      GridExecutionError lastException = null;
+      try {
+        grid.calcCounted();
+      } catch (GridExecutionError e) {
+        lastException = e;
+      }
+      double testcasescore = lastException == null ? 0 : scoreGridException(lastException);
+      for (int i = 0; i < outputCells.length; i++) {
+        final ReferenceCell ocell = outputCells[i];
+        testcasescore += scoreOutput(ocell, ocell.getValue(), outputColumns[i].get(valueNr));
+      }
 
       // read outputs && store values in "ACTUAL"
-      for (final String name : getTestSet().getOutputCellNames()) {
-        final ReferenceCell ocell = grid.getOutputCell(name);
-
+      for (int i = 0; i < outputNames.length; i++) {
         if (lastException == null) {
-          tss.setActualOutputValue(name, valueNr, ocell.getValue());
+          tss.setActualOutputValue(outputNames[i], valueNr, outputCells[i].getValue());
         } else {
-          tss.setActualOutputValue(name, valueNr, lastException);
+          tss.setActualOutputValue(outputNames[i], valueNr, lastException);
         }
       }
       tss.setTestCaseScore(testcasescore, valueNr);
@@ -49,79 +83,407 @@ public abstract class GridSolutionEvaluator extends TestSetSolutionEvaluator {
   }
 
   public double evaluate(final Grid grid) {
+    return evaluateTestCases(grid, Double.POSITIVE_INFINITY, getSubsample());
+  }
+
+  @Override
+  public double evaluateFull(final Grid grid) {
+    return evaluateTestCases(grid, Double.POSITIVE_INFINITY, null);
+  }
+
+  /**
+   * Stops after a test case when the score so far proves the grid scores higher than rejectionThreshold, and
+   * returns that lower bound. This needs test case scores that are never negative, the bound is only
+   * checked while they are. scoreGrid is called before the test cases when racing. Batch evaluation
+   * calculates all test cases at once and always returns the exact score.
+   */
+  @Override
+  public double evaluate(final Grid grid, final double rejectionThreshold) {
+    if (rejectionThreshold == Double.POSITIVE_INFINITY) {
+      // subclasses may override evaluate(grid)
+      return evaluate(grid);
+    }
+    return evaluateTestCases(grid, rejectionThreshold, getSubsample());
+  }
+
+  @Override
+  protected int getNumberOfEvaluatedTestCases() {
+    return evalTillTestSetNr;
+  }
+
+  /**
+   * @param sample
+   *          the test cases to evaluate, null for the first evalTillTestSetNr
+   */
+  private double evaluateTestCases(final Grid grid, final double rejectionThreshold, final int[] sample) {
     // System.out.println("Evaluating:"+grid.toString());
-    grid.resetGridExecutionErrors();
     double score = 0;
 
-    for (int valueNr = 0; valueNr < evalTillTestSetNr; valueNr++) {
-      // set inputs
-      for (final String name : getTestSet().getInputCellNames()) {
-        grid.getInputCell(name).setValue(getTestSet().getValue(name, valueNr));
-        //Debug.println("input " + name + " set to:" + grid.getInputCell(name));
+    // bind cells and columns once, the loop below uses indices only
+    final InputCell[] inputCells = bindInputCells(grid);
+    final TestSetColumn[] inputColumns = getColumns(getTestSet().getInputColumnIndices());
+    final ReferenceCell[] outputCells = bindOutputCells(grid);
+    final TestSetColumn[] outputColumns = getColumns(getTestSet().getOutputColumnIndices());
+
+    // batch evaluation needs the slots of the outputs
+    if (grid.getSetup().isBatchEvaluation() && grid.getBatchGrid() != null) {
+      final int[] outputSlots = getOutputSlots(grid, outputCells);
+      if (outputSlots != null) {
+        return evaluateBatch(grid, inputCells, inputColumns, outputCells, outputColumns, outputSlots, sample);
       }
+    }
 
-      // set outputs (their refered cells) to null
-      // for (final String name : outputCellNames) {
-      // grid.getOutputCell(name).getReferedCell().setValue(null);
-      // }
-      // TODO reset outputs without reseting constants
+    // the grid may be evaluated by other threads at the same time, its cells are not written
+    final EvaluationFrame frame = getEvaluationFrame(grid);
+    final int[] inputSlots = getSlots(frame, inputCells);
+    final int[] outputSlots = getReferedSlots(frame, outputCells);
 
-      // TODO why do we need this????
-      // het zorgt ervoor dat calc maar op 1 thread tegelijk wordt aangeroepen
-      // als calc wordt uitgevoerd samen met een andere thread die iets in evaluate doet, dan gaat het mis.
-      // Wat wordt er dan in calc gedeeld met andere grids???
-      // niet inputs en outputs
-      // wel static library objecten
-      // niet constanten
+    boolean racing = rejectionThreshold != Double.POSITIVE_INFINITY;
+    final double gridScore = racing ? scoreGrid(grid) : 0;
 
-      // synchronized (this) {
-      // do calc
+    final int count = sample == null ? evalTillTestSetNr : sample.length;
+    for (int i = 0; i < count; i++) {
+      final int valueNr = sample == null ? i : sample[i];
+      for (int j = 0; j < inputSlots.length; j++) {
+        frame.setInput(inputSlots[j], inputColumns[j], valueNr);
+      }
+      final double testcaseScore = executeAndScoreTestCase(frame, valueNr, outputCells, outputColumns,
+          outputSlots);
 
-      double testcaseScore = executeAndScoreTestCase(grid, valueNr);
+      score = addTestCaseScore(score, testcaseScore);
+      if (Calc.isNaNorInfinite(score)) {
+        return score;
+      }
+      if (racing) {
+        if (testcaseScore < 0) {
+          // later test cases could lower the score
+          racing = false;
+        } else {
+          final double bound = getScoreBound(score, gridScore, count);
+          if (bound > rejectionThreshold) {
+            return bound;
+          }
+        }
+      }
+    }
+    return getGridScore(grid, score, count);
+  }
 
-      switch (scoringType) {
-      case SCORING_HIGHEST_OF_TESTCASES:
-      case SCORING_HIGHEST_PERCENTAGE_OF_TESTCASES:
-        score = Math.max(testcaseScore, score);
-        break;
-      case SCORING_AVARAGE_PER_TESTCASE:
-      case SCORING_AVARAGE_PERCENTAGE_PER_TESTCASE:
-        score += testcaseScore;
-        break;
-      default:
-        throw new IllegalArgumentException("scoring type not supported:" + scoringType);
+  /**
+   * Scores the shards on the threads of the pool and combines them as the scoring type says: the shard scores
+   * are summed for averages, the highest is taken for highest. The shards only depend on the number of test
+   * cases and shardSize, not on the threads, so a grid always gets the same score. Sharded scores are exact,
+   * the rejection threshold is not used.
+   */
+  @Override
+  public double evaluate(final Grid grid, final double rejectionThreshold, final ParallelLoopPool pool,
+      final int shardSize) {
+    final int shards = getShardCount(shardSize);
+    if (pool == null || shards < 2) {
+      return evaluate(grid, rejectionThreshold);
+    }
+    final int[] sample = getSubsample();
+    final int count = sample == null ? evalTillTestSetNr : sample.length;
+    final double[] shardScores = new double[shards];
+    pool.execute(0, shards, 1, new ParallelLoopPool.Loop<Object>() {
+      @Override
+      public Object loopDoRange(final int start, final int end) {
+        for (int shard = start; shard < end; shard++) {
+          final int from = (int) ((long) count * shard / shards);
+          final int to = (int) ((long) count * (shard + 1) / shards);
+          shardScores[shard] = scoreShard(grid, sample, from, to);
+        }
+        return null;
       }
 
+      @Override
+      public Object combine(final Object left, final Object right) {
+        return null;
+      }
+    });
+    double score = 0;
+    for (final double shardScore : shardScores) {
+      score = addTestCaseScore(score, shardScore);
       if (Calc.isNaNorInfinite(score)) {
         return score;
       }
     }
+    return getGridScore(grid, score, count);
+  }
+
+  @Override
+  public int getShardCount(final int shardSize) {
+    if (shardSize <= 0) {
+      return 1;
+    }
+    final int[] sample = getSubsample();
+    final int count = sample == null ? evalTillTestSetNr : sample.length;
+    return Math.max(1, count / shardSize);
+  }
+
+  /**
+   * @return the combined scores of the sample test cases from index from up to to, without the score of the
+   *         grid
+   */
+  private double scoreShard(final Grid grid, final int[] sample, final int from, final int to) {
+    final InputCell[] inputCells = bindInputCells(grid);
+    final TestSetColumn[] inputColumns = getColumns(getTestSet().getInputColumnIndices());
+    final ReferenceCell[] outputCells = bindOutputCells(grid);
+    final TestSetColumn[] outputColumns = getColumns(getTestSet().getOutputColumnIndices());
+    final int[] rows = new int[to - from];
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = sample == null ? from + i : sample[from + i];
+    }
+
+    if (grid.getSetup().isBatchEvaluation() && grid.getBatchGrid() != null) {
+      final int[] outputSlots = getOutputSlots(grid, outputCells);
+      if (outputSlots != null) {
+        // not incremental, the stored columns of a grid hold all test cases
+        final BatchFrame frame = fillBatchFrame(grid, inputCells, inputColumns, rows, rows.length);
+        grid.getBatchGrid().calc(frame);
+        return scoreBatch(frame, outputCells, outputColumns, outputSlots, rows, rows.length);
+      }
+    }
+
+    final EvaluationFrame frame = getEvaluationFrame(grid);
+    final int[] inputSlots = getSlots(frame, inputCells);
+    final int[] outputSlots = getReferedSlots(frame, outputCells);
+    double score = 0;
+    for (final int valueNr : rows) {
+      for (int j = 0; j < inputSlots.length; j++) {
+        frame.setInput(inputSlots[j], inputColumns[j], valueNr);
+      }
+      score = addTestCaseScore(score, executeAndScoreTestCase(frame, valueNr, outputCells, outputColumns,
+          outputSlots));
+      if (Calc.isNaNorInfinite(score)) {
+        break;
+      }
+    }
+    return score;
+  }
+
+  /**
+   * @return the lowest score the grid can get when the remaining test cases score 0
+   */
+  private double getScoreBound(final double score, final double gridScore, final int count) {
+    switch (scoringType) {
+    case SCORING_HIGHEST_OF_TESTCASES:
+    case SCORING_HIGHEST_PERCENTAGE_OF_TESTCASES:
+      return score + gridScore;
+    case SCORING_AVARAGE_PER_TESTCASE:
+    case SCORING_AVARAGE_PERCENTAGE_PER_TESTCASE:
+      return score / count + gridScore;
+    default:
+      throw new IllegalArgumentException("scoring type not supported:" + scoringType);
+    }
+  }
+
+  /**
+   * Calculates all test cases a column at a time, then scores the output columns row by row.
+   */
+  private double evaluateBatch(final Grid grid, final InputCell[] inputCells, final TestSetColumn[] inputColumns,
+      final ReferenceCell[] outputCells, final TestSetColumn[] outputColumns, final int[] outputSlots,
+      final int[] sample) {
+    final int rows = sample == null ? evalTillTestSetNr : sample.length;
+    final BatchFrame frame = fillBatchFrame(grid, inputCells, inputColumns, sample, rows);
+    CellResults results = null;
+    if (grid.getSetup().isIncrementalEvaluation()) {
+      // a new sample is a new source, stored columns of another one are not used
+      final Object source = sample == null ? getTestSet() : sample;
+      results = grid.getBatchGrid().calc(frame, grid, grid.getCellResults(), source);
+      final CellResults previous = grid.getCellResults();
+      grid.setCellResults(results);
+      if (previous != null && results.isUnchanged()
+          && previous.hasScore(this, getModificationCount(), outputSlots)) {
+        results.setScore(this, getModificationCount(), outputSlots, previous.getScore());
+        return previous.getScore();
+      }
+    } else {
+      grid.getBatchGrid().calc(frame);
+    }
+
+    double score = scoreBatch(frame, outputCells, outputColumns, outputSlots, sample, rows);
+    if (!Calc.isNaNorInfinite(score)) {
+      score = getGridScore(grid, score, rows);
+    }
+    if (results != null) {
+      results.setScore(this, getModificationCount(), outputSlots, score);
+    }
+    return score;
+  }
+
+  /**
+   * @return the thread's frame, reset for the grid
+   */
+  private EvaluationFrame getEvaluationFrame(final Grid grid) {
+    final EvaluationFrame frame = evaluationFrames.get();
+    frame.reset(grid);
+    return frame;
+  }
+
+  /**
+   * @return the thread's batch frame holding the inputs of the sample rows and the constants
+   */
+  private BatchFrame fillBatchFrame(final Grid grid, final InputCell[] inputCells,
+      final TestSetColumn[] inputColumns, final int[] sample, final int rows) {
+    final BatchFrame frame = batchFrames.get();
+    frame.reset(grid, rows);
+    final InputCell[] gridInputs = grid.getInputCells();
+    for (int i = 0; i < inputCells.length; i++) {
+      for (int slot = 0; slot < gridInputs.length; slot++) {
+        if (gridInputs[slot] == inputCells[i]) {
+          frame.fillInput(slot, inputColumns[i], sample);
+        }
+      }
+    }
+    frame.fillConstants(grid);
+    return frame;
+  }
+
+  /**
+   * @return the test case scores of the calculated frame combined, without the score of the grid
+   */
+  private double scoreBatch(final BatchFrame frame, final ReferenceCell[] outputCells,
+      final TestSetColumn[] outputColumns, final int[] outputSlots, final int[] sample, final int rows) {
+    final double[] scores = frame.getScores();
+    for (int i = 0; i < outputCells.length; i++) {
+      final ReferenceCell ocell = outputCells[i];
+      final TestSetColumn column = outputColumns[i];
+      final int slot = outputSlots[i];
+      if (!frame.hasNulls(slot) && frame.isNumber(slot) && column.isNumeric()
+          && column.getType() == ocell.getValueType()) {
+        for (int row = 0; row < rows; row++) {
+          final int valueNr = sample == null ? row : sample[row];
+          scores[row] += scoreOutput(ocell, frame.getDouble(slot, row), column.getDouble(valueNr));
+        }
+      } else {
+        for (int row = 0; row < rows; row++) {
+          final int valueNr = sample == null ? row : sample[row];
+          scores[row] += scoreOutput(ocell, frame.getValue(slot, row), column.get(valueNr));
+        }
+      }
+    }
+
+    double score = 0;
+    for (int row = 0; row < rows; row++) {
+      score = addTestCaseScore(score, scores[row]);
+      if (Calc.isNaNorInfinite(score)) {
+        break;
+      }
+    }
+    return score;
+  }
+
+  private double addTestCaseScore(final double score, final double testcaseScore) {
+    switch (scoringType) {
+    case SCORING_HIGHEST_OF_TESTCASES:
+    case SCORING_HIGHEST_PERCENTAGE_OF_TESTCASES:
+      return Math.max(testcaseScore, score);
+    case SCORING_AVARAGE_PER_TESTCASE:
+    case SCORING_AVARAGE_PERCENTAGE_PER_TESTCASE:
+      return score + testcaseScore;
+    default:
+      throw new IllegalArgumentException("scoring type not supported:" + scoringType);
+    }
+  }
+
+  private double getGridScore(final Grid grid, final double score, final int count) {
     switch (scoringType) {
     case SCORING_HIGHEST_OF_TESTCASES:
     case SCORING_HIGHEST_PERCENTAGE_OF_TESTCASES:
       return score + scoreGrid(grid);
     case SCORING_AVARAGE_PER_TESTCASE:
     case SCORING_AVARAGE_PERCENTAGE_PER_TESTCASE:
-      return score / evalTillTestSetNr + scoreGrid(grid);
+      return score / count + scoreGrid(grid);
     default:
       throw new IllegalArgumentException("scoring type not supported:" + scoringType);
     }
   }
 
-  private double executeAndScoreTestCase(final Grid grid, int valueNr) {
+  /**
+   * @return the slots of the cells the outputs refer to, null if one is not a callcell
+   */
+  private int[] getOutputSlots(final Grid grid, final ReferenceCell[] outputCells) {
+    final int[] outputSlots = new int[outputCells.length];
+    for (int i = 0; i < outputCells.length; i++) {
+      outputSlots[i] = grid.getCallCellSlot(outputCells[i].getReferedCell());
+      if (outputSlots[i] == -1) {
+        return null;
+      }
+    }
+    return outputSlots;
+  }
+
+  private InputCell[] bindInputCells(final Grid grid) {
+    final String[] names = getTestSet().getInputCellNames();
+    final InputCell[] cells = new InputCell[names.length];
+    for (int i = 0; i < names.length; i++) {
+      cells[i] = grid.getInputCell(names[i]);
+    }
+    return cells;
+  }
+
+  private ReferenceCell[] bindOutputCells(final Grid grid) {
+    final String[] names = getTestSet().getOutputCellNames();
+    final ReferenceCell[] cells = new ReferenceCell[names.length];
+    for (int i = 0; i < names.length; i++) {
+      cells[i] = grid.getOutputCell(names[i]);
+    }
+    return cells;
+  }
+
+  private int[] getSlots(final EvaluationFrame frame, final InputCell[] cells) {
+    final int[] slots = new int[cells.length];
+    for (int i = 0; i < cells.length; i++) {
+      slots[i] = frame.getSlot(cells[i]);
+    }
+    return slots;
+  }
+
+  private int[] getReferedSlots(final EvaluationFrame frame, final ReferenceCell[] outputCells) {
+    final int[] slots = new int[outputCells.length];
+    for (int i = 0; i < outputCells.length; i++) {
+      slots[i] = frame.getSlot(outputCells[i].getReferedCell());
+    }
+    return slots;
+  }
+
+  private TestSetColumn[] getColumns(final int[] indices) {
+    final TestSetColumn[] columns = new TestSetColumn[indices.length];
+    for (int i = 0; i < indices.length; i++) {
+      columns[i] = getTestSet().getColumn(indices[i]);
+    }
+    return columns;
+  }
+
+  private void setInputs(final InputCell[] inputCells, final TestSetColumn[] inputColumns, final int valueNr) {
+    for (int i = 0; i < inputCells.length; i++) {
+      inputCells[i].setValue(inputColumns[i].get(valueNr));
+    }
+  }
+
+  private double executeAndScoreTestCase(final EvaluationFrame frame, final int valueNr,
+      final ReferenceCell[] outputCells, final TestSetColumn[] outputColumns, final int[] outputSlots) {
     double testcaseScore = 0;
     try {
-      grid.calc();
+      frame.calc();
     } catch (GridExecutionError e) {
-      lastException = e;
       testcaseScore += scoreGridException(e);
     }
 
     // read outputs && count delta
-    for (final String name : getTestSet().getOutputCellNames()) {
-      final ReferenceCell ocell = grid.getOutputCell(name);
-      // final Object result = ocell.getValue();
-      testcaseScore += scoreOutput(ocell, ocell.getValue(), getTestSet().getValue(name, valueNr));
+    final PrimitiveFrame primitive = frame.getPrimitiveFrame();
+    for (int i = 0; i < outputCells.length; i++) {
+      final ReferenceCell ocell = outputCells[i];
+      final TestSetColumn column = outputColumns[i];
+      final int slot = outputSlots[i];
+      if (primitive != null && !primitive.isNull(slot) && primitive.isNumber(slot) && column.isNumeric()
+          && column.getType() == ocell.getValueType()) {
+        // typed column: no null values, no unboxing
+        testcaseScore += scoreOutput(ocell, primitive.getDouble(slot), column.getDouble(valueNr));
+      } else {
+        testcaseScore += scoreOutput(ocell, frame.getValue(slot), column.get(valueNr));
+      }
     }
     return testcaseScore;
   }
@@ -131,6 +493,7 @@ public abstract class GridSolutionEvaluator extends TestSetSolutionEvaluator {
       return false;
     } else {
       evalTillTestSetNr++;
+      evaluationChanged();
       return true;
     }
   }
@@ -145,4 +508,20 @@ public abstract class GridSolutionEvaluator extends TestSetSolutionEvaluator {
    */
   public abstract double scoreOutput(ReferenceCell outputCell, Object calculated, Object expected);
 
+  /**
+   * Used by primitive evaluation for Double and Integer outputs that have a value. Override to score without
+   * boxing, by default the values are boxed and passed to scoreOutput(ReferenceCell, Object, Object).
+   * 
+   * @param outputCell
+   * @param calculated
+   * @param expected
+   * @return
+   */
+  public double scoreOutput(ReferenceCell outputCell, double calculated, double expected) {
+    if (outputCell.getValueType() == Integer.class) {
+      return scoreOutput(outputCell, Integer.valueOf((int) calculated), Integer.valueOf((int) expected));
+    }
+    return scoreOutput(outputCell, Double.valueOf(calculated), Double.valueOf(expected));
+  }
+
 }
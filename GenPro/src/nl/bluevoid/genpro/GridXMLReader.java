@@ -0,0 +1,300 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import nl.bluevoid.genpro.cell.Calculable;
+import nl.bluevoid.genpro.cell.CallCell;
+import nl.bluevoid.genpro.cell.ConstantCell;
+import nl.bluevoid.genpro.cell.InputCell;
+import nl.bluevoid.genpro.cell.LibraryCell;
+import nl.bluevoid.genpro.cell.ReferenceCell;
+import nl.bluevoid.genpro.cell.ValueCell;
+import nl.bluevoid.genpro.util.ReflectUtil;
+
+/**
+ * Reads grids saved with Grid.getXML() back into a grid of the same Setup, streaming over the XML. The XML
+ * has no parameter types, a method is the first one of the target cell with the name, number of parameters
+ * and types that fit the cells. Switch cells are not written in the XML, grids with switch cells can not be
+ * read.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class GridXMLReader {
+
+  private static final XMLInputFactory factory = XMLInputFactory.newInstance();
+
+  private final Setup setup;
+
+  public GridXMLReader(final Setup setup) {
+    this.setup = setup;
+  }
+
+  public Grid read(final String xml) {
+    return read(new StringReader(xml));
+  }
+
+  /**
+   * @throws IllegalArgumentException
+   *           when the XML is not a grid of the setup
+   */
+  public Grid read(final Reader xml) {
+    try {
+      final XMLStreamReader reader;
+      synchronized (factory) {
+        reader = factory.createXMLStreamReader(xml);
+      }
+      return read(reader);
+    } catch (XMLStreamException e) {
+      throw new IllegalArgumentException("not a grid:" + e.getMessage(), e);
+    }
+  }
+
+  public Grid read(final InputStream xml) {
+    try {
+      final XMLStreamReader reader;
+      synchronized (factory) {
+        reader = factory.createXMLStreamReader(xml);
+      }
+      return read(reader);
+    } catch (XMLStreamException e) {
+      throw new IllegalArgumentException("not a grid:" + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * A cell element: its tag, the text of its fields in order and the text of the element itself.
+   */
+  private static class Element {
+    final String tag;
+    final ArrayList<String> names = new ArrayList<String>();
+    final ArrayList<String> values = new ArrayList<String>();
+    String text = "";
+
+    Element(final String tag) {
+      this.tag = tag;
+    }
+
+    String get(final String name) {
+      final int i = names.indexOf(name);
+      if (i == -1) {
+        throw new IllegalArgumentException(tag + " has no " + name);
+      }
+      return values.get(i);
+    }
+
+    ArrayList<String> getAll(final String name) {
+      final ArrayList<String> all = new ArrayList<String>();
+      for (int i = 0; i < names.size(); i++) {
+        if (names.get(i).equals(name)) {
+          all.add(values.get(i));
+        }
+      }
+      return all;
+    }
+  }
+
+  private Grid read(final XMLStreamReader reader) throws XMLStreamException {
+    final ArrayList<Element> elements = new ArrayList<Element>();
+    try {
+      reader.nextTag();
+      if (!reader.getLocalName().equals("grid")) {
+        throw new IllegalArgumentException("not a grid:" + reader.getLocalName());
+      }
+      while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+        final Element element = new Element(reader.getLocalName());
+        final StringBuilder text = new StringBuilder();
+        for (int event = reader.next(); event != XMLStreamConstants.END_ELEMENT; event = reader.next()) {
+          if (event == XMLStreamConstants.START_ELEMENT) {
+            element.names.add(reader.getLocalName());
+            element.values.add(reader.getElementText().trim());
+          } else if (event == XMLStreamConstants.CHARACTERS) {
+            text.append(reader.getText());
+          }
+        }
+        element.text = text.toString().trim();
+        elements.add(element);
+      }
+    } finally {
+      reader.close();
+    }
+    return create(elements);
+  }
+
+  private Grid create(final ArrayList<Element> elements) {
+    final Grid grid = setup.createGrid();
+    final HashMap<String, ValueCell> cells = new HashMap<String, ValueCell>();
+    final HashMap<String, LibraryCell> libraryByType = new HashMap<String, LibraryCell>();
+    for (final LibraryCell c : grid.getLibraryCells()) {
+      cells.put(c.getName(), c);
+      libraryByType.put(c.getValueType().getName(), c);
+    }
+    final HashMap<String, ConstantCell> setupConstants = new HashMap<String, ConstantCell>();
+    for (final ConstantCell c : grid.getConstantCells()) {
+      setupConstants.put(c.getName(), c);
+    }
+    final ArrayList<InputCell> inputs = new ArrayList<InputCell>();
+    final ArrayList<ConstantCell> constants = new ArrayList<ConstantCell>();
+    final ArrayList<Element> callElements = new ArrayList<Element>();
+    final ArrayList<CallCell> calls = new ArrayList<CallCell>();
+    final ArrayList<Element> outputElements = new ArrayList<Element>();
+
+    for (final Element e : elements) {
+      if (e.tag.equals(InputCell.class.getName())) {
+        final String name = e.get("name");
+        final Class<?> type = setup.inputCellDataMap.get(name);
+        if (type == null) {
+          throw new IllegalArgumentException("no input in setup:" + name);
+        }
+        final InputCell cell = new InputCell(name, type);
+        inputs.add(cell);
+        cells.put(name, cell);
+      } else if (e.tag.equals(LibraryCell.class.getName())) {
+        if (!libraryByType.containsKey(e.text)) {
+          throw new IllegalArgumentException("no library cell in setup:" + e.text);
+        }
+      } else if (e.tag.equals(ConstantCell.class.getName())) {
+        final String name = e.get("name");
+        final ConstantCell cell = setupConstants.get(name);
+        if (cell == null) {
+          throw new IllegalArgumentException("no constant in setup:" + name);
+        }
+        cell.setValue(parseValue(cell.getValueType(), e.get("value")));
+        constants.add(cell);
+        cells.put(name, cell);
+      } else if (e.tag.equals(CallCell.class.getName())) {
+        final CallCell cell = new CallCell(e.get("name"), getClass(e.get("type")));
+        callElements.add(e);
+        calls.add(cell);
+        cells.put(cell.getName(), cell);
+      } else if (e.tag.equals(ReferenceCell.class.getName())) {
+        outputElements.add(e);
+      } else {
+        throw new IllegalArgumentException("cell can not be read from XML:" + e.tag);
+      }
+    }
+
+    for (int i = 0; i < calls.size(); i++) {
+      final Element e = callElements.get(i);
+      final CallCell cell = calls.get(i);
+      final ValueCell target = getCell(cells, e.get("target"));
+      final ArrayList<String> paramNames = e.getAll("param");
+      final ValueCell[] params = new ValueCell[paramNames.size()];
+      for (int p = 0; p < params.length; p++) {
+        params[p] = getCell(cells, paramNames.get(p));
+      }
+      cell.setTargetCell(target);
+      cell.setTargetMethod(getMethod(target, e.get("method"), cell.getValueType(), params));
+      cell.setParams(params);
+    }
+
+    final ReferenceCell[] outputs = new ReferenceCell[outputElements.size()];
+    for (int i = 0; i < outputs.length; i++) {
+      final String name = outputElements.get(i).get("name");
+      final Class<?> type = setup.outputCellDataMap.get(name);
+      if (type == null) {
+        throw new IllegalArgumentException("no output in setup:" + name);
+      }
+      outputs[i] = new ReferenceCell(name, type);
+      outputs[i].setReferedCell(getCell(cells, outputElements.get(i).get("referenced")));
+    }
+    grid.setCells(inputs.toArray(new InputCell[inputs.size()]), constants.toArray(new ConstantCell[constants
+        .size()]), calls.toArray(new Calculable[calls.size()]), outputs);
+    return grid;
+  }
+
+  private static ValueCell getCell(final HashMap<String, ValueCell> cells, final String name) {
+    final ValueCell cell = cells.get(name);
+    if (cell == null) {
+      throw new IllegalArgumentException("unknown cell:" + name);
+    }
+    return cell;
+  }
+
+  private static Method getMethod(final ValueCell target, final String name, final Class<?> valueType,
+      final ValueCell[] params) {
+    // methods with exactly these types win from methods the values are widened for
+    for (final boolean exact : new boolean[] { true, false }) {
+      for (final Method m : target.getAllMethods()) {
+        if (m.getName().equals(name) && m.getParameterTypes().length == params.length
+            && fits(m.getReturnType(), valueType, exact) && fits(m, params, exact)) {
+          return m;
+        }
+      }
+    }
+    throw new IllegalArgumentException("no method " + name + " on " + target.getName() + " for "
+        + params.length + " params returning " + valueType.getName());
+  }
+
+  private static boolean fits(final Method m, final ValueCell[] params, final boolean exact) {
+    final Class<?>[] types = m.getParameterTypes();
+    for (int i = 0; i < types.length; i++) {
+      if (!fits(params[i].getValueType(), types[i], exact)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return true if a value of type from can be used as type to, the way the grid chooses cells
+   */
+  private static boolean fits(final Class<?> from, final Class<?> to, final boolean exact) {
+    final Class<?> boxedFrom = ReflectUtil.getClassForPrimitive(from);
+    final Class<?> boxedTo = ReflectUtil.getClassForPrimitive(to);
+    if (exact) {
+      return boxedFrom.equals(boxedTo);
+    }
+    return boxedTo.isAssignableFrom(boxedFrom) || ReflectUtil.canCastNumber(boxedFrom, boxedTo);
+  }
+
+  private static Object parseValue(final Class<?> type, final String text) {
+    if (text.equals("null") && type != String.class) {
+      return null;
+    }
+    if (type == Double.class) {
+      return Double.valueOf(text);
+    } else if (type == Integer.class) {
+      return Integer.valueOf(text);
+    } else if (type == Boolean.class) {
+      return Boolean.valueOf(text);
+    } else if (type == String.class) {
+      return text;
+    }
+    throw new IllegalArgumentException("value of type can not be read:" + type.getName());
+  }
+
+  private static Class<?> getClass(final String name) {
+    try {
+      return Class.forName(name, false, GridXMLReader.class.getClassLoader());
+    } catch (ClassNotFoundException e) {
+      throw new IllegalArgumentException("unknown class:" + name, e);
+    }
+  }
+}
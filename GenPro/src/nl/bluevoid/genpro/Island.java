@@ -0,0 +1,121 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One population of an IslandRunner, evolved by its own thread. The statistics can be read from any thread
+ * while it runs.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class Island {
+
+  private final int nr;
+  // grids sent by other islands, taken into the next generation
+  private final ConcurrentLinkedQueue<Grid> arrivals = new ConcurrentLinkedQueue<Grid>();
+
+  private volatile int generationNr = 0;
+  private volatile double bestScore = Double.MAX_VALUE;
+  private volatile double averageScore = Double.NaN;
+  private volatile long millisPerGeneration = 0;
+  private volatile int migrantsSent = 0;
+  private volatile int migrantsReceived = 0;
+
+  Island(final int nr) {
+    this.nr = nr;
+  }
+
+  public int getNr() {
+    return nr;
+  }
+
+  /**
+   * @return the number of the last evaluated generation, 0 before the first one
+   */
+  public int getGenerationNr() {
+    return generationNr;
+  }
+
+  /**
+   * @return the best score found on this island
+   */
+  public double getBestScore() {
+    return bestScore;
+  }
+
+  /**
+   * @return the average score of the top 80% of the last generation
+   */
+  public double getAverageScore() {
+    return averageScore;
+  }
+
+  public long getMillisPerGeneration() {
+    return millisPerGeneration;
+  }
+
+  public int getMigrantsSent() {
+    return migrantsSent;
+  }
+
+  public int getMigrantsReceived() {
+    return migrantsReceived;
+  }
+
+  /**
+   * called by the thread of another island, the grids are not used by that thread anymore
+   */
+  void receive(final List<Grid> migrants) {
+    arrivals.addAll(migrants);
+  }
+
+  /**
+   * @return the grids received since the last call
+   */
+  List<Grid> takeArrivals() {
+    final ArrayList<Grid> taken = new ArrayList<Grid>();
+    Grid g;
+    while ((g = arrivals.poll()) != null) {
+      taken.add(g);
+    }
+    migrantsReceived += taken.size();
+    return taken;
+  }
+
+  void sent(final int migrants) {
+    migrantsSent += migrants;
+  }
+
+  void evaluated(final Generation gen, final double bestScore, final long millisPerGeneration) {
+    generationNr = gen.getNr();
+    this.bestScore = Math.min(this.bestScore, bestScore);
+    averageScore = gen.getAverageScore(0.8);
+    this.millisPerGeneration = millisPerGeneration;
+  }
+
+  @Override
+  public String toString() {
+    return "island " + nr + " gen:" + generationNr + " best:" + bestScore + " avg. score of top 80%:"
+        + averageScore + " time per gen:" + millisPerGeneration + " migrants sent/received:" + migrantsSent
+        + "/" + migrantsReceived;
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.bluevoid.genpro.util.Debug;
+import nl.bluevoid.genpro.util.RandomStreams;
+import nl.bluevoid.genpro.util.Sneak;
+
+/**
+ * Evolves Setup.getIslandCount() populations at once, each on its own thread and without waiting for the
+ * others. Every Setup.getMigrationInterval() generations an island sends copies of its best grids to another
+ * island, which takes them into its next generation. The best grid of all islands is reported to the
+ * ResultListeners, newStats reports the generations all islands have completed.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class IslandRunner {
+
+  private final Setup setup;
+  private final TestSetSolutionEvaluator evaluator;
+  private final FitnessCache fitnessCache;
+  private final RandomStreams randomStreams;
+  private final Island[] islands;
+  private final ArrayList<ResultListener> resultListeners = new ArrayList<ResultListener>();
+
+  private volatile boolean stopRunning = false;
+  private long startTotal;
+  private long lastStatsTime = 0;
+  private long statsInterval = 10000;
+
+  // guarded by this
+  private double bestScore = Double.MAX_VALUE;
+  private Grid bestSolution = null;
+  private int reportedGenerationNr = 0;
+  private int createdIndividuals = 0;
+
+  /**
+   * The islands evaluate on their own thread, so Setup.evaluateMultiThreaded must be off. Subsampling and
+   * deterministic runs are not supported: islands are in different generations at the same time, and
+   * migrants arrive whenever the sending island is ready.
+   */
+  public IslandRunner(final Setup setup, final TestSetSolutionEvaluator evaluator) {
+    Debug.checkParam(setup.evaluateMultiThreaded(), "islands evaluate on their own thread, "
+        + "turn off Setup.evaluateMultiThreaded");
+    Debug.checkParam(setup.isDeterministic(), "island runs are not deterministic");
+    Debug.checkParam(evaluator.isSubsampling(), "islands can not share a subsample");
+    this.setup = setup;
+    this.evaluator = evaluator;
+    fitnessCache = setup.getFitnessCacheSize() > 0 ? new FitnessCache(setup.getFitnessCacheSize()) : null;
+    randomStreams = new RandomStreams(setup.getRandomSeed());
+    Debug.info(setup.isDebugInfoVisible(), "Random seed=", setup.getRandomSeed());
+    islands = new Island[setup.getIslandCount()];
+    for (int i = 0; i < islands.length; i++) {
+      islands[i] = new Island(i);
+    }
+  }
+
+  public void addResultListener(final ResultListener r) {
+    resultListeners.add(r);
+  }
+
+  /**
+   * @return the islands, their statistics are updated while running
+   */
+  public Island[] getIslands() {
+    return islands.clone();
+  }
+
+  public synchronized Grid getBestSolution() {
+    return bestSolution;
+  }
+
+  public synchronized double getBestScore() {
+    return bestScore;
+  }
+
+  public void stopRunning() {
+    stopRunning = true;
+  }
+
+  /**
+   * Runs all islands till Setup.getStopAtGeneration() or Setup.getStopAtScore() is reached, or stopRunning()
+   * is called. An exception on one island stops the others and is thrown here.
+   */
+  public void runGenerations() {
+    startTotal = System.currentTimeMillis();
+    final Throwable[] failure = new Throwable[1];
+    final Thread[] threads = new Thread[islands.length];
+    for (int i = 0; i < islands.length; i++) {
+      final Island island = islands[i];
+      threads[i] = new Thread("island " + i) {
+        @Override
+        public void run() {
+          try {
+            evolve(island);
+          } catch (Throwable t) {
+            synchronized (failure) {
+              if (failure[0] == null) {
+                failure[0] = t;
+              }
+            }
+            stopRunning = true;
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (final Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        stopRunning = true;
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    synchronized (failure) {
+      if (failure[0] != null) {
+        Sneak.sneakyThrow(failure[0]);
+      }
+    }
+  }
+
+  private void evolve(final Island island) {
+    final long start = System.currentTimeMillis();
+    Generation gen = createStartGeneration();
+    evaluate(island, gen, start);
+    final long maxGen = setup.getStopAtGeneration() == -1 ? Long.MAX_VALUE : setup.getStopAtGeneration();
+    while (gen.getNr() < maxGen && !stopRunning) {
+      if (setup.getMigrants() > 0 && gen.getNr() % setup.getMigrationInterval() == 0) {
+        migrate(island, gen);
+      }
+      final Generation next = gen.next();
+      final List<Grid> arrivals = island.takeArrivals();
+      if (!arrivals.isEmpty()) {
+        next.addMigrants(arrivals);
+      }
+      evaluate(island, next, start);
+      gen = next;
+    }
+  }
+
+  private Generation createStartGeneration() {
+    final Generation gen = new Generation(setup, randomStreams);
+    for (int i = 0; i < setup.getGenerationSize(); i++) {
+      final Grid grid = setup.generateSolution(randomStreams.getStream());
+      gen.addSolution(grid);
+      if (setup.isGridHistoryTrackingOn()) {
+        grid.addToHistory("Created as random solution in generation " + gen.getNr());
+      }
+      if (i % 10 == 9) {
+        notifyResultListenersOnStartUp(10);
+      }
+    }
+    if (setup.getGenerationSize() % 10 != 0) {
+      notifyResultListenersOnStartUp(setup.getGenerationSize() % 10);
+    }
+    return gen;
+  }
+
+  private void evaluate(final Island island, final Generation gen, final long start) {
+    gen.evaluate(evaluator, fitnessCache);
+    final Grid genBest = gen.getBestSolution();
+    final double genBestScore = genBest == null ? Double.MAX_VALUE : genBest.getScore();
+    island.evaluated(gen, genBestScore, (System.currentTimeMillis() - start) / gen.getNr());
+    if (genBest != null) {
+      newBest(genBest);
+    }
+    if (setup.getStopAtScore() != -1 && genBestScore < setup.getStopAtScore()) {
+      stopRunning = true;
+    }
+    notifyResultListenersOnStats();
+  }
+
+  /**
+   * sends copies of the best grids of the generation to the next island of the topology
+   */
+  private void migrate(final Island from, final Generation gen) {
+    if (islands.length == 1) {
+      return;
+    }
+    final Island to;
+    if (setup.getMigrationTopology() == MigrationTopology.RING) {
+      to = islands[(from.getNr() + 1) % islands.length];
+    } else {
+      // any island but this one
+      final int nr = randomStreams.getStream().nextInt(islands.length - 1);
+      to = islands[nr < from.getNr() ? nr : nr + 1];
+    }
+    final ArrayList<Grid> migrants = new ArrayList<Grid>();
+    for (final Grid g : gen.getBestSolutions(setup.getMigrants())) {
+      final Grid migrant = g.clone();
+      if (setup.isGridHistoryTrackingOn()) {
+        migrant.addToHistory("Migrated from island " + from.getNr() + " in generation " + gen.getNr());
+      }
+      migrants.add(migrant);
+    }
+    to.receive(migrants);
+    from.sent(migrants.size());
+  }
+
+  private synchronized void newBest(final Grid genBest) {
+    if (genBest.getScore() < bestScore) {
+      // the island keeps using its grid, listeners get their own
+      bestSolution = genBest.clone();
+      bestSolution.setScore(genBest.getScore());
+      bestScore = bestSolution.getScore();
+      for (final ResultListener listener : resultListeners) {
+        listener.newBestResult(bestSolution);
+      }
+    }
+  }
+
+  /**
+   * reports the generation all islands have completed, when it changed
+   */
+  private synchronized void notifyResultListenersOnStats() {
+    int genNr = Integer.MAX_VALUE;
+    for (final Island island : islands) {
+      genNr = Math.min(genNr, island.getGenerationNr());
+    }
+    if (genNr <= reportedGenerationNr) {
+      return;
+    }
+    reportedGenerationNr = genNr;
+    final long avgMillisPerGeneration = (System.currentTimeMillis() - startTotal) / genNr;
+    for (final ResultListener listener : resultListeners) {
+      listener.newStats(genNr, avgMillisPerGeneration);
+    }
+    final long timeNow = System.currentTimeMillis();
+    if (timeNow - lastStatsTime > statsInterval && genNr != 1) {
+      lastStatsTime = timeNow;
+      for (final Island island : islands) {
+        Debug.println(island.toString());
+      }
+      if (fitnessCache != null) {
+        Debug.println("fitness cache hits:" + fitnessCache.getHits() + " misses:" + fitnessCache.getMisses()
+            + " size:" + fitnessCache.getSize());
+      }
+    }
+  }
+
+  private synchronized void notifyResultListenersOnStartUp(final int created) {
+    createdIndividuals += created;
+    for (final ResultListener listener : resultListeners) {
+      listener.startUpProgress(createdIndividuals);
+    }
+  }
+}
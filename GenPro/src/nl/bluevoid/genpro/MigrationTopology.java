@@ -0,0 +1,30 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro;
+
+/**
+ * Where the islands of an IslandRunner send their migrants, see Setup.setMigration
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public enum MigrationTopology {
+  /** island i sends to island i + 1, the last one to the first */
+  RING,
+  /** every migration goes to another island chosen at random */
+  RANDOM;
+}
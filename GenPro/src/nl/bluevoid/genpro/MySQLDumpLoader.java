@@ -0,0 +1,458 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+import nl.bluevoid.genpro.util.Debug;
+import nl.bluevoid.genpro.util.ParallelLoopPool;
+import nl.bluevoid.genpro.util.Sneak;
+
+/**
+ * Loads the rows of a MySQL client dump, the lines starting with | with the fields separated by |, into the
+ * columns of a TestSet. The file is split into chunks of whole lines that are parsed by a pool of threads,
+ * the rows are added in the order of the file. The parser of a column is chosen once: Double, Integer and
+ * Boolean values are kept in primitive arrays until they are added, Dates are parsed as yyyy-MM-dd HH:mm:ss
+ * and other types need a constructor with a String argument.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class MySQLDumpLoader {
+
+  public static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+  private static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+
+  private static final int DOUBLE = 0;
+  private static final int INTEGER = 1;
+  private static final int BOOLEAN = 2;
+  private static final int OBJECT = 3;
+  private static final int SKIP = 4;
+
+  /**
+   * Parses the text of a field into the value of a column, called by several threads at once.
+   */
+  private interface ValueParser {
+    public Object parse(String value) throws Exception;
+  }
+
+  private final TestSet testSet;
+  private final int[] columnIndices;
+  private final int[] kinds;
+  private final ValueParser[] parsers;
+  private final DataTransformer[] transformers;
+  private final int fields;
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+  private final Charset charset = Charset.defaultCharset();
+
+  /**
+   * @param columnNames
+   *          the column of every field of a line, TestSet.SKIP_COLUMN for fields to skip
+   */
+  public MySQLDumpLoader(final TestSet testSet, final String... columnNames) {
+    this.testSet = testSet;
+    fields = columnNames.length;
+    columnIndices = new int[fields];
+    kinds = new int[fields];
+    parsers = new ValueParser[fields];
+    transformers = new DataTransformer[fields];
+    for (int i = 0; i < fields; i++) {
+      if (columnNames[i].equals(TestSet.SKIP_COLUMN)) {
+        kinds[i] = SKIP;
+        continue;
+      }
+      columnIndices[i] = testSet.getColumnIndex(columnNames[i]);
+      final TestSetColumn column = testSet.getColumn(columnIndices[i]);
+      Debug.checkParam(column.size() != testSet.getNumberOfTestCases(), "column is longer than the others:",
+          columnNames[i]);
+      if (column instanceof TestSetColumn.DoubleColumn) {
+        kinds[i] = DOUBLE;
+      } else if (column instanceof TestSetColumn.IntColumn) {
+        kinds[i] = INTEGER;
+      } else if (column instanceof TestSetColumn.BooleanColumn) {
+        kinds[i] = BOOLEAN;
+      } else {
+        kinds[i] = OBJECT;
+        parsers[i] = createParser(testSet.getSetup().getInOrOutPutCellType(columnNames[i]));
+      }
+    }
+    for (final String name : testSet.getCellNames()) {
+      Debug.checkParam(!Arrays.asList(columnNames).contains(name), "no field for column:", name);
+    }
+  }
+
+  private static ValueParser createParser(final Class<?> type) {
+    if (type == String.class) {
+      return new ValueParser() {
+        public Object parse(final String value) {
+          return value;
+        }
+      };
+    } else if (type == Double.class) {
+      return new ValueParser() {
+        public Object parse(final String value) {
+          return Double.valueOf(value);
+        }
+      };
+    } else if (type == Integer.class) {
+      return new ValueParser() {
+        public Object parse(final String value) {
+          return Integer.valueOf(value);
+        }
+      };
+    } else if (type == Boolean.class) {
+      return new ValueParser() {
+        public Object parse(final String value) {
+          return Boolean.valueOf(value);
+        }
+      };
+    } else if (type == InetAddress.class) {
+      return new ValueParser() {
+        public Object parse(final String value) throws IOException {
+          return InetAddress.getByName(value);
+        }
+      };
+    } else if (type == Date.class) {
+      // SimpleDateFormat is not thread safe
+      final ThreadLocal<SimpleDateFormat> format = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+          return new SimpleDateFormat(DATE_FORMAT);
+        }
+      };
+      return new ValueParser() {
+        public Object parse(final String value) throws Exception {
+          return format.get().parse(value);
+        }
+      };
+    }
+    final Constructor<?> constructor;
+    try {
+      constructor = type.getDeclaredConstructor(String.class);
+    } catch (NoSuchMethodException e) {
+      throw new IllegalArgumentException("no constructor with a String argument:" + type.getName(), e);
+    }
+    return new ValueParser() {
+      public Object parse(final String value) throws Exception {
+        try {
+          return constructor.newInstance(value);
+        } catch (InvocationTargetException e) {
+          throw (Exception) e.getCause();
+        }
+      }
+    };
+  }
+
+  /**
+   * Transforms the text of the fields of the column before they are parsed, called by several threads at
+   * once.
+   */
+  public void addTransformer(final String columnName, final DataTransformer transformer) {
+    final int index = testSet.getColumnIndex(columnName);
+    for (int i = 0; i < fields; i++) {
+      if (kinds[i] != SKIP && columnIndices[i] == index) {
+        transformers[i] = transformer;
+      }
+    }
+  }
+
+  public void setThreads(final int threads) {
+    Debug.checkRange(threads, 1, Integer.MAX_VALUE);
+    this.threads = threads;
+  }
+
+  /**
+   * @param chunkSize
+   *          the bytes of a chunk, a chunk is extended to the end of its last line
+   */
+  public void setChunkSize(final int chunkSize) {
+    Debug.checkRange(chunkSize, 1, Integer.MAX_VALUE);
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Adds the rows of the file to the TestSet.
+   * 
+   * @return the number of rows added
+   * @throws IllegalArgumentException
+   *           when a row has too few fields or a value that can not be parsed, no row is added then
+   */
+  public int load(final File file) throws IOException {
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel channel = raf.getChannel();
+      final long[] starts = splitLines(channel);
+      final int chunks = starts.length - 1;
+      final ParallelLoopPool pool = new ParallelLoopPool("mysql loader",
+          Math.max(1, Math.min(threads, chunks)));
+      final ArrayList<Chunk> parsed;
+      try {
+        parsed = pool.execute(0, chunks, 1, new ParallelLoopPool.Loop<ArrayList<Chunk>>() {
+          @Override
+          public ArrayList<Chunk> loopDoRange(final int start, final int end) {
+            final ArrayList<Chunk> result = new ArrayList<Chunk>();
+            for (int i = start; i < end; i++) {
+              try {
+                result.add(parse(channel, starts[i], starts[i + 1]));
+              } catch (IOException e) {
+                Sneak.sneakyThrow(e);
+              }
+            }
+            return result;
+          }
+
+          @Override
+          public ArrayList<Chunk> combine(final ArrayList<Chunk> left, final ArrayList<Chunk> right) {
+            if (left == null) {
+              return right;
+            }
+            if (right != null) {
+              left.addAll(right);
+            }
+            return left;
+          }
+        });
+      } finally {
+        pool.shutdown();
+      }
+      int rows = 0;
+      if (parsed != null) {
+        for (final Chunk chunk : parsed) {
+          add(chunk);
+          rows += chunk.rows;
+        }
+      }
+      return rows;
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * @return the starts of the chunks, followed by the length of the file
+   */
+  private long[] splitLines(final FileChannel channel) throws IOException {
+    final long length = channel.size();
+    final ArrayList<Long> starts = new ArrayList<Long>();
+    final ByteBuffer buffer = ByteBuffer.allocate(4096);
+    long start = 0;
+    while (start < length) {
+      starts.add(start);
+      long end = start + chunkSize;
+      // move the end past the next line end
+      while (end < length) {
+        buffer.clear();
+        final int read = channel.read(buffer, end - 1);
+        int i = 0;
+        while (i < read && buffer.get(i) != '\n') {
+          i++;
+        }
+        end += i;
+        if (i < read) {
+          break;
+        }
+      }
+      start = Math.min(end, length);
+      Debug.checkParam(start - starts.get(starts.size() - 1) > Integer.MAX_VALUE, "line too long at byte:",
+          starts.get(starts.size() - 1));
+    }
+    final long[] result = new long[starts.size() + 1];
+    for (int i = 0; i < starts.size(); i++) {
+      result[i] = starts.get(i);
+    }
+    result[starts.size()] = length;
+    return result;
+  }
+
+  private Chunk parse(final FileChannel channel, final long start, final long end) throws IOException {
+    final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    final int size = (int) (end - start);
+    final Chunk chunk = new Chunk();
+    byte[] line = new byte[256];
+    final int[] separators = new int[fields + 1];
+    int lineStart = 0;
+    while (lineStart < size) {
+      int lineEnd = lineStart;
+      while (lineEnd < size && buffer.get(lineEnd) != '\n') {
+        lineEnd++;
+      }
+      final int next = lineEnd + 1;
+      if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+        lineEnd--;
+      }
+      final int length = lineEnd - lineStart;
+      if (length > 0 && buffer.get(lineStart) == '|') {
+        if (line.length < length) {
+          line = new byte[Math.max(length, line.length * 2)];
+        }
+        buffer.position(lineStart);
+        buffer.get(line, 0, length);
+        // separators[f] is the | before field f
+        int found = 1;
+        for (int i = 1; i < length && found <= fields; i++) {
+          if (line[i] == '|') {
+            separators[found++] = i;
+          }
+        }
+        if (found <= fields) {
+          if (found == fields) {
+            // the last field may be left open
+            separators[found++] = length;
+          } else {
+            throw new IllegalArgumentException("line at byte " + (start + lineStart) + " has " + (found - 1)
+                + " fields, expected " + fields + ": " + new String(line, 0, length, charset));
+          }
+        }
+        chunk.ensureCapacity(chunk.rows + 1);
+        for (int field = 0; field < fields; field++) {
+          if (kinds[field] == SKIP) {
+            continue;
+          }
+          final int from = separators[field] + 1;
+          String value = new String(line, from, separators[field + 1] - from, charset).trim();
+          try {
+            if (transformers[field] != null) {
+              value = transformers[field].transform(value);
+            }
+            chunk.set(field, value);
+          } catch (Exception e) {
+            throw new IllegalArgumentException("can not parse field " + field + " '" + value
+                + "' of line at byte " + (start + lineStart) + ": " + new String(line, 0, length, charset), e);
+          }
+        }
+        chunk.rows++;
+      }
+      lineStart = next;
+    }
+    return chunk;
+  }
+
+  private void add(final Chunk chunk) {
+    for (int field = 0; field < fields; field++) {
+      if (kinds[field] == SKIP) {
+        continue;
+      }
+      final int column = columnIndices[field];
+      switch (kinds[field]) {
+      case DOUBLE: {
+        final TestSetColumn.DoubleColumn values = (TestSetColumn.DoubleColumn) testSet.getColumn(column);
+        for (int row = 0; row < chunk.rows; row++) {
+          values.addDouble(chunk.doubles[field][row]);
+        }
+      }
+        break;
+      case INTEGER: {
+        final TestSetColumn.IntColumn values = (TestSetColumn.IntColumn) testSet.getColumn(column);
+        for (int row = 0; row < chunk.rows; row++) {
+          values.addInt(chunk.ints[field][row]);
+        }
+      }
+        break;
+      case BOOLEAN: {
+        final TestSetColumn.BooleanColumn values = (TestSetColumn.BooleanColumn) testSet.getColumn(column);
+        for (int row = 0; row < chunk.rows; row++) {
+          values.addBoolean(chunk.booleans[field][row]);
+        }
+      }
+        break;
+      default: {
+        TestSetColumn values = testSet.getColumn(column);
+        for (int row = 0; row < chunk.rows; row++) {
+          values = values.add(chunk.objects[field][row]);
+        }
+        testSet.setColumn(column, values);
+      }
+      }
+    }
+    testSet.rowsAdded(chunk.rows);
+  }
+
+  /**
+   * The rows of a chunk, a column per field.
+   */
+  private class Chunk {
+    int rows;
+    final double[][] doubles = new double[fields][];
+    final int[][] ints = new int[fields][];
+    final boolean[][] booleans = new boolean[fields][];
+    final Object[][] objects = new Object[fields][];
+
+    void ensureCapacity(final int capacity) {
+      for (int field = 0; field < fields; field++) {
+        switch (kinds[field]) {
+        case DOUBLE:
+          if (doubles[field] == null || doubles[field].length < capacity) {
+            doubles[field] = Arrays.copyOf(doubles[field] == null ? new double[0] : doubles[field],
+                Math.max(capacity, rows * 2));
+          }
+          break;
+        case INTEGER:
+          if (ints[field] == null || ints[field].length < capacity) {
+            ints[field] = Arrays.copyOf(ints[field] == null ? new int[0] : ints[field], Math.max(capacity,
+                rows * 2));
+          }
+          break;
+        case BOOLEAN:
+          if (booleans[field] == null || booleans[field].length < capacity) {
+            booleans[field] = Arrays.copyOf(booleans[field] == null ? new boolean[0] : booleans[field],
+                Math.max(capacity, rows * 2));
+          }
+          break;
+        case OBJECT:
+          if (objects[field] == null || objects[field].length < capacity) {
+            objects[field] = Arrays.copyOf(objects[field] == null ? new Object[0] : objects[field],
+                Math.max(capacity, rows * 2));
+          }
+          break;
+        default:
+          // skipped
+        }
+      }
+    }
+
+    void set(final int field, final String value) throws Exception {
+      switch (kinds[field]) {
+      case DOUBLE:
+        doubles[field][rows] = Double.parseDouble(value);
+        break;
+      case INTEGER:
+        ints[field][rows] = Integer.parseInt(value);
+        break;
+      case BOOLEAN:
+        booleans[field][rows] = Boolean.parseBoolean(value);
+        break;
+      default:
+        objects[field][rows] = parsers[field].parse(value);
+      }
+    }
+  }
+}
@@ -16,11 +16,14 @@
 
 package nl.bluevoid.genpro;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.Random;
 
+import nl.bluevoid.genpro.cell.CallInvocation;
 import nl.bluevoid.genpro.cell.ConstantCell;
 import nl.bluevoid.genpro.cell.LibraryCell;
+import nl.bluevoid.genpro.engine.GridClassCache;
 import nl.bluevoid.genpro.operations.BlackList;
 import nl.bluevoid.genpro.util.Debug;
 
@@ -30,8 +33,6 @@ import nl.bluevoid.genpro.util.Debug;
  */
 public class Setup {
 
-  private static final Random random = new Random();
-
   final HashMap<String, Class<?>> outputCellDataMap = new HashMap<String, Class<?>>();
   final HashMap<String, Class<?>> inputCellDataMap = new HashMap<String, Class<?>>();
 
@@ -50,6 +51,17 @@ public class Setup {
   private int crossingPercentage = 80;
 
   private boolean evaluateMultiThreaded = false;
+  private int evaluationThreads = Runtime.getRuntime().availableProcessors();
+  private long randomSeed = System.currentTimeMillis();
+  private boolean deterministic = false;
+  private int testCaseShardSize = 0;
+  private int islandCount = Runtime.getRuntime().availableProcessors();
+  private int migrationInterval = 10;
+  private int migrants = 2;
+  private MigrationTopology migrationTopology = MigrationTopology.RING;
+  private File checkpointFile = null;
+  private int checkpointInterval = 0;
+  private File metricsFile = null;
 
   private boolean hasMaxperScore = true;
   private int maxPerScore = 30;
@@ -70,6 +82,22 @@ public class Setup {
 
   private boolean debugInfoVisible = false;
 
+  private boolean compiledEvaluation = false;
+
+  private final GridClassCache gridClassCache = new GridClassCache();
+
+  private CallInvocation callInvocation = CallInvocation.REFLECTION;
+
+  private boolean primitiveEvaluation = false;
+
+  private boolean batchEvaluation = false;
+
+  private int fitnessCacheSize = 0;
+
+  private boolean incrementalEvaluation = false;
+
+  private boolean racing = false;
+
   public boolean isGridHistoryTrackingOn() {
     return gridHistoryTracking;
   }
@@ -109,11 +137,11 @@ public class Setup {
     this.callCellValueTypes = classes;
   }
 
-  public Class<?> getRandomCallCellType() {
+  public Class<?> getRandomCallCellType(final Random random) {
     return callCellValueTypes[random.nextInt(callCellValueTypes.length)];
   }
 
-  public Class<?> getRandomCallCellTypeForSwitch() {
+  public Class<?> getRandomCallCellTypeForSwitch(final Random random) {
     return switchCellValueTypes[random.nextInt(switchCellValueTypes.length)];
   }
 
@@ -141,6 +169,10 @@ public class Setup {
     throw new IllegalArgumentException("type not found for in/out cell with name:" + name);
   }
 
+  public boolean isInOrOutputCell(String name) {
+    return outputCellDataMap.get(name) != null || inputCellDataMap.get(name) != null;
+  }
+
   public boolean isInputCell(String name) {
     return inputCellDataMap.get(name) != null;
   }
@@ -170,11 +202,23 @@ public class Setup {
   }
 
   public Grid generateSolution() {
-    Grid grid = new Grid(this, (ConstantCell[]) Util.clone(constantCells), libraryCells);
-    grid.createSolution();
+    return generateSolution(new Random());
+  }
+
+  public Grid generateSolution(final Random random) {
+    Grid grid = createGrid();
+    grid.createSolution(random);
     return grid;
   }
 
+  /**
+   * @return a grid with copies of the constants and the library cells of this setup, its other cells are not
+   *         created yet
+   */
+  Grid createGrid() {
+    return new Grid(this, (ConstantCell[]) Util.clone(constantCells), libraryCells);
+  }
+
   public void setGenerationSize(int generationSize) {
     this.generationSize = generationSize;
   }
@@ -213,6 +257,148 @@ public class Setup {
     evaluateMultiThreaded = b;
   }
 
+  /**
+   * @param evaluationThreads
+   *          the number of threads evaluating grids when evaluating multithreaded, default the number of
+   *          processors
+   */
+  public void setEvaluationThreads(int evaluationThreads) {
+    Debug.checkRange(evaluationThreads, 1, Integer.MAX_VALUE);
+    this.evaluationThreads = evaluationThreads;
+  }
+
+  public int getEvaluationThreads() {
+    return evaluationThreads;
+  }
+
+  /**
+   * Lets the evaluation threads share the test cases of one grid, in shards of at least size test cases.
+   * Generation does so when there are too few grids to keep all threads busy. Not done in deterministic
+   * runs, summed shard scores can differ in the last bits from a score summed in one go.
+   * 
+   * @param size
+   *          0 (default) to evaluate every grid on one thread
+   */
+  public void setTestCaseShardSize(int size) {
+    Debug.checkRange(size, 0, Integer.MAX_VALUE);
+    this.testCaseShardSize = size;
+  }
+
+  public int getTestCaseShardSize() {
+    return testCaseShardSize;
+  }
+
+  /**
+   * @param islandCount
+   *          the number of populations an IslandRunner evolves, each of getGenerationSize() grids on its own
+   *          thread. Default the number of processors
+   */
+  public void setIslandCount(int islandCount) {
+    Debug.checkRange(islandCount, 1, Integer.MAX_VALUE);
+    this.islandCount = islandCount;
+  }
+
+  public int getIslandCount() {
+    return islandCount;
+  }
+
+  /**
+   * Every interval generations an island sends copies of its best grids to another island, where they replace
+   * offspring of the next generation.
+   * 
+   * @param interval
+   *          default 10
+   * @param migrants
+   *          the number of grids sent, default 2. 0 keeps the islands apart
+   * @param topology
+   *          default RING
+   */
+  public void setMigration(int interval, int migrants, MigrationTopology topology) {
+    Debug.checkRange(interval, 1, Integer.MAX_VALUE);
+    Debug.checkRange(migrants, 0, Integer.MAX_VALUE);
+    Debug.checkNotNull(topology, "topology");
+    this.migrationInterval = interval;
+    this.migrants = migrants;
+    this.migrationTopology = topology;
+  }
+
+  public int getMigrationInterval() {
+    return migrationInterval;
+  }
+
+  public int getMigrants() {
+    return migrants;
+  }
+
+  public MigrationTopology getMigrationTopology() {
+    return migrationTopology;
+  }
+
+  /**
+   * Every interval generations a GenerationRunner writes its generation to the file in the background, see
+   * GenerationRunner.resume.
+   * 
+   * @param interval
+   *          0 to write no checkpoints
+   */
+  public void setCheckpoint(File file, int interval) {
+    Debug.checkRange(interval, 0, Integer.MAX_VALUE);
+    Debug.checkParam(interval > 0 && file == null, "a checkpoint file is needed");
+    this.checkpointFile = file;
+    this.checkpointInterval = interval;
+  }
+
+  public File getCheckpointFile() {
+    return checkpointFile;
+  }
+
+  public int getCheckpointInterval() {
+    return checkpointInterval;
+  }
+
+  /**
+   * A GenerationRunner switches the Metrics on and appends a row of them to the file every generation.
+   * 
+   * @param file
+   *          null to write no metrics
+   */
+  public void setMetricsFile(File file) {
+    this.metricsFile = file;
+  }
+
+  public File getMetricsFile() {
+    return metricsFile;
+  }
+
+  /**
+   * @param randomSeed
+   *          the seed the random streams of a GenerationRunner are derived from, default the time the Setup
+   *          was created
+   */
+  public void setRandomSeed(long randomSeed) {
+    this.randomSeed = randomSeed;
+  }
+
+  public long getRandomSeed() {
+    return randomSeed;
+  }
+
+  /**
+   * every grid is created with random numbers derived from the random seed, the generation and its place in
+   * the generation. Runs with the same seed give the same generations, also with another number of threads.
+   * Only when scoring does not depend on the order grids are evaluated in.
+   * 
+   * @param deterministic
+   *          default false
+   */
+  public void setDeterministic(boolean deterministic) {
+    this.deterministic = deterministic;
+  }
+
+  public boolean isDeterministic() {
+    return deterministic;
+  }
+
   public boolean hasMaxPerScore() {
     return hasMaxperScore;
   }
@@ -317,4 +503,121 @@ public class Setup {
   public boolean isDebugInfoVisible() {
     return debugInfoVisible;
   }
+
+  /**
+   * evaluate grids with generated bytecode instead of reflection, grids that can not be compiled fall back to
+   * reflection
+   * 
+   * @param compiledEvaluation
+   *          default false
+   */
+  public void setCompiledEvaluation(boolean compiledEvaluation) {
+    this.compiledEvaluation = compiledEvaluation;
+  }
+
+  public boolean isCompiledEvaluation() {
+    return compiledEvaluation;
+  }
+
+  /**
+   * @return the classes compiled for the grids of this setup, also used for primitive evaluation
+   */
+  public GridClassCache getGridClassCache() {
+    return gridClassCache;
+  }
+
+  /**
+   * selects how callcells call their methods, can be changed during a run to compare both
+   * 
+   * @param callInvocation
+   *          default REFLECTION
+   */
+  public void setCallInvocation(CallInvocation callInvocation) {
+    Debug.checkNotNull(callInvocation, "callInvocation");
+    this.callInvocation = callInvocation;
+  }
+
+  public CallInvocation getCallInvocation() {
+    return callInvocation;
+  }
+
+  /**
+   * evaluate grids of Double, Integer and Boolean cells on primitive slots, without boxing intermediate
+   * values. Grids that do not fit fall back to compiled or reflective evaluation.
+   * 
+   * @param primitiveEvaluation
+   *          default false
+   */
+  public void setPrimitiveEvaluation(boolean primitiveEvaluation) {
+    this.primitiveEvaluation = primitiveEvaluation;
+  }
+
+  public boolean isPrimitiveEvaluation() {
+    return primitiveEvaluation;
+  }
+
+  /**
+   * evaluate grids of Double, Integer and Boolean cells a column at a time over the whole TestSet, scoring
+   * the output columns afterwards. Takes precedence over primitive evaluation, grids that do not fit fall back
+   * to evaluation per test case.
+   * 
+   * @param batchEvaluation
+   *          default false
+   */
+  public void setBatchEvaluation(boolean batchEvaluation) {
+    this.batchEvaluation = batchEvaluation;
+  }
+
+  public boolean isBatchEvaluation() {
+    return batchEvaluation;
+  }
+
+  /**
+   * remember the scores of this many grid structures, so identical grids are evaluated once. Only use with
+   * deterministic call targets, see FitnessCache.
+   * 
+   * @param fitnessCacheSize
+   *          default 0: no cache
+   */
+  public void setFitnessCacheSize(int fitnessCacheSize) {
+    Debug.checkRange(fitnessCacheSize, 0, Integer.MAX_VALUE);
+    this.fitnessCacheSize = fitnessCacheSize;
+  }
+
+  public int getFitnessCacheSize() {
+    return fitnessCacheSize;
+  }
+
+  /**
+   * keep the columns of batch evaluation with every grid, so a mutated or crossed clone only calculates the
+   * cells that changed and the cells that depend on them, and an unchanged clone takes the score of its
+   * parent. Costs a column of test cases per used callcell per grid in memory. Only used together with
+   * batch evaluation.
+   * 
+   * @param incrementalEvaluation
+   *          default false
+   */
+  public void setIncrementalEvaluation(boolean incrementalEvaluation) {
+    this.incrementalEvaluation = incrementalEvaluation;
+  }
+
+  public boolean isIncrementalEvaluation() {
+    return incrementalEvaluation;
+  }
+
+  /**
+   * stop evaluating a grid as soon as it scores higher than the worst grid selected for breeding in the
+   * previous generation. Its score is then a lower bound, Generation evaluates it completely when it could be
+   * selected after all. Needs test case scores that are never negative.
+   * 
+   * @param racing
+   *          default false
+   */
+  public void setRacing(boolean racing) {
+    this.racing = racing;
+  }
+
+  public boolean isRacing() {
+    return racing;
+  }
 }
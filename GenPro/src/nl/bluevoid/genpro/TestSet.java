@@ -16,21 +16,15 @@
 
 package nl.bluevoid.genpro;
 
+import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.net.InetAddress;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.TreeMap;
 
 import nl.bluevoid.genpro.util.Debug;
-import nl.bluevoid.genpro.util.FileUtil;
 import nl.bluevoid.genpro.util.Sneak;
 import nl.bluevoid.genpro.util.StringUtil;
 
@@ -47,7 +41,11 @@ public class TestSet implements Cloneable {
 
   private String[] outputCellNames;
 
-  private ConcurrentMap<String, ArrayList<Object>> values = new ConcurrentHashMap<String, ArrayList<Object>>();
+  // one column per cellname, in the order of cellNames
+  private TestSetColumn[] columns;
+  private HashMap<String, Integer> columnIndices = new HashMap<String, Integer>();
+  private int[] inputColumnIndices;
+  private int[] outputColumnIndices;
 
   private int numValues = 0;
   private final Setup setup;
@@ -68,17 +66,73 @@ public class TestSet implements Cloneable {
     this.cellNames = cellNames;
     ArrayList<String> in = new ArrayList<String>();
     ArrayList<String> out = new ArrayList<String>();
+    columns = new TestSetColumn[cellNames.length];
     // split in and outputs
-    for (String celName : cellNames) {
-      values.put(celName, new ArrayList<Object>());
+    for (int i = 0; i < cellNames.length; i++) {
+      final String celName = cellNames[i];
+      columnIndices.put(celName, i);
       if (setup.isInputCell(celName)) {
         in.add(celName);
       } else {
         out.add(celName);
       }
+      columns[i] = TestSetColumn.create(setup.isInOrOutputCell(celName) ? setup
+          .getInOrOutPutCellType(celName) : Object.class);
     }
     inputCellNames = in.toArray(new String[in.size()]);
     outputCellNames = out.toArray(new String[out.size()]);
+    inputColumnIndices = getColumnIndices(inputCellNames);
+    outputColumnIndices = getColumnIndices(outputCellNames);
+  }
+
+  private int[] getColumnIndices(final String[] names) {
+    final int[] indices = new int[names.length];
+    for (int i = 0; i < names.length; i++) {
+      indices[i] = getColumnIndex(names[i]);
+    }
+    return indices;
+  }
+
+  /**
+   * @return the index of the column, to be used with the index based getters
+   * @throws IllegalArgumentException
+   *           if there is no column with this name
+   */
+  public int getColumnIndex(final String name) {
+    final Integer index = columnIndices.get(name);
+    if (index == null)
+      throw new IllegalArgumentException("Unknown cellname:" + name);
+    return index;
+  }
+
+  /**
+   * @return the column indices of the input cells, in the order of getInputCellNames()
+   */
+  public int[] getInputColumnIndices() {
+    return inputColumnIndices;
+  }
+
+  /**
+   * @return the column indices of the output cells, in the order of getOutputCellNames()
+   */
+  public int[] getOutputColumnIndices() {
+    return outputColumnIndices;
+  }
+
+  public TestSetColumn getColumn(final int column) {
+    return columns[column];
+  }
+
+  public TestSetColumn getColumn(final String name) {
+    return columns[getColumnIndex(name)];
+  }
+
+  public Object getValue(final int column, final int row) {
+    return columns[column].get(row);
+  }
+
+  public double getDouble(final int column, final int row) {
+    return columns[column].getDouble(row);
   }
 
   public void addCellValues(final Object... objects) {
@@ -87,16 +141,16 @@ public class TestSet implements Cloneable {
     Debug.errorOnFalse(cellNames.length == objects.length, "expected " + cellNames.length
         + " objects, but received " + objects.length);
     for (int i = 0; i < cellNames.length; i++) {
-      // final Class<?> cellType = setup.getInOrOutPutCellType(cellNames[i]);
-
-      ArrayList<Object> arr = values.get(cellNames[i]);
-      arr.add(objects[i]);
+      columns[i] = columns[i].add(objects[i]);
     }
     numValues++;
   }
 
+  /**
+   * @return a copy of the values of the column
+   */
   public ArrayList<Object> getCellValues(String name) {
-    return values.get(name);
+    return new ArrayList<Object>(Arrays.asList(getColumn(name).toArray()));
   }
 
   public void addCellValues(final Object[] objects, String[] columns) {
@@ -105,17 +159,14 @@ public class TestSet implements Cloneable {
     Debug.errorOnFalse(cellNames.length == objects.length, "expected " + cellNames.length
         + " objects, but received " + objects.length);
     for (int i = 0; i < columns.length; i++) {
-      // final Class<?> cellType = setup.getInOrOutPutCellType(cellNames[i]);
-      ArrayList<Object> arr = values.get(columns[i]);
-      if (arr == null)
-        throw new IllegalArgumentException("Unknown cellname:" + columns[i]);
-      arr.add(objects[i]);
+      final int index = getColumnIndex(columns[i]);
+      this.columns[index] = this.columns[index].add(objects[i]);
     }
     numValues++;
   }
 
   public Object getValue(final String name, final int i) {
-    return values.get(name).get(i);
+    return getColumn(name).get(i);
   }
 
   @Override
@@ -126,13 +177,9 @@ public class TestSet implements Cloneable {
       clone.inputCellNames = (String[]) Util.clone(inputCellNames);
       clone.outputCellNames = (String[]) Util.clone(outputCellNames);
 
-      clone.values = new ConcurrentHashMap<String, ArrayList<Object>>();
-
-      for (final String key : values.keySet()) {
-        final ArrayList<Object> obj = values.get(key);
-        // ArrayList<Object> objList=new ArrayList<Object>();
-        clone.values.put(key, obj);
-      }
+      // columns are shared, like the value lists were
+      clone.columns = columns.clone();
+      clone.columnIndices = new HashMap<String, Integer>(columnIndices);
       return clone;
     } catch (CloneNotSupportedException e) {
       e.printStackTrace();
@@ -140,71 +187,74 @@ public class TestSet implements Cloneable {
     }
   }
 
+  /**
+   * Adds the comma separated values of the file, a field for every column in the order of the cell names.
+   * Values are parsed as the type of their column, see TestSetLoader.
+   */
   public void addCellValuesFromFile(String fileName) {
+    addCellValuesFromFile(fileName, cellNames);
+  }
+
+  /**
+   * @param columns
+   *          the column of every field of a line, SKIP_COLUMN for fields to skip
+   */
+  public void addCellValuesFromFile(String fileName, final String... columns) {
     try {
-      System.out.println("addCellValuesFromFile");
-      String line = FileUtil.readFile(fileName);
-      String[] lines = line.split("\n");
-      for (String string : lines) {
-        String stripped = string.trim();
-        if (stripped.startsWith("#") || stripped.startsWith("//") || stripped.length() == 0) {
-          // skip
-        } else {
-          // process
-          String[] split = stripped.split(",");
-          Double[] ds = new Double[split.length];// TODO typing: strings, int etc
-          for (int i = 0; i < split.length; i++) {
-            ds[i] = Double.parseDouble(split[i]);
-          }
-          addCellValues((Object[]) ds);
-        }
-      }
+      new TestSetLoader(this, columns).load(new File(fileName));
     } catch (IOException e) {
       Sneak.sneakyThrow(e);
     }
   }
 
-  public void addCellValuesFromFile(String fileName, final String... columns) {
-    // create list of valid names (skip SKIP_DATA_COLUMN)
-    final ArrayList<String> validColumNames = new ArrayList<String>();
-    for (String name : columns) {
-      if (!name.equals(SKIP_COLUMN)) {
-        validColumNames.add(name);
+  /**
+   * Like addCellValuesFromFile, but maps the values of the cache file when it was made from the file as it is
+   * now, otherwise the cache is made again. Only for an empty TestSet, see TestSetCache.
+   */
+  public void addCellValuesFromFile(final String fileName, final File cacheFile, final String... columns) {
+    loadCached(fileName, cacheFile, "csv " + Arrays.toString(columns), new TestSetCache.Source() {
+      public void load(final TestSet testSet) {
+        testSet.addCellValuesFromFile(fileName, columns);
       }
-    }
-    String[] validColumns = validColumNames.toArray(new String[0]);
+    });
+  }
 
-    try {
-      System.out.println("addCellValuesFromFile");
-      String line = FileUtil.readFile(fileName);
-      String[] lines = line.split("\n");
-      for (String string : lines) {
-        String stripped = string.trim();
-        if (stripped.startsWith("#") || stripped.startsWith("//") || stripped.length() == 0) {
-          // skip
-        } else {
-          // process
-          String[] split = stripped.split(",");
-          Double[] ds = new Double[validColumns.length];// TODO typing: strings, int etc
-          int validCount = 0;
-          for (int i = 0; i < split.length; i++) {
-            // copy only data which is valid
-            if (!columns[i].equals(SKIP_COLUMN)) {
-              ds[validCount] = Double.parseDouble(split[i]);
-              validCount++;
-            }
-          }
-          // add valid data with valid columnnames
-          addCellValues((Object[]) ds, validColumns);
-        }
+  /**
+   * Like addCellValuesFromMySQLFile with a cache file, see addCellValuesFromFile. The cache only knows the
+   * class of the DataTransformers, delete it when what they do changes.
+   */
+  public void addCellValuesFromMySQLFile(final String fileName, final File cacheFile,
+      final String... columns) {
+    final String layout = "mysql " + Arrays.toString(columns) + " " + getTransformerClasses();
+    loadCached(fileName, cacheFile, layout, new TestSetCache.Source() {
+      public void load(final TestSet testSet) {
+        testSet.addCellValuesFromMySQLFile(fileName, columns);
       }
+    });
+  }
+
+  private void loadCached(final String fileName, final File cacheFile, final String layout,
+      final TestSetCache.Source source) {
+    try {
+      TestSetCache.load(this, new File(fileName), cacheFile, layout, source);
     } catch (IOException e) {
       Sneak.sneakyThrow(e);
     }
   }
 
-  public ConcurrentMap<String, ArrayList<Object>> getValues() {
-    return values;
+  /**
+   * Counts rows whose values were added to the columns directly, see TestSetLoader.
+   */
+  void rowsAdded(final int rows) {
+    numValues += rows;
+  }
+
+  String[] getCellNames() {
+    return cellNames;
+  }
+
+  void setColumn(final int column, final TestSetColumn values) {
+    columns[column] = values;
   }
 
   public int getNumberOfTestCases() {
@@ -215,92 +265,40 @@ public class TestSet implements Cloneable {
     return setup;
   }
 
-  SimpleDateFormat mysqlDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-
   private Map<String, DataTransformer> dataTransformers = new HashMap<String, DataTransformer>();
 
+  /**
+   * Adds the rows of a MySQL client dump, see MySQLDumpLoader.
+   * 
+   * @param columns
+   *          the column of every field of a line, SKIP_COLUMN for fields to skip
+   */
   public void addCellValuesFromMySQLFile(String fileName, final String... columns) {
+    final MySQLDumpLoader loader = new MySQLDumpLoader(this, columns);
+    for (final Map.Entry<String, DataTransformer> entry : dataTransformers.entrySet()) {
+      loader.addTransformer(entry.getKey(), entry.getValue());
+    }
     try {
-      // create list of valid names (skip SKIP_DATA_COLUMN)
-      final ArrayList<String> validColumNames = new ArrayList<String>();
-      for (String name : columns) {
-        if (!name.equals(SKIP_COLUMN)) {
-          validColumNames.add(name);
-        }
-      }
-      String[] validColumns = validColumNames.toArray(new String[0]);
-
-      String data = FileUtil.readFile(fileName);
-      String[] lines = data.split("\n");
-
-      for (final String line : lines) {
-        if (line.startsWith("|")) {
-          String lineToSplit = line.substring(1);
-          String[] parts = lineToSplit.split("\\|");
-          try {
-            Object[] ds = new Object[validColumns.length];
-            int validCount = 0;
-            for (int i = 0; i < columns.length; i++) {
-              String cellName = columns[i];
-              // copy only data which is valid
-              if (!cellName.equals(SKIP_COLUMN)) {
-                String cellValue = parts[i].trim();
-                DataTransformer dt = dataTransformers.get(cellName);
-                if (dt != null) {
-                  cellValue = dt.transform(cellValue);
-                }
-                // Debug.println(cellName + " > " + cellValue);
-                Class<? extends Object> type = setup.getInOrOutPutCellType(cellName);
-
-                if (type.equals(Double.class)) {
-                  ds[validCount] = Double.parseDouble(cellValue);
-                } else if (type.equals(String.class)) {
-                  ds[validCount] = cellValue;
-                } else if (type.equals(Integer.class)) {
-                  ds[validCount] = Integer.parseInt(cellValue);
-                } else if (type.equals(InetAddress.class)) {
-                  ds[validCount] = InetAddress.getByName(cellValue);
-                } else if (type.equals(Date.class)) {
-                  ds[validCount] = mysqlDateFormat.parse(cellValue);
-                } else if (type.equals(Boolean.class)) {
-                  ds[validCount] = Boolean.valueOf(cellValue);
-                } else {
-                  // try to instantiate (needs constructor with a String argument!!)
-                  Constructor<? extends Object> c = type.getDeclaredConstructor(String.class);
-                  ds[validCount] = c.newInstance(cellValue);
-                }
-                validCount++;
-              }
-            }
-            // add valid data with valid columnnames
-            addCellValues((Object[]) ds, validColumns);
-          } catch (ParseException e) {
-            Debug.println("Error parsing: " + line);// TODO fix error logging
-            throw e;
-          }
-        }
-      }
+      loader.load(new File(fileName));
     } catch (IOException e) {
       Sneak.sneakyThrow(e);
-    } catch (ParseException e) {
-      Sneak.sneakyThrow(e);
-    } catch (SecurityException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    } catch (NoSuchMethodException e) {
-      Sneak.sneakyThrow(e);
-    } catch (InstantiationException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    } catch (IllegalAccessException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    } catch (InvocationTargetException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
     }
   }
 
+  /**
+   * @return the class of the transformer of every field, sorted by field
+   */
+  private String getTransformerClasses() {
+    final TreeMap<String, String> classes = new TreeMap<String, String>();
+    for (final Map.Entry<String, DataTransformer> entry : dataTransformers.entrySet()) {
+      classes.put(entry.getKey(), entry.getValue().getClass().getName());
+    }
+    return classes.toString();
+  }
+
+  /**
+   * The transformer is called by the threads of the MySQLDumpLoader, so it must be thread safe.
+   */
   public void addTransformer(String field, DataTransformer dataTransformer) {
     dataTransformers.put(field, dataTransformer);
   }
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32C;
+
+import nl.bluevoid.genpro.util.Debug;
+
+/**
+ * A binary columnar copy of the values of a TestSet, that is mapped into memory instead of read. The header
+ * has the checksum of the source file and of how it was read, the number of rows and the name, type and
+ * place of each column; the columns follow as little endian primitive arrays aligned at 8 bytes. Mapped
+ * Double, Integer and Boolean columns stay off the heap and are shared by all JVMs mapping the file, String
+ * columns are read into the heap. Columns of other types can not be cached.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class TestSetCache {
+
+  private static final int MAGIC = 0x47505453; // GPTS
+  private static final int VERSION = 1;
+  private static final int ALIGNMENT = 8;
+  private static final int CHECKSUM_WINDOW = 64 << 20;
+  // values written at once
+  private static final int CHUNK = 1 << 16;
+
+  private static final int DOUBLE = 0;
+  private static final int INTEGER = 1;
+  private static final int BOOLEAN = 2;
+  private static final int STRING = 3;
+
+  /**
+   * Fills an empty TestSet from the source file when the cache can not be used.
+   */
+  public interface Source {
+    public void load(TestSet testSet);
+  }
+
+  /**
+   * Fills the empty TestSet from the cache file, when the cache was made from the source file as it is now,
+   * read the same way, and has the columns of the TestSet. Otherwise the TestSet is filled from the source
+   * and the cache is written again.
+   * 
+   * @param layout
+   *          how the source is read, such as the column of every field
+   */
+  public static void load(final TestSet testSet, final File sourceFile, final File cacheFile,
+      final String layout, final Source source) throws IOException {
+    Debug.checkParam(testSet.getNumberOfTestCases() != 0, "TestSet is not empty");
+    final long checksum = checksum(sourceFile, layout);
+    if (cacheFile.exists() && open(testSet, cacheFile, checksum)) {
+      return;
+    }
+    Debug.println("building test set cache " + cacheFile + " from " + sourceFile);
+    source.load(testSet);
+    write(testSet, cacheFile, checksum);
+  }
+
+  /**
+   * @return the CRC32C of the contents of the file
+   */
+  public static long checksum(final File file) throws IOException {
+    return crc(file).getValue();
+  }
+
+  /**
+   * @return the CRC32C of the contents of the file followed by the layout
+   */
+  public static long checksum(final File file, final String layout) throws IOException {
+    final CRC32C crc = crc(file);
+    crc.update(layout.getBytes(StandardCharsets.UTF_8));
+    return crc.getValue();
+  }
+
+  private static CRC32C crc(final File file) throws IOException {
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel channel = raf.getChannel();
+      final long length = channel.size();
+      final CRC32C crc = new CRC32C();
+      for (long start = 0; start < length; start += CHECKSUM_WINDOW) {
+        final long window = Math.min(CHECKSUM_WINDOW, length - start);
+        crc.update(channel.map(FileChannel.MapMode.READ_ONLY, start, window));
+      }
+      return crc;
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Writes the values of the TestSet, first to a temporary file that replaces the cache file when complete.
+   * 
+   * @param sourceChecksum
+   *          the checksum of the file the values were read from
+   * @throws IllegalArgumentException
+   *           when a column type can not be cached
+   */
+  public static void write(final TestSet testSet, final File cacheFile, final long sourceChecksum)
+      throws IOException {
+    final String[] names = testSet.getCellNames();
+    final int rows = testSet.getNumberOfTestCases();
+    final int[] kinds = new int[names.length];
+    final byte[][][] strings = new byte[names.length][][];
+    final long[] lengths = new long[names.length];
+    for (int i = 0; i < names.length; i++) {
+      kinds[i] = getKind(testSet.getColumn(i).getType(), names[i]);
+      lengths[i] = getLength(testSet, i, kinds[i], strings);
+    }
+    final ByteBuffer header = createHeader(names, kinds, lengths, rows, sourceChecksum);
+
+    final File tmp = new File(cacheFile.getPath() + ".tmp");
+    final RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+    try {
+      raf.setLength(0);
+      final FileChannel channel = raf.getChannel();
+      write(channel, header);
+      for (int i = 0; i < names.length; i++) {
+        writeColumn(channel, testSet.getColumn(i), kinds[i], rows, strings[i]);
+        pad(channel);
+      }
+      channel.force(false);
+    } finally {
+      raf.close();
+    }
+    Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static int getKind(final Class<?> type, final String name) {
+    if (type == Double.class) {
+      return DOUBLE;
+    } else if (type == Integer.class) {
+      return INTEGER;
+    } else if (type == Boolean.class) {
+      return BOOLEAN;
+    } else if (type == String.class) {
+      return STRING;
+    }
+    throw new IllegalArgumentException("column " + name + " of type " + type.getName()
+        + " can not be cached");
+  }
+
+  /**
+   * @return the bytes of the column, String columns are encoded into strings
+   */
+  private static long getLength(final TestSet testSet, final int column, final int kind,
+      final byte[][][] strings) {
+    final int rows = testSet.getNumberOfTestCases();
+    switch (kind) {
+    case DOUBLE:
+      return rows * 8L;
+    case INTEGER:
+      return rows * 4L;
+    case BOOLEAN:
+      return rows;
+    default:
+      // offsets of the strings and of their end, then the bytes
+      long length = (rows + 1) * 4L;
+      strings[column] = new byte[rows][];
+      for (int row = 0; row < rows; row++) {
+        // a String column holds no null, it degrades to an Object column
+        strings[column][row] = ((String) testSet.getValue(column, row)).getBytes(StandardCharsets.UTF_8);
+        length += strings[column][row].length;
+      }
+      Debug.checkParam(length > Integer.MAX_VALUE, "String column too large to cache:", column);
+      return length;
+    }
+  }
+
+  private static ByteBuffer createHeader(final String[] names, final int[] kinds, final long[] lengths,
+      final int rows, final long sourceChecksum) {
+    final byte[][] encodedNames = new byte[names.length][];
+    int size = 4 + 4 + 8 + 4 + 4;
+    for (int i = 0; i < names.length; i++) {
+      encodedNames[i] = names[i].getBytes(StandardCharsets.UTF_8);
+      size += 4 + encodedNames[i].length + 1 + 8 + 8;
+    }
+    final int headerSize = align(size);
+    final ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC).putInt(VERSION).putLong(sourceChecksum).putInt(rows).putInt(names.length);
+    long offset = headerSize;
+    for (int i = 0; i < names.length; i++) {
+      header.putInt(encodedNames[i].length).put(encodedNames[i]).put((byte) kinds[i]);
+      header.putLong(offset).putLong(lengths[i]);
+      offset = align(offset + lengths[i]);
+    }
+    header.position(0);
+    return header;
+  }
+
+  private static void writeColumn(final FileChannel channel, final TestSetColumn column, final int kind,
+      final int rows, final byte[][] strings) throws IOException {
+    final ByteBuffer chunk = ByteBuffer.allocate(CHUNK * 8).order(ByteOrder.LITTLE_ENDIAN);
+    if (kind == STRING) {
+      int offset = 0;
+      for (int row = 0; row <= rows; row++) {
+        if (chunk.remaining() < 4) {
+          flush(channel, chunk);
+        }
+        chunk.putInt(offset);
+        if (row < rows) {
+          offset += strings[row].length;
+        }
+      }
+      flush(channel, chunk);
+      for (final byte[] string : strings) {
+        write(channel, ByteBuffer.wrap(string));
+      }
+      return;
+    }
+    for (int row = 0; row < rows; row++) {
+      if (chunk.remaining() < 8) {
+        flush(channel, chunk);
+      }
+      switch (kind) {
+      case DOUBLE:
+        chunk.putDouble(column.getDouble(row));
+        break;
+      case INTEGER:
+        chunk.putInt((Integer) column.get(row));
+        break;
+      default:
+        chunk.put((byte) (Boolean.TRUE.equals(column.get(row)) ? 1 : 0));
+      }
+    }
+    flush(channel, chunk);
+  }
+
+  private static void flush(final FileChannel channel, final ByteBuffer chunk) throws IOException {
+    chunk.flip();
+    write(channel, chunk);
+    chunk.clear();
+  }
+
+  private static void write(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static void pad(final FileChannel channel) throws IOException {
+    final long position = channel.position();
+    write(channel, ByteBuffer.allocate((int) (align(position) - position)));
+  }
+
+  private static int align(final int position) {
+    return (int) align((long) position);
+  }
+
+  private static long align(final long position) {
+    return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+  }
+
+  /**
+   * Fills the empty TestSet with the mapped columns of the cache file.
+   * 
+   * @param sourceChecksum
+   *          the checksum the source of the cache must have
+   * @return false if the cache has another checksum, version or other columns, the TestSet is not changed
+   *         then
+   */
+  public static boolean open(final TestSet testSet, final File cacheFile, final long sourceChecksum)
+      throws IOException {
+    Debug.checkParam(testSet.getNumberOfTestCases() != 0, "TestSet is not empty");
+    final RandomAccessFile raf = new RandomAccessFile(cacheFile, "r");
+    try {
+      final FileChannel channel = raf.getChannel();
+      final String[] names = testSet.getCellNames();
+      final int fixedSize = 4 + 4 + 8 + 4 + 4;
+      if (channel.size() < fixedSize) {
+        return false;
+      }
+      final MappedByteBuffer fixed = channel.map(FileChannel.MapMode.READ_ONLY, 0, fixedSize);
+      fixed.order(ByteOrder.LITTLE_ENDIAN);
+      if (fixed.getInt() != MAGIC || fixed.getInt() != VERSION || fixed.getLong() != sourceChecksum) {
+        return false;
+      }
+      final int rows = fixed.getInt();
+      if (fixed.getInt() != names.length) {
+        return false;
+      }
+      final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, fixedSize,
+          Math.min(channel.size() - fixedSize, Integer.MAX_VALUE)).order(ByteOrder.LITTLE_ENDIAN);
+      final TestSetColumn[] columns = new TestSetColumn[names.length];
+      for (int i = 0; i < names.length; i++) {
+        final byte[] name = new byte[header.getInt()];
+        header.get(name);
+        final int kind = header.get();
+        final long offset = header.getLong();
+        final long length = header.getLong();
+        if (!names[i].equals(new String(name, StandardCharsets.UTF_8))
+            || kind != getKind(testSet.getColumn(i).getType(), names[i])) {
+          return false;
+        }
+        final MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        columns[i] = createColumn(kind, data, rows);
+      }
+      for (int i = 0; i < columns.length; i++) {
+        testSet.setColumn(i, columns[i]);
+      }
+      testSet.rowsAdded(rows);
+      return true;
+    } finally {
+      // mappings stay valid after the channel is closed
+      raf.close();
+    }
+  }
+
+  private static TestSetColumn createColumn(final int kind, final MappedByteBuffer data, final int rows) {
+    switch (kind) {
+    case DOUBLE:
+      return new TestSetColumn.MappedDoubleColumn(data.asDoubleBuffer());
+    case INTEGER:
+      return new TestSetColumn.MappedIntColumn(data.asIntBuffer());
+    case BOOLEAN:
+      return new TestSetColumn.MappedBooleanColumn(data);
+    default:
+      TestSetColumn column = TestSetColumn.create(String.class);
+      final int stringsStart = (rows + 1) * 4;
+      for (int row = 0; row < rows; row++) {
+        final int start = data.getInt(row * 4);
+        final int end = data.getInt((row + 1) * 4);
+        final byte[] bytes = new byte[end - start];
+        for (int b = 0; b < bytes.length; b++) {
+          bytes[b] = data.get(stringsStart + start + b);
+        }
+        column = column.add(new String(bytes, StandardCharsets.UTF_8));
+      }
+      return column;
+    }
+  }
+}
@@ -0,0 +1,530 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * One column of a TestSet. Double, Integer and Boolean columns only keep a primitive array, get boxes the
+ * value of one row, so evaluators that can should read getDouble or the arrays instead. A column degrades to
+ * an Object column when a value of another type (or null) is added. Mapped columns read their values from a
+ * TestSetCache file.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public abstract class TestSetColumn {
+
+  protected int size = 0;
+
+  /**
+   * @return a column for values of type
+   */
+  public static TestSetColumn create(final Class<?> type) {
+    if (type == Double.class) {
+      return new DoubleColumn();
+    } else if (type == Integer.class) {
+      return new IntColumn();
+    } else if (type == Boolean.class) {
+      return new BooleanColumn();
+    } else if (type == String.class) {
+      return new StringColumn();
+    }
+    return new ObjectColumn();
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the value of the row, boxed by primitive columns
+   */
+  public abstract Object get(int row);
+
+  /**
+   * @return the value as double, only for Double and Integer columns or Object columns holding numbers
+   */
+  public double getDouble(final int row) {
+    return ((Number) get(row)).doubleValue();
+  }
+
+  public abstract Class<?> getType();
+
+  /**
+   * @return true if getDouble can be used for every row
+   */
+  public boolean isNumeric() {
+    return false;
+  }
+
+  /**
+   * Adds a value.
+   * 
+   * @return the column to use from now on, this or a degraded Object column
+   */
+  public TestSetColumn add(final Object value) {
+    if (!accepts(value)) {
+      return new ObjectColumn(toArray(), size).add(value);
+    }
+    ensureCapacity(size + 1);
+    store(size, value);
+    size++;
+    return this;
+  }
+
+  /**
+   * @return a column that grows in place when added to, this unless the column is mapped
+   */
+  TestSetColumn toHeap() {
+    return this;
+  }
+
+  public Object[] toArray() {
+    final Object[] values = new Object[size];
+    for (int row = 0; row < size; row++) {
+      values[row] = get(row);
+    }
+    return values;
+  }
+
+  protected abstract boolean accepts(Object value);
+
+  protected abstract void store(int row, Object value);
+
+  /**
+   * Makes room for capacity values.
+   */
+  protected abstract void ensureCapacity(int capacity);
+
+  static int grownCapacity(final int length, final int capacity) {
+    return Math.max(capacity, length * 2);
+  }
+
+  public static class DoubleColumn extends TestSetColumn {
+    private double[] values = new double[16];
+
+    public double[] getValues() {
+      return values;
+    }
+
+    @Override
+    public double getDouble(final int row) {
+      return values[row];
+    }
+
+    @Override
+    public boolean isNumeric() {
+      return true;
+    }
+
+    @Override
+    public Class<?> getType() {
+      return Double.class;
+    }
+
+    @Override
+    protected boolean accepts(final Object value) {
+      return value instanceof Double;
+    }
+
+    /**
+     * Adds a value without boxing it.
+     */
+    public void addDouble(final double value) {
+      ensureCapacity(size + 1);
+      values[size++] = value;
+    }
+
+    @Override
+    protected void store(final int row, final Object value) {
+      values[row] = (Double) value;
+    }
+
+    @Override
+    protected void ensureCapacity(final int capacity) {
+      if (values.length < capacity) {
+        values = Arrays.copyOf(values, grownCapacity(values.length, capacity));
+      }
+    }
+
+    @Override
+    public Object get(final int row) {
+      return Double.valueOf(values[row]);
+    }
+  }
+
+  public static class IntColumn extends TestSetColumn {
+    private int[] values = new int[16];
+
+    public int[] getValues() {
+      return values;
+    }
+
+    @Override
+    public double getDouble(final int row) {
+      return values[row];
+    }
+
+    @Override
+    public boolean isNumeric() {
+      return true;
+    }
+
+    @Override
+    public Class<?> getType() {
+      return Integer.class;
+    }
+
+    @Override
+    protected boolean accepts(final Object value) {
+      return value instanceof Integer;
+    }
+
+    /**
+     * Adds a value without boxing it.
+     */
+    public void addInt(final int value) {
+      ensureCapacity(size + 1);
+      values[size++] = value;
+    }
+
+    @Override
+    protected void store(final int row, final Object value) {
+      values[row] = (Integer) value;
+    }
+
+    @Override
+    protected void ensureCapacity(final int capacity) {
+      if (values.length < capacity) {
+        values = Arrays.copyOf(values, grownCapacity(values.length, capacity));
+      }
+    }
+
+    @Override
+    public Object get(final int row) {
+      return Integer.valueOf(values[row]);
+    }
+  }
+
+  public static class BooleanColumn extends TestSetColumn {
+    private boolean[] values = new boolean[16];
+
+    public boolean[] getValues() {
+      return values;
+    }
+
+    @Override
+    public Class<?> getType() {
+      return Boolean.class;
+    }
+
+    @Override
+    protected boolean accepts(final Object value) {
+      return value instanceof Boolean;
+    }
+
+    /**
+     * Adds a value without boxing it.
+     */
+    public void addBoolean(final boolean value) {
+      ensureCapacity(size + 1);
+      values[size++] = value;
+    }
+
+    @Override
+    protected void store(final int row, final Object value) {
+      values[row] = (Boolean) value;
+    }
+
+    @Override
+    protected void ensureCapacity(final int capacity) {
+      if (values.length < capacity) {
+        values = Arrays.copyOf(values, grownCapacity(values.length, capacity));
+      }
+    }
+
+    @Override
+    public Object get(final int row) {
+      return Boolean.valueOf(values[row]);
+    }
+  }
+
+  public static class StringColumn extends TestSetColumn {
+    private String[] values = new String[16];
+
+    public String[] getValues() {
+      return values;
+    }
+
+    @Override
+    public Object get(final int row) {
+      return values[row];
+    }
+
+    @Override
+    public Class<?> getType() {
+      return String.class;
+    }
+
+    @Override
+    protected boolean accepts(final Object value) {
+      return value instanceof String;
+    }
+
+    @Override
+    protected void store(final int row, final Object value) {
+      values[row] = (String) value;
+    }
+
+    @Override
+    protected void ensureCapacity(final int capacity) {
+      if (values.length < capacity) {
+        values = Arrays.copyOf(values, grownCapacity(values.length, capacity));
+      }
+    }
+  }
+
+  public static class ObjectColumn extends TestSetColumn {
+    private Object[] values;
+
+    public ObjectColumn() {
+      values = new Object[16];
+    }
+
+    ObjectColumn(final Object[] values, final int size) {
+      this.values = values;
+      this.size = size;
+    }
+
+    @Override
+    public Object get(final int row) {
+      return values[row];
+    }
+
+    @Override
+    public Class<?> getType() {
+      return Object.class;
+    }
+
+    @Override
+    protected boolean accepts(final Object value) {
+      return true;
+    }
+
+    @Override
+    protected void store(final int row, final Object value) {
+      values[row] = value;
+    }
+
+    @Override
+    protected void ensureCapacity(final int capacity) {
+      if (values.length < capacity) {
+        values = Arrays.copyOf(values, grownCapacity(values.length, capacity));
+      }
+    }
+  }
+
+  /**
+   * A Double column in a mapped TestSetCache file. Adding a value copies the column to the heap.
+   */
+  public static class MappedDoubleColumn extends TestSetColumn {
+    private final DoubleBuffer values;
+
+    MappedDoubleColumn(final DoubleBuffer values) {
+      this.values = values;
+      size = values.limit();
+    }
+
+    @Override
+    public double getDouble(final int row) {
+      return values.get(row);
+    }
+
+    @Override
+    public boolean isNumeric() {
+      return true;
+    }
+
+    @Override
+    public Class<?> getType() {
+      return Double.class;
+    }
+
+    @Override
+    public TestSetColumn add(final Object value) {
+      return toHeap().add(value);
+    }
+
+    @Override
+    TestSetColumn toHeap() {
+      final DoubleColumn heap = new DoubleColumn();
+      heap.ensureCapacity(size + 1);
+      for (int row = 0; row < size; row++) {
+        heap.addDouble(values.get(row));
+      }
+      return heap;
+    }
+
+    @Override
+    public Object get(final int row) {
+      return Double.valueOf(values.get(row));
+    }
+
+    @Override
+    protected boolean accepts(final Object value) {
+      return false;
+    }
+
+    @Override
+    protected void store(final int row, final Object value) {
+      throw new IllegalStateException("mapped columns are read only");
+    }
+
+    @Override
+    protected void ensureCapacity(final int capacity) {
+      throw new IllegalStateException("mapped columns are read only");
+    }
+  }
+
+  /**
+   * An Integer column in a mapped TestSetCache file. Adding a value copies the column to the heap.
+   */
+  public static class MappedIntColumn extends TestSetColumn {
+    private final IntBuffer values;
+
+    MappedIntColumn(final IntBuffer values) {
+      this.values = values;
+      size = values.limit();
+    }
+
+    public int getInt(final int row) {
+      return values.get(row);
+    }
+
+    @Override
+    public double getDouble(final int row) {
+      return values.get(row);
+    }
+
+    @Override
+    public boolean isNumeric() {
+      return true;
+    }
+
+    @Override
+    public Class<?> getType() {
+      return Integer.class;
+    }
+
+    @Override
+    public TestSetColumn add(final Object value) {
+      return toHeap().add(value);
+    }
+
+    @Override
+    TestSetColumn toHeap() {
+      final IntColumn heap = new IntColumn();
+      heap.ensureCapacity(size + 1);
+      for (int row = 0; row < size; row++) {
+        heap.addInt(values.get(row));
+      }
+      return heap;
+    }
+
+    @Override
+    public Object get(final int row) {
+      return Integer.valueOf(values.get(row));
+    }
+
+    @Override
+    protected boolean accepts(final Object value) {
+      return false;
+    }
+
+    @Override
+    protected void store(final int row, final Object value) {
+      throw new IllegalStateException("mapped columns are read only");
+    }
+
+    @Override
+    protected void ensureCapacity(final int capacity) {
+      throw new IllegalStateException("mapped columns are read only");
+    }
+  }
+
+  /**
+   * A Boolean column in a mapped TestSetCache file, a byte per value. Adding a value copies the column to the
+   * heap.
+   */
+  public static class MappedBooleanColumn extends TestSetColumn {
+    private final ByteBuffer values;
+
+    MappedBooleanColumn(final ByteBuffer values) {
+      this.values = values;
+      size = values.limit();
+    }
+
+    public boolean getBoolean(final int row) {
+      return values.get(row) != 0;
+    }
+
+    @Override
+    public Class<?> getType() {
+      return Boolean.class;
+    }
+
+    @Override
+    public TestSetColumn add(final Object value) {
+      return toHeap().add(value);
+    }
+
+    @Override
+    TestSetColumn toHeap() {
+      final BooleanColumn heap = new BooleanColumn();
+      heap.ensureCapacity(size + 1);
+      for (int row = 0; row < size; row++) {
+        heap.addBoolean(values.get(row) != 0);
+      }
+      return heap;
+    }
+
+    @Override
+    public Object get(final int row) {
+      return Boolean.valueOf(values.get(row) != 0);
+    }
+
+    @Override
+    protected boolean accepts(final Object value) {
+      return false;
+    }
+
+    @Override
+    protected void store(final int row, final Object value) {
+      throw new IllegalStateException("mapped columns are read only");
+    }
+
+    @Override
+    protected void ensureCapacity(final int capacity) {
+      throw new IllegalStateException("mapped columns are read only");
+    }
+  }
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import nl.bluevoid.genpro.util.Debug;
+
+/**
+ * Loads comma separated values into the columns of a TestSet, streaming over the memory mapped file. Numbers
+ * are parsed from the bytes and stored in the primitive arrays of Double, Integer and Boolean columns, only
+ * values of String and other columns become Strings. Empty lines and lines starting with # or // are skipped,
+ * spaces around values are ignored.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class TestSetLoader {
+
+  /**
+   * Told about the progress of a load, about every percent of the file and at the end.
+   */
+  public interface Progress {
+    public void loaded(long bytes, long totalBytes, int rows);
+  }
+
+  private static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+  private static final int DOUBLE = 0;
+  private static final int INTEGER = 1;
+  private static final int BOOLEAN = 2;
+  private static final int TEXT = 3;
+  private static final int SKIP = 4;
+
+  // exact powers of ten, a double holds them without rounding
+  private static final double[] POWERS_OF_TEN = new double[23];
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private final TestSet testSet;
+  private final TestSetColumn[] columns;
+  // the index of the column of a field in the TestSet
+  private final int[] columnIndices;
+  private final int[] kinds;
+  private final int fields;
+  private int windowSize = DEFAULT_WINDOW_SIZE;
+  // the values of a line, parsed before any is stored
+  private final double[] numbers;
+  private final String[] texts;
+  private Progress progress = new Progress() {
+    public void loaded(final long bytes, final long totalBytes, final int rows) {
+      Debug.println("loaded " + rows + " rows, " + (totalBytes == 0 ? 100 : bytes * 100 / totalBytes) + "%");
+    }
+  };
+
+  // the window being parsed
+  private MappedByteBuffer buffer;
+  private int lineNr;
+
+  /**
+   * @param columnNames
+   *          the column of every field of a line, TestSet.SKIP_COLUMN for fields to skip
+   */
+  public TestSetLoader(final TestSet testSet, final String... columnNames) {
+    this.testSet = testSet;
+    columns = new TestSetColumn[columnNames.length];
+    columnIndices = new int[columnNames.length];
+    kinds = new int[columnNames.length];
+    for (int i = 0; i < columnNames.length; i++) {
+      if (columnNames[i].equals(TestSet.SKIP_COLUMN)) {
+        kinds[i] = SKIP;
+        continue;
+      }
+      columnIndices[i] = testSet.getColumnIndex(columnNames[i]);
+      // columns mapped by a TestSetCache are read only, lines are added to a copy
+      columns[i] = testSet.getColumn(columnNames[i]).toHeap();
+      testSet.setColumn(columnIndices[i], columns[i]);
+      Debug.checkParam(columns[i].size() != testSet.getNumberOfTestCases(), "column is longer than the others:",
+          columnNames[i]);
+      if (columns[i] instanceof TestSetColumn.DoubleColumn) {
+        kinds[i] = DOUBLE;
+      } else if (columns[i] instanceof TestSetColumn.IntColumn) {
+        kinds[i] = INTEGER;
+      } else if (columns[i] instanceof TestSetColumn.BooleanColumn) {
+        kinds[i] = BOOLEAN;
+      } else {
+        // String and Object columns accept Strings without degrading
+        kinds[i] = TEXT;
+      }
+    }
+    for (final String name : testSet.getCellNames()) {
+      boolean loaded = false;
+      for (final String columnName : columnNames) {
+        loaded |= columnName.equals(name);
+      }
+      Debug.checkParam(!loaded, "no field for column:", name);
+    }
+    fields = columnNames.length;
+    numbers = new double[fields];
+    texts = new String[fields];
+  }
+
+  /**
+   * @param progress
+   *          null to be told nothing
+   */
+  public void setProgress(final Progress progress) {
+    this.progress = progress;
+  }
+
+  /**
+   * @param windowSize
+   *          the bytes of the file mapped at once, a window is mapped again from the start of the line it ends
+   *          in, so lines must be shorter
+   */
+  public void setWindowSize(final int windowSize) {
+    Debug.checkRange(windowSize, 2, Integer.MAX_VALUE);
+    this.windowSize = windowSize;
+  }
+
+  /**
+   * Adds the lines of the file to the TestSet.
+   * 
+   * @return the number of lines added
+   * @throws IllegalArgumentException
+   *           when a line has another number of fields or a value that does not fit its column, the lines
+   *           before it are added
+   */
+  public int load(final File file) throws IOException {
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel channel = raf.getChannel();
+      final long length = channel.size();
+      final long progressStep = Math.max(1, length / 100);
+      long nextProgress = progressStep;
+      long start = 0;
+      int rows = 0;
+      lineNr = 0;
+      while (start < length) {
+        final int window = (int) Math.min(windowSize, length - start);
+        final boolean last = start + window == length;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, window);
+        int lineStart = 0;
+        while (lineStart < window) {
+          final int end = findLineEnd(lineStart, window);
+          if (end == window && !last) {
+            // continued in the next window
+            break;
+          }
+          lineNr++;
+          if (parseLine(lineStart, end)) {
+            rows++;
+          }
+          lineStart = end + 1;
+          if (start + lineStart >= nextProgress && progress != null) {
+            progress.loaded(start + lineStart, length, rows);
+            nextProgress = start + lineStart + progressStep;
+          }
+        }
+        if (lineStart == 0 && !last) {
+          throw new IllegalArgumentException("line " + (lineNr + 1) + " is longer than " + windowSize + " bytes");
+        }
+        start += lineStart;
+        if (last) {
+          break;
+        }
+      }
+      if (progress != null) {
+        progress.loaded(length, length, rows);
+      }
+      return rows;
+    } finally {
+      buffer = null;
+      raf.close();
+    }
+  }
+
+  private int findLineEnd(final int from, final int limit) {
+    int i = from;
+    while (i < limit && buffer.get(i) != '\n') {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * @return true if the line was added, false for comments and empty lines
+   */
+  private boolean parseLine(final int from, final int end) {
+    int i = skipSpaces(from, end);
+    int last = end;
+    while (last > i && isSpace(buffer.get(last - 1))) {
+      last--;
+    }
+    if (i == last || buffer.get(i) == '#' || (buffer.get(i) == '/' && i + 1 < last && buffer.get(i + 1) == '/')) {
+      return false;
+    }
+    // check the number of fields first, so a line is added completely or not at all
+    int separators = 0;
+    for (int j = i; j < last; j++) {
+      if (buffer.get(j) == ',') {
+        separators++;
+      }
+    }
+    if (separators + 1 != fields) {
+      throw new IllegalArgumentException("line " + lineNr + " has " + (separators + 1) + " fields, expected "
+          + fields);
+    }
+    // parse before storing, for the same reason
+    for (int field = 0; field < fields; field++) {
+      int fieldEnd = i;
+      while (fieldEnd < last && buffer.get(fieldEnd) != ',') {
+        fieldEnd++;
+      }
+      final int valueStart = skipSpaces(i, fieldEnd);
+      int valueEnd = fieldEnd;
+      while (valueEnd > valueStart && isSpace(buffer.get(valueEnd - 1))) {
+        valueEnd--;
+      }
+      switch (kinds[field]) {
+      case DOUBLE:
+        numbers[field] = parseDouble(valueStart, valueEnd, field);
+        break;
+      case INTEGER:
+        numbers[field] = parseInt(valueStart, valueEnd, field);
+        break;
+      case BOOLEAN:
+        numbers[field] = parseBoolean(valueStart, valueEnd) ? 1 : 0;
+        break;
+      case TEXT:
+        texts[field] = getText(valueStart, valueEnd);
+        break;
+      default:
+        // skipped
+      }
+      i = fieldEnd + 1;
+    }
+    for (int field = 0; field < fields; field++) {
+      switch (kinds[field]) {
+      case DOUBLE:
+        ((TestSetColumn.DoubleColumn) columns[field]).addDouble(numbers[field]);
+        break;
+      case INTEGER:
+        ((TestSetColumn.IntColumn) columns[field]).addInt((int) numbers[field]);
+        break;
+      case BOOLEAN:
+        ((TestSetColumn.BooleanColumn) columns[field]).addBoolean(numbers[field] == 1);
+        break;
+      case TEXT:
+        // add returns the column to use from now on
+        columns[field] = columns[field].add(texts[field]);
+        testSet.setColumn(columnIndices[field], columns[field]);
+        break;
+      default:
+        // skipped
+      }
+    }
+    testSet.rowsAdded(1);
+    return true;
+  }
+
+  private int skipSpaces(int i, final int end) {
+    while (i < end && isSpace(buffer.get(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isSpace(final byte b) {
+    return b == ' ' || b == '\t' || b == '\r';
+  }
+
+  /**
+   * Parses plain decimal numbers from the bytes, when the digits and exponent allow an exact result. Other
+   * notations, like NaN, Infinity or long fractions, are parsed by Double.parseDouble.
+   */
+  private double parseDouble(final int from, final int end, final int field) {
+    int i = from;
+    boolean negative = false;
+    if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+      negative = buffer.get(i) == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean anyDigit = false;
+    while (i < end && isDigit(buffer.get(i))) {
+      anyDigit = true;
+      if (mantissa != 0 || buffer.get(i) != '0') {
+        digits++;
+      }
+      mantissa = mantissa * 10 + (buffer.get(i) - '0');
+      i++;
+      if (digits > 18) {
+        return parseSlow(from, end, field);
+      }
+    }
+    if (i < end && buffer.get(i) == '.') {
+      i++;
+      while (i < end && isDigit(buffer.get(i))) {
+        anyDigit = true;
+        if (mantissa != 0 || buffer.get(i) != '0') {
+          digits++;
+        }
+        mantissa = mantissa * 10 + (buffer.get(i) - '0');
+        exponent--;
+        i++;
+        if (digits > 18) {
+          return parseSlow(from, end, field);
+        }
+      }
+    }
+    if (!anyDigit) {
+      return parseSlow(from, end, field);
+    }
+    if (i < end && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+      i++;
+      boolean negativeExponent = false;
+      if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+        negativeExponent = buffer.get(i) == '-';
+        i++;
+      }
+      int e = 0;
+      final int exponentStart = i;
+      while (i < end && isDigit(buffer.get(i)) && e < 10000) {
+        e = e * 10 + (buffer.get(i) - '0');
+        i++;
+      }
+      if (i == exponentStart) {
+        return parseSlow(from, end, field);
+      }
+      exponent += negativeExponent ? -e : e;
+    }
+    if (i != end || mantissa >= 1L << 53 || exponent < -22 || exponent > 22) {
+      return parseSlow(from, end, field);
+    }
+    // both are exact, so the result is rounded once, like Double.parseDouble does
+    final double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa
+        * POWERS_OF_TEN[exponent];
+    return negative ? -value : value;
+  }
+
+  private double parseSlow(final int from, final int end, final int field) {
+    try {
+      return Double.parseDouble(getText(from, end));
+    } catch (NumberFormatException e) {
+      throw notParsed(from, end, field, e);
+    }
+  }
+
+  private int parseInt(final int from, final int end, final int field) {
+    int i = from;
+    boolean negative = false;
+    if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+      negative = buffer.get(i) == '-';
+      i++;
+    }
+    if (i == end) {
+      throw notParsed(from, end, field, null);
+    }
+    long value = 0;
+    while (i < end) {
+      if (!isDigit(buffer.get(i))) {
+        throw notParsed(from, end, field, null);
+      }
+      value = value * 10 + (buffer.get(i) - '0');
+      if (value > Integer.MAX_VALUE + 1L) {
+        throw notParsed(from, end, field, null);
+      }
+      i++;
+    }
+    value = negative ? -value : value;
+    if (value > Integer.MAX_VALUE) {
+      throw notParsed(from, end, field, null);
+    }
+    return (int) value;
+  }
+
+  /**
+   * @return true for true in any case, false for anything else, like Boolean.valueOf
+   */
+  private boolean parseBoolean(final int from, final int end) {
+    if (end - from != 4) {
+      return false;
+    }
+    return (buffer.get(from) | 0x20) == 't' && (buffer.get(from + 1) | 0x20) == 'r'
+        && (buffer.get(from + 2) | 0x20) == 'u' && (buffer.get(from + 3) | 0x20) == 'e';
+  }
+
+  private String getText(final int from, final int end) {
+    final byte[] bytes = new byte[end - from];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = buffer.get(from + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static boolean isDigit(final byte b) {
+    return b >= '0' && b <= '9';
+  }
+
+  private IllegalArgumentException notParsed(final int from, final int end, final int field,
+      final Throwable cause) {
+    final IllegalArgumentException e = new IllegalArgumentException("line " + lineNr + " field " + (field + 1)
+        + ": not a " + columns[field].getType().getSimpleName() + ":" + getText(from, end));
+    if (cause != null) {
+      e.initCause(cause);
+    }
+    return e;
+  }
+}
@@ -1,10 +1,20 @@
 package nl.bluevoid.genpro;
 
+import java.util.Arrays;
+import java.util.Random;
+
+import nl.bluevoid.genpro.util.Debug;
+import nl.bluevoid.genpro.util.ParallelLoopPool;
+
 public abstract class TestSetSolutionEvaluator{
 
   protected final TestSet testSet;
   private static final int letterWrongpenalty = 1;
   protected ScoringType scoringType = ScoringType.SCORING_AVARAGE_PER_TESTCASE;
+  private volatile int modificationCount = 0;
+  private int subsampleSize = 0;
+  private boolean stratified = false;
+  private volatile int[] subsample = null;
 
   public TestSetSolutionEvaluator() {
     this.testSet = createTestSet();
@@ -17,6 +27,89 @@ public abstract class TestSetSolutionEvaluator{
    */
   public void setScoringType(ScoringType scoringType) {
     this.scoringType = scoringType;
+    evaluationChanged();
+  }
+
+  /**
+   * Call when grids evaluated before would get another score now, so cached scores are dropped.
+   */
+  protected void evaluationChanged() {
+    modificationCount++;
+  }
+
+  /**
+   * @return the number of times evaluationChanged() was called
+   */
+  public int getModificationCount() {
+    return modificationCount;
+  }
+
+  /**
+   * Scores grids on a subset of size test cases instead of all of them. The subset is drawn by
+   * nextSubsample(), stratified picks one test case from each of size equal ranges of the test set.
+   * 
+   * @param size
+   *          0 to evaluate all test cases
+   */
+  public void setSubsampling(final int size, final boolean stratified) {
+    Debug.checkRange(size, 0, Integer.MAX_VALUE);
+    this.subsampleSize = size;
+    this.stratified = stratified;
+    subsample = null;
+    evaluationChanged();
+  }
+
+  public boolean isSubsampling() {
+    return subsampleSize > 0;
+  }
+
+  /**
+   * Draws a new subset of test cases, used by evaluate() until the next call. All grids scored between two
+   * calls are scored on the same test cases and can be compared.
+   */
+  public void nextSubsample(final Random random) {
+    final int n = getNumberOfEvaluatedTestCases();
+    if (subsampleSize == 0 || subsampleSize >= n) {
+      subsample = null;
+    } else if (stratified) {
+      final int[] rows = new int[subsampleSize];
+      for (int i = 0; i < rows.length; i++) {
+        final int start = (int) ((long) n * i / rows.length);
+        final int end = (int) ((long) n * (i + 1) / rows.length);
+        rows[i] = start + random.nextInt(end - start);
+      }
+      subsample = rows;
+    } else {
+      // partial Fisher-Yates shuffle
+      final int[] all = new int[n];
+      for (int i = 0; i < n; i++) {
+        all[i] = i;
+      }
+      for (int i = 0; i < subsampleSize; i++) {
+        final int j = i + random.nextInt(n - i);
+        final int t = all[i];
+        all[i] = all[j];
+        all[j] = t;
+      }
+      final int[] rows = Arrays.copyOf(all, subsampleSize);
+      Arrays.sort(rows);
+      subsample = rows;
+    }
+    evaluationChanged();
+  }
+
+  /**
+   * @return the ascending test case numbers evaluate() uses, null when all are used
+   */
+  public int[] getSubsample() {
+    return subsample;
+  }
+
+  /**
+   * @return the number of test cases evaluated when not subsampling
+   */
+  protected int getNumberOfEvaluatedTestCases() {
+    return testSet.getNumberOfTestCases();
   }
 
   public ScoringType getScoringType() {
@@ -27,6 +120,39 @@ public abstract class TestSetSolutionEvaluator{
 
   public abstract double evaluate(final Grid grid);
 
+  /**
+   * Evaluates, but may stop as soon as the score is known to be higher than rejectionThreshold. The result
+   * is exact when it is not higher than the threshold, otherwise it can be a lower bound of the score. By
+   * default the grid is evaluated completely.
+   */
+  public double evaluate(final Grid grid, final double rejectionThreshold) {
+    return evaluate(grid);
+  }
+
+  /**
+   * Like evaluate(grid, rejectionThreshold), but may split the test cases into shards of at least shardSize
+   * that are scored on the threads of the pool. By default the test cases are not split.
+   */
+  public double evaluate(final Grid grid, final double rejectionThreshold, final ParallelLoopPool pool,
+      final int shardSize) {
+    return evaluate(grid, rejectionThreshold);
+  }
+
+  /**
+   * @return the number of shards evaluate(grid, rejectionThreshold, pool, shardSize) splits the test cases
+   *         into, 1 when they are not split
+   */
+  public int getShardCount(final int shardSize) {
+    return 1;
+  }
+
+  /**
+   * Evaluates on all test cases, also when subsampling. By default the same as evaluate(grid).
+   */
+  public double evaluateFull(final Grid grid) {
+    return evaluate(grid);
+  }
+
   public abstract TestSetStatistics getDeviations(final Grid grid);
 
   public abstract double scoreGrid(Grid g);
@@ -37,6 +163,10 @@ public abstract class TestSetSolutionEvaluator{
     return Math.abs(calculated.doubleValue() - expected.doubleValue());
   }
 
+  public double getAbsoluteNumberDifference(final double calculated, final double expected) {
+    return Math.abs(calculated - expected);
+  }
+
   public double getAbsoluteNumberDifference(final Number calculated, final NumberFeedback expected) {
     double calced = calculated.doubleValue();
     double expect = expected.value;
@@ -52,8 +182,12 @@ public abstract class TestSetSolutionEvaluator{
   }
 
   public double getAbsoluteNumberDifferencePercentage(final Number calculated, final Number expected) {
-    final double diff = Math.abs(calculated.doubleValue() - expected.doubleValue());
-    return (diff / expected.doubleValue()) * 100;
+    return getAbsoluteNumberDifferencePercentage(calculated.doubleValue(), expected.doubleValue());
+  }
+
+  public double getAbsoluteNumberDifferencePercentage(final double calculated, final double expected) {
+    final double diff = Math.abs(calculated - expected);
+    return (diff / expected) * 100;
   }
 
   protected double getStringDifference(String calculated, String expected) {
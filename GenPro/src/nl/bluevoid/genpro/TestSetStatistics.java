@@ -50,7 +50,7 @@ public class TestSetStatistics {
     this.testSet = testSet;
     // create arrays for output result: actual & expected
     for (final String name : testSet.getOutputCellNames()) {
-      Object[] vals = testSet.getValues().get(name).toArray(new Object[0]);
+      Object[] vals = testSet.getColumn(name).toArray();
       results.put(name + EXPECTED, vals);
       results.put(name + ACTUAL, new Object[vals.length]);
       results.put(name + DIFF, new Object[vals.length]);
@@ -60,7 +60,7 @@ public class TestSetStatistics {
 
     // create Arrays for inputs
     for (final String name : testSet.getInputCellNames()) {
-      Object[] vals = testSet.getValues().get(name).toArray(new Object[0]);
+      Object[] vals = testSet.getColumn(name).toArray();
       results.put(name, vals);
     }
   }
@@ -40,8 +40,6 @@ import nl.bluevoid.genpro.util.StringUtil;
  */
 public class Util {
 
-  public static final Random random = new Random(System.currentTimeMillis() % 300000);
-
   public static final CellInterface[] clone(final Cell[] constantCells2) {
     final Cell[] obj = constantCells2.clone();
     for (int i = 0; i < obj.length; i++) {
@@ -64,7 +62,7 @@ public class Util {
   }
 
   public static final Double mutateperc(final Double value, final double percentage, final double min,
-      final double max) {
+      final double max, final Random random) {
 
     // get number form -percentage till +percentage
     final double percentageDelta = (random.nextDouble() * percentage * 2 - percentage);
@@ -75,7 +73,7 @@ public class Util {
   }
 
   public static Integer mutateperc(final Integer value, final int percentage, final double min,
-      final double max) {
+      final double max, final Random random) {
     // get number from 1 till +percentage of range
     final int range = (int) Math.abs(max - min);
     final int delta = random.nextInt((range * percentage / 100) - 1) + 1;
@@ -94,7 +92,8 @@ public class Util {
     return b.toString();
   }
 
-  public static final ValueCell getRandomCell(final ArrayList<ValueCell> cells) throws NoCellFoundException {
+  public static final ValueCell getRandomCell(final ArrayList<ValueCell> cells, final Random random)
+      throws NoCellFoundException {
     if (cells.size() == 0)
       throw new NoCellFoundException();
     final ValueCell cell = cells.get(random.nextInt(cells.size()));
@@ -102,7 +101,8 @@ public class Util {
     return cell;
   }
 
-  public static final ValueCell getRandomCell(final ValueCell[] cells) throws NoCellFoundException {
+  public static final ValueCell getRandomCell(final ValueCell[] cells, final Random random)
+      throws NoCellFoundException {
     if (cells.length == 0)
       throw new NoCellFoundException();
     final ValueCell cell = cells[random.nextInt(cells.length)];
@@ -122,8 +122,8 @@ public class Util {
     }
   }
 
-  public static final ValueCell getRandomCell(final Class<?> contentClass, final ArrayList<ValueCell> cells)
-      throws NoCellFoundException {
+  public static final ValueCell getRandomCell(final Class<?> contentClass, final ArrayList<ValueCell> cells,
+      final Random random) throws NoCellFoundException {
     final ArrayList<ValueCell> typedCells = new ArrayList<ValueCell>();
     for (final ValueCell cell : cells) {
       final Class<?> content = cell.getValueType();
@@ -132,7 +132,7 @@ public class Util {
       }
     }
     try {
-      return Util.getRandomCell(typedCells);
+      return Util.getRandomCell(typedCells, random);
     } catch (NoCellFoundException e) {
       e.addInfo("\n nocell found of type:" + contentClass);
       e.addInfo("cells:\n" + StringUtil.join("\n", cells.toArray()));
@@ -142,7 +142,8 @@ public class Util {
   }
 
   public static final ValueCell getRandomCellFromCalculables(final Class<?> contentClass,
-      final Calculable[] cells, final boolean needsToLeadToInput) throws NoCellFoundException {
+      final Calculable[] cells, final boolean needsToLeadToInput, final Random random)
+      throws NoCellFoundException {
     final ArrayList<ValueCell> typedCells = new ArrayList<ValueCell>();
     for (final Calculable cell : cells) {
       if(needsToLeadToInput && cell.isLeadsToInputCell())
@@ -169,7 +170,7 @@ public class Util {
         throw new IllegalArgumentException("not supported:" + cell.getCellType());
       }
     }
-    return Util.getRandomCell(typedCells);
+    return Util.getRandomCell(typedCells, random);
   }
 
   private static void addIfMatches(final Class<?> contentClass, final ArrayList<ValueCell> typedCells,
@@ -180,8 +181,8 @@ public class Util {
     }
   }
 
-  public static final ValueCell getRandomCell(final Class<?> contentClass, final ValueCell[] cells)
-      throws NoCellFoundException {
+  public static final ValueCell getRandomCell(final Class<?> contentClass, final ValueCell[] cells,
+      final Random random) throws NoCellFoundException {
     final ArrayList<ValueCell> typedCells = new ArrayList<ValueCell>();
     for (final ValueCell cell : cells) {
       final Class<?> content = cell.getValueType();
@@ -189,7 +190,7 @@ public class Util {
         typedCells.add(cell);
       }
     }
-    return Util.getRandomCell(typedCells);
+    return Util.getRandomCell(typedCells, random);
   }
 
   public static final void printCallTargets(
@@ -282,8 +283,8 @@ public class Util {
 
   private static final ValueCell[] emptyValueCell = new ValueCell[0];
 
-  public static ValueCell[] getRandomParamsCells(final CallTarget ct, final ArrayList<ValueCell> allParamCells)
-      throws NoCellFoundException {
+  public static ValueCell[] getRandomParamsCells(final CallTarget ct, final ArrayList<ValueCell> allParamCells,
+      final Random random) throws NoCellFoundException {
     final Class<?>[] paramTypesNeeded = ct.method.getParameterTypes();
     if (paramTypesNeeded.length == 0) {
       return emptyValueCell;
@@ -291,7 +292,7 @@ public class Util {
       final ValueCell[] paramCells = new ValueCell[paramTypesNeeded.length];
       for (int i = 0; i < paramTypesNeeded.length; i++) {
         paramCells[i] = Util.getRandomCell(ReflectUtil.getClassForPrimitive(paramTypesNeeded[i]),
-            allParamCells);
+            allParamCells, random);
       }
       return paramCells;
     }
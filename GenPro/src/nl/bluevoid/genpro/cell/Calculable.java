@@ -19,6 +19,7 @@ package nl.bluevoid.genpro.cell;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
 
 import nl.bluevoid.genpro.CallTarget;
 import nl.bluevoid.genpro.CellMap;
@@ -30,12 +31,14 @@ import nl.bluevoid.genpro.GridExecutionError;
 public interface Calculable extends CellInterface{
 
   /**
+   * @param invocation how calls are made, see Setup.setCallInvocation
    * @throws InvocationTargetException 
    * @throws IllegalAccessException 
    * @throws GridExecutionError 
    * 
    */
-  public void calc() throws IllegalAccessException, InvocationTargetException, GridExecutionError;
+  public void calc(CallInvocation invocation) throws IllegalAccessException, InvocationTargetException,
+      GridExecutionError;
 
   /**
    * "override" van Cell om deze ook op calculable aanwezig te laten zijn. 
@@ -43,12 +46,12 @@ public interface Calculable extends CellInterface{
    * @throws NoCellFoundException 
    */  
   public void connectCell(HashMap<Class<?>, ArrayList<CallTarget>> callTargetsByReturnType,
-      ArrayList<ValueCell> allParamCells) throws NoCellFoundException;
+      ArrayList<ValueCell> allParamCells, Random random) throws NoCellFoundException;
   
   public void restoreConnections(CellMap map) throws NoCellFoundException;
   
   public void mutate(HashMap<Class<?>, ArrayList<CallTarget>> callTargetsByReturnType,
-      ArrayList<ValueCell> allParamCells);
+      ArrayList<ValueCell> allParamCells, Random random);
   
   public void setCascadeUsedForOutput();
   
@@ -16,11 +16,13 @@
 
 package nl.bluevoid.genpro.cell;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
 
 import nl.bluevoid.genpro.CallTarget;
 import nl.bluevoid.genpro.CellMap;
@@ -57,6 +59,11 @@ public class CallCell extends ValueCell implements Calculable {
   protected ValueCell[] params;
 
   protected Object[] paramObjects = nullParams;
+
+  // resolved on first use from the MethodHandleRegistry
+  private MethodHandle targetHandle;
+  private boolean targetHandleResolved = false;
+
   private int calced = 0;
   private int errored = 0;
 
@@ -81,11 +88,16 @@ public class CallCell extends ValueCell implements Calculable {
     x.endTag();
   }
 
-  public final void calc() throws IllegalAccessException, InvocationTargetException, GridExecutionError {
+  public final void calc(final CallInvocation invocation) throws IllegalAccessException,
+      InvocationTargetException, GridExecutionError {
     // clear value!!!!
     value = null;
 
     calced++;
+    if (invocation == CallInvocation.METHOD_HANDLE && getTargetHandle() != null) {
+      calcWithHandle();
+      return;
+    }
     if (params.length > 0) {
       for (int i = 0; i < paramObjects.length; i++) {
         paramObjects[i] = params[i].getValue();
@@ -117,6 +129,62 @@ public class CallCell extends ValueCell implements Calculable {
     // Debug.println("invoking:" + targetMethod + "on object:" + target + " from cell:" + targetCell);
   }
 
+  private void calcWithHandle() throws GridExecutionError {
+    final Object target;
+    if (isStaticCall) {
+      target = null;
+    } else {
+      target = targetCell.getValue();
+      if (target == null) {
+        throw new GridExecutionError(null);
+      }
+    }
+    final MethodHandle h = targetHandle;
+    try {
+      final Object result;
+      switch (params.length) {
+      case 0:
+        result = (Object) h.invokeExact(target);
+        break;
+      case 1:
+        result = (Object) h.invokeExact(target, params[0].getValue());
+        break;
+      case 2:
+        result = (Object) h.invokeExact(target, params[0].getValue(), params[1].getValue());
+        break;
+      case 3:
+        result = (Object) h.invokeExact(target, params[0].getValue(), params[1].getValue(), params[2].getValue());
+        break;
+      case 4:
+        result = (Object) h.invokeExact(target, params[0].getValue(), params[1].getValue(),
+            params[2].getValue(), params[3].getValue());
+        break;
+      default:
+        for (int i = 0; i < paramObjects.length; i++) {
+          paramObjects[i] = params[i].getValue();
+        }
+        result = (Object) h.invokeExact(target, paramObjects);
+      }
+      setValue(result);
+    } catch (RuntimeException nup) {
+      errored++;
+      // consume, same as with reflection
+    } catch (Throwable e) {
+      errored++;
+      System.err.println("targetCell.getValue() " + target);
+      System.err.println("targetMethod " + targetMethod);
+      Sneak.sneakyThrow(e);
+    }
+  }
+
+  private MethodHandle getTargetHandle() {
+    if (!targetHandleResolved) {
+      targetHandle = MethodHandleRegistry.getHandle(targetMethod);
+      targetHandleResolved = true;
+    }
+    return targetHandle;
+  }
+
   /**
    * Getter of the property <tt>targetMethod</tt>
    * 
@@ -150,6 +218,8 @@ public class CallCell extends ValueCell implements Calculable {
   public void setTargetMethod(final Method targetMethod) {
     Debug.checkNotNull(targetMethod, "targetMethod");
     this.targetMethod = targetMethod;
+    targetHandle = null;
+    targetHandleResolved = false;
     // setIsStatic
     isStaticCall = Modifier.isStatic(targetMethod.getModifiers());
   }
@@ -221,11 +291,11 @@ public class CallCell extends ValueCell implements Calculable {
   }
 
   public void mutate(final HashMap<Class<?>, ArrayList<CallTarget>> callTargetsByReturnType,
-      final ArrayList<ValueCell> allParamCells) {
+      final ArrayList<ValueCell> allParamCells, final Random random) {
     // mutate param or target?
     if (hasParams() && random.nextBoolean()) {
       try {
-        mutateParam(allParamCells);
+        mutateParam(allParamCells, random);
         // mutatedParams++;
       } catch (NoCellFoundException e) {
         // no solution?? it was connected so 1 solution should be there!!
@@ -233,17 +303,18 @@ public class CallCell extends ValueCell implements Calculable {
       }
     } else {
       try {
-        connectCell(callTargetsByReturnType, allParamCells);
+        connectCell(callTargetsByReturnType, allParamCells, random);
       } catch (NoCellFoundException e) {
        Debug.printErrln("Mutation failed "+e.getMessage());
       }
     }
   }
 
-  private void mutateParam(final ArrayList<ValueCell> paramTargets) throws NoCellFoundException {
+  private void mutateParam(final ArrayList<ValueCell> paramTargets, final Random random)
+      throws NoCellFoundException {
     final int paramNr = random.nextInt(getParams().length);
     final Class<?> type = getParams()[paramNr].getValueType();
-    getParams()[paramNr] = Util.getRandomCell(ReflectUtil.getClassForPrimitive(type), paramTargets);
+    getParams()[paramNr] = Util.getRandomCell(ReflectUtil.getClassForPrimitive(type), paramTargets, random);
   }
 
   @Override
@@ -261,7 +332,7 @@ public class CallCell extends ValueCell implements Calculable {
   }
 
   public void connectCell(final HashMap<Class<?>, ArrayList<CallTarget>> callTargetsByReturnType,
-      final ArrayList<ValueCell> allParamCells) throws NoCellFoundException {
+      final ArrayList<ValueCell> allParamCells, final Random random) throws NoCellFoundException {
     boolean found = false;
     int count = 0;
     final Class<?> returnType = getValueType();
@@ -293,7 +364,7 @@ public class CallCell extends ValueCell implements Calculable {
         final CallTarget ct = methods.get(random.nextInt(methods.size()));
         // Debug.println("trying:" + ct);
         // linkup needed parameters for the method
-        final ValueCell[] paramCells = Util.getRandomParamsCells(ct, allParamCells);
+        final ValueCell[] paramCells = Util.getRandomParamsCells(ct, allParamCells, random);
 
         // we found a connection, so hook it up!
         setTargetCell(ct.cell);
@@ -16,7 +16,7 @@
 
 package nl.bluevoid.genpro.cell;
 
-import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import nl.bluevoid.genpro.util.Debug;
 /**
@@ -25,9 +25,8 @@ import nl.bluevoid.genpro.util.Debug;
  */
 public abstract class Cell implements Cloneable, CellInterface{
 
-  private static int serialNrCounter=1;
+  private static final AtomicInteger serialNrCounter=new AtomicInteger(1);
   
-  protected static final Random random=new Random(System.currentTimeMillis());
   private final String name;
   private int serialNr;
   private final CellTypeEnum cellType;
@@ -38,7 +37,7 @@ public abstract class Cell implements Cloneable, CellInterface{
     this.cellType = cellType;
     Debug.checkNotNull(name, "name");
     this.name = name;
-    serialNr=serialNrCounter++;
+    serialNr=serialNrCounter.getAndIncrement();
   }
 
   public String getName() {
@@ -50,10 +49,10 @@ public abstract class Cell implements Cloneable, CellInterface{
     return "'"+name+"'";
   }
   
-  public synchronized Cell clone() {
+  public Cell clone() {
     try {
       final Cell c=(Cell)super.clone();
-      c.serialNr=serialNrCounter++;
+      c.serialNr=serialNrCounter.getAndIncrement();
       return c;
     } catch (CloneNotSupportedException e) {
       e.printStackTrace();
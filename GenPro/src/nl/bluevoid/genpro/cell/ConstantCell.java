@@ -16,6 +16,8 @@
 
 package nl.bluevoid.genpro.cell;
 
+import java.util.Random;
+
 import nl.bluevoid.genpro.Util;
 import nl.bluevoid.genpro.util.Debug;
 import nl.bluevoid.genpro.util.StringUtil;
@@ -38,7 +40,8 @@ public class ConstantCell extends ValueCell {
     this.max = max;
     range = max - min;
     canMutate = true;
-    setRandomValue();
+    // grids get their own value, see Grid.createSolution
+    setRandomValue(new Random());
   }
 
   public ConstantCell(String name, Class<?> constantClass, double value) {
@@ -75,30 +78,30 @@ public class ConstantCell extends ValueCell {
     this.range=0;
     this.min = 1;
     this.max = maxLength;
-    setValue(StringUtil.getRandomString((int)max));
+    setValue(StringUtil.getRandomString((int)max, new Random()));
   }
   
-  public void setRandomValue() {
+  public void setRandomValue(final Random random) {
     if (valueType.equals(Double.class)) {
       setValue(random.nextDouble() * range + min);
     } else if (valueType.equals(Integer.class)) {
       setValue((int)(random.nextInt((int) range) + min));
     }else if (valueType.equals(String.class)) {
-      setValue(StringUtil.getRandomString((int)max));
+      setValue(StringUtil.getRandomString((int)max, random));
     }  else {
       throw new IllegalArgumentException("class not supported:" + valueType.getName());
     }
   }
 
-  public void mutate() {
+  public void mutate(final Random random) {
     if (canMutate) {
       if (super.valueType.equals(Double.class)) {
-        setValue(Util.mutateperc((Double) getValue(), 20, min, max));
+        setValue(Util.mutateperc((Double) getValue(), 20, min, max, random));
       } else if (super.valueType.equals(Integer.class)) {
-        final int val = Util.mutateperc((Integer) getValue(), 100, min, max).intValue();
+        final int val = Util.mutateperc((Integer) getValue(), 100, min, max, random).intValue();
         setValue(val);
       } else if (super.valueType.equals(String.class)) {
-        final String val = StringUtil.mutateString((String) getValue(), (int) max);
+        final String val = StringUtil.mutateString((String) getValue(), (int) max, random);
         setValue(val);
       } else{
         throw new IllegalArgumentException("class not supported:" + valueType.getName());
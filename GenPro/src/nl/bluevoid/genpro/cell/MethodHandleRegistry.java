@@ -0,0 +1,85 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.cell;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves and caches one MethodHandle per Method. All handles take the target object as first argument
+ * (ignored for static methods) and return the boxed result, so a CallCell can call them with invokeExact:
+ * <ul>
+ * <li>up to MAX_EXACT_PARAMS params: (Object target, Object p0, ... ) Object</li>
+ * <li>more params: (Object target, Object[] params) Object</li>
+ * </ul>
+ * Unboxing and widening of the params is done by the handle, a null for a primitive param throws a
+ * NullPointerException.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class MethodHandleRegistry {
+
+  public static final int MAX_EXACT_PARAMS = 4;
+
+  // marks methods that can not be accessed through a handle, ConcurrentHashMap does not take null values
+  private static final MethodHandle NO_HANDLE = MethodHandles.constant(Object.class, null);
+
+  private static final ConcurrentHashMap<Method, MethodHandle> handles = new ConcurrentHashMap<Method, MethodHandle>();
+
+  /**
+   * @return the adapted handle, or null if the method can not be accessed by a handle
+   */
+  public static MethodHandle getHandle(final Method method) {
+    MethodHandle handle = handles.get(method);
+    if (handle == null) {
+      handle = createHandle(method);
+      final MethodHandle existing = handles.putIfAbsent(method, handle);
+      if (existing != null) {
+        handle = existing;
+      }
+    }
+    return handle == NO_HANDLE ? null : handle;
+  }
+
+  private static MethodHandle createHandle(final Method method) {
+    MethodHandle handle;
+    try {
+      handle = MethodHandles.publicLookup().unreflect(method);
+    } catch (IllegalAccessException e) {
+      return NO_HANDLE;
+    }
+    final int paramCount = method.getParameterTypes().length;
+    if (Modifier.isStatic(method.getModifiers())) {
+      handle = MethodHandles.dropArguments(handle, 0, Object.class);
+    }
+    handle = handle.asType(MethodType.genericMethodType(paramCount + 1));
+    if (paramCount > MAX_EXACT_PARAMS) {
+      handle = handle.asSpreader(Object[].class, paramCount);
+    }
+    return handle;
+  }
+
+  public static int size() {
+    return handles.size();
+  }
+}
@@ -19,6 +19,7 @@ package nl.bluevoid.genpro.cell.candidates;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
 
 import nl.bluevoid.genpro.CallTarget;
 import nl.bluevoid.genpro.CellMap;
@@ -26,6 +27,7 @@ import nl.bluevoid.genpro.GridExecutionError;
 import nl.bluevoid.genpro.Setup;
 import nl.bluevoid.genpro.Util;
 import nl.bluevoid.genpro.cell.Calculable;
+import nl.bluevoid.genpro.cell.CallInvocation;
 import nl.bluevoid.genpro.cell.CallCell;
 import nl.bluevoid.genpro.cell.Cell;
 import nl.bluevoid.genpro.cell.CellTypeEnum;
@@ -44,10 +46,10 @@ public class IfCell extends Cell implements Calculable {
   private ValueCell booleanExpression;
   private ArrayList<ReferenceCell> values = new ArrayList<ReferenceCell>();
 
-  public IfCell(String name, Setup setup) {
+  public IfCell(String name, Setup setup, Random random) {
     super(name, CellTypeEnum.IfCell);
 
-    Class<?> type = setup.getRandomCallCellType();
+    Class<?> type = setup.getRandomCallCellType(random);
     ReferenceCell rc = new ReferenceCell("if1", type);
     values.add(rc);
     CallCell cellTrue = new CallCell("iffalse1", type);
@@ -56,17 +58,18 @@ public class IfCell extends Cell implements Calculable {
     onFalseList.add(cellFalse);
   }
 
-  public void calc() throws IllegalAccessException, InvocationTargetException, GridExecutionError {
+  public void calc(CallInvocation invocation) throws IllegalAccessException, InvocationTargetException,
+      GridExecutionError {
     boolean value = ((Boolean) booleanExpression.getValue()).booleanValue();
     if (value) {
       for (int i = 0; i < getOnTrueList().size(); i++) {
-        getOnTrueList().get(i).calc();
+        getOnTrueList().get(i).calc(invocation);
         values.get(i).setReferedCell(getOnTrueList().get(i));
         // Debug.println("if true ref "+i+"  "+values.get(i).toString());
       }
     } else {
       for (int i = 0; i < getOnTrueList().size(); i++) {
-        getOnFalseList().get(i).calc();
+        getOnFalseList().get(i).calc(invocation);
         values.get(i).setReferedCell(getOnFalseList().get(i));
         // Debug.println("if false ref "+i+"  "+values.get(i).toString());
       }
@@ -98,15 +101,15 @@ public class IfCell extends Cell implements Calculable {
   }
 
   public void connectCell(HashMap<Class<?>, ArrayList<CallTarget>> callTargetsByReturnType,
-      ArrayList<ValueCell> allParamCells) throws NoCellFoundException {
+      ArrayList<ValueCell> allParamCells, Random random) throws NoCellFoundException {
 
-    setBooleanExpression(Util.getRandomCell(Boolean.class, allParamCells));
+    setBooleanExpression(Util.getRandomCell(Boolean.class, allParamCells, random));
 
     for (int i = 0; i < onTrueList.size(); i++) {
-      onTrueList.get(i).connectCell(callTargetsByReturnType, allParamCells);
+      onTrueList.get(i).connectCell(callTargetsByReturnType, allParamCells, random);
     }
     for (int i = 0; i < onFalseList.size(); i++) {
-      onFalseList.get(i).connectCell(callTargetsByReturnType, allParamCells);
+      onFalseList.get(i).connectCell(callTargetsByReturnType, allParamCells, random);
     }
   }
 
@@ -115,7 +118,7 @@ public class IfCell extends Cell implements Calculable {
   }
 
   public void mutate(HashMap<Class<?>, ArrayList<CallTarget>> callTargetsByReturnType,
-      ArrayList<ValueCell> allParamCells) {
+      ArrayList<ValueCell> allParamCells, Random random) {
     throw new IllegalStateException("mutate is not implemented yet");
   }
 
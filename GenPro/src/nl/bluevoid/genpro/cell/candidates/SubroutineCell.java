@@ -18,10 +18,12 @@ package nl.bluevoid.genpro.cell.candidates;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
 
 import nl.bluevoid.genpro.CallTarget;
 import nl.bluevoid.genpro.CellMap;
 import nl.bluevoid.genpro.cell.Calculable;
+import nl.bluevoid.genpro.cell.CallInvocation;
 import nl.bluevoid.genpro.cell.Cell;
 import nl.bluevoid.genpro.cell.CellTypeEnum;
 import nl.bluevoid.genpro.cell.ValueCell;
@@ -42,19 +44,19 @@ public class SubroutineCell extends Cell implements Calculable {
    */
   //private Calculable[] steps;
 
-  public void calc() {
+  public void calc(CallInvocation invocation) {
     // TODO Auto-generated method stub
     throw new IllegalStateException("calc is not implemented yet");
   }
 
   public void connectCell(HashMap<Class<?>, ArrayList<CallTarget>> callTargetsByReturnType,
-      ArrayList<ValueCell> allParamCells) {
+      ArrayList<ValueCell> allParamCells, Random random) {
     // TODO Auto-generated method stub
     throw new IllegalStateException("connectCell is not implemented yet");
   }
 
   public void mutate(HashMap<Class<?>, ArrayList<CallTarget>> callTargetsByReturnType,
-      ArrayList<ValueCell> allParamCells) {
+      ArrayList<ValueCell> allParamCells, Random random) {
     // TODO Auto-generated method stub
     throw new IllegalStateException("mutate is not implemented yet");
   }
@@ -18,6 +18,7 @@ package nl.bluevoid.genpro.cell.switx;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
 
 import nl.bluevoid.genpro.CallTarget;
 import nl.bluevoid.genpro.cell.CellTypeEnum;
@@ -34,14 +35,14 @@ public class BooleanSwitchCell extends SwitchCell {
   }
 
   @Override
-  public void mutateRandomOptionValue() {
+  public void mutateRandomOptionValue(Random random) {
     optionsSorted = false;
     getOptions().get(0).switchCaseValue = !((Boolean) getOptions().get(0).switchCaseValue);
     getOptions().get(1).switchCaseValue = !((Boolean) getOptions().get(1).switchCaseValue);
   }
 
   @Override
-  public void setOptionValues() {
+  public void setOptionValues(Random random) {
     optionsSorted = false;
     getOptions().get(0).switchCaseValue = Boolean.FALSE;
     getOptions().get(1).switchCaseValue = Boolean.TRUE;
@@ -57,30 +58,30 @@ public class BooleanSwitchCell extends SwitchCell {
   }
 
   @Override
-  protected void setOptionValue(SwitchOption opt) {
+  protected void setOptionValue(SwitchOption opt, Random random) {
     throw new IllegalStateException("setOptionValue should never be called");
   }
 
   @Override
   public void mutate(HashMap<Class<?>, ArrayList<CallTarget>> callTargetsByReturnType,
-      ArrayList<ValueCell> allParamCells) {
+      ArrayList<ValueCell> allParamCells, Random random) {
     final int opt = random.nextInt(10);
     switch (opt) {
     case 0:
     case 1:
     case 2:
-      setNewInput(allParamCells);
+      setNewInput(allParamCells, random);
       break;
     case 3:
     case 4:
     case 5:
     case 6:// mutate random option
-      mutateRandomOption(callTargetsByReturnType, allParamCells);
+      mutateRandomOption(callTargetsByReturnType, allParamCells, random);
       break;
     case 7:
     case 8:
     case 9:// mutate values of option
-      mutateRandomOptionValue();
+      mutateRandomOptionValue(random);
       mutations.add("mutate values of option");
       break;
     default:
@@ -18,6 +18,7 @@ package nl.bluevoid.genpro.cell.switx;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
 
 import nl.bluevoid.genpro.CallTarget;
 import nl.bluevoid.genpro.Util;
@@ -42,10 +43,9 @@ public class NumberSwitchCell extends SwitchCell {
    * 
    */
 
-  public NumberSwitchCell(String name, Class<?> valueType, int maxOptionsNr, double minOptionValue,
-      double maxOptionValue) {
-    super(name, valueType, Number.class, maxOptionsNr, random.nextInt(maxOptionsNr - 1) + 2,
-        CellTypeEnum.NumberSwitchCell);
+  public NumberSwitchCell(String name, Class<?> valueType, int maxOptionsNr, int startOptionsNr,
+      double minOptionValue, double maxOptionValue) {
+    super(name, valueType, Number.class, maxOptionsNr, startOptionsNr, CellTypeEnum.NumberSwitchCell);
     Debug.errorOnTrue(maxOptionValue < minOptionValue, "max is bigger than min!", maxOptionValue, " ",
         minOptionValue);
     this.minOptionValue = minOptionValue;
@@ -55,20 +55,20 @@ public class NumberSwitchCell extends SwitchCell {
 
   @Override
   public void mutate(HashMap<Class<?>, ArrayList<CallTarget>> callTargetsByReturnType,
-      ArrayList<ValueCell> allParamCells) {
+      ArrayList<ValueCell> allParamCells, Random random) {
 
     final int opt = random.nextInt(10);
     switch (opt) {
     case 0:
     case 1:
-      setNewInput(allParamCells);
+      setNewInput(allParamCells, random);
       break;
     case 2: // add option
       if (options.size() <= maxOptions) {
         SwitchOption option = createAndAddOption();
-        setOptionValue(option);
+        setOptionValue(option, random);
         try {
-          option.connectCell(callTargetsByReturnType, allParamCells);
+          option.connectCell(callTargetsByReturnType, allParamCells, random);
         } catch (NoCellFoundException e) {
           Debug.printErrln("Mutation failed "+e.getMessage());
         }
@@ -77,17 +77,17 @@ public class NumberSwitchCell extends SwitchCell {
       }
       break;
     case 3: // delete option
-      deleteOption();
+      deleteOption(random);
       break;
     case 4:
     case 5:
     case 6:// mutate random option
-      mutateRandomOption(callTargetsByReturnType, allParamCells);
+      mutateRandomOption(callTargetsByReturnType, allParamCells, random);
       break;
     case 7:
     case 8:
     case 9:// mutate values of option
-      mutateRandomOptionValue();
+      mutateRandomOptionValue(random);
       mutations.add("mutate values of option");
       break;
     default:
@@ -96,27 +96,28 @@ public class NumberSwitchCell extends SwitchCell {
   }
 
   @Override
-  public void mutateRandomOptionValue() {
+  public void mutateRandomOptionValue(Random random) {
     optionsSorted = false;
     // select option
     int option = random.nextInt(getNumOptions() - 1) + 1;
     Debug.checkRange(option, 1, getNumOptions(), "option may not be 0 or higher than numoptions:", option,
         " ", getNumOptions());
     Double value = (Double) getOptions().get(option).switchCaseValue;
-    getOptions().get(option).switchCaseValue = Util.mutateperc(value, 10000, minOptionValue, maxOptionValue);
+    getOptions().get(option).switchCaseValue = Util.mutateperc(value, 10000, minOptionValue, maxOptionValue,
+        random);
   }
 
   @Override
-  public void setOptionValues() {
+  public void setOptionValues(Random random) {
     optionsSorted = false;
     getOptions().get(0).switchCaseValue = Double.NEGATIVE_INFINITY;
     for (int i = 1; i < getNumOptions(); i++) {
-      setOptionValue(getOptions().get(i));
+      setOptionValue(getOptions().get(i), random);
     }
   }
 
   @Override
-  protected void setOptionValue(SwitchOption opt) {
+  protected void setOptionValue(SwitchOption opt, Random random) {
     optionsSorted = false;
     opt.switchCaseValue = minOptionValue + random.nextDouble() * range;
   }
@@ -21,12 +21,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Random;
 
 import nl.bluevoid.genpro.CallTarget;
 import nl.bluevoid.genpro.CellMap;
 import nl.bluevoid.genpro.GridExecutionError;
 import nl.bluevoid.genpro.Util;
 import nl.bluevoid.genpro.cell.Calculable;
+import nl.bluevoid.genpro.cell.CallInvocation;
 import nl.bluevoid.genpro.cell.CellTypeEnum;
 import nl.bluevoid.genpro.cell.NoCellFoundException;
 import nl.bluevoid.genpro.cell.ValueCell;
@@ -93,15 +95,16 @@ public abstract class SwitchCell extends ValueCell implements Calculable {
     return true;
   }
 
-  protected abstract void setOptionValues();
+  protected abstract void setOptionValues(Random random);
 
-  protected abstract void mutateRandomOptionValue();
+  protected abstract void mutateRandomOptionValue(Random random);
 
   public void getXML(XMLBuilder x) {
     x.add(getClass().getName(), "not implemented yet");
   }
 
-  public void calc() throws IllegalAccessException, InvocationTargetException, GridExecutionError {
+  public void calc(CallInvocation invocation) throws IllegalAccessException, InvocationTargetException,
+      GridExecutionError {
     // clear value!!!!
     value = null;
 
@@ -109,7 +112,7 @@ public abstract class SwitchCell extends ValueCell implements Calculable {
     if (switchValue == null) {
       // the switchValue resulted in a null value=> has errored or otherwise failed
     } else {
-      getOptionToCall(switchValue).calc();
+      getOptionToCall(switchValue).calc(invocation);
     }
   }
 
@@ -137,13 +140,13 @@ public abstract class SwitchCell extends ValueCell implements Calculable {
   }
 
   public void connectCell(HashMap<Class<?>, ArrayList<CallTarget>> callTargetsByReturnType,
-      ArrayList<ValueCell> allParamCells) throws NoCellFoundException {
-    switchValueCell = Util.getRandomCell(switchType, allParamCells);
+      ArrayList<ValueCell> allParamCells, Random random) throws NoCellFoundException {
+    switchValueCell = Util.getRandomCell(switchType, allParamCells, random);
     for (int i = 0; i < startNumOptions; i++) {
       SwitchOption opt = createAndAddOption();
-      opt.connectCell(callTargetsByReturnType, allParamCells);
+      opt.connectCell(callTargetsByReturnType, allParamCells, random);
     }
-    setOptionValues();
+    setOptionValues(random);
     sortOptions();
     validateLeadsToInputCell();
   }
@@ -163,10 +166,10 @@ public abstract class SwitchCell extends ValueCell implements Calculable {
     }
   }
 
-  protected void setNewInput(ArrayList<ValueCell> allParamCells) {
+  protected void setNewInput(ArrayList<ValueCell> allParamCells, Random random) {
     try {
       // set new input
-      switchValueCell = Util.getRandomCell(switchType, allParamCells);
+      switchValueCell = Util.getRandomCell(switchType, allParamCells, random);
       mutations.add("changed switchValueCell");
     } catch (NoCellFoundException e) {
       // bad luck
@@ -182,12 +185,22 @@ public abstract class SwitchCell extends ValueCell implements Calculable {
     return opt;
   }
 
-  protected abstract void setOptionValue(SwitchOption opt);
+  /**
+   * adds an option that still has to be connected, used to rebuild a switch
+   */
+  public SwitchOption addOption(Comparable<?> caseValue) {
+    Debug.checkNotNull(caseValue, "caseValue");
+    SwitchOption opt = createAndAddOption();
+    opt.switchCaseValue = caseValue;
+    return opt;
+  }
+
+  protected abstract void setOptionValue(SwitchOption opt, Random random);
 
   public abstract void mutate(HashMap<Class<?>, ArrayList<CallTarget>> callTargetsByReturnType,
-      ArrayList<ValueCell> allParamCells); 
+      ArrayList<ValueCell> allParamCells, Random random); 
   
-  protected void deleteOption() {
+  protected void deleteOption(Random random) {
     if (options.size() > MIN_OPTIONS) {
       options.remove(random.nextInt(options.size() - 1) + 1); // option 0 may not be deleted!!
       optionsSorted = false;
@@ -195,8 +208,8 @@ public abstract class SwitchCell extends ValueCell implements Calculable {
   }
 
   protected void mutateRandomOption(HashMap<Class<?>, ArrayList<CallTarget>> callTargetsByReturnType,
-      ArrayList<ValueCell> allParamCells) {
-    options.get(random.nextInt(options.size())).mutate(callTargetsByReturnType, allParamCells);
+      ArrayList<ValueCell> allParamCells, Random random) {
+    options.get(random.nextInt(options.size())).mutate(callTargetsByReturnType, allParamCells, random);
     optionsSorted = false;
     mutations.add("mutate random option");
   }
@@ -233,7 +246,7 @@ public abstract class SwitchCell extends ValueCell implements Calculable {
     return super.toString() + st.toString() + "\n";
   }
 
-  protected void setSwitchValueCell(ValueCell switchValueCell) {
+  public void setSwitchValueCell(ValueCell switchValueCell) {
     this.switchValueCell = switchValueCell;
   }
 
@@ -274,8 +287,12 @@ public abstract class SwitchCell extends ValueCell implements Calculable {
     clone.errored = 0;
     clone.options = new ArrayList<SwitchOption>();
     for (SwitchOption opt : options) {
-      clone.options.add(opt.clone());
+      final SwitchOption optClone = opt.clone();
+      // the option forwards its value to the switch it belongs to
+      optClone.switchCell = clone;
+      clone.options.add(optClone);
     }
+    clone.mutations = new ArrayList<String>(mutations);
     return clone;
   }
 }
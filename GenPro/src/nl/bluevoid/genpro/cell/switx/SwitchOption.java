@@ -23,7 +23,7 @@ import nl.bluevoid.genpro.util.Debug;
  * @since 1.0
  */
 public class SwitchOption extends CallCell implements Comparable<SwitchOption> {
-  final SwitchCell switchCell;
+  SwitchCell switchCell;
 
   // The "case" value
   @SuppressWarnings("unchecked")
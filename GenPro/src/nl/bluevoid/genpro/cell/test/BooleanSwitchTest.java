@@ -18,6 +18,7 @@ package nl.bluevoid.genpro.cell.test;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Random;
 
 import junit.framework.TestCase;
 import nl.bluevoid.genpro.GridExecutionError;
@@ -72,7 +73,7 @@ public class BooleanSwitchTest extends TestCase {
       assertEquals(switchOptionTrue, nr);
     }
 
-    b.mutateRandomOptionValue();
+    b.mutateRandomOptionValue(new Random());
     System.out.println(b.toString());
     {
       switchvalueCell.setValue(Boolean.TRUE);
@@ -98,6 +99,6 @@ class TestBooleanSwitchCell extends BooleanSwitchCell {
       SwitchOption option = createAndAddOption();
       System.out.println("created option: " + option);
     }
-    setOptionValues();
+    setOptionValues(new Random());
   }
 }
@@ -19,8 +19,12 @@ package nl.bluevoid.genpro.cell.test;
 import junit.framework.Assert;
 import junit.framework.TestCase;
 import nl.bluevoid.genpro.CellMap;
+import nl.bluevoid.genpro.GridExecutionError;
 import nl.bluevoid.genpro.cell.CallCell;
+import nl.bluevoid.genpro.cell.CallInvocation;
+import nl.bluevoid.genpro.cell.InputCell;
 import nl.bluevoid.genpro.cell.ValueCell;
+import nl.bluevoid.genpro.operations.NumberOperations;
 
 /**
  * @author Rob van der Veer
@@ -67,4 +71,45 @@ public class CallCellTest extends TestCase{
     CallCell c1=new CallCell("c1", Double.class);
     Assert.assertTrue(c1.isValueA_Number());
   }
+
+  public void testInvocationModes() throws Exception {
+    for (CallInvocation invocation : CallInvocation.values()) {
+      InputCell a = new InputCell("a", Double.class);
+      InputCell b = new InputCell("b", Integer.class);
+      a.setValue(3.0);
+      b.setValue(4);
+
+      // static, Integer widened to double
+      CallCell multiply = new CallCell("multiply", Double.class);
+      multiply.setTargetCell(NumberOperations.NUM_OPS);
+      multiply.setTargetMethod(NumberOperations.class.getMethod("multiply", double.class, double.class));
+      multiply.setParams(new ValueCell[] { a, b });
+      multiply.calc(invocation);
+      Assert.assertEquals(invocation.name(), 12.0, multiply.getValue());
+
+      // instance
+      CallCell compare = new CallCell("compare", Integer.class);
+      compare.setTargetCell(a);
+      compare.setTargetMethod(Double.class.getMethod("compareTo", Double.class));
+      compare.setParams(new ValueCell[] { multiply });
+      compare.calc(invocation);
+      Assert.assertEquals(invocation.name(), -1, compare.getValue());
+
+      // a null param is consumed and counted
+      b.setValue(null);
+      multiply.calc(invocation);
+      Assert.assertNull(multiply.getValue());
+      Assert.assertEquals(1, multiply.getErrored());
+      Assert.assertEquals(2, multiply.getCalced());
+
+      // a null target is a grid error
+      a.setValue(null);
+      try {
+        compare.calc(invocation);
+        fail("expected GridExecutionError for " + invocation);
+      } catch (GridExecutionError e) {
+        // ok
+      }
+    }
+  }
 }
@@ -16,6 +16,8 @@
 
 package nl.bluevoid.genpro.cell.test;
 
+import java.util.Random;
+
 import junit.framework.Assert;
 import junit.framework.TestCase;
 import nl.bluevoid.genpro.cell.ConstantCell;
@@ -40,7 +42,7 @@ public class ConstantCellTest extends TestCase {
   public void testMutate() {
     ConstantCell c1 = new ConstantCell("naam", Double.class, -100, 100);
     double d1 = (Double) c1.getValue();
-    c1.mutate();
+    c1.mutate(new Random());
     double d2 = (Double) c1.getValue();
     Assert.assertTrue(Math.abs(d1 - d2) > 0.0000001);
   }
@@ -50,7 +52,7 @@ public class ConstantCellTest extends TestCase {
       ConstantCell c1 = new ConstantCell("naam", Integer.class, -100, 100);
       Debug.checkRange((Integer) c1.getValue(), -100, 100);
       //int d1 = (Integer) c1.getValue();
-      c1.mutate();
+      c1.mutate(new Random());
       //int d2 = (Integer) c1.getValue();
       //Assert.assertTrue(Math.abs(d1 - d2) > 0.0000001);
       Debug.checkRange((Integer) c1.getValue(), -100, 100);
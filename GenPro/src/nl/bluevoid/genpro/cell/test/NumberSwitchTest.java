@@ -19,6 +19,7 @@ package nl.bluevoid.genpro.cell.test;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
 
 import junit.framework.TestCase;
 import nl.bluevoid.genpro.CallTarget;
@@ -54,7 +55,7 @@ public class NumberSwitchTest extends TestCase {
 
     checkSortOrder(switchvalueCell, b);
 
-    b.mutateRandomOptionValue();
+    b.mutateRandomOptionValue(new Random());
 
     checkSortOrder(switchvalueCell, b);
   }
@@ -87,14 +88,14 @@ public class NumberSwitchTest extends TestCase {
 
   public void testClone() throws NoCellFoundException {
 
-    NumberSwitchCell nsc = new NumberSwitchCell("c23", Integer.class, 12, -10000, +10000);
+    NumberSwitchCell nsc = new NumberSwitchCell("c23", Integer.class, 12, 4, -10000, +10000);
 
     ConstantCell c1 = new ConstantCell("const1", Integer.class, 50);
     ArrayList<ValueCell> cm = new ArrayList<ValueCell>();
     cm.add(c1);
     HashMap<Class<?>, ArrayList<CallTarget>> callTargetsByReturnType = new HashMap<Class<?>, ArrayList<CallTarget>>();
     c1.addCallTarget2(callTargetsByReturnType);
-    nsc.connectCell(callTargetsByReturnType, cm);
+    nsc.connectCell(callTargetsByReturnType, cm, new Random());
 
     NumberSwitchCell clone = (NumberSwitchCell) nsc.clone();
     assertEquals(clone.getCalced(), 0);
@@ -107,13 +108,18 @@ public class NumberSwitchTest extends TestCase {
       assertNotSame(s1, s2);
     }
 
+    // options of the clone set the value of the clone
+    nsc.setValue(1);
+    clone.getOptions().get(0).setValue(2);
+    assertEquals(2, clone.getValue());
+    assertEquals(1, nsc.getValue());
   }
 }
 
 class TestNumberSwitchCell extends NumberSwitchCell {
   public TestNumberSwitchCell(String name, Class<?> valueType, int maxOptionsNr, double minOptionValue,
       double maxOptionValue, ValueCell input) {
-    super(name, valueType, maxOptionsNr, minOptionValue, maxOptionValue);
+    super(name, valueType, maxOptionsNr, maxOptionsNr, minOptionValue, maxOptionValue);
     setSwitchValueCell(input);
   }
 
@@ -122,6 +128,6 @@ class TestNumberSwitchCell extends NumberSwitchCell {
       // SwitchOption option =
       createAndAddOption();
     }
-    setOptionValues();
+    setOptionValues(new Random());
   }
 }
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.engine;
+
+import java.util.Arrays;
+
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.TestSetColumn;
+import nl.bluevoid.genpro.cell.Calculable;
+import nl.bluevoid.genpro.cell.ConstantCell;
+import nl.bluevoid.genpro.cell.InputCell;
+import nl.bluevoid.genpro.cell.ValueCell;
+
+/**
+ * One column of rows per slot, laid out like {@link PrimitiveFrame}. The nulls column of a slot is null
+ * while the slot has no null rows, so kernels can skip null handling. Typed input columns of a TestSet are
+ * shared, not copied. A frame can be reused for grids with other slot types by calling reset.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public final class BatchFrame {
+  Class<?>[] types = new Class<?>[0];
+  double[][] doubles = new double[0][];
+  int[][] ints = new int[0][];
+  boolean[][] booleans = new boolean[0][];
+  boolean[][] nulls = new boolean[0][];
+  int rows;
+
+  // owned buffers, input columns may point to TestSet arrays instead
+  private double[][] doubleBuffers = new double[0][];
+  private int[][] intBuffers = new int[0][];
+  private boolean[][] booleanBuffers = new boolean[0][];
+  private boolean[][] nullBuffers = new boolean[0][];
+  // columns of these slots are new arrays instead of buffers, see prepareNewColumns
+  private boolean[] newColumns = new boolean[0];
+
+  private double[] scores = new double[0];
+
+  /**
+   * Prepares the frame for a grid, the columns of inputs and constants still have to be filled.
+   */
+  public void reset(final Grid grid, final int rows) {
+    this.rows = rows;
+    final int size = GridCompiler.getSlotCount(grid);
+    if (types.length < size) {
+      types = Arrays.copyOf(types, size);
+      doubles = Arrays.copyOf(doubles, size);
+      ints = Arrays.copyOf(ints, size);
+      booleans = Arrays.copyOf(booleans, size);
+      nulls = Arrays.copyOf(nulls, size);
+      doubleBuffers = Arrays.copyOf(doubleBuffers, size);
+      intBuffers = Arrays.copyOf(intBuffers, size);
+      booleanBuffers = Arrays.copyOf(booleanBuffers, size);
+      nullBuffers = Arrays.copyOf(nullBuffers, size);
+      newColumns = Arrays.copyOf(newColumns, size);
+    }
+    int s = 0;
+    for (final InputCell c : grid.getInputCells()) {
+      types[s++] = c.getValueType();
+    }
+    for (int i = 0; i < grid.getLibraryCells().length; i++) {
+      types[s++] = Object.class;
+    }
+    for (final ConstantCell c : grid.getConstantCells()) {
+      types[s++] = c.getValueType();
+    }
+    for (final Calculable c : grid.getCallCells()) {
+      types[s++] = ((ValueCell) c).getValueType();
+    }
+    for (int slot = 0; slot < size; slot++) {
+      doubles[slot] = null;
+      ints[slot] = null;
+      booleans[slot] = null;
+      nulls[slot] = null;
+      newColumns[slot] = false;
+      if (types[slot] == Double.class) {
+        if (doubleBuffers[slot] == null || doubleBuffers[slot].length < rows) {
+          doubleBuffers[slot] = new double[rows];
+        }
+        doubles[slot] = doubleBuffers[slot];
+      } else if (types[slot] == Integer.class) {
+        if (intBuffers[slot] == null || intBuffers[slot].length < rows) {
+          intBuffers[slot] = new int[rows];
+        }
+        ints[slot] = intBuffers[slot];
+      } else if (types[slot] == Boolean.class) {
+        if (booleanBuffers[slot] == null || booleanBuffers[slot].length < rows) {
+          booleanBuffers[slot] = new boolean[rows];
+        }
+        booleans[slot] = booleanBuffers[slot];
+      }
+    }
+  }
+
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * Uses the values of a TestSet column for an input slot, typed columns of the slot type are shared.
+   */
+  public void fillInput(final int slot, final TestSetColumn column) {
+    final Class<?> type = types[slot];
+    if (type == Double.class && column instanceof TestSetColumn.DoubleColumn) {
+      doubles[slot] = ((TestSetColumn.DoubleColumn) column).getValues();
+    } else if (type == Integer.class && column instanceof TestSetColumn.IntColumn) {
+      ints[slot] = ((TestSetColumn.IntColumn) column).getValues();
+    } else if (type == Boolean.class && column instanceof TestSetColumn.BooleanColumn) {
+      booleans[slot] = ((TestSetColumn.BooleanColumn) column).getValues();
+    } else if (!fillCopy(slot, column, null)) {
+      for (int row = 0; row < rows; row++) {
+        set(slot, row, column.get(row));
+      }
+    }
+  }
+
+  /**
+   * Uses the values of the given column rows for an input slot, row r of the frame gets column row rows[r].
+   *
+   * @param rows
+   *          null to use the first rows of the column
+   */
+  public void fillInput(final int slot, final TestSetColumn column, final int[] rows) {
+    if (rows == null) {
+      fillInput(slot, column);
+      return;
+    }
+    final Class<?> type = types[slot];
+    if (type == Double.class && column instanceof TestSetColumn.DoubleColumn) {
+      final double[] values = ((TestSetColumn.DoubleColumn) column).getValues();
+      for (int row = 0; row < this.rows; row++) {
+        doubles[slot][row] = values[rows[row]];
+      }
+    } else if (type == Integer.class && column instanceof TestSetColumn.IntColumn) {
+      final int[] values = ((TestSetColumn.IntColumn) column).getValues();
+      for (int row = 0; row < this.rows; row++) {
+        ints[slot][row] = values[rows[row]];
+      }
+    } else if (type == Boolean.class && column instanceof TestSetColumn.BooleanColumn) {
+      final boolean[] values = ((TestSetColumn.BooleanColumn) column).getValues();
+      for (int row = 0; row < this.rows; row++) {
+        booleans[slot][row] = values[rows[row]];
+      }
+    } else if (!fillCopy(slot, column, rows)) {
+      for (int row = 0; row < this.rows; row++) {
+        set(slot, row, column.get(rows[row]));
+      }
+    }
+  }
+
+  /**
+   * Copies the values of a mapped column without boxing them.
+   * 
+   * @param rows
+   *          null to use the first rows of the column
+   * @return false if the column is not a mapped column of the slot type
+   */
+  private boolean fillCopy(final int slot, final TestSetColumn column, final int[] rows) {
+    final Class<?> type = types[slot];
+    if (type == Double.class && column instanceof TestSetColumn.MappedDoubleColumn) {
+      for (int row = 0; row < this.rows; row++) {
+        doubles[slot][row] = column.getDouble(rows == null ? row : rows[row]);
+      }
+    } else if (type == Integer.class && column instanceof TestSetColumn.MappedIntColumn) {
+      final TestSetColumn.MappedIntColumn ints = (TestSetColumn.MappedIntColumn) column;
+      for (int row = 0; row < this.rows; row++) {
+        this.ints[slot][row] = ints.getInt(rows == null ? row : rows[row]);
+      }
+    } else if (type == Boolean.class && column instanceof TestSetColumn.MappedBooleanColumn) {
+      final TestSetColumn.MappedBooleanColumn booleans = (TestSetColumn.MappedBooleanColumn) column;
+      for (int row = 0; row < this.rows; row++) {
+        this.booleans[slot][row] = booleans.getBoolean(rows == null ? row : rows[row]);
+      }
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * fills the columns of the constants with their values
+   */
+  public void fillConstants(final Grid grid) {
+    int slot = grid.getInputCells().length + grid.getLibraryCells().length;
+    for (final ConstantCell c : grid.getConstantCells()) {
+      final Object value = c.getValue();
+      if (value == null) {
+        setNull(slot, 0, rows);
+      } else if (types[slot] == Double.class) {
+        Arrays.fill(doubles[slot], 0, rows, (Double) value);
+      } else if (types[slot] == Integer.class) {
+        Arrays.fill(ints[slot], 0, rows, (Integer) value);
+      } else if (types[slot] == Boolean.class) {
+        Arrays.fill(booleans[slot], 0, rows, (Boolean) value);
+      }
+      slot++;
+    }
+  }
+
+  /**
+   * Lets the slot calculate into new arrays, so the columns can be kept after the next reset.
+   */
+  void prepareNewColumns(final int slot) {
+    newColumns[slot] = true;
+    nulls[slot] = null;
+    final Class<?> type = types[slot];
+    if (type == Double.class) {
+      doubles[slot] = new double[rows];
+    } else if (type == Integer.class) {
+      ints[slot] = new int[rows];
+    } else if (type == Boolean.class) {
+      booleans[slot] = new boolean[rows];
+    }
+  }
+
+  /**
+   * uses the columns of earlier results for the slot
+   */
+  void useColumns(final int slot, final CellResults results) {
+    doubles[slot] = results.doubles[slot];
+    ints[slot] = results.ints[slot];
+    booleans[slot] = results.booleans[slot];
+    nulls[slot] = results.nulls[slot];
+  }
+
+  void set(final int slot, final int row, final Object value) {
+    if (value == null) {
+      setNull(slot, row, row + 1);
+      return;
+    }
+    final Class<?> type = types[slot];
+    if (type == Double.class) {
+      doubles[slot][row] = (Double) value;
+    } else if (type == Integer.class) {
+      ints[slot][row] = (Integer) value;
+    } else if (type == Boolean.class) {
+      booleans[slot][row] = (Boolean) value;
+    }
+  }
+
+  private void setNull(final int slot, final int from, final int to) {
+    Arrays.fill(getNullColumn(slot), from, to, true);
+  }
+
+  /**
+   * @return the nulls column of the slot, cleared when the slot had no nulls yet
+   */
+  boolean[] getNullColumn(final int slot) {
+    if (nulls[slot] == null) {
+      if (newColumns[slot]) {
+        nulls[slot] = new boolean[rows];
+        return nulls[slot];
+      }
+      if (nullBuffers[slot] == null || nullBuffers[slot].length < rows) {
+        nullBuffers[slot] = new boolean[rows];
+      } else {
+        Arrays.fill(nullBuffers[slot], 0, rows, false);
+      }
+      nulls[slot] = nullBuffers[slot];
+    }
+    return nulls[slot];
+  }
+
+  /**
+   * @return true if the slot has null rows
+   */
+  public boolean hasNulls(final int slot) {
+    return nulls[slot] != null;
+  }
+
+  public boolean isNull(final int slot, final int row) {
+    return nulls[slot] != null && nulls[slot][row];
+  }
+
+  public boolean isNumber(final int slot) {
+    return types[slot] == Double.class || types[slot] == Integer.class;
+  }
+
+  /**
+   * @return the value of a Double or Integer slot
+   */
+  public double getDouble(final int slot, final int row) {
+    if (types[slot] == Integer.class) {
+      return ints[slot][row];
+    }
+    return doubles[slot][row];
+  }
+
+  /**
+   * @return the column of a Double slot
+   */
+  public double[] getDoubles(final int slot) {
+    return doubles[slot];
+  }
+
+  /**
+   * @return the boxed value, null if it has none
+   */
+  public Object getValue(final int slot, final int row) {
+    if (isNull(slot, row)) {
+      return null;
+    }
+    final Class<?> type = types[slot];
+    if (type == Double.class) {
+      return doubles[slot][row];
+    } else if (type == Integer.class) {
+      return ints[slot][row];
+    } else if (type == Boolean.class) {
+      return booleans[slot][row];
+    }
+    throw new IllegalStateException("not a primitive slot:" + slot + " " + type);
+  }
+
+  /**
+   * @return a cleared buffer of one score per row
+   */
+  public double[] getScores() {
+    if (scores.length < rows) {
+      scores = new double[rows];
+    } else {
+      Arrays.fill(scores, 0, rows, 0);
+    }
+    return scores;
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.engine;
+
+import java.util.ArrayList;
+
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.cell.ConstantCell;
+import nl.bluevoid.genpro.engine.PrimitiveGridCompiler.CallPlan;
+
+/**
+ * Evaluates a grid a column at a time: every used callcell is calculated over all rows of a
+ * {@link BatchFrame} before the next cell, in loops per operation instead of a call per row and cell. Takes
+ * the same grids as {@link PrimitiveGridCompiler}, but needs no generated class.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public final class BatchGrid {
+
+  private final CallPlan[] plans;
+  private final ColumnKernel[] kernels;
+  private final int constantSlotOffset;
+
+  private BatchGrid(final Grid grid, final ArrayList<CallPlan> plans) {
+    constantSlotOffset = grid.getInputCells().length + grid.getLibraryCells().length;
+    this.plans = plans.toArray(new CallPlan[plans.size()]);
+    kernels = new ColumnKernel[this.plans.length];
+    for (int i = 0; i < kernels.length; i++) {
+      kernels[i] = ColumnKernel.forPlan(this.plans[i]);
+    }
+  }
+
+  /**
+   * @return the batch version of the grid, null if it can not be calculated on primitive columns
+   */
+  public static BatchGrid create(final Grid grid) {
+    final ArrayList<CallPlan> plans = new ArrayList<CallPlan>();
+    if (PrimitiveGridCompiler.plan(grid, plans) == null) {
+      return null;
+    }
+    return new BatchGrid(grid, plans);
+  }
+
+  /**
+   * calculates the columns of the used callcells, the inputs and constants of the frame must be filled
+   */
+  public void calc(final BatchFrame frame) {
+    for (int i = 0; i < plans.length; i++) {
+      kernels[i].calc(frame, plans[i]);
+    }
+  }
+
+  /**
+   * Calculates only the callcells that changed since the previous results, or depend on a changed cell or
+   * constant. The columns of the other cells are taken from the previous results.
+   * 
+   * @param previous
+   *          the results of the parent grid, may be null
+   * @param source
+   *          the data the inputs of the frame were filled from
+   * @return the results of this calculation, sharing the unchanged columns with previous
+   */
+  public CellResults calc(final BatchFrame frame, final Grid grid, CellResults previous, final Object source) {
+    final int slots = frame.types.length;
+    if (previous != null && !previous.isValidFor(source, frame.rows, slots)) {
+      previous = null;
+    }
+    final CellResults results = new CellResults(source, frame.rows, slots);
+    final ConstantCell[] constants = grid.getConstantCells();
+    for (int i = 0; i < constants.length; i++) {
+      final int slot = constantSlotOffset + i;
+      final Object value = constants[i].getValue();
+      results.constantValues[slot] = value;
+      results.changed[slot] = previous == null || !equal(previous.constantValues[slot], value);
+    }
+    for (int i = 0; i < plans.length; i++) {
+      final CallPlan plan = plans[i];
+      boolean changed = previous == null || !previous.hasColumn(plan.slot, plan.method, plan.paramSlots);
+      for (final int paramSlot : plan.paramSlots) {
+        changed |= results.changed[paramSlot];
+      }
+      if (changed) {
+        frame.prepareNewColumns(plan.slot);
+        kernels[i].calc(frame, plan);
+        results.recalculated++;
+      } else {
+        frame.useColumns(plan.slot, previous);
+      }
+      results.changed[plan.slot] = changed;
+      results.store(plan.slot, plan.method, plan.paramSlots, frame);
+    }
+    return results;
+  }
+
+  private static boolean equal(final Object a, final Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.engine;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * The columns a {@link BatchGrid} calculated for each used callcell of a grid, and the score they gave. A
+ * clone of the grid shares these results, so after a mutation only the changed cells and the cells that
+ * depend on them are calculated again. Columns are never written after they are stored, so they can be
+ * shared by many grids.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public final class CellResults {
+
+  private final Object source;
+  private final int rows;
+
+  // per slot: the call and its columns, or the value of a constant
+  final Method[] methods;
+  final int[][] paramSlots;
+  final double[][] doubles;
+  final int[][] ints;
+  final boolean[][] booleans;
+  final boolean[][] nulls;
+  final Object[] constantValues;
+  final boolean[] changed;
+  int recalculated = 0;
+
+  private Object scoredBy;
+  private int scoredModification;
+  private int[] scoredOutputSlots;
+  private double score;
+
+  CellResults(final Object source, final int rows, final int slots) {
+    this.source = source;
+    this.rows = rows;
+    methods = new Method[slots];
+    paramSlots = new int[slots][];
+    doubles = new double[slots][];
+    ints = new int[slots][];
+    booleans = new boolean[slots][];
+    nulls = new boolean[slots][];
+    constantValues = new Object[slots];
+    changed = new boolean[slots];
+  }
+
+  /**
+   * @return true if the columns were calculated from the same data
+   */
+  boolean isValidFor(final Object source, final int rows, final int slots) {
+    return this.source == source && this.rows == rows && methods.length == slots;
+  }
+
+  /**
+   * @return true if the column of the slot can be used for this call
+   */
+  boolean hasColumn(final int slot, final Method method, final int[] params) {
+    return methods[slot] == method && Arrays.equals(paramSlots[slot], params);
+  }
+
+  void store(final int slot, final Method method, final int[] params, final BatchFrame frame) {
+    methods[slot] = method;
+    paramSlots[slot] = params;
+    doubles[slot] = frame.doubles[slot];
+    ints[slot] = frame.ints[slot];
+    booleans[slot] = frame.booleans[slot];
+    nulls[slot] = frame.nulls[slot];
+  }
+
+  /**
+   * @return the number of callcells that had to be calculated, the others were taken from the previous
+   *         results
+   */
+  public int getRecalculated() {
+    return recalculated;
+  }
+
+  /**
+   * @return true if no constant or used callcell changed since the previous results
+   */
+  public boolean isUnchanged() {
+    for (final boolean c : changed) {
+      if (c) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param scoredBy
+   *          the evaluator
+   * @param modification
+   *          its modification count, the score is only valid as long as it does not change
+   * @param outputSlots
+   *          the slots the outputs referred to
+   */
+  public void setScore(final Object scoredBy, final int modification, final int[] outputSlots,
+      final double score) {
+    this.scoredBy = scoredBy;
+    this.scoredModification = modification;
+    this.scoredOutputSlots = outputSlots;
+    this.score = score;
+  }
+
+  public boolean hasScore(final Object scoredBy, final int modification, final int[] outputSlots) {
+    return this.scoredBy == scoredBy && scoredModification == modification
+        && Arrays.equals(scoredOutputSlots, outputSlots);
+  }
+
+  public double getScore() {
+    return score;
+  }
+}
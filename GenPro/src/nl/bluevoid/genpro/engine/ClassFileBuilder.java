@@ -0,0 +1,380 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Minimal class file writer, just enough to emit the straight-line code the grid compilers produce. Class
+ * files are written as version 49 so no stack map frames are needed.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+final class ClassFileBuilder {
+
+  static final int ACC_PUBLIC = 0x0001;
+  static final int ACC_FINAL = 0x0010;
+  static final int ACC_SUPER = 0x0020;
+
+  private static final int VERSION = 49;
+
+  private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+  private final DataOutputStream pool = new DataOutputStream(poolBytes);
+  private final HashMap<String, Integer> poolIndex = new HashMap<String, Integer>();
+  private int poolCount = 1;
+
+  private final int thisClass;
+  private final int superClass;
+  private final int[] interfaces;
+  private final ArrayList<Code> methods = new ArrayList<Code>();
+
+  ClassFileBuilder(final String name, final String superName, final String... interfaceNames) {
+    thisClass = classRef(name);
+    superClass = classRef(superName);
+    interfaces = new int[interfaceNames.length];
+    for (int i = 0; i < interfaceNames.length; i++) {
+      interfaces[i] = classRef(interfaceNames[i]);
+    }
+  }
+
+  int utf8(final String s) {
+    final String key = "U" + s;
+    Integer idx = poolIndex.get(key);
+    if (idx == null) {
+      try {
+        pool.writeByte(1);
+        pool.writeUTF(s);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      idx = add(key, 1);
+    }
+    return idx;
+  }
+
+  int classRef(final String internalName) {
+    final String key = "C" + internalName;
+    Integer idx = poolIndex.get(key);
+    if (idx == null) {
+      final int name = utf8(internalName);
+      write(7, name);
+      idx = add(key, 1);
+    }
+    return idx;
+  }
+
+  int methodRef(final String owner, final String name, final String desc, final boolean isInterface) {
+    final String key = (isInterface ? "I" : "M") + owner + "." + name + desc;
+    Integer idx = poolIndex.get(key);
+    if (idx == null) {
+      final int cls = classRef(owner);
+      final int nat = nameAndType(name, desc);
+      write(isInterface ? 11 : 10, cls, nat);
+      idx = add(key, 1);
+    }
+    return idx;
+  }
+
+  int intConstant(final int value) {
+    final String key = "I" + value;
+    Integer idx = poolIndex.get(key);
+    if (idx == null) {
+      try {
+        pool.writeByte(3);
+        pool.writeInt(value);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      idx = add(key, 1);
+    }
+    return idx;
+  }
+
+  private int nameAndType(final String name, final String desc) {
+    final String key = "N" + name + ":" + desc;
+    Integer idx = poolIndex.get(key);
+    if (idx == null) {
+      final int n = utf8(name);
+      final int d = utf8(desc);
+      write(12, n, d);
+      idx = add(key, 1);
+    }
+    return idx;
+  }
+
+  private void write(final int tag, final int... u2s) {
+    try {
+      pool.writeByte(tag);
+      for (final int u2 : u2s) {
+        pool.writeShort(u2);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private int add(final String key, final int size) {
+    final int idx = poolCount;
+    poolCount += size;
+    if (poolCount > 0xFFFF) {
+      throw new IllegalStateException("constant pool too large");
+    }
+    poolIndex.put(key, idx);
+    return idx;
+  }
+
+  /**
+   * Starts a new method; the returned Code collects its instructions.
+   */
+  Code method(final int access, final String name, final String desc) {
+    final Code code = new Code(this, access, utf8(name), utf8(desc));
+    methods.add(code);
+    return code;
+  }
+
+  byte[] toByteArray() {
+    final int codeAttr = utf8("Code");
+    try {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(0xCAFEBABE);
+      out.writeShort(0);
+      out.writeShort(VERSION);
+      out.writeShort(poolCount);
+      pool.flush();
+      poolBytes.writeTo(out);
+      out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+      out.writeShort(thisClass);
+      out.writeShort(superClass);
+      out.writeShort(interfaces.length);
+      for (final int itf : interfaces) {
+        out.writeShort(itf);
+      }
+      out.writeShort(0); // fields
+      out.writeShort(methods.size());
+      for (final Code m : methods) {
+        m.write(out, codeAttr);
+      }
+      out.writeShort(0); // class attributes
+      out.flush();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Bytecode of a single method. Jumps are 16 bit, so a method must stay below 32k of code.
+   */
+  static final class Code {
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ALOAD = 0x19;
+    static final int IALOAD = 0x2e;
+    static final int DALOAD = 0x31;
+    static final int AALOAD = 0x32;
+    static final int BALOAD = 0x33;
+    static final int IASTORE = 0x4f;
+    static final int DASTORE = 0x52;
+    static final int AASTORE = 0x53;
+    static final int BASTORE = 0x54;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int I2L = 0x85;
+    static final int I2F = 0x86;
+    static final int I2D = 0x87;
+    static final int IFNE = 0x9a;
+    static final int GOTO = 0xa7;
+    static final int RETURN = 0xb1;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int INVOKEINTERFACE = 0xb9;
+    static final int NEW = 0xbb;
+    static final int ATHROW = 0xbf;
+    static final int CHECKCAST = 0xc0;
+    static final int IFNULL = 0xc6;
+    static final int IFNONNULL = 0xc7;
+
+    private final ClassFileBuilder owner;
+    private final int access;
+    private final int name;
+    private final int desc;
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private final ArrayList<int[]> exceptionTable = new ArrayList<int[]>();
+    private final ArrayList<int[]> jumps = new ArrayList<int[]>();
+    private final ArrayList<Label> labels = new ArrayList<Label>();
+    private int maxStack = 0;
+    private int maxLocals = 0;
+
+    private Code(final ClassFileBuilder owner, final int access, final int name, final int desc) {
+      this.owner = owner;
+      this.access = access;
+      this.name = name;
+      this.desc = desc;
+    }
+
+    static final class Label {
+      int offset = -1;
+    }
+
+    ClassFileBuilder getOwner() {
+      return owner;
+    }
+
+    int size() {
+      return code.size();
+    }
+
+    void op(final int opcode) {
+      code.write(opcode);
+    }
+
+    void op(final int opcode, final int u1) {
+      code.write(opcode);
+      code.write(u1);
+    }
+
+    void opShort(final int opcode, final int u2) {
+      code.write(opcode);
+      code.write(u2 >> 8);
+      code.write(u2);
+    }
+
+    /**
+     * pushes an int constant with the shortest instruction possible
+     */
+    void pushInt(final int value) {
+      if (value >= -1 && value <= 5) {
+        op(ICONST_0 + value);
+      } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+        op(BIPUSH, value & 0xFF);
+      } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+        opShort(SIPUSH, value & 0xFFFF);
+      } else {
+        opShort(LDC_W, owner.intConstant(value));
+      }
+    }
+
+    void load(final int opcode, final int local) {
+      op(opcode, local);
+    }
+
+    void type(final int opcode, final String internalName) {
+      opShort(opcode, owner.classRef(internalName));
+    }
+
+    void invoke(final int opcode, final String ownerName, final String methodName, final String methodDesc,
+        final boolean isInterface) {
+      final int ref = owner.methodRef(ownerName, methodName, methodDesc, isInterface);
+      if (opcode == INVOKEINTERFACE) {
+        opShort(opcode, ref);
+        code.write(argumentSlots(methodDesc) + 1);
+        code.write(0);
+      } else {
+        opShort(opcode, ref);
+      }
+    }
+
+    Label newLabel() {
+      final Label l = new Label();
+      labels.add(l);
+      return l;
+    }
+
+    void mark(final Label label) {
+      label.offset = code.size();
+    }
+
+    void jump(final int opcode, final Label target) {
+      jumps.add(new int[] { code.size(), labels.indexOf(target) });
+      opShort(opcode, 0);
+    }
+
+    void tryCatch(final Label start, final Label end, final Label handler, final String exceptionType) {
+      exceptionTable.add(new int[] { labels.indexOf(start), labels.indexOf(end), labels.indexOf(handler),
+          owner.classRef(exceptionType) });
+    }
+
+    void setMaxs(final int maxStack, final int maxLocals) {
+      this.maxStack = maxStack;
+      this.maxLocals = maxLocals;
+    }
+
+    private void write(final DataOutputStream out, final int codeAttr) throws IOException {
+      final byte[] bytes = code.toByteArray();
+      if (bytes.length > Short.MAX_VALUE) {
+        throw new IllegalStateException("method too large: " + bytes.length);
+      }
+      for (final int[] jump : jumps) {
+        final int target = labels.get(jump[1]).offset;
+        final int delta = target - jump[0];
+        bytes[jump[0] + 1] = (byte) (delta >> 8);
+        bytes[jump[0] + 2] = (byte) delta;
+      }
+      out.writeShort(access);
+      out.writeShort(name);
+      out.writeShort(desc);
+      out.writeShort(1);
+      out.writeShort(codeAttr);
+      out.writeInt(12 + bytes.length + exceptionTable.size() * 8);
+      out.writeShort(maxStack);
+      out.writeShort(maxLocals);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+      out.writeShort(exceptionTable.size());
+      for (final int[] entry : exceptionTable) {
+        out.writeShort(labels.get(entry[0]).offset);
+        out.writeShort(labels.get(entry[1]).offset);
+        out.writeShort(labels.get(entry[2]).offset);
+        out.writeShort(entry[3]);
+      }
+      out.writeShort(0); // code attributes
+    }
+
+    static int argumentSlots(final String methodDesc) {
+      int slots = 0;
+      int i = 1;
+      while (methodDesc.charAt(i) != ')') {
+        final char c = methodDesc.charAt(i);
+        if (c == 'J' || c == 'D') {
+          slots += 2;
+          i++;
+        } else {
+          while (methodDesc.charAt(i) == '[') {
+            i++;
+          }
+          if (methodDesc.charAt(i) == 'L') {
+            i = methodDesc.indexOf(';', i);
+          }
+          i++;
+          slots++;
+        }
+      }
+      return slots;
+    }
+  }
+}
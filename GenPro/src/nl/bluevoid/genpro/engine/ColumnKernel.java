@@ -0,0 +1,327 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.engine;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+
+import nl.bluevoid.genpro.engine.PrimitiveGridCompiler.CallPlan;
+import nl.bluevoid.genpro.operations.BooleanOperations;
+import nl.bluevoid.genpro.operations.NumberOperations;
+import nl.bluevoid.genpro.util.Sneak;
+
+/**
+ * Calculates the column of one callcell from the columns of its params. The operations of NumberOperations
+ * and BooleanOperations have their own loops, other static methods on doubles are called through a typed
+ * MethodHandle and anything else by reflection.
+ * 
+ * A row is null when one of its params is null or the call throws a RuntimeException, like CallCell.calc().
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+abstract class ColumnKernel {
+
+  private static final HashMap<Method, ColumnKernel> kernels = new HashMap<Method, ColumnKernel>();
+
+  static {
+    try {
+      final Class<?> numberOps = NumberOperations.class;
+      final Class<?> booleanOps = BooleanOperations.class;
+      final Class<?> d = double.class;
+      final Class<?> i = int.class;
+      final Class<?> z = boolean.class;
+      kernels.put(numberOps.getMethod("plus", d, d), new DoubleOp() {
+        @Override
+        void apply(double[] a, double[] b, double[] out, int rows) {
+          for (int r = 0; r < rows; r++) {
+            out[r] = a[r] + b[r];
+          }
+        }
+      });
+      kernels.put(numberOps.getMethod("minus", d, d), new DoubleOp() {
+        @Override
+        void apply(double[] a, double[] b, double[] out, int rows) {
+          for (int r = 0; r < rows; r++) {
+            out[r] = a[r] - b[r];
+          }
+        }
+      });
+      kernels.put(numberOps.getMethod("multiply", d, d), new DoubleOp() {
+        @Override
+        void apply(double[] a, double[] b, double[] out, int rows) {
+          for (int r = 0; r < rows; r++) {
+            out[r] = a[r] * b[r];
+          }
+        }
+      });
+      kernels.put(numberOps.getMethod("divide", d, d), new DoubleOp() {
+        @Override
+        void apply(double[] a, double[] b, double[] out, int rows) {
+          for (int r = 0; r < rows; r++) {
+            out[r] = a[r] / b[r];
+          }
+        }
+      });
+      kernels.put(numberOps.getMethod("pow", d), new DoubleOp() {
+        @Override
+        void apply(double[] a, double[] b, double[] out, int rows) {
+          for (int r = 0; r < rows; r++) {
+            out[r] = a[r] * a[r];
+          }
+        }
+      });
+      kernels.put(numberOps.getMethod("plus", i, i), new IntOp() {
+        @Override
+        void apply(int[] a, int[] b, int[] out, int rows) {
+          for (int r = 0; r < rows; r++) {
+            out[r] = a[r] + b[r];
+          }
+        }
+      });
+      kernels.put(numberOps.getMethod("minus", i, i), new IntOp() {
+        @Override
+        void apply(int[] a, int[] b, int[] out, int rows) {
+          for (int r = 0; r < rows; r++) {
+            out[r] = a[r] - b[r];
+          }
+        }
+      });
+      kernels.put(numberOps.getMethod("multiply", i, i), new IntOp() {
+        @Override
+        void apply(int[] a, int[] b, int[] out, int rows) {
+          for (int r = 0; r < rows; r++) {
+            out[r] = a[r] * b[r];
+          }
+        }
+      });
+      kernels.put(numberOps.getMethod("divide", i, i), new IntOp() {
+        @Override
+        void apply(int[] a, int[] b, int[] out, int rows) {
+          for (int r = 0; r < rows; r++) {
+            out[r] = b[r] == 0 ? Integer.MAX_VALUE : a[r] / b[r];
+          }
+        }
+      });
+      kernels.put(booleanOps.getMethod("greaterThan", d, d), new DoubleCompare() {
+        @Override
+        void apply(double[] a, double[] b, boolean[] out, int rows) {
+          for (int r = 0; r < rows; r++) {
+            out[r] = a[r] > b[r];
+          }
+        }
+      });
+      kernels.put(booleanOps.getMethod("smallerThan", d, d), new DoubleCompare() {
+        @Override
+        void apply(double[] a, double[] b, boolean[] out, int rows) {
+          for (int r = 0; r < rows; r++) {
+            out[r] = a[r] < b[r];
+          }
+        }
+      });
+      kernels.put(booleanOps.getMethod("and", z, z), new BooleanOp() {
+        @Override
+        void apply(boolean[] a, boolean[] b, boolean[] out, int rows) {
+          for (int r = 0; r < rows; r++) {
+            out[r] = a[r] && b[r];
+          }
+        }
+      });
+      kernels.put(booleanOps.getMethod("or", z, z), new BooleanOp() {
+        @Override
+        void apply(boolean[] a, boolean[] b, boolean[] out, int rows) {
+          for (int r = 0; r < rows; r++) {
+            out[r] = a[r] || b[r];
+          }
+        }
+      });
+      kernels.put(booleanOps.getMethod("not", z), new BooleanOp() {
+        @Override
+        void apply(boolean[] a, boolean[] b, boolean[] out, int rows) {
+          for (int r = 0; r < rows; r++) {
+            out[r] = !a[r];
+          }
+        }
+      });
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException(e.getMessage());
+    }
+  }
+
+  /**
+   * @return the kernel for the call, the params of a plan with its own loop have exactly the cell types
+   */
+  static ColumnKernel forPlan(final CallPlan plan) {
+    final Class<?>[] types = plan.method.getParameterTypes();
+    boolean exact = true;
+    boolean doubles = plan.valueType == Double.class && types.length <= 2;
+    for (int i = 0; i < types.length; i++) {
+      exact &= PrimitiveGridCompiler.getPrimitive(plan.paramCellTypes[i]) == types[i];
+      doubles &= types[i] == double.class && plan.paramCellTypes[i] == Double.class;
+    }
+    final ColumnKernel kernel = kernels.get(plan.method);
+    if (kernel != null && exact) {
+      return kernel;
+    }
+    if (doubles && types.length > 0) {
+      try {
+        return new DoubleHandle(MethodHandles.publicLookup().unreflect(plan.method));
+      } catch (IllegalAccessException e) {
+        // use reflection
+      }
+    }
+    return new Reflection();
+  }
+
+  abstract void calc(BatchFrame frame, CallPlan plan);
+
+  /**
+   * the result is null where a param is null
+   */
+  static void mergeNulls(final BatchFrame frame, final CallPlan plan) {
+    for (final int paramSlot : plan.paramSlots) {
+      final boolean[] paramNulls = frame.nulls[paramSlot];
+      if (paramNulls != null) {
+        final boolean[] out = frame.getNullColumn(plan.slot);
+        for (int r = 0; r < frame.rows; r++) {
+          out[r] |= paramNulls[r];
+        }
+      }
+    }
+  }
+
+  /**
+   * Params of a unary operation use the first param twice.
+   */
+  static int getSecondParam(final CallPlan plan) {
+    return plan.paramSlots[plan.paramSlots.length - 1];
+  }
+
+  abstract static class DoubleOp extends ColumnKernel {
+    @Override
+    void calc(final BatchFrame frame, final CallPlan plan) {
+      apply(frame.doubles[plan.paramSlots[0]], frame.doubles[getSecondParam(plan)], frame.doubles[plan.slot],
+          frame.rows);
+      mergeNulls(frame, plan);
+    }
+
+    abstract void apply(double[] a, double[] b, double[] out, int rows);
+  }
+
+  abstract static class IntOp extends ColumnKernel {
+    @Override
+    void calc(final BatchFrame frame, final CallPlan plan) {
+      apply(frame.ints[plan.paramSlots[0]], frame.ints[getSecondParam(plan)], frame.ints[plan.slot], frame.rows);
+      mergeNulls(frame, plan);
+    }
+
+    abstract void apply(int[] a, int[] b, int[] out, int rows);
+  }
+
+  abstract static class DoubleCompare extends ColumnKernel {
+    @Override
+    void calc(final BatchFrame frame, final CallPlan plan) {
+      apply(frame.doubles[plan.paramSlots[0]], frame.doubles[getSecondParam(plan)], frame.booleans[plan.slot],
+          frame.rows);
+      mergeNulls(frame, plan);
+    }
+
+    abstract void apply(double[] a, double[] b, boolean[] out, int rows);
+  }
+
+  abstract static class BooleanOp extends ColumnKernel {
+    @Override
+    void calc(final BatchFrame frame, final CallPlan plan) {
+      apply(frame.booleans[plan.paramSlots[0]], frame.booleans[getSecondParam(plan)],
+          frame.booleans[plan.slot], frame.rows);
+      mergeNulls(frame, plan);
+    }
+
+    abstract void apply(boolean[] a, boolean[] b, boolean[] out, int rows);
+  }
+
+  /**
+   * static methods with one or two double params and a double result, like most of Math
+   */
+  static class DoubleHandle extends ColumnKernel {
+    private static final MethodType UNARY = MethodType.methodType(double.class, double.class);
+    private static final MethodType BINARY = MethodType.methodType(double.class, double.class, double.class);
+
+    private final MethodHandle handle;
+
+    DoubleHandle(final MethodHandle handle) {
+      this.handle = handle;
+    }
+
+    @Override
+    void calc(final BatchFrame frame, final CallPlan plan) {
+      mergeNulls(frame, plan);
+      final double[] a = frame.doubles[plan.paramSlots[0]];
+      final double[] b = frame.doubles[getSecondParam(plan)];
+      final double[] out = frame.doubles[plan.slot];
+      final boolean unary = handle.type().equals(UNARY);
+      if (!unary && !handle.type().equals(BINARY)) {
+        throw new IllegalStateException("not a double operation:" + plan.method);
+      }
+      for (int r = 0; r < frame.rows; r++) {
+        try {
+          out[r] = unary ? (double) handle.invokeExact(a[r]) : (double) handle.invokeExact(a[r], b[r]);
+        } catch (RuntimeException e) {
+          frame.getNullColumn(plan.slot)[r] = true;
+        } catch (Throwable e) {
+          Sneak.sneakyThrow(e);
+        }
+      }
+    }
+  }
+
+  /**
+   * boxes every row, for calls without a kernel of their own
+   */
+  static class Reflection extends ColumnKernel {
+    @Override
+    void calc(final BatchFrame frame, final CallPlan plan) {
+      final Object[] params = new Object[plan.paramSlots.length];
+      rows: for (int r = 0; r < frame.rows; r++) {
+        for (int i = 0; i < params.length; i++) {
+          params[i] = frame.getValue(plan.paramSlots[i], r);
+          if (params[i] == null) {
+            frame.set(plan.slot, r, null);
+            continue rows;
+          }
+        }
+        try {
+          frame.set(plan.slot, r, plan.method.invoke(null, params));
+        } catch (RuntimeException e) {
+          frame.set(plan.slot, r, null);
+        } catch (InvocationTargetException e) {
+          if (!(e.getCause() instanceof RuntimeException)) {
+            Sneak.sneakyThrow(e.getCause());
+          }
+          frame.set(plan.slot, r, null);
+        } catch (IllegalAccessException e) {
+          Sneak.sneakyThrow(e);
+        }
+      }
+    }
+  }
+}
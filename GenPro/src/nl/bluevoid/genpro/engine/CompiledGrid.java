@@ -0,0 +1,37 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.engine;
+
+/**
+ * A grid translated to bytecode. The slots array holds the cell values in the order laid out by
+ * {@link GridCompiler}: inputs, library objects, constants and then one slot per callcell.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public interface CompiledGrid {
+
+  /**
+   * calculates all used callcells, reading and writing their values in slots
+   * 
+   * @throws Exception
+   *           GridExecutionError when a call is made on a null target, or any checked exception thrown by a
+   *           called method
+   */
+  public void calc(Object[] slots) throws Exception;
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.engine;
+
+import java.util.Arrays;
+
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.GridExecutionError;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSetColumn;
+import nl.bluevoid.genpro.cell.ValueCell;
+import nl.bluevoid.genpro.util.Sneak;
+
+/**
+ * The values of one evaluation of a grid, in slots laid out by {@link GridCompiler}. Calculating writes
+ * nothing to the grid or its cells, so several threads can evaluate the same grid at once, each with its own
+ * frame. A frame is used by one thread only. Library objects and constants are copied in when the frame is
+ * created or reset for a grid, set the inputs before each calc. A thread can reuse its frame for the next
+ * grid by calling reset.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public final class EvaluationFrame {
+  private Grid grid;
+  private Object[] slots = new Object[0];
+  private SlotGrid slotGrid;
+  private Object[][] paramBuffers;
+  private CompiledGrid compiledGrid;
+  private PrimitiveCompiledGrid primitiveCompiledGrid;
+  private PrimitiveFrame primitiveFrame;
+  // kept when the next grid is not calculated primitively
+  private PrimitiveFrame primitiveBuffer;
+  private int callCellSlotOffset;
+  private int inputs;
+  private GridExecutionError lastException;
+  private int errors = 0;
+
+  /**
+   * Creates a frame without a grid, call reset before the first calc.
+   */
+  public EvaluationFrame() {
+  }
+
+  public EvaluationFrame(final Grid grid) {
+    reset(grid);
+  }
+
+  /**
+   * Prepares the frame for a grid, the inputs still have to be set. Calculates the way the setup of the grid
+   * says: primitive, compiled or else on the slot plan of the grid.
+   */
+  public void reset(final Grid grid) {
+    this.grid = grid;
+    final int size = GridCompiler.getSlotCount(grid);
+    if (slots.length < size) {
+      slots = new Object[size];
+    } else {
+      // callcells not used for output are not calculated, they do not show values of a previous grid
+      Arrays.fill(slots, null);
+    }
+    callCellSlotOffset = GridCompiler.getCallCellSlotOffset(grid);
+    inputs = grid.getInputCells().length;
+    lastException = null;
+    errors = 0;
+    GridCompiler.fillSlots(grid, slots);
+    slotGrid = grid.getSlotGrid();
+    final Setup setup = grid.getSetup();
+    primitiveCompiledGrid = setup.isPrimitiveEvaluation() ? grid.getPrimitiveCompiledGrid() : null;
+    primitiveFrame = null;
+    if (primitiveCompiledGrid != null) {
+      if (primitiveBuffer == null) {
+        primitiveBuffer = new PrimitiveFrame();
+      }
+      primitiveFrame = primitiveBuffer;
+      primitiveFrame.reset(grid);
+      primitiveFrame.fillConstants(grid, slots);
+    }
+    compiledGrid = primitiveFrame == null && setup.isCompiledEvaluation() ? grid.getCompiledGrid() : null;
+    paramBuffers = primitiveFrame == null && compiledGrid == null ? slotGrid.createParamBuffers() : null;
+  }
+
+  public Grid getGrid() {
+    return grid;
+  }
+
+  /**
+   * @return the slot of a cell of the grid, -1 if it is not part of the grid
+   */
+  public int getSlot(final ValueCell cell) {
+    return slotGrid.getSlot(cell);
+  }
+
+  /**
+   * @param slot
+   *          the slot of an input, the same as its index in Grid.getInputCells
+   */
+  public void setInput(final int slot, final Object value) {
+    slots[slot] = value;
+    if (primitiveFrame != null) {
+      primitiveFrame.set(slot, value);
+    }
+  }
+
+  /**
+   * Sets an input to a row of a TestSet column, primitive frames read numbers and booleans without boxing.
+   * 
+   * @param slot
+   *          the slot of an input, the same as its index in Grid.getInputCells
+   */
+  public void setInput(final int slot, final TestSetColumn column, final int row) {
+    if (primitiveFrame != null) {
+      primitiveFrame.setInput(slot, column, row);
+    } else {
+      slots[slot] = column.get(row);
+    }
+  }
+
+  /**
+   * calculates all used callcells on the current inputs
+   * 
+   * @throws GridExecutionError
+   *           when a call is made on a null target, also kept as last exception
+   */
+  public void calc() throws GridExecutionError {
+    lastException = null;
+    try {
+      if (primitiveFrame != null) {
+        primitiveFrame.calc(primitiveCompiledGrid);
+      } else if (compiledGrid != null) {
+        compiledGrid.calc(slots);
+      } else {
+        slotGrid.calc(slots, paramBuffers);
+      }
+    } catch (final GridExecutionError e) {
+      errors++;
+      lastException = e;
+      throw e;
+    } catch (final RuntimeException e) {
+      e.printStackTrace();
+      grid.printSolution();
+      throw e;
+    } catch (Exception e) {
+      Sneak.sneakyThrow(e);
+    }
+  }
+
+  /**
+   * @return true if the values are in the primitive frame instead of the slots
+   */
+  public boolean isPrimitive() {
+    return primitiveFrame != null;
+  }
+
+  /**
+   * @return the primitive values, null if this frame does not calculate primitively
+   */
+  public PrimitiveFrame getPrimitiveFrame() {
+    return primitiveFrame;
+  }
+
+  /**
+   * @return the value calculated for the slot, null if it has none
+   */
+  public Object getValue(final int slot) {
+    if (primitiveFrame != null && (slot >= callCellSlotOffset || slot < inputs)) {
+      return primitiveFrame.getValue(slot);
+    }
+    return slots[slot];
+  }
+
+  /**
+   * @return the exception of the last calc, null if it ended normally
+   */
+  public GridExecutionError getLastException() {
+    return lastException;
+  }
+
+  /**
+   * @return the number of calcs that ended with a GridExecutionError
+   */
+  public int getErrors() {
+    return errors;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.engine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nl.bluevoid.genpro.util.Debug;
+
+/**
+ * The classes generated by {@link GridCompiler} and {@link PrimitiveGridCompiler} by structural signature,
+ * least recently used first. Every Setup has its own cache, so runs do not share classes or settings.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class GridClassCache {
+
+  private int maxCachedClasses = 10000;
+  private int compileThreshold = 2;
+  private long hits = 0;
+  private long misses = 0;
+
+  private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<String, Entry>(1000, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+      return size() > maxCachedClasses;
+    }
+  };
+
+  private static class Entry {
+    int seen = 0;
+    Object compiled;
+  }
+
+  /**
+   * Looks up the instance of the class generated for signature, defining it when the signature has been seen
+   * compileThreshold times.
+   * 
+   * @return the instance, null if the threshold is not reached yet
+   */
+  Object getOrDefine(final String signature, final GridCompiler.ClassGenerator generator) {
+    final Entry entry;
+    synchronized (cache) {
+      Entry e = cache.get(signature);
+      if (e == null) {
+        e = new Entry();
+        cache.put(signature, e);
+      }
+      if (e.compiled != null) {
+        hits++;
+        return e.compiled;
+      }
+      if (++e.seen < compileThreshold) {
+        return null;
+      }
+      misses++;
+      entry = e;
+    }
+    final Object compiled = GridCompiler.define(generator.generate());
+    synchronized (cache) {
+      if (entry.compiled == null) {
+        entry.compiled = compiled;
+      }
+      return entry.compiled;
+    }
+  }
+
+  public void setMaxCachedClasses(final int max) {
+    Debug.checkRange(max, 1, Integer.MAX_VALUE);
+    synchronized (cache) {
+      maxCachedClasses = max;
+    }
+  }
+
+  /**
+   * A generated class only pays off after the JIT has compiled it, one-off structures are cheaper to run with
+   * reflection. Structures are compiled the n-th time they are seen, so elites and unchanged clones are
+   * compiled while most fresh offspring is not.
+   * 
+   * @param threshold
+   *          default 2, 1 compiles every grid
+   */
+  public void setCompileThreshold(final int threshold) {
+    Debug.checkRange(threshold, 1, Integer.MAX_VALUE);
+    synchronized (cache) {
+      compileThreshold = threshold;
+    }
+  }
+
+  public long getHits() {
+    synchronized (cache) {
+      return hits;
+    }
+  }
+
+  public long getMisses() {
+    synchronized (cache) {
+      return misses;
+    }
+  }
+
+  public int getSize() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  public void clear() {
+    synchronized (cache) {
+      cache.clear();
+      hits = 0;
+      misses = 0;
+    }
+  }
+}
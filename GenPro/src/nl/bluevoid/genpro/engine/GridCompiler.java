@@ -0,0 +1,499 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.cell.Calculable;
+import nl.bluevoid.genpro.cell.CallCell;
+import nl.bluevoid.genpro.cell.CellTypeEnum;
+import nl.bluevoid.genpro.cell.ConstantCell;
+import nl.bluevoid.genpro.cell.InputCell;
+import nl.bluevoid.genpro.cell.LibraryCell;
+import nl.bluevoid.genpro.cell.ValueCell;
+import nl.bluevoid.genpro.engine.ClassFileBuilder.Code;
+
+/**
+ * Translates the used callcells of a grid into a hidden class with direct static and virtual calls. The
+ * generated code only depends on the structure of the grid, constant values are read from the slots, so
+ * classes are cached by a structural signature in the {@link GridClassCache} of the setup and shared by all
+ * grids with the same wiring (elites, unchanged clones, grids with only mutated constants).
+ * 
+ * Grids containing switches, or calling methods on classes that are not public or not visible from this
+ * classloader, can not be compiled; compile returns null for those and the grid falls back to reflection.
+ * Semantics follow CallCell.calc(): a RuntimeException in a call leaves the cell null, a call on a null
+ * target throws a GridExecutionError. The generated code does not update the call and error counters of the
+ * cells, Grid.calcCounted calculates reflectively for the statistics that report them.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class GridCompiler {
+
+  private static final String CLASS_NAME = "nl/bluevoid/genpro/engine/GeneratedGrid";
+  private static final String OBJECT = "java/lang/Object";
+  private static final String GRID_EXECUTION_ERROR = "nl/bluevoid/genpro/GridExecutionError";
+
+  /**
+   * Creates the bytecode for a cache miss.
+   */
+  static abstract class ClassGenerator {
+    abstract byte[] generate();
+  }
+
+  private static final ConcurrentHashMap<Class<?>, Boolean> accessible = new ConcurrentHashMap<Class<?>, Boolean>();
+
+  private static final HashMap<Class<?>, Class<?>> primitiveForWrapper = new HashMap<Class<?>, Class<?>>();
+  static {
+    primitiveForWrapper.put(Boolean.class, boolean.class);
+    primitiveForWrapper.put(Character.class, char.class);
+    primitiveForWrapper.put(Byte.class, byte.class);
+    primitiveForWrapper.put(Short.class, short.class);
+    primitiveForWrapper.put(Integer.class, int.class);
+    primitiveForWrapper.put(Long.class, long.class);
+    primitiveForWrapper.put(Float.class, float.class);
+    primitiveForWrapper.put(Double.class, double.class);
+  }
+
+  // widening order of the numeric primitives, char is handled separately
+  private static final Class<?>[] numericOrder = new Class<?>[] { byte.class, short.class, int.class,
+      long.class, float.class, double.class };
+
+  /**
+   * One compiled call: the plan for a used callcell.
+   */
+  private static class CallPlan {
+    int slot;
+    Method method;
+    Class<?> owner;
+    int targetSlot = -1;
+    int[] paramSlots;
+    Class<?>[] paramCellTypes;
+    Class<?> valueType;
+  }
+
+  /**
+   * @return the compiled grid, or null when the grid can not be compiled or its structure was seen less than
+   *         the compile threshold of the GridClassCache of its setup
+   */
+  public static CompiledGrid compile(final Grid grid) {
+    final ArrayList<CallPlan> plans = new ArrayList<CallPlan>();
+    final String signature = plan(grid, plans);
+    if (signature == null) {
+      return null;
+    }
+    final GridClassCache cache = grid.getSetup().getGridClassCache();
+    return (CompiledGrid) cache.getOrDefine(signature, new ClassGenerator() {
+      @Override
+      byte[] generate() {
+        return GridCompiler.generate(plans);
+      }
+    });
+  }
+
+  /**
+   * @return the number of slots a grid needs: inputs, library objects, constants and callcells
+   */
+  public static int getSlotCount(final Grid grid) {
+    return getCallCellSlotOffset(grid) + grid.getCallCells().length;
+  }
+
+  /**
+   * @return the slot of the first callcell
+   */
+  public static int getCallCellSlotOffset(final Grid grid) {
+    return grid.getInputCells().length + grid.getLibraryCells().length + grid.getConstantCells().length;
+  }
+
+  /**
+   * maps inputs, library cells, constants and callcells to their slots
+   * 
+   * @param librarySlots
+   *          filled with the slots of the library cells by name
+   */
+  static IdentityHashMap<ValueCell, Integer> getSlots(final Grid grid, final HashMap<String, Integer> librarySlots) {
+    final IdentityHashMap<ValueCell, Integer> slots = new IdentityHashMap<ValueCell, Integer>();
+    int s = 0;
+    for (final InputCell c : grid.getInputCells()) {
+      slots.put(c, s++);
+    }
+    for (final LibraryCell c : grid.getLibraryCells()) {
+      librarySlots.put(c.getName(), s);
+      slots.put(c, s++);
+    }
+    for (final ConstantCell c : grid.getConstantCells()) {
+      slots.put(c, s++);
+    }
+    for (final Calculable c : grid.getCallCells()) {
+      slots.put((ValueCell) c, s++);
+    }
+    return slots;
+  }
+
+  /**
+   * copies the values of inputs, library objects and constants into the slots
+   */
+  public static void fillSlots(final Grid grid, final Object[] slots) {
+    int s = 0;
+    for (final InputCell c : grid.getInputCells()) {
+      slots[s++] = c.getValue();
+    }
+    for (final LibraryCell c : grid.getLibraryCells()) {
+      slots[s++] = c.getValue();
+    }
+    for (final ConstantCell c : grid.getConstantCells()) {
+      slots[s++] = c.getValue();
+    }
+  }
+
+  /**
+   * Builds the plans for all used callcells.
+   * 
+   * @return the structural signature, or null if the grid can not be compiled
+   */
+  private static String plan(final Grid grid, final ArrayList<CallPlan> plans) {
+    final HashMap<String, Integer> librarySlots = new HashMap<String, Integer>();
+    final IdentityHashMap<ValueCell, Integer> slots = getSlots(grid, librarySlots);
+    final Calculable[] callCells = grid.getCallCells();
+
+    final StringBuilder sig = new StringBuilder();
+    sig.append(grid.getInputCells().length).append(',').append(grid.getLibraryCells().length).append(',')
+        .append(grid.getConstantCells().length).append(',').append(callCells.length).append(';');
+
+    for (final Calculable c : callCells) {
+      if (!c.isUsedForOutput()) {
+        continue;
+      }
+      if (c.getCellType() != CellTypeEnum.CallCell) {
+        return null; // switches are not compiled
+      }
+      final CallCell cell = (CallCell) c;
+      final CallPlan plan = new CallPlan();
+      plan.slot = slots.get(cell);
+      plan.method = cell.getTargetMethod();
+      plan.valueType = cell.getValueType();
+      final boolean isStatic = Modifier.isStatic(plan.method.getModifiers());
+      final Class<?> declaring = plan.method.getDeclaringClass();
+      if (isStatic) {
+        if (!isAccessible(declaring) || declaring.isInterface()) {
+          return null;
+        }
+        plan.owner = declaring;
+      } else {
+        final Integer targetSlot = getSlot(cell.getTargetCell(), slots, librarySlots);
+        if (targetSlot == null) {
+          return null;
+        }
+        plan.targetSlot = targetSlot;
+        final Class<?> targetType = cell.getTargetCell().getValueType();
+        if (isAccessible(declaring)) {
+          plan.owner = declaring;
+        } else if (isAccessible(targetType) && declaring.isAssignableFrom(targetType)) {
+          plan.owner = targetType;
+        } else {
+          return null;
+        }
+      }
+      final ValueCell[] params = cell.getParams();
+      final Class<?>[] types = plan.method.getParameterTypes();
+      plan.paramSlots = new int[params.length];
+      plan.paramCellTypes = new Class<?>[params.length];
+      for (int i = 0; i < params.length; i++) {
+        final Integer paramSlot = getSlot(params[i], slots, librarySlots);
+        if (paramSlot == null || !canConvert(params[i].getValueType(), types[i])) {
+          return null;
+        }
+        plan.paramSlots[i] = paramSlot;
+        plan.paramCellTypes[i] = params[i].getValueType();
+      }
+      final Class<?> returnType = plan.method.getReturnType();
+      if (returnType == void.class || !isAccessible(returnType) || !isAccessible(plan.valueType)) {
+        return null;
+      }
+      plans.add(plan);
+
+      sig.append(plan.slot).append('=').append(plan.owner.getName()).append('.').append(plan.method.getName())
+          .append(getMethodDescriptor(plan.method)).append('@').append(plan.targetSlot).append('(');
+      for (int i = 0; i < params.length; i++) {
+        sig.append(plan.paramSlots[i]).append(':').append(plan.paramCellTypes[i].getName()).append(',');
+      }
+      sig.append(")").append(plan.valueType.getName()).append(';');
+    }
+    return sig.toString();
+  }
+
+  static Integer getSlot(final ValueCell cell, final IdentityHashMap<ValueCell, Integer> slots,
+      final HashMap<String, Integer> librarySlots) {
+    final Integer slot = slots.get(cell);
+    if (slot == null && cell.getCellType() == CellTypeEnum.LibraryCell) {
+      // params keep pointing at the library cells of the setup, clones hold copies of those
+      return librarySlots.get(cell.getName());
+    }
+    return slot;
+  }
+
+  private static boolean canConvert(final Class<?> cellType, final Class<?> paramType) {
+    if (!paramType.isPrimitive()) {
+      return isAccessible(paramType);
+    }
+    final Class<?> primitive = primitiveForWrapper.get(cellType);
+    if (primitive == null) {
+      return false;
+    }
+    if (primitive == paramType) {
+      return true;
+    }
+    if (primitive == boolean.class || paramType == boolean.class || paramType == char.class) {
+      return false;
+    }
+    if (primitive == char.class) {
+      return paramType == int.class || paramType == long.class || paramType == float.class
+          || paramType == double.class;
+    }
+    return getNumericRank(primitive) <= getNumericRank(paramType);
+  }
+
+  private static int getNumericRank(final Class<?> primitive) {
+    for (int i = 0; i < numericOrder.length; i++) {
+      if (numericOrder[i] == primitive) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("not a numeric primitive:" + primitive);
+  }
+
+  static boolean isAccessible(final Class<?> clazz) {
+    Class<?> c = clazz;
+    while (c.isArray()) {
+      c = c.getComponentType();
+    }
+    if (c.isPrimitive()) {
+      return true;
+    }
+    Boolean result = accessible.get(c);
+    if (result == null) {
+      result = checkAccessible(c);
+      accessible.put(c, result);
+    }
+    return result;
+  }
+
+  private static boolean checkAccessible(final Class<?> c) {
+    for (Class<?> k = c; k != null; k = k.getEnclosingClass()) {
+      if (!Modifier.isPublic(k.getModifiers())) {
+        return false;
+      }
+    }
+    if (!c.getModule().isExported(c.getPackageName())) {
+      return false;
+    }
+    try {
+      return Class.forName(c.getName(), false, GridCompiler.class.getClassLoader()) == c;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  static Object define(final byte[] bytes) {
+    try {
+      final MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+      return lookup.lookupClass().getConstructor().newInstance();
+    } catch (Exception e) {
+      throw new IllegalStateException("could not define compiled grid", e);
+    }
+  }
+
+  /**
+   * @return a class builder with the default constructor added
+   */
+  static ClassFileBuilder createClass(final String interfaceName) {
+    final ClassFileBuilder cf = new ClassFileBuilder(CLASS_NAME, OBJECT, interfaceName);
+    final Code init = cf.method(ClassFileBuilder.ACC_PUBLIC, "<init>", "()V");
+    init.load(Code.ALOAD, 0);
+    init.invoke(Code.INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+    init.op(Code.RETURN);
+    init.setMaxs(1, 1);
+    return cf;
+  }
+
+  private static byte[] generate(final ArrayList<CallPlan> plans) {
+    final ClassFileBuilder cf = createClass("nl/bluevoid/genpro/engine/CompiledGrid");
+    final Code code = cf.method(ClassFileBuilder.ACC_PUBLIC, "calc", "([Ljava/lang/Object;)V");
+    int maxStack = 3;
+    for (final CallPlan plan : plans) {
+      maxStack = Math.max(maxStack, emitCall(code, plan));
+    }
+    code.op(Code.RETURN);
+    code.setMaxs(maxStack, 2);
+    return cf.toByteArray();
+  }
+
+  /**
+   * slots[plan.slot] = (valueType) owner.method(target, params...), or null on a RuntimeException
+   * 
+   * @return the stack depth needed
+   */
+  private static int emitCall(final Code code, final CallPlan plan) {
+    // clear value
+    code.load(Code.ALOAD, 1);
+    code.pushInt(plan.slot);
+    code.op(Code.ACONST_NULL);
+    code.op(Code.AASTORE);
+
+    int stack = 2;
+    if (plan.targetSlot >= 0) {
+      // a call on a null target is an error of the grid
+      final Code.Label notNull = code.newLabel();
+      code.load(Code.ALOAD, 1);
+      code.pushInt(plan.targetSlot);
+      code.op(Code.AALOAD);
+      code.jump(Code.IFNONNULL, notNull);
+      code.type(Code.NEW, GRID_EXECUTION_ERROR);
+      code.op(Code.DUP);
+      code.op(Code.ACONST_NULL);
+      code.invoke(Code.INVOKESPECIAL, GRID_EXECUTION_ERROR, "<init>", "(Ljava/lang/Throwable;)V", false);
+      code.op(Code.ATHROW);
+      code.mark(notNull);
+    }
+
+    final Code.Label start = code.newLabel();
+    final Code.Label end = code.newLabel();
+    final Code.Label handler = code.newLabel();
+    final Code.Label next = code.newLabel();
+
+    final Class<?>[] types = plan.method.getParameterTypes();
+    for (int i = 0; i < types.length; i++) {
+      if (types[i].isPrimitive()) {
+        // a null can not be unboxed, skip the call instead of throwing and catching a NullPointerException
+        code.load(Code.ALOAD, 1);
+        code.pushInt(plan.paramSlots[i]);
+        code.op(Code.AALOAD);
+        code.jump(Code.IFNULL, next);
+      }
+    }
+
+    code.mark(start);
+    code.load(Code.ALOAD, 1);
+    code.pushInt(plan.slot);
+    if (plan.targetSlot >= 0) {
+      code.load(Code.ALOAD, 1);
+      code.pushInt(plan.targetSlot);
+      code.op(Code.AALOAD);
+      code.type(Code.CHECKCAST, getInternalName(plan.owner));
+      stack++;
+    }
+    for (int i = 0; i < types.length; i++) {
+      code.load(Code.ALOAD, 1);
+      code.pushInt(plan.paramSlots[i]);
+      code.op(Code.AALOAD);
+      emitConversion(code, plan.paramCellTypes[i], types[i]);
+      stack += (types[i] == long.class || types[i] == double.class) ? 2 : 1;
+    }
+    final int maxStack = stack + 2;
+
+    final String desc = getMethodDescriptor(plan.method);
+    if (plan.targetSlot < 0) {
+      code.invoke(Code.INVOKESTATIC, getInternalName(plan.owner), plan.method.getName(), desc, false);
+    } else if (plan.owner.isInterface()) {
+      code.invoke(Code.INVOKEINTERFACE, getInternalName(plan.owner), plan.method.getName(), desc, true);
+    } else {
+      code.invoke(Code.INVOKEVIRTUAL, getInternalName(plan.owner), plan.method.getName(), desc, false);
+    }
+
+    final Class<?> returnType = plan.method.getReturnType();
+    Class<?> boxed = returnType;
+    if (returnType.isPrimitive()) {
+      boxed = getWrapper(returnType);
+      code.invoke(Code.INVOKESTATIC, getInternalName(boxed), "valueOf", "(" + returnType.descriptorString()
+          + ")" + boxed.descriptorString(), false);
+    }
+    if (!plan.valueType.isAssignableFrom(boxed)) {
+      // same check as ValueCell.setValue, a ClassCastException leaves the cell null
+      code.type(Code.CHECKCAST, getInternalName(plan.valueType));
+    }
+    code.op(Code.AASTORE);
+    code.mark(end);
+    code.jump(Code.GOTO, next);
+    code.mark(handler);
+    code.op(Code.POP);
+    code.mark(next);
+    code.tryCatch(start, end, handler, "java/lang/RuntimeException");
+    return maxStack;
+  }
+
+  /**
+   * converts the Object on the stack, holding a value of cellType, to paramType
+   */
+  private static void emitConversion(final Code code, final Class<?> cellType, final Class<?> paramType) {
+    if (!paramType.isPrimitive()) {
+      if (paramType != Object.class) {
+        code.type(Code.CHECKCAST, getInternalName(paramType));
+      }
+      return;
+    }
+    final Class<?> primitive = primitiveForWrapper.get(cellType);
+    final String wrapper = getInternalName(cellType);
+    code.type(Code.CHECKCAST, wrapper);
+    if (primitive == char.class) {
+      code.invoke(Code.INVOKEVIRTUAL, wrapper, "charValue", "()C", false);
+      if (paramType == long.class) {
+        code.op(Code.I2L);
+      } else if (paramType == float.class) {
+        code.op(Code.I2F);
+      } else if (paramType == double.class) {
+        code.op(Code.I2D);
+      }
+    } else {
+      // Number.xxxValue() widens like the unboxing conversion of reflection does
+      code.invoke(Code.INVOKEVIRTUAL, wrapper, paramType.getName() + "Value", "()"
+          + paramType.descriptorString(), false);
+    }
+  }
+
+  private static Class<?> getWrapper(final Class<?> primitive) {
+    for (final Map.Entry<Class<?>, Class<?>> e : primitiveForWrapper.entrySet()) {
+      if (e.getValue() == primitive) {
+        return e.getKey();
+      }
+    }
+    throw new IllegalArgumentException("not a primitive:" + primitive);
+  }
+
+  static String getInternalName(final Class<?> c) {
+    if (c.isArray()) {
+      return c.descriptorString();
+    }
+    return c.getName().replace('.', '/');
+  }
+
+  static String getMethodDescriptor(final Method m) {
+    final StringBuilder desc = new StringBuilder("(");
+    for (final Class<?> p : m.getParameterTypes()) {
+      desc.append(p.descriptorString());
+    }
+    return desc.append(')').append(m.getReturnType().descriptorString()).toString();
+  }
+}
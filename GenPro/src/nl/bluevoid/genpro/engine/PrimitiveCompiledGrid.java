@@ -0,0 +1,37 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.engine;
+
+/**
+ * A grid of Double, Integer and Boolean cells translated to bytecode that works on primitive slots, see
+ * {@link PrimitiveFrame}.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public interface PrimitiveCompiledGrid {
+
+  /**
+   * calculates all used callcells. Each slot lives in the array of its type, nulls marks the slots that hold
+   * no value.
+   * 
+   * @throws Exception
+   *           any checked exception thrown by a called method
+   */
+  public void calc(double[] doubles, int[] ints, boolean[] booleans, boolean[] nulls) throws Exception;
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.engine;
+
+import java.util.Arrays;
+
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.TestSetColumn;
+import nl.bluevoid.genpro.cell.Calculable;
+import nl.bluevoid.genpro.cell.ConstantCell;
+import nl.bluevoid.genpro.cell.InputCell;
+import nl.bluevoid.genpro.cell.ValueCell;
+
+/**
+ * The primitive slots of a grid, laid out like the Object slots of {@link GridCompiler}. A Double cell keeps
+ * its value in doubles, an Integer cell in ints and a Boolean cell in booleans. A frame can be reused for
+ * another grid by calling reset.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public final class PrimitiveFrame {
+  double[] doubles = new double[0];
+  int[] ints = new int[0];
+  boolean[] booleans = new boolean[0];
+  boolean[] nulls = new boolean[0];
+  private Class<?>[] types = new Class<?>[0];
+
+  public PrimitiveFrame() {
+  }
+
+  public PrimitiveFrame(final Grid grid) {
+    reset(grid);
+  }
+
+  /**
+   * Prepares the frame for a grid, the slots of inputs and constants still have to be filled.
+   */
+  public void reset(final Grid grid) {
+    final int size = GridCompiler.getSlotCount(grid);
+    if (types.length < size) {
+      doubles = new double[size];
+      ints = new int[size];
+      booleans = new boolean[size];
+      nulls = new boolean[size];
+      types = new Class<?>[size];
+    } else {
+      // as new, the values of a previous grid are not seen
+      Arrays.fill(doubles, 0);
+      Arrays.fill(ints, 0);
+      Arrays.fill(booleans, false);
+      Arrays.fill(nulls, false);
+    }
+    int s = 0;
+    for (final InputCell c : grid.getInputCells()) {
+      types[s++] = c.getValueType();
+    }
+    for (int i = 0; i < grid.getLibraryCells().length; i++) {
+      types[s++] = null;
+    }
+    for (final ConstantCell c : grid.getConstantCells()) {
+      types[s++] = c.getValueType();
+    }
+    for (final Calculable c : grid.getCallCells()) {
+      types[s++] = ((ValueCell) c).getValueType();
+    }
+  }
+
+  /**
+   * copies the values of inputs and constants into the slots
+   */
+  public void fill(final Grid grid) {
+    int s = 0;
+    for (final InputCell c : grid.getInputCells()) {
+      set(s++, c.getValue());
+    }
+    s += grid.getLibraryCells().length;
+    for (final ConstantCell c : grid.getConstantCells()) {
+      set(s++, c.getValue());
+    }
+  }
+
+  /**
+   * copies the values of the constants from Object slots laid out by {@link GridCompiler}
+   */
+  public void fillConstants(final Grid grid, final Object[] slots) {
+    final int offset = GridCompiler.getCallCellSlotOffset(grid);
+    for (int s = grid.getInputCells().length + grid.getLibraryCells().length; s < offset; s++) {
+      set(s, slots[s]);
+    }
+  }
+
+  /**
+   * Sets an input to a row of a TestSet column, without boxing when the column has the type of the input.
+   */
+  public void setInput(final int slot, final TestSetColumn column, final int row) {
+    final Class<?> type = types[slot];
+    if (type == Double.class && column.getType() == Double.class) {
+      nulls[slot] = false;
+      doubles[slot] = column.getDouble(row);
+    } else if (type == Integer.class && column instanceof TestSetColumn.IntColumn) {
+      nulls[slot] = false;
+      ints[slot] = ((TestSetColumn.IntColumn) column).getValues()[row];
+    } else if (type == Integer.class && column instanceof TestSetColumn.MappedIntColumn) {
+      nulls[slot] = false;
+      ints[slot] = ((TestSetColumn.MappedIntColumn) column).getInt(row);
+    } else if (type == Boolean.class && column instanceof TestSetColumn.BooleanColumn) {
+      nulls[slot] = false;
+      booleans[slot] = ((TestSetColumn.BooleanColumn) column).getValues()[row];
+    } else if (type == Boolean.class && column instanceof TestSetColumn.MappedBooleanColumn) {
+      nulls[slot] = false;
+      booleans[slot] = ((TestSetColumn.MappedBooleanColumn) column).getBoolean(row);
+    } else {
+      set(slot, column.get(row));
+    }
+  }
+
+  void set(final int slot, final Object value) {
+    nulls[slot] = value == null;
+    if (value == null) {
+      return;
+    }
+    final Class<?> type = types[slot];
+    if (type == Double.class) {
+      doubles[slot] = (Double) value;
+    } else if (type == Integer.class) {
+      ints[slot] = (Integer) value;
+    } else if (type == Boolean.class) {
+      booleans[slot] = (Boolean) value;
+    }
+  }
+
+  public boolean isNull(final int slot) {
+    return nulls[slot];
+  }
+
+  public boolean isNumber(final int slot) {
+    return types[slot] == Double.class || types[slot] == Integer.class;
+  }
+
+  /**
+   * @return the value of a Double or Integer slot
+   */
+  public double getDouble(final int slot) {
+    if (types[slot] == Integer.class) {
+      return ints[slot];
+    }
+    return doubles[slot];
+  }
+
+  public int getInt(final int slot) {
+    return ints[slot];
+  }
+
+  public boolean getBoolean(final int slot) {
+    return booleans[slot];
+  }
+
+  /**
+   * @return the boxed value of the slot, null if it has none
+   */
+  public Object getValue(final int slot) {
+    if (nulls[slot]) {
+      return null;
+    }
+    final Class<?> type = types[slot];
+    if (type == Double.class) {
+      return doubles[slot];
+    } else if (type == Integer.class) {
+      return ints[slot];
+    } else if (type == Boolean.class) {
+      return booleans[slot];
+    }
+    throw new IllegalStateException("not a primitive slot:" + slot + " " + type);
+  }
+
+  public void calc(final PrimitiveCompiledGrid compiled) throws Exception {
+    compiled.calc(doubles, ints, booleans, nulls);
+  }
+}
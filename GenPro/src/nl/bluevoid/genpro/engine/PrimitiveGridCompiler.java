@@ -0,0 +1,259 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.engine;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.cell.Calculable;
+import nl.bluevoid.genpro.cell.CallCell;
+import nl.bluevoid.genpro.cell.CellTypeEnum;
+import nl.bluevoid.genpro.cell.ValueCell;
+import nl.bluevoid.genpro.engine.ClassFileBuilder.Code;
+
+/**
+ * Translates grids that only use Double, Integer and Boolean cells and static methods with primitive
+ * parameters and results into code on primitive slots, so no intermediate value is boxed. Generated classes
+ * share the {@link GridClassCache} of the setup with {@link GridCompiler}.
+ * 
+ * A RuntimeException in a call, or a null parameter, marks the cell null like CallCell.calc() does.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class PrimitiveGridCompiler {
+
+  // locals of the generated calc method
+  private static final int DOUBLES = 1;
+  private static final int INTS = 2;
+  private static final int BOOLEANS = 3;
+  private static final int NULLS = 4;
+
+  static class CallPlan {
+    int slot;
+    Method method;
+    int[] paramSlots;
+    Class<?>[] paramCellTypes;
+    Class<?> valueType;
+  }
+
+  /**
+   * @return the compiled grid, or null when the grid can not be compiled primitively or its structure was seen
+   *         less than the compile threshold
+   */
+  public static PrimitiveCompiledGrid compile(final Grid grid) {
+    final ArrayList<CallPlan> plans = new ArrayList<CallPlan>();
+    final String signature = plan(grid, plans);
+    if (signature == null) {
+      return null;
+    }
+    final GridClassCache cache = grid.getSetup().getGridClassCache();
+    return (PrimitiveCompiledGrid) cache.getOrDefine(signature, new GridCompiler.ClassGenerator() {
+      @Override
+      byte[] generate() {
+        return PrimitiveGridCompiler.generate(plans);
+      }
+    });
+  }
+
+  /**
+   * @return the signature of the grid, null if it can not be calculated on primitive slots
+   */
+  static String plan(final Grid grid, final ArrayList<CallPlan> plans) {
+    final HashMap<String, Integer> librarySlots = new HashMap<String, Integer>();
+    final IdentityHashMap<ValueCell, Integer> slots = GridCompiler.getSlots(grid, librarySlots);
+    final Calculable[] callCells = grid.getCallCells();
+
+    final StringBuilder sig = new StringBuilder("primitive;");
+    sig.append(grid.getInputCells().length).append(',').append(grid.getLibraryCells().length).append(',')
+        .append(grid.getConstantCells().length).append(',').append(callCells.length).append(';');
+
+    for (final Calculable c : callCells) {
+      if (!c.isUsedForOutput()) {
+        continue;
+      }
+      if (c.getCellType() != CellTypeEnum.CallCell) {
+        return null;
+      }
+      final CallCell cell = (CallCell) c;
+      final CallPlan plan = new CallPlan();
+      plan.slot = slots.get(cell);
+      plan.method = cell.getTargetMethod();
+      plan.valueType = cell.getValueType();
+      final Class<?> declaring = plan.method.getDeclaringClass();
+      if (!Modifier.isStatic(plan.method.getModifiers()) || declaring.isInterface()
+          || !GridCompiler.isAccessible(declaring)) {
+        return null;
+      }
+      if (getPrimitive(plan.valueType) == null || getPrimitive(plan.valueType) != plan.method.getReturnType()) {
+        return null;
+      }
+      final ValueCell[] params = cell.getParams();
+      final Class<?>[] types = plan.method.getParameterTypes();
+      plan.paramSlots = new int[params.length];
+      plan.paramCellTypes = new Class<?>[params.length];
+      for (int i = 0; i < params.length; i++) {
+        // library objects have no primitive slot
+        final Integer paramSlot = params[i].getCellType() == CellTypeEnum.LibraryCell ? null : slots
+            .get(params[i]);
+        if (paramSlot == null || !canConvert(params[i].getValueType(), types[i])) {
+          return null;
+        }
+        plan.paramSlots[i] = paramSlot;
+        plan.paramCellTypes[i] = params[i].getValueType();
+      }
+      plans.add(plan);
+
+      sig.append(plan.slot).append('=').append(declaring.getName()).append('.').append(plan.method.getName())
+          .append(GridCompiler.getMethodDescriptor(plan.method)).append('(');
+      for (int i = 0; i < params.length; i++) {
+        sig.append(plan.paramSlots[i]).append(':').append(plan.paramCellTypes[i].getSimpleName()).append(',');
+      }
+      sig.append(')').append(';');
+    }
+    return sig.toString();
+  }
+
+  static Class<?> getPrimitive(final Class<?> cellType) {
+    if (cellType == Double.class) {
+      return double.class;
+    } else if (cellType == Integer.class) {
+      return int.class;
+    } else if (cellType == Boolean.class) {
+      return boolean.class;
+    }
+    return null;
+  }
+
+  private static boolean canConvert(final Class<?> cellType, final Class<?> paramType) {
+    final Class<?> primitive = getPrimitive(cellType);
+    if (primitive == null) {
+      return false;
+    }
+    if (primitive == paramType) {
+      return true;
+    }
+    return primitive == int.class
+        && (paramType == long.class || paramType == float.class || paramType == double.class);
+  }
+
+  private static byte[] generate(final ArrayList<CallPlan> plans) {
+    final ClassFileBuilder cf = GridCompiler.createClass("nl/bluevoid/genpro/engine/PrimitiveCompiledGrid");
+    final Code code = cf.method(ClassFileBuilder.ACC_PUBLIC, "calc", "([D[I[Z[Z)V");
+    int maxStack = 3;
+    for (final CallPlan plan : plans) {
+      maxStack = Math.max(maxStack, emitCall(code, plan));
+    }
+    code.op(Code.RETURN);
+    code.setMaxs(maxStack, 5);
+    return cf.toByteArray();
+  }
+
+  /**
+   * nulls[slot] = true; slot = method(params...); nulls[slot] = false;
+   * 
+   * @return the stack depth needed
+   */
+  private static int emitCall(final Code code, final CallPlan plan) {
+    final Code.Label start = code.newLabel();
+    final Code.Label end = code.newLabel();
+    final Code.Label handler = code.newLabel();
+    final Code.Label next = code.newLabel();
+
+    emitSetNull(code, plan.slot, true);
+    for (final int paramSlot : plan.paramSlots) {
+      code.load(Code.ALOAD, NULLS);
+      code.pushInt(paramSlot);
+      code.op(Code.BALOAD);
+      code.jump(Code.IFNE, next);
+    }
+
+    code.mark(start);
+    final Class<?> primitive = getPrimitive(plan.valueType);
+    code.load(Code.ALOAD, getArrayLocal(primitive));
+    code.pushInt(plan.slot);
+    int stack = 2;
+    final Class<?>[] types = plan.method.getParameterTypes();
+    for (int i = 0; i < types.length; i++) {
+      final Class<?> from = getPrimitive(plan.paramCellTypes[i]);
+      code.load(Code.ALOAD, getArrayLocal(from));
+      code.pushInt(plan.paramSlots[i]);
+      code.op(getLoadOp(from));
+      if (from == int.class) {
+        if (types[i] == long.class) {
+          code.op(Code.I2L);
+        } else if (types[i] == float.class) {
+          code.op(Code.I2F);
+        } else if (types[i] == double.class) {
+          code.op(Code.I2D);
+        }
+      }
+      stack += (types[i] == long.class || types[i] == double.class) ? 2 : 1;
+    }
+    final int maxStack = stack + 2;
+    code.invoke(Code.INVOKESTATIC, GridCompiler.getInternalName(plan.method.getDeclaringClass()), plan.method
+        .getName(), GridCompiler.getMethodDescriptor(plan.method), false);
+    code.op(getStoreOp(primitive));
+    emitSetNull(code, plan.slot, false);
+    code.mark(end);
+    code.jump(Code.GOTO, next);
+    code.mark(handler);
+    code.op(Code.POP);
+    code.mark(next);
+    code.tryCatch(start, end, handler, "java/lang/RuntimeException");
+    return maxStack;
+  }
+
+  private static void emitSetNull(final Code code, final int slot, final boolean isNull) {
+    code.load(Code.ALOAD, NULLS);
+    code.pushInt(slot);
+    code.pushInt(isNull ? 1 : 0);
+    code.op(Code.BASTORE);
+  }
+
+  private static int getArrayLocal(final Class<?> primitive) {
+    if (primitive == double.class) {
+      return DOUBLES;
+    } else if (primitive == int.class) {
+      return INTS;
+    }
+    return BOOLEANS;
+  }
+
+  private static int getLoadOp(final Class<?> primitive) {
+    if (primitive == double.class) {
+      return Code.DALOAD;
+    } else if (primitive == int.class) {
+      return Code.IALOAD;
+    }
+    return Code.BALOAD;
+  }
+
+  private static int getStoreOp(final Class<?> primitive) {
+    if (primitive == double.class) {
+      return Code.DASTORE;
+    } else if (primitive == int.class) {
+      return Code.IASTORE;
+    }
+    return Code.BASTORE;
+  }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.engine;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.GridExecutionError;
+import nl.bluevoid.genpro.cell.Calculable;
+import nl.bluevoid.genpro.cell.CallCell;
+import nl.bluevoid.genpro.cell.CallInvocation;
+import nl.bluevoid.genpro.cell.CellTypeEnum;
+import nl.bluevoid.genpro.cell.MethodHandleRegistry;
+import nl.bluevoid.genpro.cell.ValueCell;
+import nl.bluevoid.genpro.cell.switx.SwitchCell;
+import nl.bluevoid.genpro.cell.switx.SwitchOption;
+import nl.bluevoid.genpro.util.Sneak;
+
+/**
+ * Calculates a grid on the Object slots laid out by {@link GridCompiler}, without reading or writing the
+ * values of its cells. Takes every grid, also the ones with switches, and calls like CallCell.calc does. A
+ * SlotGrid holds no values, so one grid can be calculated on several threads at once, each with its own
+ * slots. Call counters of the cells are not updated.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public final class SlotGrid {
+
+  private final Call[] calls;
+  private final int buffers;
+  private final IdentityHashMap<ValueCell, Integer> slots;
+  private final HashMap<String, Integer> librarySlots;
+
+  private SlotGrid(final Call[] calls, final int buffers, final IdentityHashMap<ValueCell, Integer> slots,
+      final HashMap<String, Integer> librarySlots) {
+    this.calls = calls;
+    this.buffers = buffers;
+    this.slots = slots;
+    this.librarySlots = librarySlots;
+  }
+
+  /**
+   * Calls are made the way Setup.getCallInvocation says at creation.
+   */
+  public static SlotGrid create(final Grid grid) {
+    final boolean useHandles = grid.getSetup().getCallInvocation() == CallInvocation.METHOD_HANDLE;
+    final HashMap<String, Integer> librarySlots = new HashMap<String, Integer>();
+    final IdentityHashMap<ValueCell, Integer> slots = GridCompiler.getSlots(grid, librarySlots);
+    final ArrayList<Call> calls = new ArrayList<Call>();
+    int buffers = 0;
+    for (final Calculable c : grid.getCallCells()) {
+      if (!c.isUsedForOutput()) {
+        continue;
+      }
+      final int slot = slots.get((ValueCell) c);
+      if (c.getCellType() == CellTypeEnum.CallCell) {
+        calls.add(new MethodCall(slot, (CallCell) c, buffers++, useHandles, slots, librarySlots));
+      } else {
+        final SwitchCell cell = (SwitchCell) c;
+        // a sorted copy, sorting the options of the cell would change the grid
+        final ArrayList<SwitchOption> sorted = new ArrayList<SwitchOption>(cell.getOptions());
+        Collections.sort(sorted);
+        final MethodCall[] options = new MethodCall[sorted.size()];
+        final double[] caseValues = cell.getSwitchType() == Boolean.class ? null : new double[options.length];
+        for (int i = 0; i < options.length; i++) {
+          options[i] = new MethodCall(slot, sorted.get(i), buffers++, useHandles, slots, librarySlots);
+          if (caseValues != null) {
+            caseValues[i] = ((Number) sorted.get(i).getSwitchCaseValue()).doubleValue();
+          }
+        }
+        calls.add(new SwitchCall(slot, slotOf(cell.getSwitchValueCell(), slots, librarySlots), caseValues,
+            options));
+      }
+    }
+    return new SlotGrid(calls.toArray(new Call[calls.size()]), buffers, slots, librarySlots);
+  }
+
+  /**
+   * @return the slot of an input, library cell, constant or callcell of the grid, -1 if it has none
+   */
+  public int getSlot(final ValueCell cell) {
+    final Integer slot = GridCompiler.getSlot(cell, slots, librarySlots);
+    return slot == null ? -1 : slot;
+  }
+
+  private static int slotOf(final ValueCell cell, final IdentityHashMap<ValueCell, Integer> slots,
+      final HashMap<String, Integer> librarySlots) {
+    final Integer slot = GridCompiler.getSlot(cell, slots, librarySlots);
+    if (slot == null) {
+      throw new IllegalStateException("cell is not part of the grid:" + cell);
+    }
+    return slot;
+  }
+
+  /**
+   * @return buffers for the params of reflective calls, one set per thread
+   */
+  public Object[][] createParamBuffers() {
+    final Object[][] paramBuffers = new Object[buffers][];
+    for (final Call call : calls) {
+      call.createParamBuffers(paramBuffers);
+    }
+    return paramBuffers;
+  }
+
+  /**
+   * calculates all used callcells, the inputs, library objects and constants must be in slots
+   * 
+   * @throws GridExecutionError
+   *           when a call is made on a null target
+   */
+  public void calc(final Object[] slots, final Object[][] paramBuffers) throws GridExecutionError {
+    for (final Call call : calls) {
+      slots[call.slot] = null;
+      call.calc(slots, paramBuffers);
+    }
+  }
+
+  private static abstract class Call {
+    final int slot;
+
+    Call(final int slot) {
+      this.slot = slot;
+    }
+
+    abstract void calc(Object[] slots, Object[][] paramBuffers)
+        throws GridExecutionError;
+
+    abstract void createParamBuffers(Object[][] paramBuffers);
+  }
+
+  private static final class MethodCall extends Call {
+    private final Method method;
+    private final MethodHandle handle;
+    private final boolean isStatic;
+    private final int targetSlot;
+    private final int[] paramSlots;
+    private final int buffer;
+
+    MethodCall(final int slot, final CallCell cell, final int buffer, final boolean useHandle,
+        final IdentityHashMap<ValueCell, Integer> slots, final HashMap<String, Integer> librarySlots) {
+      super(slot);
+      this.buffer = buffer;
+      method = cell.getTargetMethod();
+      handle = useHandle ? MethodHandleRegistry.getHandle(method) : null;
+      isStatic = Modifier.isStatic(method.getModifiers());
+      targetSlot = isStatic ? -1 : slotOf(cell.getTargetCell(), slots, librarySlots);
+      final ValueCell[] params = cell.getParams();
+      paramSlots = new int[params.length];
+      for (int i = 0; i < params.length; i++) {
+        paramSlots[i] = slotOf(params[i], slots, librarySlots);
+      }
+    }
+
+    @Override
+    void createParamBuffers(final Object[][] paramBuffers) {
+      paramBuffers[buffer] = new Object[paramSlots.length];
+    }
+
+    @Override
+    void calc(final Object[] slots, final Object[][] paramBuffers) throws GridExecutionError {
+      final Object target;
+      if (isStatic) {
+        target = null;
+      } else {
+        target = slots[targetSlot];
+        if (target == null) {
+          throw new GridExecutionError(null);
+        }
+      }
+      try {
+        if (handle != null) {
+          slots[slot] = invokeHandle(target, slots, paramBuffers[buffer]);
+        } else {
+          final Object[] params = paramBuffers[buffer];
+          for (int i = 0; i < params.length; i++) {
+            params[i] = slots[paramSlots[i]];
+          }
+          slots[slot] = method.invoke(target, params);
+        }
+      } catch (RuntimeException nup) {
+        // consume, a param was null, arrayindex out of bounds etc
+      } catch (InvocationTargetException e) {
+        if (!(e.getCause() instanceof RuntimeException)) {
+          Sneak.sneakyThrow(e);
+        }
+      } catch (Throwable e) {
+        Sneak.sneakyThrow(e);
+      }
+    }
+
+    private Object invokeHandle(final Object target, final Object[] slots, final Object[] params)
+        throws Throwable {
+      final int[] p = paramSlots;
+      switch (p.length) {
+      case 0:
+        return (Object) handle.invokeExact(target);
+      case 1:
+        return (Object) handle.invokeExact(target, slots[p[0]]);
+      case 2:
+        return (Object) handle.invokeExact(target, slots[p[0]], slots[p[1]]);
+      case 3:
+        return (Object) handle.invokeExact(target, slots[p[0]], slots[p[1]], slots[p[2]]);
+      case 4:
+        return (Object) handle.invokeExact(target, slots[p[0]], slots[p[1]], slots[p[2]], slots[p[3]]);
+      default:
+        for (int i = 0; i < params.length; i++) {
+          params[i] = slots[p[i]];
+        }
+        return (Object) handle.invokeExact(target, params);
+      }
+    }
+  }
+
+  /**
+   * Chooses an option like SwitchCell.getOptionToCall, on options sorted by their case value.
+   */
+  private static final class SwitchCall extends Call {
+    private final int switchValueSlot;
+    // ascending, null for a boolean switch
+    private final double[] caseValues;
+    private final MethodCall[] options;
+
+    SwitchCall(final int slot, final int switchValueSlot, final double[] caseValues, final MethodCall[] options) {
+      super(slot);
+      this.switchValueSlot = switchValueSlot;
+      this.caseValues = caseValues;
+      this.options = options;
+    }
+
+    @Override
+    void createParamBuffers(final Object[][] paramBuffers) {
+      for (final MethodCall option : options) {
+        option.createParamBuffers(paramBuffers);
+      }
+    }
+
+    @Override
+    void calc(final Object[] slots, final Object[][] paramBuffers) throws GridExecutionError {
+      final Object switchValue = slots[switchValueSlot];
+      if (switchValue != null) {
+        options[getOption(switchValue)].calc(slots, paramBuffers);
+      }
+    }
+
+    private int getOption(final Object switchValue) {
+      if (caseValues == null) {
+        // false sorts before true
+        return ((Boolean) switchValue) ? 1 : 0;
+      }
+      // the option with the highest case value not above the switch value
+      final int index = Arrays.binarySearch(caseValues, ((Number) switchValue).doubleValue());
+      return index < 0 ? -(index + 2) : index;
+    }
+  }
+}
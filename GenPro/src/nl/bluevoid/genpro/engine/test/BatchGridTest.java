@@ -0,0 +1,189 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.engine.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.GridExecutionError;
+import nl.bluevoid.genpro.GridSolutionEvaluator;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSet;
+import nl.bluevoid.genpro.cell.ConstantCell;
+import nl.bluevoid.genpro.cell.NoCellFoundException;
+import nl.bluevoid.genpro.cell.ReferenceCell;
+import nl.bluevoid.genpro.engine.BatchFrame;
+import nl.bluevoid.genpro.engine.BatchGrid;
+import nl.bluevoid.genpro.operations.NumberOperations;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class BatchGridTest extends TestCase {
+
+  private Setup setup;
+  private TestSet cases;
+
+  @Override
+  protected void setUp() throws Exception {
+    setup = new Setup("BatchGridTest");
+    setup.addInputCell("x", Double.class);
+    setup.addInputCell("n", Integer.class);
+    setup.addOutputCell("y", Double.class);
+    setup.setCallCells(10, "c", Double.class);
+    setup.setConstantCells(new ConstantCell("const1", Double.class, -100, 100), new ConstantCell("const2",
+        Integer.class, -10, 10));
+    setup.setLibraryCells(NumberOperations.NUM_OPS, NumberOperations.MATH_CLASS);
+    cases = new TestSet(setup, "x", "n", "y");
+    for (int i = 0; i < 12; i++) {
+      cases.addCellValues(i * 0.75 - 2, i - 6, i * 3.0);
+    }
+  }
+
+  public void testSameResultsAsReflection() throws GridExecutionError {
+    BatchFrame frame = new BatchFrame();
+    int batched = 0;
+    for (int i = 0; i < 200; i++) {
+      Grid grid = setup.generateSolution();
+      BatchGrid batchGrid = grid.getBatchGrid();
+      if (batchGrid == null) {
+        continue;
+      }
+      batched++;
+      frame.reset(grid, cases.getNumberOfTestCases());
+      frame.fillInput(0, cases.getColumn("x"));
+      frame.fillInput(1, cases.getColumn("n"));
+      frame.fillConstants(grid);
+      batchGrid.calc(frame);
+
+      int slot = grid.getCallCellSlot(grid.getOutputCell("y").getReferedCell());
+      for (int row = 0; row < cases.getNumberOfTestCases(); row++) {
+        grid.getInputCell("x").setValue(cases.getValue("x", row));
+        grid.getInputCell("n").setValue(cases.getValue("n", row));
+        grid.calc();
+        assertEquals(grid.getOutputCell("y").getValue(), frame.getValue(slot, row));
+      }
+    }
+    assertTrue("most grids should batch, batched:" + batched, batched > 150);
+  }
+
+  public void testNullRows() throws GridExecutionError {
+    TestSet withNull = new TestSet(setup, "x", "n", "y");
+    withNull.addCellValues(1.0, 1, 1.0);
+    withNull.addCellValues(null, 2, 2.0);
+    BatchFrame frame = new BatchFrame();
+    for (int i = 0; i < 50; i++) {
+      Grid grid = setup.generateSolution();
+      BatchGrid batchGrid = grid.getBatchGrid();
+      if (batchGrid == null) {
+        continue;
+      }
+      frame.reset(grid, 2);
+      frame.fillInput(0, withNull.getColumn("x"));
+      frame.fillInput(1, withNull.getColumn("n"));
+      frame.fillConstants(grid);
+      batchGrid.calc(frame);
+      assertTrue(frame.isNull(0, 1));
+
+      int slot = grid.getCallCellSlot(grid.getOutputCell("y").getReferedCell());
+      for (int row = 0; row < 2; row++) {
+        grid.getInputCell("x").setValue(withNull.getValue("x", row));
+        grid.getInputCell("n").setValue(withNull.getValue("n", row));
+        grid.calc();
+        assertEquals(grid.getOutputCell("y").getValue(), frame.getValue(slot, row));
+      }
+    }
+  }
+
+  public void testEvaluatorScores() {
+    GridSolutionEvaluator evaluator = createEvaluator();
+    for (int i = 0; i < 50; i++) {
+      Grid grid = setup.generateSolution();
+      setup.setBatchEvaluation(false);
+      double expected = evaluator.evaluate(grid);
+      setup.setBatchEvaluation(true);
+      assertEquals(Double.valueOf(expected), Double.valueOf(evaluator.evaluate(grid)));
+    }
+  }
+
+  public void testIncrementalEvaluation() {
+    GridSolutionEvaluator evaluator = createEvaluator();
+    setup.setBatchEvaluation(true);
+    int reused = 0;
+    Random random = new Random();
+    for (int i = 0; i < 50; i++) {
+      Grid grid = setup.generateSolution();
+      setup.setIncrementalEvaluation(true);
+      double score = evaluator.evaluate(grid);
+      if (grid.getCellResults() == null) {
+        continue;
+      }
+      // an unchanged clone takes the score of its parent
+      Grid clone = grid.clone();
+      assertEquals(Double.valueOf(score), Double.valueOf(evaluator.evaluate(clone)));
+      assertEquals(0, clone.getCellResults().getRecalculated());
+
+      for (int m = 0; m < 5; m++) {
+        clone = clone.clone();
+        try {
+          clone.mutate("", random);
+        } catch (NoCellFoundException e) {
+          // mutation failed, the clone is still evaluated
+        }
+        setup.setIncrementalEvaluation(true);
+        double incremental = evaluator.evaluate(clone);
+        if (clone.getCellResults() != null
+            && clone.getCellResults().getRecalculated() < clone.getNrOfUsedCallCells()) {
+          reused++;
+        }
+        setup.setIncrementalEvaluation(false);
+        assertEquals(Double.valueOf(evaluator.evaluate(clone)), Double.valueOf(incremental));
+      }
+    }
+    setup.setIncrementalEvaluation(false);
+    assertTrue(reused > 0);
+  }
+
+  private GridSolutionEvaluator createEvaluator() {
+    return new GridSolutionEvaluator() {
+      @Override
+      public TestSet createTestSet() {
+        return cases;
+      }
+
+      @Override
+      public double scoreOutput(ReferenceCell outputCell, Object calculated, Object expected) {
+        if (calculated == null)
+          return 1000;
+        return getAbsoluteNumberDifference((Number) calculated, (Number) expected);
+      }
+
+      @Override
+      public double scoreGrid(Grid g) {
+        return 0;
+      }
+
+      @Override
+      public double scoreGridException(Throwable t) {
+        return 0;
+      }
+    };
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.engine.test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.GridExecutionError;
+import nl.bluevoid.genpro.GridSolutionEvaluator;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSet;
+import nl.bluevoid.genpro.TestSetColumn;
+import nl.bluevoid.genpro.cell.Calculable;
+import nl.bluevoid.genpro.cell.CallInvocation;
+import nl.bluevoid.genpro.cell.ConstantCell;
+import nl.bluevoid.genpro.cell.NoCellFoundException;
+import nl.bluevoid.genpro.cell.ReferenceCell;
+import nl.bluevoid.genpro.cell.switx.SwitchCell;
+import nl.bluevoid.genpro.cell.switx.SwitchOption;
+import nl.bluevoid.genpro.engine.EvaluationFrame;
+import nl.bluevoid.genpro.operations.NumberOperations;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class EvaluationFrameTest extends TestCase {
+
+  private Setup setup;
+
+  @SuppressWarnings("unchecked")
+  @Override
+  protected void setUp() throws Exception {
+    setup = new Setup("EvaluationFrameTest");
+    setup.addInputCell("x", Double.class);
+    setup.addInputCell("n", Integer.class);
+    setup.addOutputCell("y", Double.class);
+    setup.setCallCells(10, "c", Double.class);
+    setup.setMaxSwitchCellNr(2, Double.class);
+    setup.setConstantCells(new ConstantCell("const1", Double.class, -100, 100), new ConstantCell("const2",
+        Integer.class, -10, 10));
+    setup.setLibraryCells(NumberOperations.NUM_OPS, NumberOperations.MATH_CLASS);
+  }
+
+  public void testSameResultsAsCells() {
+    for (CallInvocation invocation : CallInvocation.values()) {
+      setup.setCallInvocation(invocation);
+      for (int i = 0; i < 100; i++) {
+        Grid grid = setup.generateSolution();
+        EvaluationFrame frame = new EvaluationFrame(grid);
+        ReferenceCell y = grid.getOutputCell("y");
+        int ySlot = frame.getSlot(y.getReferedCell());
+        int xSlot = frame.getSlot(grid.getInputCell("x"));
+        int nSlot = frame.getSlot(grid.getInputCell("n"));
+        for (double x = -2; x < 3; x += 0.75) {
+          grid.getInputCell("x").setValue(x);
+          grid.getInputCell("n").setValue((int) (x * 3));
+          frame.setInput(xSlot, x);
+          frame.setInput(nSlot, (int) (x * 3));
+          boolean cellsFailed = false;
+          try {
+            grid.calc();
+          } catch (GridExecutionError e) {
+            cellsFailed = true;
+          }
+          try {
+            frame.calc();
+            assertFalse(cellsFailed);
+          } catch (GridExecutionError e) {
+            assertTrue(cellsFailed);
+            assertSame(e, frame.getLastException());
+            continue;
+          }
+          assertNull(frame.getLastException());
+          assertEquals(y.getValue(), frame.getValue(ySlot));
+        }
+      }
+    }
+  }
+
+  public void testInputsFromColumns() {
+    final TestSet cases = new TestSet(setup, "x", "n", "y");
+    for (int i = 0; i < 10; i++) {
+      cases.addCellValues(i * 0.75 - 2, i * 3 - 6, 0.0);
+    }
+    final TestSetColumn xColumn = cases.getColumn("x");
+    final TestSetColumn nColumn = cases.getColumn("n");
+    for (CallInvocation invocation : CallInvocation.values()) {
+      setup.setCallInvocation(invocation);
+      for (int i = 0; i < 50; i++) {
+        Grid grid = setup.generateSolution();
+        EvaluationFrame byValue = new EvaluationFrame(grid);
+        EvaluationFrame byColumn = new EvaluationFrame(grid);
+        int ySlot = byValue.getSlot(grid.getOutputCell("y").getReferedCell());
+        int xSlot = byValue.getSlot(grid.getInputCell("x"));
+        int nSlot = byValue.getSlot(grid.getInputCell("n"));
+        for (int row = 0; row < cases.getNumberOfTestCases(); row++) {
+          byValue.setInput(xSlot, xColumn.get(row));
+          byValue.setInput(nSlot, nColumn.get(row));
+          byColumn.setInput(xSlot, xColumn, row);
+          byColumn.setInput(nSlot, nColumn, row);
+          assertEquals(xColumn.get(row), byColumn.getValue(xSlot));
+          assertEquals(nColumn.get(row), byColumn.getValue(nSlot));
+          boolean failed = false;
+          try {
+            byValue.calc();
+          } catch (GridExecutionError e) {
+            failed = true;
+          }
+          try {
+            byColumn.calc();
+            assertFalse(failed);
+          } catch (GridExecutionError e) {
+            assertTrue(failed);
+            continue;
+          }
+          assertEquals(byValue.getValue(ySlot), byColumn.getValue(ySlot));
+        }
+      }
+    }
+  }
+
+  public void testReset() {
+    setup.setCallInvocation(CallInvocation.REFLECTION);
+    Random random = new Random();
+    EvaluationFrame reused = new EvaluationFrame();
+    for (int i = 0; i < 50; i++) {
+      // grids of different sizes, the frame keeps the largest slots
+      setup.setCallCells(5 + i % 10, "c", Double.class);
+      setup.setPrimitiveEvaluation(i % 3 == 0);
+      Grid grid = setup.generateSolution(random);
+      // mutated switches have unsorted options
+      for (int m = 0; m < 5; m++) {
+        try {
+          grid.mutate("", random);
+        } catch (NoCellFoundException e) {
+          // next
+        }
+      }
+      ArrayList<ArrayList<SwitchOption>> options = new ArrayList<ArrayList<SwitchOption>>();
+      for (Calculable c : grid.getCallCells()) {
+        if (c instanceof SwitchCell) {
+          options.add(new ArrayList<SwitchOption>(((SwitchCell) c).getOptions()));
+        }
+      }
+      reused.reset(grid);
+      EvaluationFrame fresh = new EvaluationFrame(grid);
+      int ySlot = fresh.getSlot(grid.getOutputCell("y").getReferedCell());
+      int xSlot = fresh.getSlot(grid.getInputCell("x"));
+      int nSlot = fresh.getSlot(grid.getInputCell("n"));
+      for (double x = -2; x < 3; x += 0.75) {
+        reused.setInput(xSlot, x);
+        reused.setInput(nSlot, (int) (x * 3));
+        fresh.setInput(xSlot, x);
+        fresh.setInput(nSlot, (int) (x * 3));
+        boolean failed = false;
+        try {
+          fresh.calc();
+        } catch (GridExecutionError e) {
+          failed = true;
+        }
+        try {
+          reused.calc();
+          assertFalse(failed);
+        } catch (GridExecutionError e) {
+          assertTrue(failed);
+          continue;
+        }
+        assertEquals(fresh.getValue(ySlot), reused.getValue(ySlot));
+      }
+      // the slot plan chooses options on a copy, the options of the switches keep their order
+      int s = 0;
+      for (Calculable c : grid.getCallCells()) {
+        if (c instanceof SwitchCell) {
+          assertEquals(options.get(s++), ((SwitchCell) c).getOptions());
+        }
+      }
+    }
+  }
+
+  public void testConcurrentEvaluationOfOneGrid() throws InterruptedException {
+    final GridSolutionEvaluator evaluator = new GridSolutionEvaluator() {
+      @Override
+      public TestSet createTestSet() {
+        TestSet cases = new TestSet(setup, "x", "n", "y");
+        for (int i = 0; i < 50; i++) {
+          cases.addCellValues(i * 0.5, i % 7, i * i * 0.25);
+        }
+        return cases;
+      }
+
+      @Override
+      public double scoreOutput(ReferenceCell outputCell, Object calculated, Object expected) {
+        if (calculated == null)
+          return 1000;
+        return getAbsoluteNumberDifference((Number) calculated, (Number) expected);
+      }
+
+      @Override
+      public double scoreGrid(Grid g) {
+        return 0;
+      }
+
+      @Override
+      public double scoreGridException(Throwable t) {
+        return 500;
+      }
+    };
+    final Grid[] grids = new Grid[20];
+    final double[] expected = new double[grids.length];
+    for (int i = 0; i < grids.length; i++) {
+      grids[i] = setup.generateSolution();
+      expected[i] = evaluator.evaluate(grids[i]);
+    }
+    final ArrayList<String> failures = new ArrayList<String>();
+    final Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < grids.length; i++) {
+              final double score = evaluator.evaluate(grids[i]);
+              if (Double.compare(score, expected[i]) != 0) {
+                synchronized (failures) {
+                  failures.add("grid " + i + " scored " + score + " instead of " + expected[i]);
+                }
+              }
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(failures.toString(), failures.isEmpty());
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.engine.test;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.GridExecutionError;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.cell.Calculable;
+import nl.bluevoid.genpro.cell.ConstantCell;
+import nl.bluevoid.genpro.cell.NoCellFoundException;
+import nl.bluevoid.genpro.operations.NumberOperations;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class GridCompilerTest extends TestCase {
+
+  private Setup setup;
+
+  @Override
+  protected void setUp() throws Exception {
+    setup = createSetup();
+    setup.getGridClassCache().setCompileThreshold(1);
+  }
+
+  private Setup createSetup() {
+    Setup setup = new Setup("GridCompilerTest");
+    setup.addInputCell("x", Double.class);
+    setup.addInputCell("n", Integer.class);
+    setup.addOutputCell("y", Double.class);
+    setup.setCallCells(12, "c", Double.class);
+    setup.setConstantCells(new ConstantCell("const1", Double.class, -100, 100), new ConstantCell("const2",
+        Integer.class, -10, 10));
+    setup.setLibraryCells(NumberOperations.NUM_OPS, NumberOperations.MATH_CLASS);
+    return setup;
+  }
+
+  public void testSameResultsAsReflection() {
+    int compiled = 0;
+    for (int i = 0; i < 200; i++) {
+      Grid grid = setup.generateSolution();
+      ArrayList<Object> expected = calcAll(grid, false);
+      ArrayList<Object> actual = calcAll(grid, true);
+      assertEquals(expected, actual);
+      if (grid.getCompiledGrid() != null) {
+        compiled++;
+      }
+    }
+    assertTrue("most grids should compile, compiled:" + compiled, compiled > 150);
+  }
+
+  public void testCloneReusesCompiledGrid() throws NoCellFoundException {
+    setup.setCompiledEvaluation(true);
+    Grid grid = setup.generateSolution();
+    assertNotNull(grid.getCompiledGrid());
+    Grid clone = grid.clone();
+    assertEquals(grid.getNrOfUsedCallCells(), clone.getNrOfUsedCallCells());
+    assertSame(grid.getCompiledGrid(), clone.getCompiledGrid());
+
+    // a new mutated clone with the same wiring gets its class from the cache
+    long hits = setup.getGridClassCache().getHits();
+    Grid constantMutated = grid.clone();
+    constantMutated.recalcIsUsedForOutput();
+    assertSame(grid.getCompiledGrid(), constantMutated.getCompiledGrid());
+    assertEquals(hits + 1, setup.getGridClassCache().getHits());
+  }
+
+  public void testCompileThreshold() {
+    setup.getGridClassCache().setCompileThreshold(2);
+    setup.getGridClassCache().clear();
+    setup.setCompiledEvaluation(true);
+    Grid grid = setup.generateSolution();
+    assertNull(grid.getCompiledGrid());
+    // the structure is seen a second time
+    Grid clone = grid.clone();
+    assertNotNull(clone.getCompiledGrid());
+    assertSame(clone.getCompiledGrid(), grid.clone().getCompiledGrid());
+  }
+
+  public void testCachePerSetup() {
+    setup.setCompiledEvaluation(true);
+    Setup other = createSetup();
+    other.setCompiledEvaluation(true);
+    while (setup.generateSolution().getCompiledGrid() == null) {
+      // not compilable, try another
+    }
+    assertEquals(1, setup.getGridClassCache().getSize());
+    // the other setup keeps its own threshold of 2
+    assertNull(other.generateSolution().getCompiledGrid());
+    assertEquals(1, setup.getGridClassCache().getSize());
+    assertTrue(other.getGridClassCache().getSize() <= 1);
+  }
+
+  public void testCalcCountedUpdatesCounters() {
+    setup.setCompiledEvaluation(true);
+    Grid grid = setup.generateSolution();
+    grid.getInputCell("x").setValue(2.0);
+    grid.getInputCell("n").setValue(3);
+    grid.resetCellCallCounters();
+    try {
+      grid.calcCounted();
+    } catch (GridExecutionError e) {
+      // the cells before the error are counted
+    }
+    for (Calculable cell : grid.getCallCells()) {
+      if (cell.isUsedForOutput()) {
+        assertEquals(1, cell.getCalced());
+        return;
+      }
+    }
+  }
+
+  private ArrayList<Object> calcAll(Grid grid, boolean compiled) {
+    setup.setCompiledEvaluation(compiled);
+    ArrayList<Object> results = new ArrayList<Object>();
+    double[] xs = { -3.5, 0, 1, 2.25, 1e6 };
+    int[] ns = { -2, 0, 3, 7, 1000 };
+    for (int i = 0; i < xs.length; i++) {
+      grid.getInputCell("x").setValue(xs[i]);
+      grid.getInputCell("n").setValue(ns[i]);
+      try {
+        grid.calc();
+        results.add(grid.getOutputCell("y").getValue());
+      } catch (GridExecutionError e) {
+        results.add("GridExecutionError");
+      }
+    }
+    return results;
+  }
+}
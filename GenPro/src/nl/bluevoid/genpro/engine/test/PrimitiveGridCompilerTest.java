@@ -0,0 +1,122 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.engine.test;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.GridExecutionError;
+import nl.bluevoid.genpro.GridSolutionEvaluator;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSet;
+import nl.bluevoid.genpro.cell.ConstantCell;
+import nl.bluevoid.genpro.cell.ReferenceCell;
+import nl.bluevoid.genpro.engine.PrimitiveFrame;
+import nl.bluevoid.genpro.operations.NumberOperations;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class PrimitiveGridCompilerTest extends TestCase {
+
+  private Setup setup;
+  private int primitiveScored;
+
+  @Override
+  protected void setUp() throws Exception {
+    setup = new Setup("PrimitiveGridCompilerTest");
+    setup.addInputCell("x", Double.class);
+    setup.addInputCell("n", Integer.class);
+    setup.addOutputCell("y", Double.class);
+    setup.setCallCells(10, "c", Double.class);
+    setup.setConstantCells(new ConstantCell("const1", Double.class, -100, 100), new ConstantCell("const2",
+        Integer.class, -10, 10));
+    setup.setLibraryCells(NumberOperations.NUM_OPS, NumberOperations.MATH_CLASS);
+    setup.getGridClassCache().setCompileThreshold(1);
+  }
+
+  public void testSameResultsAsReflection() throws GridExecutionError {
+    int compiled = 0;
+    for (int i = 0; i < 200; i++) {
+      Grid grid = setup.generateSolution();
+      if (grid.getPrimitiveCompiledGrid() == null) {
+        continue;
+      }
+      compiled++;
+      int slot = grid.getCallCellSlot(grid.getOutputCell("y").getReferedCell());
+      for (double x = -2; x < 3; x += 0.75) {
+        grid.getInputCell("x").setValue(x);
+        grid.getInputCell("n").setValue((int) (x * 3));
+        setup.setPrimitiveEvaluation(false);
+        grid.calc();
+        Object expected = grid.getOutputCell("y").getValue();
+        PrimitiveFrame frame = grid.calcPrimitive();
+        assertEquals(expected, frame.getValue(slot));
+        // calc writes the primitive values back to the cells
+        setup.setPrimitiveEvaluation(true);
+        grid.calc();
+        assertEquals(expected, grid.getOutputCell("y").getValue());
+      }
+    }
+    assertTrue("most grids should compile, compiled:" + compiled, compiled > 150);
+  }
+
+  public void testEvaluatorScoresPrimitives() {
+    GridSolutionEvaluator evaluator = new GridSolutionEvaluator() {
+      @Override
+      public TestSet createTestSet() {
+        TestSet testSet = new TestSet(setup, "x", "n", "y");
+        for (int i = 0; i < 10; i++) {
+          testSet.addCellValues(i * 1.5, i, i * 3.0);
+        }
+        return testSet;
+      }
+
+      @Override
+      public double scoreOutput(ReferenceCell outputCell, Object calculated, Object expected) {
+        if (calculated == null)
+          return 1000;
+        return getAbsoluteNumberDifference((Number) calculated, (Number) expected);
+      }
+
+      @Override
+      public double scoreOutput(ReferenceCell outputCell, double calculated, double expected) {
+        primitiveScored++;
+        return getAbsoluteNumberDifference(calculated, expected);
+      }
+
+      @Override
+      public double scoreGrid(Grid g) {
+        return 0;
+      }
+
+      @Override
+      public double scoreGridException(Throwable t) {
+        return 0;
+      }
+    };
+    for (int i = 0; i < 50; i++) {
+      Grid grid = setup.generateSolution();
+      setup.setPrimitiveEvaluation(false);
+      double expected = evaluator.evaluate(grid);
+      setup.setPrimitiveEvaluation(true);
+      assertEquals(Double.valueOf(expected), Double.valueOf(evaluator.evaluate(grid)));
+    }
+    assertTrue(primitiveScored > 0);
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events, from any thread. Counts nothing while Metrics are disabled.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public final class Counter {
+  private final String name;
+  private final LongAdder count = new LongAdder();
+
+  Counter(final String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void increment() {
+    if (Metrics.enabled) {
+      count.increment();
+    }
+  }
+
+  public void add(final long events) {
+    if (Metrics.enabled) {
+      count.add(events);
+    }
+  }
+
+  public long get() {
+    return count.sum();
+  }
+
+  void reset() {
+    count.reset();
+  }
+}
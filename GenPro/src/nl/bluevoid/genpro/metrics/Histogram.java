@@ -0,0 +1,88 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in buckets of powers of two nanoseconds, so percentiles are known within a factor of two.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public final class Histogram {
+  static final int BUCKETS = 64;
+
+  // bucket b counts the durations from 2^(b-1) till 2^b nanos, bucket 0 the durations of 0
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  void record(final long nanos) {
+    counts.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+  }
+
+  /**
+   * @return the counts of the buckets
+   */
+  public long[] snapshot() {
+    final long[] snapshot = new long[BUCKETS];
+    for (int b = 0; b < BUCKETS; b++) {
+      snapshot[b] = counts.get(b);
+    }
+    return snapshot;
+  }
+
+  void reset() {
+    for (int b = 0; b < BUCKETS; b++) {
+      counts.set(b, 0);
+    }
+  }
+
+  /**
+   * @param fraction
+   *          0.5 for the median
+   * @return the upper bound in nanos of the bucket holding the percentile, 0 when there are no counts
+   */
+  public static long getPercentile(final long[] snapshot, final double fraction) {
+    long total = 0;
+    for (final long count : snapshot) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(total * fraction));
+    long seen = 0;
+    for (int b = 0; b < snapshot.length; b++) {
+      seen += snapshot[b];
+      if (seen >= rank) {
+        return b == 0 ? 0 : b == BUCKETS - 1 ? Long.MAX_VALUE : (1L << b) - 1;
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+
+  /**
+   * @return the counts of now minus the counts of before
+   */
+  public static long[] subtract(final long[] now, final long[] before) {
+    final long[] result = new long[now.length];
+    for (int b = 0; b < now.length; b++) {
+      result[b] = now[b] - before[b];
+    }
+    return result;
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import nl.bluevoid.genpro.util.Sneak;
+
+/**
+ * The counters and timers of the phases of a run. Disabled by default, then measuring costs a read of a
+ * volatile field. Can be read and switched through JMX after registerMBean, and written to a CSV file per
+ * generation, see Setup.setMetricsFile.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public final class Metrics implements MetricsMBean {
+
+  public static final String OBJECT_NAME = "nl.bluevoid.genpro:type=Metrics";
+
+  static volatile boolean enabled = false;
+
+  public static final Counter GENERATIONS = new Counter("generations");
+  /** evaluating a generation, on all threads */
+  public static final Timer EVALUATION = new Timer("evaluation", false);
+  /** evaluating one grid, with a histogram of the latencies */
+  public static final Timer GRID_EVALUATION = new Timer("gridEvaluation", true);
+  /** creating the offspring of a generation */
+  public static final Timer BREEDING = new Timer("breeding", false);
+  public static final Timer CLONING = new Timer("cloning", false);
+  public static final Timer CROSSING = new Timer("crossing", false);
+  /** grids a crossing could not connect */
+  public static final Counter CROSSING_FAILURES = new Counter("crossingFailures");
+  /** mutations that found no cell to connect */
+  public static final Counter MUTATION_FAILURES = new Counter("mutationFailures");
+  /** grids scoring NaN or infinite */
+  public static final Counter NAN_OR_INFINITE = new Counter("nanOrInfinite");
+  public static final Counter CACHE_HITS = new Counter("cacheHits");
+  public static final Counter CACHE_MISSES = new Counter("cacheMisses");
+
+  private static final List<Counter> COUNTERS = Collections.unmodifiableList(Arrays.asList(GENERATIONS,
+      CROSSING_FAILURES, MUTATION_FAILURES, NAN_OR_INFINITE, CACHE_HITS, CACHE_MISSES));
+  private static final List<Timer> TIMERS = Collections.unmodifiableList(Arrays.asList(EVALUATION,
+      GRID_EVALUATION, BREEDING, CLONING, CROSSING));
+
+  private static Metrics mbean;
+
+  private Metrics() {
+  }
+
+  public static boolean isOn() {
+    return enabled;
+  }
+
+  public static void setOn(final boolean on) {
+    enabled = on;
+  }
+
+  public static List<Counter> getCounters() {
+    return COUNTERS;
+  }
+
+  public static List<Timer> getTimers() {
+    return TIMERS;
+  }
+
+  /**
+   * Sets all counters and timers to 0.
+   */
+  public static void resetAll() {
+    for (final Counter counter : COUNTERS) {
+      counter.reset();
+    }
+    for (final Timer timer : TIMERS) {
+      timer.reset();
+    }
+  }
+
+  /**
+   * Registers the metrics with the platform MBeanServer as OBJECT_NAME, once.
+   */
+  public static synchronized void registerMBean() {
+    if (mbean != null) {
+      return;
+    }
+    try {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      final Metrics metrics = new Metrics();
+      server.registerMBean(metrics, new ObjectName(OBJECT_NAME));
+      mbean = metrics;
+    } catch (JMException e) {
+      Sneak.sneakyThrow(e);
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(final boolean enabled) {
+    setOn(enabled);
+  }
+
+  public void reset() {
+    resetAll();
+  }
+
+  public long getGenerations() {
+    return GENERATIONS.get();
+  }
+
+  public long getEvaluationMillis() {
+    return EVALUATION.getNanos() / 1000000;
+  }
+
+  public long getGridEvaluations() {
+    return GRID_EVALUATION.getCount();
+  }
+
+  public double getGridEvaluationMeanMicros() {
+    final long count = GRID_EVALUATION.getCount();
+    return count == 0 ? 0 : GRID_EVALUATION.getNanos() / 1000.0 / count;
+  }
+
+  public double getGridEvaluationMedianMicros() {
+    return Histogram.getPercentile(GRID_EVALUATION.getHistogram().snapshot(), 0.5) / 1000.0;
+  }
+
+  public double getGridEvaluation99PercentileMicros() {
+    return Histogram.getPercentile(GRID_EVALUATION.getHistogram().snapshot(), 0.99) / 1000.0;
+  }
+
+  public long getBreedingMillis() {
+    return BREEDING.getNanos() / 1000000;
+  }
+
+  public long getClones() {
+    return CLONING.getCount();
+  }
+
+  public long getCloningMillis() {
+    return CLONING.getNanos() / 1000000;
+  }
+
+  public long getCrossings() {
+    return CROSSING.getCount();
+  }
+
+  public long getCrossingMillis() {
+    return CROSSING.getNanos() / 1000000;
+  }
+
+  public long getCrossingFailures() {
+    return CROSSING_FAILURES.get();
+  }
+
+  public double getCrossingFailureRate() {
+    return getFailureRate(CROSSING_FAILURES.get(), CROSSING.getCount());
+  }
+
+  /**
+   * @param crossings
+   *          every crossing creates two grids
+   */
+  static double getFailureRate(final long failures, final long crossings) {
+    return crossings == 0 ? 0 : failures / (2.0 * crossings);
+  }
+
+  public long getMutationFailures() {
+    return MUTATION_FAILURES.get();
+  }
+
+  public long getNanOrInfinite() {
+    return NAN_OR_INFINITE.get();
+  }
+
+  public long getCacheHits() {
+    return CACHE_HITS.get();
+  }
+
+  public long getCacheMisses() {
+    return CACHE_MISSES.get();
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Appends a row of Metrics to a CSV file per generation, with what was counted since the previous row. A
+ * header is written when the file is empty.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class MetricsCsvWriter {
+
+  private final File file;
+  // the values at the previous row
+  private final long[] counts;
+  private final long[] timerCounts;
+  private final long[] timerNanos;
+  private final long[][] histograms;
+
+  public MetricsCsvWriter(final File file) {
+    this.file = file;
+    counts = new long[Metrics.getCounters().size()];
+    timerCounts = new long[Metrics.getTimers().size()];
+    timerNanos = new long[timerCounts.length];
+    histograms = new long[timerCounts.length][];
+    createRow(0);
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Appends the row of the generation.
+   */
+  public void write(final int generation) throws IOException {
+    final boolean header = !file.exists() || file.length() == 0;
+    final Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+    try {
+      if (header) {
+        out.write(getHeader());
+        out.write('\n');
+      }
+      out.write(createRow(generation));
+      out.write('\n');
+    } finally {
+      out.close();
+    }
+  }
+
+  public static String getHeader() {
+    final StringBuilder b = new StringBuilder("generation,timeMillis");
+    for (final Counter counter : Metrics.getCounters()) {
+      b.append(',').append(counter.getName());
+    }
+    for (final Timer timer : Metrics.getTimers()) {
+      b.append(',').append(timer.getName()).append("Count");
+      b.append(',').append(timer.getName()).append("Millis");
+      if (timer.getHistogram() != null) {
+        b.append(',').append(timer.getName()).append("MedianMicros");
+        b.append(',').append(timer.getName()).append("99PercentileMicros");
+      }
+    }
+    b.append(",crossingFailureRate");
+    return b.toString();
+  }
+
+  /**
+   * @return the row of the values since the previous row
+   */
+  private String createRow(final int generation) {
+    final StringBuilder b = new StringBuilder();
+    b.append(generation).append(',').append(System.currentTimeMillis());
+    final List<Counter> counters = Metrics.getCounters();
+    long crossingFailures = 0;
+    for (int i = 0; i < counts.length; i++) {
+      final long count = counters.get(i).get();
+      b.append(',').append(count - counts[i]);
+      if (counters.get(i) == Metrics.CROSSING_FAILURES) {
+        crossingFailures = count - counts[i];
+      }
+      counts[i] = count;
+    }
+    final List<Timer> timers = Metrics.getTimers();
+    long crossings = 0;
+    for (int i = 0; i < timerCounts.length; i++) {
+      final Timer timer = timers.get(i);
+      final long count = timer.getCount();
+      final long nanos = timer.getNanos();
+      b.append(',').append(count - timerCounts[i]);
+      b.append(',').append((nanos - timerNanos[i]) / 1000000.0);
+      if (timer == Metrics.CROSSING) {
+        crossings = count - timerCounts[i];
+      }
+      timerCounts[i] = count;
+      timerNanos[i] = nanos;
+      if (timer.getHistogram() != null) {
+        final long[] snapshot = timer.getHistogram().snapshot();
+        final long[] delta = histograms[i] == null ? snapshot : Histogram.subtract(snapshot, histograms[i]);
+        b.append(',').append(Histogram.getPercentile(delta, 0.5) / 1000.0);
+        b.append(',').append(Histogram.getPercentile(delta, 0.99) / 1000.0);
+        histograms[i] = snapshot;
+      }
+    }
+    b.append(',').append(Metrics.getFailureRate(crossingFailures, crossings));
+    return b.toString();
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.metrics;
+
+/**
+ * The JMX view of the Metrics, counted since they were last reset.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public interface MetricsMBean {
+
+  public boolean isEnabled();
+
+  public void setEnabled(boolean enabled);
+
+  public void reset();
+
+  public long getGenerations();
+
+  public long getEvaluationMillis();
+
+  public long getGridEvaluations();
+
+  public double getGridEvaluationMeanMicros();
+
+  public double getGridEvaluationMedianMicros();
+
+  public double getGridEvaluation99PercentileMicros();
+
+  public long getBreedingMillis();
+
+  public long getClones();
+
+  public long getCloningMillis();
+
+  public long getCrossings();
+
+  public long getCrossingMillis();
+
+  public long getCrossingFailures();
+
+  public double getCrossingFailureRate();
+
+  public long getMutationFailures();
+
+  public long getNanOrInfinite();
+
+  public long getCacheHits();
+
+  public long getCacheMisses();
+}
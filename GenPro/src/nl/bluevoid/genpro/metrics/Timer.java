@@ -0,0 +1,92 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and times events, from any thread, optionally keeping a histogram of their durations. Measures
+ * nothing while Metrics are disabled:
+ * 
+ * <pre>
+ * final long start = timer.start();
+ * ...
+ * timer.stop(start);
+ * </pre>
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public final class Timer {
+  private final String name;
+  private final LongAdder count = new LongAdder();
+  private final LongAdder nanos = new LongAdder();
+  private final Histogram histogram;
+
+  Timer(final String name, final boolean withHistogram) {
+    this.name = name;
+    histogram = withHistogram ? new Histogram() : null;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the start to pass to stop, 0 while disabled
+   */
+  public long start() {
+    return Metrics.enabled ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Records the event started at start, nothing when it was started while disabled.
+   */
+  public void stop(final long start) {
+    if (start != 0) {
+      final long duration = System.nanoTime() - start;
+      count.increment();
+      nanos.add(duration);
+      if (histogram != null) {
+        histogram.record(duration);
+      }
+    }
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getNanos() {
+    return nanos.sum();
+  }
+
+  /**
+   * @return null if the timer keeps no histogram
+   */
+  public Histogram getHistogram() {
+    return histogram;
+  }
+
+  void reset() {
+    count.reset();
+    nanos.reset();
+    if (histogram != null) {
+      histogram.reset();
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.metrics.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.GenerationRunner;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.metrics.Counter;
+import nl.bluevoid.genpro.metrics.Histogram;
+import nl.bluevoid.genpro.metrics.Metrics;
+import nl.bluevoid.genpro.metrics.MetricsCsvWriter;
+import nl.bluevoid.genpro.metrics.Timer;
+import nl.bluevoid.genpro.test.QuadraticProblem;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class MetricsTest extends TestCase {
+
+  private File file;
+
+  @Override
+  protected void setUp() throws Exception {
+    file = File.createTempFile("MetricsTest", ".csv");
+    Metrics.setOn(false);
+    Metrics.resetAll();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    file.delete();
+    Metrics.setOn(false);
+    Metrics.resetAll();
+  }
+
+  public void testRowPerGeneration() throws IOException {
+    final Setup setup = createSetup();
+    setup.setMetricsFile(file);
+    new GenerationRunner(setup, createEvaluator(setup)).runGenerations();
+    assertTrue(Metrics.isOn());
+
+    final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    assertEquals(MetricsCsvWriter.getHeader(), lines.get(0));
+    final int columns = lines.get(0).split(",").length;
+    long gridEvaluations = 0;
+    final int column = lines.get(0).indexOf("gridEvaluationCount");
+    final int index = lines.get(0).substring(0, column).split(",").length;
+    for (int i = 1; i < lines.size(); i++) {
+      final String[] row = lines.get(i).split(",");
+      assertEquals(columns, row.length);
+      assertEquals(i, Integer.parseInt(row[0]));
+      gridEvaluations += Long.parseLong(row[index]);
+    }
+    assertEquals(6, lines.size());
+    assertEquals(Metrics.GRID_EVALUATION.getCount(), gridEvaluations);
+    assertEquals(5, Metrics.GENERATIONS.get());
+    assertTrue(Metrics.GRID_EVALUATION.getCount() >= 5 * 40);
+    assertTrue(Metrics.BREEDING.getCount() > 0);
+    assertTrue(Metrics.CLONING.getCount() + Metrics.CROSSING.getCount() > 0);
+  }
+
+  public void testOffCountsNothing() {
+    final Setup setup = createSetup();
+    new GenerationRunner(setup, createEvaluator(setup)).runGenerations();
+    for (final Counter counter : Metrics.getCounters()) {
+      assertEquals(counter.getName(), 0, counter.get());
+    }
+    for (final Timer timer : Metrics.getTimers()) {
+      assertEquals(timer.getName(), 0, timer.getCount());
+    }
+    assertEquals(0, file.length());
+  }
+
+  public void testMBean() throws Exception {
+    Metrics.registerMBean();
+    Metrics.registerMBean();
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+    assertEquals(Boolean.FALSE, server.getAttribute(name, "Enabled"));
+    server.setAttribute(name, new Attribute("Enabled", Boolean.TRUE));
+    assertTrue(Metrics.isOn());
+    Metrics.CACHE_HITS.add(3);
+    assertEquals(Long.valueOf(3), server.getAttribute(name, "CacheHits"));
+    server.invoke(name, "reset", null, null);
+    assertEquals(Long.valueOf(0), server.getAttribute(name, "CacheHits"));
+    assertEquals(Double.valueOf(0), server.getAttribute(name, "CrossingFailureRate"));
+  }
+
+  public void testPercentile() {
+    final long[] snapshot = new long[64];
+    assertEquals(0, Histogram.getPercentile(snapshot, 0.5));
+    // 90 durations of 1000-2047 nanos, 10 of 2^20 till 2^21 nanos
+    snapshot[11] = 90;
+    snapshot[21] = 10;
+    assertEquals(2047, Histogram.getPercentile(snapshot, 0.5));
+    assertEquals(2047, Histogram.getPercentile(snapshot, 0.9));
+    assertEquals((1 << 21) - 1, Histogram.getPercentile(snapshot, 0.99));
+    final long[] before = new long[64];
+    before[11] = 90;
+    assertEquals((1 << 21) - 1, Histogram.getPercentile(Histogram.subtract(snapshot, before), 0.5));
+  }
+
+  private Setup createSetup() {
+    final Setup setup = QuadraticProblem.createSetup("MetricsTest");
+    setup.setGenerationSize(40);
+    setup.setStopAtGeneration(5);
+    setup.setRandomSeed(42);
+    return setup;
+  }
+
+  private QuadraticProblem.Evaluator createEvaluator(final Setup setup) {
+    return QuadraticProblem.createEvaluator(setup, 20, 1, 3);
+  }
+}
@@ -71,6 +71,9 @@ public class BlackList {
       add(String.class, "codePointBefore", int.class);
       add(String.class, "codePointAt", int.class);
       add(String.class, "codePointCount", int.class, int.class);
+      // a large count runs out of heap
+      add(String.class, "repeat", int.class);
+      add(String.class, "indent", int.class);
       
       add(Object.class, "wait");
       add(Object.class, "wait", long.class, int.class);
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.remote;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.GridCodec;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSetSolutionEvaluator;
+import nl.bluevoid.genpro.util.Debug;
+import nl.bluevoid.genpro.util.Sneak;
+
+/**
+ * Scores batches of encoded grids sent by a RemoteEvaluationMaster, until the master sends the stop batch or
+ * closes the connection. A request is the batch id, the rejection threshold, the number of grids and each
+ * grid as length and GridCodec bytes; batch id -1 stops the worker. The response is the batch id, the number
+ * of grids and their scores. A grid that can not be decoded or evaluated scores NaN.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class EvaluationWorker implements Runnable {
+
+  static final int STOP = -1;
+
+  /**
+   * Creates the Setup and evaluator of a worker, must have a public no-argument constructor to be used by
+   * worker processes.
+   */
+  public interface Factory {
+    public Setup createSetup();
+
+    public TestSetSolutionEvaluator createEvaluator(Setup setup);
+  }
+
+  private final Setup setup;
+  private final TestSetSolutionEvaluator evaluator;
+  private final InputStream in;
+  private final OutputStream out;
+
+  public EvaluationWorker(final Setup setup, final TestSetSolutionEvaluator evaluator, final InputStream in,
+      final OutputStream out) {
+    Debug.checkNotNull(setup, "setup");
+    Debug.checkNotNull(evaluator, "evaluator");
+    this.setup = setup;
+    this.evaluator = evaluator;
+    this.in = in;
+    this.out = out;
+  }
+
+  public void run() {
+    try {
+      final DataInputStream requests = new DataInputStream(new BufferedInputStream(in));
+      final DataOutputStream responses = new DataOutputStream(new BufferedOutputStream(out));
+      while (true) {
+        final int batchId;
+        try {
+          batchId = requests.readInt();
+        } catch (EOFException e) {
+          // master is gone
+          return;
+        }
+        if (batchId == STOP) {
+          return;
+        }
+        final double threshold = requests.readDouble();
+        final double[] scores = new double[requests.readInt()];
+        for (int i = 0; i < scores.length; i++) {
+          final byte[] encoded = new byte[requests.readInt()];
+          requests.readFully(encoded);
+          scores[i] = score(encoded, threshold);
+        }
+        responses.writeInt(batchId);
+        responses.writeInt(scores.length);
+        for (final double score : scores) {
+          responses.writeDouble(score);
+        }
+        responses.flush();
+      }
+    } catch (IOException e) {
+      Sneak.sneakyThrow(e);
+    } finally {
+      close();
+    }
+  }
+
+  private double score(final byte[] encoded, final double threshold) {
+    try {
+      final Grid grid = GridCodec.decode(setup, encoded);
+      return evaluator.evaluate(grid, threshold);
+    } catch (Throwable t) {
+      Debug.printErrln("grid not scored: " + t);
+      return Double.NaN;
+    }
+  }
+
+  private void close() {
+    try {
+      out.close();
+    } catch (IOException e) {
+      // already closed
+    }
+    try {
+      in.close();
+    } catch (IOException e) {
+      // already closed
+    }
+  }
+
+  /**
+   * Starts a worker process: connects to the master and scores batches until the master stops it.
+   * 
+   * @param args
+   *          the class name of the Factory, the host and the port of the master
+   */
+  public static void main(final String[] args) throws Exception {
+    if (args.length != 3) {
+      System.err.println("usage: EvaluationWorker <factory class> <host> <port>");
+      System.exit(1);
+    }
+    final Factory factory = (Factory) Class.forName(args[0]).getDeclaredConstructor().newInstance();
+    final Setup setup = factory.createSetup();
+    final TestSetSolutionEvaluator evaluator = factory.createEvaluator(setup);
+    final Socket socket = new Socket(args[1], Integer.parseInt(args[2]));
+    socket.setTcpNoDelay(true);
+    new EvaluationWorker(setup, evaluator, socket.getInputStream(), socket.getOutputStream()).run();
+    socket.close();
+  }
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.remote;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.GridBatchEvaluator;
+import nl.bluevoid.genpro.GridCodec;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.util.Debug;
+import nl.bluevoid.genpro.util.Sneak;
+
+/**
+ * Scores generations on EvaluationWorkers, in worker processes connected over loopback TCP or on threads of
+ * this JVM. The grids are encoded with GridCodec and sent in batches; a worker gets at most
+ * maxBatchesPerWorker batches it has not answered yet, so fast workers get more batches than slow ones. The
+ * batches of a worker whose connection breaks are sent to the other workers again.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class RemoteEvaluationMaster implements GridBatchEvaluator {
+
+  private static final int PIPE_SIZE = 1 << 16;
+  private static final long CONNECT_TIMEOUT_MILLIS = 60000;
+
+  private final int batchSize;
+  private final int maxBatchesPerWorker;
+  private final LinkedBlockingDeque<Batch> pending = new LinkedBlockingDeque<Batch>();
+  private final AtomicInteger batchIds = new AtomicInteger();
+  private final List<Worker> workers = new ArrayList<Worker>();
+  private final List<Process> processes = new ArrayList<Process>();
+  private volatile boolean shutdown = false;
+
+  /**
+   * @param batchSize
+   *          the number of grids sent to a worker at once
+   * @param maxBatchesPerWorker
+   *          the number of batches a worker can have outstanding
+   */
+  public RemoteEvaluationMaster(final int batchSize, final int maxBatchesPerWorker) {
+    Debug.checkParam(batchSize < 1, "batchSize to small:", batchSize);
+    Debug.checkParam(maxBatchesPerWorker < 1, "maxBatchesPerWorker to small:", maxBatchesPerWorker);
+    this.batchSize = batchSize;
+    this.maxBatchesPerWorker = maxBatchesPerWorker;
+  }
+
+  /**
+   * Scores the grids on the workers and waits for the scores.
+   * 
+   * @throws IllegalStateException
+   *           when no worker is alive
+   */
+  public synchronized double[] evaluate(final List<Grid> grids, final double threshold) {
+    Debug.errorOnTrue(shutdown, "master is shut down");
+    final Job job = new Job(grids.size());
+    for (int from = 0; from < grids.size(); from += batchSize) {
+      final int to = Math.min(grids.size(), from + batchSize);
+      final byte[][] encoded = new byte[to - from][];
+      for (int i = from; i < to; i++) {
+        encoded[i - from] = GridCodec.encode(grids.get(i));
+      }
+      pending.add(new Batch(batchIds.getAndIncrement(), job, from, threshold, encoded));
+    }
+    try {
+      while (!job.done.await(100, TimeUnit.MILLISECONDS)) {
+        if (getAliveWorkers() == 0) {
+          pending.clear();
+          throw new IllegalStateException("no evaluation worker alive");
+        }
+      }
+    } catch (InterruptedException e) {
+      pending.clear();
+      Sneak.sneakyThrow(e);
+    }
+    return job.scores;
+  }
+
+  /**
+   * Uses a worker connected to the socket.
+   */
+  public void addWorker(final Socket socket) throws IOException {
+    socket.setTcpNoDelay(true);
+    addWorker(socket.getInputStream(), socket.getOutputStream(), socket.getRemoteSocketAddress().toString());
+  }
+
+  /**
+   * Uses a worker reading requests from out and writing responses to in.
+   */
+  public synchronized void addWorker(final InputStream in, final OutputStream out, final String name) {
+    Debug.errorOnTrue(shutdown, "master is shut down");
+    final Worker worker = new Worker(in, out, name);
+    workers.add(worker);
+    worker.start();
+  }
+
+  /**
+   * Starts a worker on a thread of this JVM, connected by pipes.
+   */
+  public void addLocalWorker(final EvaluationWorker.Factory factory) throws IOException {
+    final PipedInputStream requestsIn = new PipedInputStream(PIPE_SIZE);
+    final PipedOutputStream requestsOut = new PipedOutputStream(requestsIn);
+    final PipedInputStream responsesIn = new PipedInputStream(PIPE_SIZE);
+    final PipedOutputStream responsesOut = new PipedOutputStream(responsesIn);
+    final Setup setup = factory.createSetup();
+    final Thread thread = new Thread(new EvaluationWorker(setup, factory.createEvaluator(setup), requestsIn,
+        responsesOut), "local worker " + workers.size());
+    thread.setDaemon(true);
+    thread.start();
+    addWorker(responsesIn, requestsOut, thread.getName());
+  }
+
+  /**
+   * Starts worker JVMs with the classpath of this JVM and waits for them to connect on a loopback port.
+   * 
+   * @param factory
+   *          a class with a public no-argument constructor
+   */
+  public void startWorkerProcesses(final int count, final Class<? extends EvaluationWorker.Factory> factory)
+      throws IOException {
+    final ServerSocket server = new ServerSocket(0, count, InetAddress.getLoopbackAddress());
+    try {
+      final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+      for (int i = 0; i < count; i++) {
+        final ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+            EvaluationWorker.class.getName(), factory.getName(), server.getInetAddress().getHostAddress(),
+            Integer.toString(server.getLocalPort()));
+        builder.inheritIO();
+        synchronized (this) {
+          processes.add(builder.start());
+        }
+      }
+      server.setSoTimeout((int) CONNECT_TIMEOUT_MILLIS);
+      for (int i = 0; i < count; i++) {
+        addWorker(server.accept());
+      }
+    } finally {
+      server.close();
+    }
+  }
+
+  public synchronized int getAliveWorkers() {
+    int alive = 0;
+    for (final Worker w : workers) {
+      if (w.alive) {
+        alive++;
+      }
+    }
+    return alive;
+  }
+
+  public synchronized List<WorkerStatistics> getWorkerStatistics() {
+    final ArrayList<WorkerStatistics> stats = new ArrayList<WorkerStatistics>();
+    for (final Worker w : workers) {
+      stats.add(w.getStatistics());
+    }
+    return stats;
+  }
+
+  /**
+   * Stops the workers and the worker processes.
+   */
+  public void shutdown() {
+    final ArrayList<Worker> stopping;
+    synchronized (this) {
+      shutdown = true;
+      stopping = new ArrayList<Worker>(workers);
+    }
+    for (final Worker w : stopping) {
+      w.stop();
+    }
+    synchronized (this) {
+      for (final Process p : processes) {
+        try {
+          if (!p.waitFor(5, TimeUnit.SECONDS)) {
+            p.destroy();
+          }
+        } catch (InterruptedException e) {
+          p.destroy();
+          Thread.currentThread().interrupt();
+        }
+      }
+      processes.clear();
+    }
+  }
+
+  /**
+   * The scores of one call to evaluate.
+   */
+  private static class Job {
+    final double[] scores;
+    final CountDownLatch done;
+
+    Job(final int grids) {
+      scores = new double[grids];
+      done = new CountDownLatch(grids);
+    }
+  }
+
+  private static class Batch {
+    final int id;
+    final Job job;
+    final int from;
+    final double threshold;
+    final byte[][] grids;
+
+    Batch(final int id, final Job job, final int from, final double threshold, final byte[][] grids) {
+      this.id = id;
+      this.job = job;
+      this.from = from;
+      this.threshold = threshold;
+      this.grids = grids;
+    }
+  }
+
+  /**
+   * The connection to one worker: a thread sending batches while the worker has room for them, and a thread
+   * receiving the scores.
+   */
+  private class Worker {
+    final String name;
+    final DataInputStream in;
+    final DataOutputStream out;
+    final Semaphore room = new Semaphore(maxBatchesPerWorker);
+    final Thread sender;
+    final Thread receiver;
+    final long connected = System.currentTimeMillis();
+    final AtomicLong grids = new AtomicLong();
+    final AtomicLong batches = new AtomicLong();
+
+    // guarded by this, a batch is either outstanding here or pending
+    final HashMap<Integer, Batch> outstanding = new HashMap<Integer, Batch>();
+    volatile boolean alive = true;
+
+    Worker(final InputStream in, final OutputStream out, final String name) {
+      this.name = name;
+      this.in = new DataInputStream(new BufferedInputStream(in));
+      this.out = new DataOutputStream(new BufferedOutputStream(out));
+      sender = new Thread(new Runnable() {
+        public void run() {
+          send();
+        }
+      }, "sender " + name);
+      receiver = new Thread(new Runnable() {
+        public void run() {
+          receive();
+        }
+      }, "receiver " + name);
+      sender.setDaemon(true);
+      receiver.setDaemon(true);
+    }
+
+    void start() {
+      sender.start();
+      receiver.start();
+    }
+
+    private void send() {
+      while (alive) {
+        final Batch batch;
+        try {
+          room.acquire();
+          batch = pending.take();
+        } catch (InterruptedException e) {
+          return;
+        }
+        synchronized (this) {
+          if (!alive) {
+            pending.addFirst(batch);
+            return;
+          }
+          outstanding.put(batch.id, batch);
+        }
+        try {
+          synchronized (out) {
+            out.writeInt(batch.id);
+            out.writeDouble(batch.threshold);
+            out.writeInt(batch.grids.length);
+            for (final byte[] grid : batch.grids) {
+              out.writeInt(grid.length);
+              out.write(grid);
+            }
+            out.flush();
+          }
+        } catch (IOException e) {
+          died(e);
+          return;
+        }
+      }
+    }
+
+    private void receive() {
+      try {
+        while (true) {
+          final int id = in.readInt();
+          final double[] scores = new double[in.readInt()];
+          for (int i = 0; i < scores.length; i++) {
+            scores[i] = in.readDouble();
+          }
+          final Batch batch;
+          synchronized (this) {
+            batch = outstanding.remove(id);
+          }
+          Debug.errorOnTrue(batch == null, "worker answered unknown batch:", id, name);
+          System.arraycopy(scores, 0, batch.job.scores, batch.from, scores.length);
+          grids.addAndGet(scores.length);
+          batches.incrementAndGet();
+          room.release();
+          for (int i = 0; i < scores.length; i++) {
+            batch.job.done.countDown();
+          }
+        }
+      } catch (Throwable t) {
+        died(t);
+      }
+    }
+
+    /**
+     * Stops using the worker and sends its outstanding batches to the others.
+     */
+    private void died(final Throwable cause) {
+      synchronized (this) {
+        if (!alive) {
+          return;
+        }
+        alive = false;
+        for (final Batch batch : outstanding.values()) {
+          pending.addFirst(batch);
+        }
+        outstanding.clear();
+      }
+      sender.interrupt();
+      close();
+      if (!shutdown) {
+        Debug.printErrln("evaluation worker " + name + " died: " + cause);
+      }
+    }
+
+    void stop() {
+      if (alive) {
+        try {
+          synchronized (out) {
+            out.writeInt(EvaluationWorker.STOP);
+            out.flush();
+          }
+        } catch (IOException e) {
+          // worker is already gone
+        }
+      }
+      died(null);
+    }
+
+    private void close() {
+      try {
+        out.close();
+      } catch (IOException e) {
+        // already closed
+      }
+      try {
+        in.close();
+      } catch (IOException e) {
+        // already closed
+      }
+    }
+
+    synchronized WorkerStatistics getStatistics() {
+      return new WorkerStatistics(name, alive, grids.get(), batches.get(), outstanding.size(),
+          System.currentTimeMillis() - connected);
+    }
+  }
+}
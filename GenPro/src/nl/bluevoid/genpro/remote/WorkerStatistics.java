@@ -0,0 +1,84 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.remote;
+
+/**
+ * Counters of one worker of a RemoteEvaluationMaster at the moment they were taken.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class WorkerStatistics {
+  private final String name;
+  private final boolean alive;
+  private final long grids;
+  private final long batches;
+  private final int outstandingBatches;
+  private final long connectedMillis;
+
+  WorkerStatistics(final String name, final boolean alive, final long grids, final long batches,
+      final int outstandingBatches, final long connectedMillis) {
+    this.name = name;
+    this.alive = alive;
+    this.grids = grids;
+    this.batches = batches;
+    this.outstandingBatches = outstandingBatches;
+    this.connectedMillis = connectedMillis;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public boolean isAlive() {
+    return alive;
+  }
+
+  /**
+   * @return the grids scored by the worker
+   */
+  public long getGrids() {
+    return grids;
+  }
+
+  /**
+   * @return the batches scored by the worker
+   */
+  public long getBatches() {
+    return batches;
+  }
+
+  /**
+   * @return the batches sent to the worker that are not scored yet
+   */
+  public int getOutstandingBatches() {
+    return outstandingBatches;
+  }
+
+  /**
+   * @return the grids scored per second since the worker connected
+   */
+  public double getGridsPerSecond() {
+    return connectedMillis == 0 ? 0 : grids * 1000.0 / connectedMillis;
+  }
+
+  @Override
+  public String toString() {
+    return name + (alive ? "" : " (dead)") + " grids=" + grids + " batches=" + batches + " outstanding="
+        + outstandingBatches + " grids/s=" + Math.round(getGridsPerSecond());
+  }
+}
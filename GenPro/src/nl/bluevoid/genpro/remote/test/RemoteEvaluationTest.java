@@ -0,0 +1,170 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.remote.test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.Generation;
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.GridCodec;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSetSolutionEvaluator;
+import nl.bluevoid.genpro.cell.Calculable;
+import nl.bluevoid.genpro.cell.CellTypeEnum;
+import nl.bluevoid.genpro.remote.EvaluationWorker;
+import nl.bluevoid.genpro.remote.RemoteEvaluationMaster;
+import nl.bluevoid.genpro.remote.WorkerStatistics;
+import nl.bluevoid.genpro.test.QuadraticProblem;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class RemoteEvaluationTest extends TestCase {
+
+  public static class Factory implements EvaluationWorker.Factory {
+    @SuppressWarnings("unchecked")
+    public Setup createSetup() {
+      final Setup setup = QuadraticProblem.createSetup("RemoteEvaluationTest");
+      setup.setMaxSwitchCellNr(2, Double.class);
+      setup.setGenerationSize(40);
+      return setup;
+    }
+
+    public TestSetSolutionEvaluator createEvaluator(final Setup setup) {
+      return QuadraticProblem.createEvaluator(setup, 20);
+
+    }
+  }
+
+  private final Factory factory = new Factory();
+  private Setup setup;
+  private TestSetSolutionEvaluator evaluator;
+  private RemoteEvaluationMaster master;
+
+  @Override
+  protected void setUp() throws Exception {
+    setup = factory.createSetup();
+    evaluator = factory.createEvaluator(setup);
+    master = new RemoteEvaluationMaster(4, 2);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    master.shutdown();
+  }
+
+  public void testCodecRoundTrip() {
+    int switches = 0;
+    for (int i = 0; i < 50; i++) {
+      final Grid grid = setup.generateSolution();
+      for (final Calculable c : grid.getCallCells()) {
+        if (c.getCellType() == CellTypeEnum.NumberSwitchCell) {
+          switches++;
+        }
+      }
+      final byte[] encoded = GridCodec.encode(grid);
+      final Grid decoded = GridCodec.decode(setup, encoded);
+      assertTrue(Arrays.equals(encoded, GridCodec.encode(decoded)));
+      assertEquals(Double.valueOf(evaluator.evaluate(grid)), Double.valueOf(evaluator.evaluate(decoded)));
+    }
+    assertTrue(switches > 0);
+  }
+
+  public void testLocalWorkers() throws IOException {
+    master.addLocalWorker(factory);
+    master.addLocalWorker(factory);
+    final ArrayList<Grid> grids = createGrids(30);
+    final double[] scores = master.evaluate(grids, Double.POSITIVE_INFINITY);
+    assertEquals(grids.size(), scores.length);
+    for (int i = 0; i < scores.length; i++) {
+      assertEquals(Double.valueOf(evaluator.evaluate(grids.get(i))), Double.valueOf(scores[i]));
+    }
+    long scored = 0;
+    for (final WorkerStatistics stats : master.getWorkerStatistics()) {
+      assertTrue(stats.isAlive());
+      scored += stats.getGrids();
+    }
+    assertEquals(grids.size(), scored);
+  }
+
+  public void testDeadWorkerBatchesAreSentAgain() throws IOException {
+    // a worker that reads its first request and then breaks the connection
+    final PipedInputStream requests = new PipedInputStream(1 << 16);
+    final PipedOutputStream requestsOut = new PipedOutputStream(requests);
+    final PipedInputStream responses = new PipedInputStream();
+    final PipedOutputStream responsesOut = new PipedOutputStream(responses);
+    final Thread dying = new Thread() {
+      @Override
+      public void run() {
+        try {
+          new DataInputStream(requests).readInt();
+          responsesOut.close();
+          requests.close();
+        } catch (IOException e) {
+          // the test fails on the scores
+        }
+      }
+    };
+    dying.start();
+    master.addWorker(responses, requestsOut, "dying");
+    master.addLocalWorker(factory);
+
+    final ArrayList<Grid> grids = createGrids(30);
+    final double[] scores = master.evaluate(grids, Double.POSITIVE_INFINITY);
+    for (int i = 0; i < scores.length; i++) {
+      assertEquals(Double.valueOf(evaluator.evaluate(grids.get(i))), Double.valueOf(scores[i]));
+    }
+    assertEquals(1, master.getAliveWorkers());
+  }
+
+  public void testNoWorkersAlive() {
+    try {
+      master.evaluate(createGrids(2), Double.POSITIVE_INFINITY);
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  public void testGeneration() throws IOException {
+    master.addLocalWorker(factory);
+    final Generation gen = new Generation(setup);
+    for (final Grid grid : createGrids(setup.getGenerationSize())) {
+      gen.addSolution(grid);
+    }
+    gen.evaluate(evaluator, master);
+    final Generation next = gen.next();
+    next.evaluate(evaluator, master);
+    assertEquals(Double.valueOf(evaluator.evaluate(next.getBestSolution())),
+        Double.valueOf(next.getBestSolution().getScore()));
+  }
+
+  private ArrayList<Grid> createGrids(final int count) {
+    final ArrayList<Grid> grids = new ArrayList<Grid>();
+    for (int i = 0; i < count; i++) {
+      grids.add(setup.generateSolution());
+    }
+    return grids;
+  }
+}
@@ -16,6 +16,8 @@
 
 package nl.bluevoid.genpro.test;
 
+import java.util.Random;
+
 import junit.framework.Assert;
 import junit.framework.TestCase;
 import nl.bluevoid.genpro.Grid;
@@ -60,8 +62,9 @@ public class CalcTest2 extends TestCase {
     long start = System.currentTimeMillis();
     // search
     int count = 0;
+    Random random = new Random();
     while (count++ < 2000) {
-      grid.createSolution();
+      grid.createSolution(random);
       ValueCell oCell=grid.getOutputCell("out1");
       //grid.printSolution();
       // we try to find Math.max
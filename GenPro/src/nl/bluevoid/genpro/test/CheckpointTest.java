@@ -0,0 +1,102 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.Checkpoint;
+import nl.bluevoid.genpro.GenerationRunner;
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.Setup;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class CheckpointTest extends TestCase {
+
+  private File file;
+
+  @Override
+  protected void setUp() throws Exception {
+    file = File.createTempFile("CheckpointTest", ".gpcp");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    file.delete();
+  }
+
+  public void testResumedRunIsTheSame() throws IOException {
+    final Setup setup = createSetup(8);
+    final GenerationRunner uninterrupted = new GenerationRunner(setup, createEvaluator(setup));
+    uninterrupted.runGenerations();
+
+    final Setup first = createSetup(4);
+    first.setCheckpoint(file, 2);
+    final GenerationRunner runner = new GenerationRunner(first, createEvaluator(first));
+    runner.runGenerations();
+    final Checkpoint checkpoint = Checkpoint.read(file);
+    assertEquals(4, checkpoint.getGenerationNr());
+    assertEquals(42, checkpoint.getRandomSeed());
+
+    final Setup second = createSetup(8);
+    second.setRandomSeed(1);
+    final GenerationRunner resumed = GenerationRunner.resume(second, createEvaluator(second), file);
+    assertEquals(4, resumed.getCurGen().getNr());
+    assertEquals(getScores(runner), getScores(resumed));
+    resumed.runGenerations();
+    assertEquals(getScores(uninterrupted), getScores(resumed));
+  }
+
+  public void testOtherSetupIsRefused() throws IOException {
+    final Setup setup = createSetup(2);
+    setup.setCheckpoint(file, 1);
+    new GenerationRunner(setup, createEvaluator(setup)).runGenerations();
+    final Setup other = new Setup("other");
+    try {
+      Checkpoint.read(file).getBestSolution(other);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static ArrayList<Double> getScores(final GenerationRunner runner) {
+    final ArrayList<Double> scores = new ArrayList<Double>();
+    for (final Grid g : runner.getCurGen().getSolutions()) {
+      scores.add(g.getScore());
+    }
+    return scores;
+  }
+
+  private Setup createSetup(final int generations) {
+    final Setup setup = QuadraticProblem.createSetup("CheckpointTest");
+    setup.setGenerationSize(40);
+    setup.setStopAtGeneration(generations);
+    setup.setRandomSeed(42);
+    setup.setDeterministic(true);
+    return setup;
+  }
+
+  private QuadraticProblem.Evaluator createEvaluator(final Setup setup) {
+    return QuadraticProblem.createEvaluator(setup, 20, 1, 3);
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.test;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.GenerationRunner;
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.Setup;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class DeterminismTest extends TestCase {
+
+  public void testSameRunOnOneAndMoreThreads() {
+    ArrayList<Double> single = run(1, false, 42);
+    assertEquals(single, run(1, false, 42));
+    assertEquals(single, run(3, true, 42));
+    assertFalse(single.equals(run(1, false, 43)));
+  }
+
+  /**
+   * @return the scores of the last generation
+   */
+  private ArrayList<Double> run(int threads, boolean multiThreaded, long seed) {
+    final Setup setup = QuadraticProblem.createSetup("DeterminismTest");
+    setup.setGenerationSize(60);
+    setup.setStopAtGeneration(6);
+    setup.setEvaluateMultiThreaded(multiThreaded);
+    setup.setEvaluationThreads(threads);
+    setup.setRandomSeed(seed);
+    setup.setDeterministic(true);
+    QuadraticProblem.Evaluator evaluator = QuadraticProblem.createEvaluator(setup, 20, 1, 3);
+    GenerationRunner runner = new GenerationRunner(setup, evaluator);
+    runner.runGenerations();
+    ArrayList<Double> scores = new ArrayList<Double>();
+    for (Grid g : runner.getCurGen().getSolutions()) {
+      scores.add(g.getScore());
+    }
+    return scores;
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.FitnessCache;
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.GridSolutionEvaluator;
+import nl.bluevoid.genpro.ScoringType;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSet;
+import nl.bluevoid.genpro.cell.ConstantCell;
+import nl.bluevoid.genpro.cell.ReferenceCell;
+import nl.bluevoid.genpro.operations.NumberOperations;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class FitnessCacheTest extends TestCase {
+
+  private Setup setup;
+  private GridSolutionEvaluator evaluator;
+  private int evaluations;
+
+  @Override
+  protected void setUp() throws Exception {
+    setup = new Setup("FitnessCacheTest");
+    setup.addInputCell("x", Double.class);
+    setup.addOutputCell("y", Double.class);
+    setup.setCallCells(8, "c", Double.class);
+    setup.setConstantCells(new ConstantCell("const1", Double.class, -100, 100));
+    setup.setLibraryCells(NumberOperations.NUM_OPS);
+    evaluator = new GridSolutionEvaluator() {
+      @Override
+      public TestSet createTestSet() {
+        TestSet cases = new TestSet(setup, "x", "y");
+        for (int i = 0; i < 5; i++) {
+          cases.addCellValues(i * 1.0, i * 2.0);
+        }
+        return cases;
+      }
+
+      @Override
+      public double evaluate(Grid grid) {
+        evaluations++;
+        return super.evaluate(grid);
+      }
+
+      @Override
+      public double scoreOutput(ReferenceCell outputCell, Object calculated, Object expected) {
+        if (calculated == null)
+          return 1000;
+        return getAbsoluteNumberDifference((Number) calculated, (Number) expected);
+      }
+
+      @Override
+      public double scoreGrid(Grid g) {
+        return 0;
+      }
+
+      @Override
+      public double scoreGridException(Throwable t) {
+        return 0;
+      }
+    };
+  }
+
+  public void testKey() {
+    Grid grid = setup.generateSolution();
+    Grid clone = grid.clone();
+    assertEquals(FitnessCache.getKey(grid), FitnessCache.getKey(clone));
+    clone.getConstantCells()[0].setValue(1234.5);
+    // the key only changes when the constant is used
+    if (clone.getConstantCells()[0].isUsedForOutput()) {
+      assertFalse(FitnessCache.getKey(grid).equals(FitnessCache.getKey(clone)));
+    }
+  }
+
+  public void testHitsAndInvalidation() {
+    FitnessCache cache = new FitnessCache(100);
+    Grid grid = setup.generateSolution();
+    double score = evaluator.evaluate(grid);
+    evaluations = 0;
+
+    assertEquals(Double.valueOf(score), Double.valueOf(cache.evaluate(evaluator, grid)));
+    assertEquals(Double.valueOf(score), Double.valueOf(cache.evaluate(evaluator, grid.clone())));
+    assertEquals(1, evaluations);
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+
+    evaluator.setScoringType(ScoringType.SCORING_HIGHEST_OF_TESTCASES);
+    cache.evaluate(evaluator, grid);
+    assertEquals(2, evaluations);
+    assertEquals(1, cache.getSize());
+
+    evaluator.getTestSet().addCellValues(10.0, 20.0);
+    cache.evaluate(evaluator, grid);
+    assertEquals(3, evaluations);
+  }
+
+  public void testOffWhenSubsampling() {
+    for (int i = 0; i < 20; i++) {
+      evaluator.getTestSet().addCellValues(i + 5.0, i * 2.0 + 10.0);
+    }
+    evaluator.setSubsampling(5, false);
+    evaluator.nextSubsample(new Random(1));
+    FitnessCache cache = new FitnessCache(100);
+    Grid grid = setup.generateSolution();
+    evaluations = 0;
+    cache.evaluate(evaluator, grid);
+    cache.evaluate(evaluator, grid);
+    assertEquals(2, evaluations);
+    assertEquals(0, cache.getSize());
+  }
+
+  public void testEviction() {
+    FitnessCache cache = new FitnessCache(3);
+    for (int i = 0; i < 20; i++) {
+      cache.evaluate(evaluator, setup.generateSolution());
+    }
+    assertTrue(cache.getSize() <= 3);
+  }
+}
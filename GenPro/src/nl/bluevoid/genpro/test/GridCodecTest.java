@@ -0,0 +1,126 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.test;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.GridCodec;
+import nl.bluevoid.genpro.GridSolutionEvaluator;
+import nl.bluevoid.genpro.GridXMLReader;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSet;
+import nl.bluevoid.genpro.cell.ConstantCell;
+import nl.bluevoid.genpro.cell.ReferenceCell;
+import nl.bluevoid.genpro.operations.NumberOperations;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class GridCodecTest extends TestCase {
+
+  private Setup setup;
+  private GridSolutionEvaluator evaluator;
+
+  @Override
+  protected void setUp() throws Exception {
+    setup = new Setup("GridCodecTest");
+    setup.addInputCell("x", Double.class);
+    setup.addOutputCell("y", Double.class);
+    setup.setCallCells(8, "c", Double.class);
+    setup.setConstantCells(new ConstantCell("const1", Double.class, -100, 100), new ConstantCell("const2",
+        Integer.class, -10, 10));
+    setup.setLibraryCells(NumberOperations.NUM_OPS);
+    evaluator = new GridSolutionEvaluator() {
+      @Override
+      public TestSet createTestSet() {
+        final TestSet cases = new TestSet(setup, "x", "y");
+        for (int i = 0; i < 10; i++) {
+          cases.addCellValues(i * 1.0, i * 3.0 + 1);
+        }
+        return cases;
+      }
+
+      @Override
+      public double scoreOutput(final ReferenceCell outputCell, final Object calculated, final Object expected) {
+        if (calculated == null)
+          return 1000;
+        return getAbsoluteNumberDifference((Number) calculated, (Number) expected);
+      }
+
+      @Override
+      public double scoreGrid(final Grid g) {
+        return 0;
+      }
+
+      @Override
+      public double scoreGridException(final Throwable t) {
+        return 0;
+      }
+    };
+  }
+
+  @SuppressWarnings("unchecked")
+  public void testBinaryRoundTrip() {
+    setup.setMaxSwitchCellNr(2, Double.class);
+    for (int i = 0; i < 30; i++) {
+      final Grid grid = setup.generateSolution();
+      grid.name = "grid" + i;
+      grid.setScore(evaluator.evaluate(grid));
+      final byte[] encoded = GridCodec.encode(grid);
+      final Grid decoded = GridCodec.decode(setup, encoded);
+      assertEquals(grid.name, decoded.name);
+      assertEquals(Double.valueOf(grid.getScore()), Double.valueOf(decoded.getScore()));
+      assertFalse(decoded.isScoreBound());
+      assertTrue(Arrays.equals(encoded, GridCodec.encode(decoded)));
+      assertEquals(Double.valueOf(grid.getScore()), Double.valueOf(evaluator.evaluate(decoded)));
+    }
+  }
+
+  public void testScoreBound() {
+    final Grid grid = setup.generateSolution();
+    grid.setScoreBound(12.5);
+    final Grid decoded = GridCodec.decode(setup, GridCodec.encode(grid));
+    assertTrue(decoded.isScoreBound());
+    assertEquals(Double.valueOf(12.5), Double.valueOf(decoded.getScore()));
+  }
+
+  public void testUnknownVersion() {
+    final byte[] encoded = GridCodec.encode(setup.generateSolution());
+    encoded[0] = 99;
+    try {
+      GridCodec.decode(setup, encoded);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testXMLRoundTrip() {
+    final GridXMLReader reader = new GridXMLReader(setup);
+    for (int i = 0; i < 30; i++) {
+      final Grid grid = setup.generateSolution();
+      final String xml = grid.getXML();
+      final Grid read = reader.read(xml);
+      assertEquals(xml, read.getXML());
+      assertEquals(Double.valueOf(evaluator.evaluate(grid)), Double.valueOf(evaluator.evaluate(read)));
+      assertTrue(GridCodec.encode(grid).length < xml.length() / 2);
+    }
+  }
+}
@@ -16,12 +16,18 @@
 
 package nl.bluevoid.genpro.test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
 import junit.framework.TestCase;
 import nl.bluevoid.genpro.Grid;
 import nl.bluevoid.genpro.JavaGenerator;
 import nl.bluevoid.genpro.Setup;
 import nl.bluevoid.genpro.cell.CallCell;
+import nl.bluevoid.genpro.cell.CellTypeEnum;
 import nl.bluevoid.genpro.cell.ConstantCell;
+import nl.bluevoid.genpro.cell.ValueCell;
 import nl.bluevoid.genpro.operations.NumberOperations;
 import nl.bluevoid.genpro.util.StringUtil;
 
@@ -54,7 +60,7 @@ public class GridTest extends TestCase {
   }
 
   public void testClone() {
-    grid.createSolution();
+    grid.createSolution(new Random());
     grid.addToHistory("history");
     JavaGenerator.printJavaProgram(grid, "to clone", "nl.bluevoid.gp", true);
     grid.setScore(300);
@@ -95,6 +101,50 @@ public class GridTest extends TestCase {
     assertTrue(clone.getSetup() == grid.getSetup());
   }
 
+  public void testCloneConstantsWithSameName() {
+    Setup setup = new Setup("GridTest same names");
+    setup.addInputCell("x", Double.class);
+    setup.addOutputCell("y", Double.class);
+    setup.setCallCells(6, "c", Double.class);
+    // like constD of the roman figures problem
+    setup.setConstantCells(new ConstantCell("k", Double.class, -100, 100), new ConstantCell("k", Integer.class,
+        -10, 10));
+    setup.setLibraryCells(NumberOperations.NUM_OPS, NumberOperations.MATH_CLASS);
+    Random random = new Random();
+    for (int i = 0; i < 50; i++) {
+      Grid g = setup.generateSolution(random);
+      Grid clone = g.clone();
+      for (int c = 0; c < g.getCallCells().length; c++) {
+        CallCell original = (CallCell) g.getCallCells()[c];
+        CallCell copy = (CallCell) clone.getCallCells()[c];
+        for (int p = 0; p < original.getParams().length; p++) {
+          if (original.getParams()[p].getCellType() != CellTypeEnum.LibraryCell) {
+            // the copy of the original param, not a cell with the same name
+            Integer index = indexOf(g, original.getParams()[p]);
+            assertNotNull(index);
+            assertEquals(index, indexOf(clone, copy.getParams()[p]));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the index of the cell among inputs, constants and callcells, null if it is not in the grid
+   */
+  private static Integer indexOf(Grid g, ValueCell cell) {
+    ArrayList<Object> cells = new ArrayList<Object>();
+    cells.addAll(Arrays.asList(g.getInputCells()));
+    cells.addAll(Arrays.asList(g.getConstantCells()));
+    cells.addAll(Arrays.asList(g.getCallCells()));
+    for (int i = 0; i < cells.size(); i++) {
+      if (cells.get(i) == cell) {
+        return i;
+      }
+    }
+    return null;
+  }
+
   public void assertNotSame(Object[] a, Object[] b) {
     super.assertNotSame(a, b);
     for (int i = 0; i < a.length; i++) {
@@ -103,7 +153,7 @@ public class GridTest extends TestCase {
   }
 
   public void testXML() {
-    grid.createSolution();
+    grid.createSolution(new Random());
     String xml = grid.getXML();
     System.out.println(xml);
   }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.test;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.Generation;
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.Island;
+import nl.bluevoid.genpro.IslandRunner;
+import nl.bluevoid.genpro.MigrationTopology;
+import nl.bluevoid.genpro.ResultListener;
+import nl.bluevoid.genpro.Setup;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class IslandRunnerTest extends TestCase {
+
+  private Setup setup;
+  private QuadraticProblem.Evaluator evaluator;
+
+  @Override
+  protected void setUp() throws Exception {
+    setup = QuadraticProblem.createSetup("IslandRunnerTest");
+    setup.setGenerationSize(40);
+    setup.setStopAtGeneration(12);
+    setup.setIslandCount(3);
+    setup.setMigration(3, 2, MigrationTopology.RING);
+    evaluator = QuadraticProblem.createEvaluator(setup, 30);
+  }
+
+  public void testIslandsRunAllGenerations() {
+    for (MigrationTopology topology : MigrationTopology.values()) {
+      setup.setMigration(3, 2, topology);
+      final ArrayList<Integer> stats = new ArrayList<Integer>();
+      final ArrayList<Grid> bests = new ArrayList<Grid>();
+      IslandRunner runner = new IslandRunner(setup, evaluator);
+      runner.addResultListener(new ResultListener() {
+        public void newBestResult(Grid g) {
+          bests.add(g);
+        }
+
+        public void startUpProgress(int createdIndividuals) {
+        }
+
+        public void newStats(int generationnr, long millisPerGeneration) {
+          stats.add(generationnr);
+        }
+      });
+      runner.runGenerations();
+
+      double best = Double.MAX_VALUE;
+      for (Island island : runner.getIslands()) {
+        assertEquals(12, island.getGenerationNr());
+        // migrations after generation 3, 6 and 9
+        assertEquals(6, island.getMigrantsSent());
+        best = Math.min(best, island.getBestScore());
+      }
+      assertEquals(best, runner.getBestScore(), 0);
+      assertSame(runner.getBestSolution(), bests.get(bests.size() - 1));
+      for (int i = 1; i < stats.size(); i++) {
+        assertTrue(stats.get(i) > stats.get(i - 1));
+      }
+      assertEquals(Integer.valueOf(12), stats.get(stats.size() - 1));
+    }
+  }
+
+  public void testMigrantsReplaceOffspring() {
+    Generation gen = new Generation(setup);
+    for (int i = 0; i < setup.getGenerationSize(); i++) {
+      gen.addSolution(setup.generateSolution());
+    }
+    gen.evaluate(evaluator);
+    ArrayList<Grid> best = gen.getBestSolutions(3);
+    assertEquals(3, best.size());
+    assertSame(gen.getBestSolution(), best.get(0));
+    assertTrue(best.get(0).getScore() <= best.get(1).getScore());
+
+    Generation next = gen.next();
+    Grid elite = next.getSolutions().get(0);
+    ArrayList<Grid> migrants = new ArrayList<Grid>();
+    migrants.add(setup.generateSolution());
+    migrants.add(setup.generateSolution());
+    next.addMigrants(migrants);
+    assertEquals(setup.getGenerationSize(), next.getSize());
+    assertSame(elite, next.getSolutions().get(0));
+    assertTrue(next.getSolutions().containsAll(migrants));
+  }
+
+  public void testMultiThreadedEvaluationIsRefused() {
+    setup.setEvaluateMultiThreaded(true);
+    try {
+      new IslandRunner(setup, evaluator);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // islands are the threads
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.test;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.Generation;
+import nl.bluevoid.genpro.GenerationRunner;
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.util.Calc;
+import nl.bluevoid.genpro.util.ParallelLoopPool;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class MultiThreadedEvaluationTest extends TestCase {
+
+  private Setup setup;
+  private QuadraticProblem.Evaluator evaluator;
+
+  @Override
+  protected void setUp() throws Exception {
+    setup = QuadraticProblem.createSetup("MultiThreadedEvaluationTest");
+    setup.setGenerationSize(100);
+    setup.setEvaluateMultiThreaded(true);
+    setup.setEvaluationThreads(3);
+    evaluator = QuadraticProblem.createEvaluator(setup, 30);
+  }
+
+  public void testBestOfAllThreads() {
+    ParallelLoopPool pool = new ParallelLoopPool("test", setup.getEvaluationThreads());
+    try {
+      Generation gen = new Generation(setup);
+      for (int i = 0; i < setup.getGenerationSize(); i++) {
+        gen.addSolution(setup.generateSolution());
+      }
+      for (int g = 0; g < 3; g++) {
+        gen.evaluate(evaluator, null, pool);
+        Grid best = null;
+        int nan = 0;
+        for (Grid grid : gen.getSolutions()) {
+          assertTrue(grid.getScore() != -1);
+          if (Calc.isNaNorInfinite(grid.getScore())) {
+            nan++;
+          } else if (best == null || grid.getScore() < best.getScore()) {
+            best = grid;
+          }
+        }
+        assertSame(best, gen.getBestSolution());
+        assertEquals(nan, gen.nanAndInfinateCounter);
+        gen = gen.next();
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  public void testParallelBreeding() {
+    ParallelLoopPool pool = new ParallelLoopPool("test", setup.getEvaluationThreads());
+    try {
+      Generation gen = new Generation(setup);
+      for (int i = 0; i < setup.getGenerationSize(); i++) {
+        gen.addSolution(setup.generateSolution());
+      }
+      gen.evaluate(evaluator, null, pool);
+      for (int g = 0; g < 3; g++) {
+        Generation next = gen.next(pool);
+        assertEquals(setup.getGenerationSize(), next.getSize());
+        for (int i = 1; i < next.getSize(); i++) {
+          // only the best solution is taken over
+          assertFalse(gen.getSolutions().contains(next.getSolutions().get(i)));
+        }
+        next.evaluate(evaluator, null, pool);
+        gen = next;
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  public void testRunnerShutsDownThreads() {
+    setup.setStopAtGeneration(3);
+    GenerationRunner runner = new GenerationRunner(setup, evaluator);
+    runner.runGenerations();
+    for (Thread t : Thread.getAllStackTraces().keySet()) {
+      if (t.getName().startsWith("evaluator ")) {
+        try {
+          t.join(5000);
+        } catch (InterruptedException e) {
+          fail();
+        }
+        assertFalse(t.isAlive());
+      }
+    }
+  }
+}
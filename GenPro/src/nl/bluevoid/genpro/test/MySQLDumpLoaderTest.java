@@ -0,0 +1,142 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.DataTransformer;
+import nl.bluevoid.genpro.MySQLDumpLoader;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSet;
+import nl.bluevoid.genpro.TestSetColumn;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class MySQLDumpLoaderTest extends TestCase {
+
+  private Setup setup;
+  private File file;
+
+  @Override
+  protected void setUp() throws Exception {
+    setup = new Setup("MySQLDumpLoaderTest");
+    setup.addInputCell("x", Double.class);
+    setup.addInputCell("n", Integer.class);
+    setup.addInputCell("flag", Boolean.class);
+    setup.addInputCell("when", Date.class);
+    setup.addInputCell("host", InetAddress.class);
+    setup.addOutputCell("amount", BigDecimal.class);
+    file = File.createTempFile("MySQLDumpLoaderTest", ".txt");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    file.delete();
+  }
+
+  public void testTypedColumns() throws Exception {
+    write("+-----+\n"
+        + "| 1.5 | 3  | ignored | true  | 2008-01-02 03:04:05 | 127.0.0.1 | 10.25 |\r\n"
+        + "+-----+\n"
+        + "| -2  | -7 | x       | false | 2009-12-31 23:59:59 | 10.0.0.1  | 7     |\n");
+    final TestSet testSet = new TestSet(setup, "x", "n", "flag", "when", "host", "amount");
+    final MySQLDumpLoader loader = new MySQLDumpLoader(testSet, "x", "n", TestSet.SKIP_COLUMN, "flag", "when",
+        "host", "amount");
+    loader.addTransformer("amount", new DataTransformer() {
+      public String transform(final String data) {
+        return data + "0";
+      }
+    });
+    assertEquals(2, loader.load(file));
+    assertEquals(2, testSet.getNumberOfTestCases());
+    assertEquals(-2.0, ((TestSetColumn.DoubleColumn) testSet.getColumn("x")).getValues()[1], 0);
+    assertEquals(Integer.valueOf(3), testSet.getValue("n", 0));
+    assertEquals(Boolean.FALSE, testSet.getValue("flag", 1));
+    final SimpleDateFormat format = new SimpleDateFormat(MySQLDumpLoader.DATE_FORMAT);
+    assertEquals(format.parse("2008-01-02 03:04:05"), testSet.getValue("when", 0));
+    assertEquals(InetAddress.getByName("10.0.0.1"), testSet.getValue("host", 1));
+    assertEquals(new BigDecimal("10.250"), testSet.getValue("amount", 0));
+    assertEquals(new BigDecimal("70"), testSet.getValue("amount", 1));
+  }
+
+  public void testChunksKeepRowOrder() throws Exception {
+    final StringBuilder b = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      b.append("| ").append(i * 0.5).append(" | ").append(i).append(" | ").append(i % 3 == 0).append(" | ")
+          .append(i % 2 == 0 ? "2008-01-02 03:04:05" : "2009-01-02 03:04:05").append(" | 127.0.0.1 | ")
+          .append(i).append(" |\n");
+    }
+    write(b.toString());
+    final TestSet single = load(1, Integer.MAX_VALUE);
+    final TestSet parallel = load(4, 1000);
+    assertEquals(5000, parallel.getNumberOfTestCases());
+    for (final String name : new String[] { "x", "n", "flag", "when", "host", "amount" }) {
+      for (int row = 0; row < 5000; row++) {
+        assertEquals(name + row, single.getValue(name, row), parallel.getValue(name, row));
+      }
+    }
+    assertEquals(Integer.valueOf(4999), parallel.getValue("n", 4999));
+  }
+
+  public void testBadValueAddsNoRows() throws Exception {
+    final StringBuilder b = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      b.append("| 1 | 2 | true | 2008-01-02 03:04:05 | 127.0.0.1 | 3 |\n");
+    }
+    b.append("| 1 | 2 | true | not a date | 127.0.0.1 | 3 |\n");
+    write(b.toString());
+    final TestSet testSet = new TestSet(setup, "x", "n", "flag", "when", "host", "amount");
+    final MySQLDumpLoader loader = new MySQLDumpLoader(testSet, "x", "n", "flag", "when", "host", "amount");
+    loader.setChunkSize(100);
+    loader.setThreads(4);
+    try {
+      loader.load(file);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("not a date"));
+    }
+    assertEquals(0, testSet.getNumberOfTestCases());
+    assertEquals(0, testSet.getColumn("x").size());
+  }
+
+  private TestSet load(final int threads, final int chunkSize) throws IOException {
+    final TestSet testSet = new TestSet(setup, "x", "n", "flag", "when", "host", "amount");
+    final MySQLDumpLoader loader = new MySQLDumpLoader(testSet, "x", "n", "flag", "when", "host", "amount");
+    loader.setThreads(threads);
+    loader.setChunkSize(chunkSize);
+    loader.load(file);
+    return testSet;
+  }
+
+  private void write(final String text) throws IOException {
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(text.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+}
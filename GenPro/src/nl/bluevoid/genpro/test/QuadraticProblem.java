@@ -0,0 +1,116 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.test;
+
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.GridSolutionEvaluator;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSet;
+import nl.bluevoid.genpro.cell.ConstantCell;
+import nl.bluevoid.genpro.cell.ReferenceCell;
+import nl.bluevoid.genpro.operations.NumberOperations;
+
+/**
+ * The problem the engine tests run on: learn y = 2x^2 + offset from x with the number operations.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class QuadraticProblem {
+
+  /**
+   * @return a setup with input x, output y, 8 call cells, one constant and the number operations
+   */
+  public static Setup createSetup(final String name) {
+    final Setup setup = new Setup(name);
+    setup.addInputCell("x", Double.class);
+    setup.addOutputCell("y", Double.class);
+    setup.setCallCells(8, "c", Double.class);
+    setup.setConstantCells(new ConstantCell("const1", Double.class, -100, 100));
+    setup.setLibraryCells(NumberOperations.NUM_OPS);
+    return setup;
+  }
+
+  /**
+   * Test cases x = 0, 1, 2 ...
+   */
+  public static Evaluator createEvaluator(final Setup setup, final int testCases) {
+    return createEvaluator(setup, testCases, 1, 0);
+  }
+
+  /**
+   * @param step
+   *          the difference between the x of two test cases
+   * @param offset
+   *          added to y
+   */
+  public static Evaluator createEvaluator(final Setup setup, final int testCases, final double step,
+      final double offset) {
+    return new Evaluator() {
+      @Override
+      public TestSet createTestSet() {
+        final TestSet cases = new TestSet(setup, "x", "y");
+        for (int i = 0; i < testCases; i++) {
+          final double x = i * step;
+          cases.addCellValues(x, 2 * x * x + offset);
+        }
+        return cases;
+      }
+    };
+  }
+
+  /**
+   * Scores the absolute difference with y, 1000 when there is no output, and 0.1 for each used call cell.
+   * Exceptions score 0.
+   */
+  public abstract static class Evaluator extends GridSolutionEvaluator {
+
+    // not thread safe, only for tests that evaluate on one thread
+    private int outputsScored = 0;
+
+    @Override
+    public double scoreOutput(final ReferenceCell outputCell, final Object calculated,
+        final Object expected) {
+      outputsScored++;
+      if (calculated == null)
+        return 1000;
+      return getAbsoluteNumberDifference((Number) calculated, (Number) expected);
+    }
+
+    @Override
+    public double scoreGrid(final Grid g) {
+      return g.getNrOfUsedCallCells() * 0.1;
+    }
+
+    @Override
+    public double scoreGridException(final Throwable t) {
+      return 0;
+    }
+
+    /**
+     * @return the number of outputs scored since the last resetOutputsScored
+     */
+    public int getOutputsScored() {
+      return outputsScored;
+    }
+
+    public void resetOutputsScored() {
+      outputsScored = 0;
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.Generation;
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.ScoringType;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSet;
+import nl.bluevoid.genpro.util.Calc;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class RacingTest extends TestCase {
+
+  private Setup setup;
+  private QuadraticProblem.Evaluator evaluator;
+
+  @Override
+  protected void setUp() throws Exception {
+    setup = QuadraticProblem.createSetup("RacingTest");
+    setup.setGenerationSize(60);
+    evaluator = QuadraticProblem.createEvaluator(setup, 30);
+  }
+
+  public void testBound() {
+    int stoppedEarly = 0;
+    for (ScoringType type : new ScoringType[] { ScoringType.SCORING_AVARAGE_PER_TESTCASE,
+        ScoringType.SCORING_HIGHEST_OF_TESTCASES }) {
+      evaluator.setScoringType(type);
+      for (int i = 0; i < 30; i++) {
+        Grid grid = setup.generateSolution();
+        evaluator.resetOutputsScored();
+        double exact = evaluator.evaluate(grid);
+        int allCases = evaluator.getOutputsScored();
+        if (Calc.isNaNorInfinite(exact)) {
+          continue;
+        }
+        assertEquals(Double.valueOf(exact), Double.valueOf(evaluator.evaluate(grid, exact)));
+
+        evaluator.resetOutputsScored();
+        double bound = evaluator.evaluate(grid, exact / 2);
+        assertTrue(bound <= exact + 0.000001);
+        if (exact / 2 < bound) {
+          if (evaluator.getOutputsScored() < allCases) {
+            stoppedEarly++;
+          }
+        } else {
+          assertEquals(Double.valueOf(exact), Double.valueOf(bound));
+        }
+      }
+    }
+    assertTrue(stoppedEarly > 0);
+  }
+
+  public void testGenerationsWithRacing() {
+    setup.setRacing(true);
+    Generation gen = new Generation(setup);
+    for (int i = 0; i < setup.getGenerationSize(); i++) {
+      gen.addSolution(setup.generateSolution());
+    }
+    gen.evaluate(evaluator);
+    int aborted = 0;
+    for (int i = 0; i < 5; i++) {
+      gen = gen.next();
+      gen.evaluate(evaluator);
+      aborted += gen.getAbortedCounter();
+      // sorting resolves bounds in the selectable part
+      gen.getAverageScore(0.5);
+      assertFalse(gen.getBestSolution().isScoreBound());
+    }
+    assertTrue(aborted > 0);
+  }
+
+  public void testInfiniteScoresAreNotAborted() {
+    setup.setRacing(true);
+    // grids of the first generation score finite, all later grids infinite
+    final Set<Grid> finite = Collections.newSetFromMap(new IdentityHashMap<Grid, Boolean>());
+    final QuadraticProblem.Evaluator evaluator = new QuadraticProblem.Evaluator() {
+      @Override
+      public TestSet createTestSet() {
+        return RacingTest.this.evaluator.createTestSet();
+      }
+
+      @Override
+      public double scoreGrid(final Grid g) {
+        return finite.contains(g) ? super.scoreGrid(g) : Double.POSITIVE_INFINITY;
+      }
+    };
+    Generation gen = new Generation(setup);
+    for (int i = 0; i < setup.getGenerationSize(); i++) {
+      final Grid grid = setup.generateSolution();
+      finite.add(grid);
+      gen.addSolution(grid);
+    }
+    gen.evaluate(evaluator);
+    gen = gen.next();
+    gen.evaluate(evaluator);
+    assertEquals(0, gen.getAbortedCounter());
+    assertTrue(gen.nanAndInfinateCounter > 0);
+    for (final Grid grid : gen.getSolutions()) {
+      assertFalse(grid.isScoreBound());
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.Generation;
+import nl.bluevoid.genpro.GenerationRunner;
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.ResultListener;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.util.Calc;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class SubsampleTest extends TestCase {
+
+  private Setup setup;
+  private QuadraticProblem.Evaluator evaluator;
+
+  @Override
+  protected void setUp() throws Exception {
+    setup = QuadraticProblem.createSetup("SubsampleTest");
+    setup.setGenerationSize(40);
+    evaluator = QuadraticProblem.createEvaluator(setup, 30);
+  }
+
+  public void testRandomSubsample() {
+    evaluator.setSubsampling(10, false);
+    assertTrue(evaluator.isSubsampling());
+    assertNull(evaluator.getSubsample());
+    evaluator.nextSubsample(new Random(1));
+    int[] rows = evaluator.getSubsample();
+    assertEquals(10, rows.length);
+    for (int i = 0; i < rows.length; i++) {
+      assertTrue(rows[i] >= 0 && rows[i] < 30);
+      if (i > 0) {
+        assertTrue(rows[i - 1] < rows[i]);
+      }
+    }
+  }
+
+  public void testStratifiedSubsample() {
+    evaluator.setSubsampling(10, true);
+    evaluator.nextSubsample(new Random(1));
+    int[] rows = evaluator.getSubsample();
+    assertEquals(10, rows.length);
+    for (int i = 0; i < rows.length; i++) {
+      assertTrue(rows[i] >= i * 3 && rows[i] < i * 3 + 3);
+    }
+  }
+
+  public void testSubsampleLargerThanTestSet() {
+    evaluator.setSubsampling(30, false);
+    evaluator.nextSubsample(new Random(1));
+    assertNull(evaluator.getSubsample());
+  }
+
+  public void testScoresOnSubsample() {
+    evaluator.setSubsampling(10, false);
+    evaluator.nextSubsample(new Random(2));
+    for (int i = 0; i < 20; i++) {
+      Grid grid = setup.generateSolution();
+      setup.setBatchEvaluation(false);
+      evaluator.resetOutputsScored();
+      double score = evaluator.evaluate(grid);
+      if (Calc.isNaNorInfinite(score)) {
+        // evaluation stops at the first test case that overflows
+        continue;
+      }
+      assertEquals(10, evaluator.getOutputsScored());
+
+      setup.setBatchEvaluation(true);
+      assertEquals(score, evaluator.evaluate(grid), 0.000001);
+
+      evaluator.resetOutputsScored();
+      double full = evaluator.evaluateFull(grid);
+      if (!Calc.isNaNorInfinite(full)) {
+        assertEquals(30, evaluator.getOutputsScored());
+      }
+    }
+  }
+
+  public void testRunnerReportsFullScore() {
+    evaluator.setSubsampling(5, true);
+    setup.setStopAtGeneration(4);
+    final ArrayList<Grid> best = new ArrayList<Grid>();
+    GenerationRunner runner = new GenerationRunner(setup, evaluator);
+    runner.addResultListener(new ResultListener() {
+      public void newBestResult(Grid g) {
+        best.add(g);
+      }
+
+      public void startUpProgress(int createdIndividuals) {
+      }
+
+      public void newStats(int generationnr, long millisPerGeneration) {
+      }
+    });
+    runner.runGenerations();
+    assertFalse(best.isEmpty());
+    for (Grid g : best) {
+      assertEquals(g.getScore(), evaluator.evaluateFull(g.clone()), 0.000001);
+    }
+  }
+
+  public void testGenerationsWithSubsampling() {
+    evaluator.setSubsampling(10, false);
+    Generation gen = new Generation(setup);
+    for (int i = 0; i < setup.getGenerationSize(); i++) {
+      gen.addSolution(setup.generateSolution());
+    }
+    evaluator.nextSubsample(new Random(3));
+    gen.evaluate(evaluator);
+    for (int i = 0; i < 4; i++) {
+      gen = gen.next();
+      // the best solution is scored on another subsample now
+      evaluator.nextSubsample(new Random(4 + i));
+      gen.evaluate(evaluator);
+      assertNotNull(gen.getBestSolution());
+    }
+  }
+}
@@ -19,6 +19,7 @@ package nl.bluevoid.genpro.test;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Collection;
+import java.util.Random;
 
 import junit.framework.Assert;
 import junit.framework.TestCase;
@@ -130,7 +131,7 @@ public class TemperatureTest extends TestCase {
     grid.printSolution();
 
     // cross with him self: should generate same solution!! and same score
-    Grid[] children = grid.cross(grid, 1);
+    Grid[] children = grid.cross(grid, 1, new Random());
     System.out.println("evaluate child 0 ");
     double score2 = evaluator.evaluate(children[0]);
     System.out.println("evaluate child 1 ");
@@ -183,7 +184,7 @@ public class TemperatureTest extends TestCase {
     double score = evaluator.evaluate(grid);
     boolean s1Invalid = Calc.isNaNorInfinite(score);
     try {
-      grid.mutate("hist 1");
+      grid.mutate("hist 1", new Random());
     } catch (NoCellFoundException e) {
       // mutation failed, but grid should still be functional!
     }
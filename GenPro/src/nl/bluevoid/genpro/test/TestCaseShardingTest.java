@@ -0,0 +1,109 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.Generation;
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.ScoringType;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.util.Calc;
+import nl.bluevoid.genpro.util.ParallelLoopPool;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class TestCaseShardingTest extends TestCase {
+
+  private Setup setup;
+  private QuadraticProblem.Evaluator evaluator;
+  private ParallelLoopPool pool;
+
+  @Override
+  protected void setUp() throws Exception {
+    setup = QuadraticProblem.createSetup("TestCaseShardingTest");
+    setup.setGenerationSize(6);
+    setup.setEvaluateMultiThreaded(true);
+    setup.setEvaluationThreads(3);
+    setup.setTestCaseShardSize(100);
+    evaluator = QuadraticProblem.createEvaluator(setup, 1000, 0.01, 0);
+    pool = new ParallelLoopPool("test", setup.getEvaluationThreads());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    pool.shutdown();
+  }
+
+  public void testShardCount() {
+    assertEquals(1, evaluator.getShardCount(0));
+    assertEquals(10, evaluator.getShardCount(100));
+    assertEquals(3, evaluator.getShardCount(300));
+    assertEquals(1, evaluator.getShardCount(2000));
+    evaluator.setSubsampling(250, false);
+    evaluator.nextSubsample(new Random(1));
+    assertEquals(2, evaluator.getShardCount(100));
+  }
+
+  public void testShardedScoresMatch() {
+    for (ScoringType type : new ScoringType[] { ScoringType.SCORING_AVARAGE_PER_TESTCASE,
+        ScoringType.SCORING_HIGHEST_OF_TESTCASES }) {
+      evaluator.setScoringType(type);
+      for (boolean batch : new boolean[] { false, true }) {
+        setup.setBatchEvaluation(batch);
+        for (int i = 0; i < 20; i++) {
+          Grid grid = setup.generateSolution();
+          assertSameScore(evaluator.evaluate(grid), evaluator.evaluate(grid, Double.POSITIVE_INFINITY, pool,
+              100));
+        }
+      }
+    }
+  }
+
+  public void testShardedSubsample() {
+    evaluator.setSubsampling(300, true);
+    evaluator.nextSubsample(new Random(7));
+    for (int i = 0; i < 20; i++) {
+      Grid grid = setup.generateSolution();
+      assertSameScore(evaluator.evaluate(grid), evaluator.evaluate(grid, Double.POSITIVE_INFINITY, pool,
+          100));
+    }
+  }
+
+  public void testSmallGenerationIsSharded() {
+    Generation gen = new Generation(setup);
+    for (int i = 0; i < setup.getGenerationSize(); i++) {
+      gen.addSolution(setup.generateSolution());
+    }
+    gen.evaluate(evaluator, null, pool);
+    for (Grid grid : gen.getSolutions()) {
+      assertSameScore(evaluator.evaluate(grid.clone()), grid.getScore());
+    }
+  }
+
+  private void assertSameScore(double expected, double sharded) {
+    if (Calc.isNaNorInfinite(expected)) {
+      assertTrue(Calc.isNaNorInfinite(sharded));
+    } else {
+      // shard scores are summed in another order
+      assertEquals(expected, sharded, Math.abs(expected) * 1e-9);
+    }
+  }
+}
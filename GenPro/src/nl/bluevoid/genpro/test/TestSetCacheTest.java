@@ -0,0 +1,224 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.DataTransformer;
+import nl.bluevoid.genpro.GenerationRunner;
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSet;
+import nl.bluevoid.genpro.TestSetCache;
+import nl.bluevoid.genpro.TestSetColumn;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class TestSetCacheTest extends TestCase {
+
+  // the layout of the files read by load
+  private static final String LAYOUT = "csv [x, n, flag, label, y]";
+
+  private Setup setup;
+  private File source;
+  private File cache;
+
+  @Override
+  protected void setUp() throws Exception {
+    setup = new Setup("TestSetCacheTest");
+    setup.addInputCell("x", Double.class);
+    setup.addInputCell("n", Integer.class);
+    setup.addInputCell("flag", Boolean.class);
+    setup.addInputCell("label", String.class);
+    setup.addOutputCell("y", Double.class);
+    source = File.createTempFile("TestSetCacheTest", ".csv");
+    cache = File.createTempFile("TestSetCacheTest", ".gpts");
+    cache.delete();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    source.delete();
+    cache.delete();
+  }
+
+  public void testMappedColumns() throws IOException {
+    write("1.5,3,true,a,2\n-0.25,-7,false,,4\n4,0,true,\u00e9\u00e9n,8\n");
+    final TestSet parsed = load();
+    assertTrue(cache.exists());
+    assertTrue(parsed.getColumn("x") instanceof TestSetColumn.DoubleColumn);
+
+    final TestSet mapped = load();
+    assertTrue(mapped.getColumn("x") instanceof TestSetColumn.MappedDoubleColumn);
+    assertTrue(mapped.getColumn("n") instanceof TestSetColumn.MappedIntColumn);
+    assertTrue(mapped.getColumn("flag") instanceof TestSetColumn.MappedBooleanColumn);
+    assertEquals(3, mapped.getNumberOfTestCases());
+    for (final String name : new String[] { "x", "n", "flag", "label", "y" }) {
+      for (int row = 0; row < 3; row++) {
+        assertEquals(name + row, parsed.getValue(name, row), mapped.getValue(name, row));
+      }
+    }
+    assertEquals(-0.25, mapped.getDouble(mapped.getColumnIndex("x"), 1), 0);
+    assertEquals("\u00e9\u00e9n", mapped.getValue("label", 2));
+
+    // mapped columns are copied to the heap when a row is added
+    mapped.addCellValues(2.0, 1, false, "b", 3.0);
+    assertEquals(4, mapped.getNumberOfTestCases());
+    assertTrue(mapped.getColumn("x") instanceof TestSetColumn.DoubleColumn);
+    assertEquals(Double.valueOf(1.5), mapped.getValue("x", 0));
+    assertEquals(Integer.valueOf(1), mapped.getValue("n", 3));
+  }
+
+  public void testLoadFileIntoMappedTestSet() throws IOException {
+    write("1.5,3,true,a,2\n");
+    load();
+    final TestSet mapped = load();
+    assertTrue(mapped.getColumn("x") instanceof TestSetColumn.MappedDoubleColumn);
+
+    // the loader adds the lines to heap copies of the mapped columns
+    write("-0.25,-7,false,b,4\n4,0,true,c,8\n");
+    mapped.addCellValuesFromFile(source.getPath(), "x", "n", "flag", "label", "y");
+    assertEquals(3, mapped.getNumberOfTestCases());
+    for (final String name : new String[] { "x", "n", "flag", "label", "y" }) {
+      assertEquals(name, 3, mapped.getColumn(name).size());
+    }
+    assertTrue(mapped.getColumn("x") instanceof TestSetColumn.DoubleColumn);
+    assertEquals(Double.valueOf(1.5), mapped.getValue("x", 0));
+    assertEquals(-0.25, mapped.getDouble(mapped.getColumnIndex("x"), 1), 0);
+    assertEquals(Integer.valueOf(-7), mapped.getValue("n", 1));
+    assertEquals(Boolean.TRUE, mapped.getValue("flag", 2));
+    assertEquals("c", mapped.getValue("label", 2));
+    assertEquals(Double.valueOf(8), mapped.getValue("y", 2));
+  }
+
+  public void testChangedSourceRebuildsCache() throws IOException {
+    write("1,1,true,a,1\n");
+    load();
+    final long checksum = TestSetCache.checksum(source);
+    write("1,1,true,a,1\n2,2,false,b,2\n");
+    assertFalse(checksum == TestSetCache.checksum(source));
+    assertFalse(TestSetCache.open(new TestSet(setup, "x", "n", "flag", "label", "y"), cache,
+        TestSetCache.checksum(source, LAYOUT)));
+    final TestSet testSet = load();
+    assertEquals(2, testSet.getNumberOfTestCases());
+    assertTrue(testSet.getColumn("x") instanceof TestSetColumn.DoubleColumn);
+    assertTrue(load().getColumn("x") instanceof TestSetColumn.MappedDoubleColumn);
+
+    // other columns do not match the cache
+    final TestSet other = new TestSet(setup, "n", "x", "flag", "label", "y");
+    assertFalse(TestSetCache.open(other, cache, TestSetCache.checksum(source, LAYOUT)));
+    assertEquals(0, other.getNumberOfTestCases());
+  }
+
+  public void testOtherFieldsRebuildCache() throws IOException {
+    write("1.5,3,true,a,2\n");
+    load();
+    assertTrue(load().getColumn("x") instanceof TestSetColumn.MappedDoubleColumn);
+
+    // the same columns read from other fields
+    final TestSet swapped = new TestSet(setup, "x", "n", "flag", "label", "y");
+    swapped.addCellValuesFromFile(source.getPath(), cache, "y", "n", "flag", "label", "x");
+    assertTrue(swapped.getColumn("x") instanceof TestSetColumn.DoubleColumn);
+    assertEquals(Double.valueOf(2), swapped.getValue("x", 0));
+    assertEquals(Double.valueOf(1.5), swapped.getValue("y", 0));
+  }
+
+  public void testOtherTransformerRebuildsCache() throws IOException {
+    write("| 1.5 | 3 | true | a | 2 |\n");
+    final String[] columns = { "x", "n", "flag", "label", "y" };
+    new TestSet(setup, columns).addCellValuesFromMySQLFile(source.getPath(), cache, columns);
+    final TestSet mapped = new TestSet(setup, columns);
+    mapped.addCellValuesFromMySQLFile(source.getPath(), cache, columns);
+    assertTrue(mapped.getColumn("x") instanceof TestSetColumn.MappedDoubleColumn);
+
+    final TestSet transformed = new TestSet(setup, columns);
+    transformed.addTransformer("label", new DataTransformer() {
+      public String transform(final String data) {
+        return data.toUpperCase();
+      }
+    });
+    transformed.addCellValuesFromMySQLFile(source.getPath(), cache, columns);
+    assertTrue(transformed.getColumn("x") instanceof TestSetColumn.DoubleColumn);
+    assertEquals("A", transformed.getValue("label", 0));
+  }
+
+  public void testMappedTestSetScoresTheSame() throws IOException {
+    final StringBuilder b = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      b.append(i).append(",0,true,a,").append(i * i * 2.0 + 3).append('\n');
+    }
+    write(b.toString());
+    assertEquals(getScores(false), getScores(true));
+  }
+
+  private ArrayList<Double> getScores(final boolean cached) {
+    final Setup setup = QuadraticProblem.createSetup("TestSetCacheTest");
+    setup.setGenerationSize(40);
+    setup.setStopAtGeneration(4);
+    setup.setRandomSeed(42);
+    setup.setDeterministic(true);
+    final String[] columns = { "x", TestSet.SKIP_COLUMN, TestSet.SKIP_COLUMN, TestSet.SKIP_COLUMN, "y" };
+    final File cacheFile = new File(cache.getPath() + ".xy");
+    final QuadraticProblem.Evaluator evaluator = new QuadraticProblem.Evaluator() {
+      @Override
+      public TestSet createTestSet() {
+        final TestSet cases = new TestSet(setup, "x", "y");
+        if (cached) {
+          // the first load builds the cache
+          new TestSet(setup, "x", "y").addCellValuesFromFile(source.getPath(), cacheFile, columns);
+          cases.addCellValuesFromFile(source.getPath(), cacheFile, columns);
+          assertTrue(cases.getColumn("x") instanceof TestSetColumn.MappedDoubleColumn);
+        } else {
+          cases.addCellValuesFromFile(source.getPath(), columns);
+        }
+        return cases;
+      }
+    };
+    try {
+      final GenerationRunner runner = new GenerationRunner(setup, evaluator);
+      runner.runGenerations();
+      final ArrayList<Double> scores = new ArrayList<Double>();
+      for (final Grid g : runner.getCurGen().getSolutions()) {
+        scores.add(g.getScore());
+      }
+      return scores;
+    } finally {
+      cacheFile.delete();
+    }
+  }
+
+  private TestSet load() {
+    final TestSet testSet = new TestSet(setup, "x", "n", "flag", "label", "y");
+    testSet.addCellValuesFromFile(source.getPath(), cache, "x", "n", "flag", "label", "y");
+    return testSet;
+  }
+
+  private void write(final String text) throws IOException {
+    final FileOutputStream out = new FileOutputStream(source);
+    try {
+      out.write(text.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSet;
+import nl.bluevoid.genpro.TestSetColumn;
+import nl.bluevoid.genpro.TestSetLoader;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class TestSetLoaderTest extends TestCase {
+
+  private Setup setup;
+  private File file;
+
+  @Override
+  protected void setUp() throws Exception {
+    setup = new Setup("TestSetLoaderTest");
+    setup.addInputCell("x", Double.class);
+    setup.addInputCell("n", Integer.class);
+    setup.addInputCell("flag", Boolean.class);
+    setup.addInputCell("label", String.class);
+    setup.addOutputCell("y", Double.class);
+    file = File.createTempFile("TestSetLoaderTest", ".csv");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    file.delete();
+  }
+
+  public void testTypedColumns() throws IOException {
+    write("# comment\r\n// comment\n\n 1.5, 3 ,true,a b, -2e3\r\n-0.25,-7,False,c,1E-2\n  \n4,0,TRUE,,NaN");
+    final TestSet testSet = new TestSet(setup, "x", "n", "flag", "label", "y");
+    assertEquals(3, new TestSetLoader(testSet, "x", "n", "flag", "label", "y").load(file));
+    assertEquals(3, testSet.getNumberOfTestCases());
+    final double[] x = ((TestSetColumn.DoubleColumn) testSet.getColumn("x")).getValues();
+    assertEquals(1.5, x[0], 0);
+    assertEquals(-0.25, x[1], 0);
+    assertEquals(4.0, x[2], 0);
+    assertEquals(-7, ((TestSetColumn.IntColumn) testSet.getColumn("n")).getValues()[1]);
+    final boolean[] flag = ((TestSetColumn.BooleanColumn) testSet.getColumn("flag")).getValues();
+    assertTrue(flag[0]);
+    assertFalse(flag[1]);
+    assertTrue(flag[2]);
+    assertEquals("a b", testSet.getValue("label", 0));
+    assertEquals("", testSet.getValue("label", 2));
+    assertEquals(Double.valueOf(-2000), testSet.getValue("y", 0));
+    assertEquals(Double.valueOf(0.01), testSet.getValue("y", 1));
+    assertTrue(Double.isNaN(testSet.getDouble(testSet.getColumnIndex("y"), 2)));
+    assertEquals(Integer.valueOf(0), testSet.getValue("n", 2));
+
+    // values added later are kept after the loaded ones
+    testSet.addCellValues(5.0, 5, false, "d", 6.0);
+    assertEquals(4, testSet.getColumn("x").size());
+    assertEquals(Double.valueOf(-0.25), testSet.getValue("x", 1));
+    assertEquals(Double.valueOf(5.0), testSet.getValue("x", 3));
+  }
+
+  public void testSkipColumn() throws IOException {
+    write("1,2,3\n4,5,6\n");
+    final TestSet testSet = new TestSet(setup, "x", "y");
+    testSet.addCellValuesFromFile(file.getPath(), "x", TestSet.SKIP_COLUMN, "y");
+    assertEquals(2, testSet.getNumberOfTestCases());
+    assertEquals(Double.valueOf(4), testSet.getValue("x", 1));
+    assertEquals(Double.valueOf(6), testSet.getValue("y", 1));
+  }
+
+  public void testSameDoublesAsParseDouble() throws IOException {
+    final Random random = new Random(7);
+    final ArrayList<String> values = new ArrayList<String>();
+    final StringBuilder lines = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      final double d = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(40) - 20);
+      final String value;
+      switch (i % 4) {
+      case 0:
+        value = Double.toString(d);
+        break;
+      case 1:
+        value = String.format(Locale.ROOT, "%." + random.nextInt(12) + "f", d);
+        break;
+      case 2:
+        value = String.format(Locale.ROOT, "%." + random.nextInt(17) + "e", d);
+        break;
+      default:
+        value = Long.toString(random.nextLong() >> random.nextInt(63));
+      }
+      values.add(value);
+      lines.append(value).append(",0\n");
+    }
+    write(lines.toString());
+    final TestSet testSet = new TestSet(setup, "x", "y");
+    final TestSetLoader loader = new TestSetLoader(testSet, "x", "y");
+    // windows end within lines
+    loader.setWindowSize(1000);
+    assertEquals(values.size(), loader.load(file));
+    final double[] x = ((TestSetColumn.DoubleColumn) testSet.getColumn("x")).getValues();
+    for (int i = 0; i < values.size(); i++) {
+      assertEquals(values.get(i), Double.doubleToLongBits(Double.parseDouble(values.get(i))), Double
+          .doubleToLongBits(x[i]));
+    }
+  }
+
+  public void testWrongLines() throws IOException {
+    final TestSet testSet = new TestSet(setup, "x", "n");
+    write("1,2\n3,4,5\n");
+    try {
+      new TestSetLoader(testSet, "x", "n").load(file);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("line 2"));
+    }
+    assertEquals(1, testSet.getNumberOfTestCases());
+
+    write("1,2.5\n");
+    try {
+      new TestSetLoader(testSet, "x", "n").load(file);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertEquals(1, testSet.getNumberOfTestCases());
+    assertEquals(1, testSet.getColumn("x").size());
+  }
+
+  public void testProgress() throws IOException {
+    final StringBuilder lines = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      lines.append(i).append(',').append(i * 2).append('\n');
+    }
+    write(lines.toString());
+    final TestSet testSet = new TestSet(setup, "x", "y");
+    final TestSetLoader loader = new TestSetLoader(testSet, "x", "y");
+    final ArrayList<Integer> rows = new ArrayList<Integer>();
+    loader.setProgress(new TestSetLoader.Progress() {
+      public void loaded(final long bytes, final long totalBytes, final int loadedRows) {
+        assertTrue(bytes <= totalBytes);
+        rows.add(loadedRows);
+      }
+    });
+    loader.load(file);
+    assertTrue(rows.size() > 10);
+    assertEquals(Integer.valueOf(1000), rows.get(rows.size() - 1));
+  }
+
+  private void write(final String content) throws IOException {
+    final FileOutputStream out = new FileOutputStream(file);
+    out.write(content.getBytes("UTF-8"));
+    out.close();
+  }
+}
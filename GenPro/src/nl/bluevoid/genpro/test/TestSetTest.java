@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.test;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSet;
+import nl.bluevoid.genpro.TestSetColumn;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class TestSetTest extends TestCase {
+
+  private TestSet testSet;
+
+  @Override
+  protected void setUp() throws Exception {
+    Setup setup = new Setup("TestSetTest");
+    setup.addInputCell("x", Double.class);
+    setup.addInputCell("n", Integer.class);
+    setup.addInputCell("flag", Boolean.class);
+    setup.addOutputCell("y", Double.class);
+    testSet = new TestSet(setup, "x", "n", "flag", "y");
+  }
+
+  public void testTypedColumns() {
+    for (int i = 0; i < 40; i++) {
+      testSet.addCellValues(i * 0.5, i, i % 2 == 0, i * 2.0);
+    }
+    assertEquals(40, testSet.getNumberOfTestCases());
+    assertTrue(testSet.getColumn("x") instanceof TestSetColumn.DoubleColumn);
+    assertTrue(testSet.getColumn("n") instanceof TestSetColumn.IntColumn);
+    assertTrue(testSet.getColumn("flag") instanceof TestSetColumn.BooleanColumn);
+
+    int n = testSet.getColumnIndex("n");
+    assertEquals(Integer.valueOf(39), testSet.getValue(n, 39));
+    assertEquals(39.0, testSet.getDouble(n, 39), 0);
+    assertEquals(19.5, ((TestSetColumn.DoubleColumn) testSet.getColumn("x")).getValues()[39], 0);
+    assertEquals(Double.valueOf(78.0), testSet.getValue("y", 39));
+    // only the primitives are stored, a value is boxed on access
+    assertEquals(Double.valueOf(1.5), testSet.getValue("x", 3));
+  }
+
+  public void testColumnIndices() {
+    int[] inputs = testSet.getInputColumnIndices();
+    assertEquals(3, inputs.length);
+    for (int i = 0; i < inputs.length; i++) {
+      assertEquals(testSet.getColumnIndex(testSet.getInputCellNames()[i]), inputs[i]);
+    }
+    assertEquals(3, testSet.getOutputColumnIndices()[0]);
+    try {
+      testSet.getColumnIndex("unknown");
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testDegradeToObjectColumn() {
+    testSet.addCellValues(1.0, 1, true, 2.0);
+    testSet.addCellValues(2.0, 2, false, null);
+    TestSetColumn y = testSet.getColumn("y");
+    assertEquals(Object.class, y.getType());
+    assertEquals(2, y.size());
+    assertEquals(Double.valueOf(2.0), y.get(0));
+    assertNull(y.get(1));
+    assertEquals(2, testSet.getCellValues("y").size());
+  }
+}
@@ -16,6 +16,8 @@
 
 package nl.bluevoid.genpro.test;
 
+import java.util.Random;
+
 import junit.framework.TestCase;
 import nl.bluevoid.genpro.Util;
 import nl.bluevoid.genpro.util.Debug;
@@ -25,9 +27,10 @@ import nl.bluevoid.genpro.util.Debug;
  */
 public class UtilTest extends TestCase {
   public void testMutateConst() {
+    Random random = new Random();
     //checkrange
     for (int i = 0; i < 200; i++) {
-      double val = Util.mutateperc(100.0, 5, 0, 300);
+      double val = Util.mutateperc(100.0, 5, 0, 300, random);
       Debug.checkRange(val, 95, 105);
       assertTrue(val <= 105);
       assertTrue(val >= 95);
@@ -35,14 +38,14 @@ public class UtilTest extends TestCase {
     }
     //check lower bound
     for (int i = 0; i < 200; i++) {
-      double val = Util.mutateperc(100.0, 5, 99, 300);
+      double val = Util.mutateperc(100.0, 5, 99, 300, random);
       Debug.checkRange(val, 99, 105.1);
       assertTrue(val < 105.1);
       assertTrue(val >= 99);
     }
     //check upper bound
     for (int i = 0; i < 200; i++) {
-      double val = Util.mutateperc(100.0, 5, 0, 102);
+      double val = Util.mutateperc(100.0, 5, 0, 102, random);
       Debug.checkRange(val, 95, 102);
       assertTrue(val <= 102);
       assertTrue(val >= 95);
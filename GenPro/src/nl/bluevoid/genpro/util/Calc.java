@@ -25,19 +25,14 @@ import junit.framework.Assert;
  * @since 1.0
  */
 public final class Calc {
-  static long seed = System.currentTimeMillis() % 1000;
-  private static final Random random = new Random(seed);
-  static {
-    Debug.info(true, "Random seed=", seed);
-  }
 
-  public static final int getRandomInt(final int min, final int max) {
+  public static final int getRandomInt(final int min, final int max, final Random random) {
     Debug.checkParam(min > max, "min>max");
     // add 1 cause in nextInt(n) n is exclusive,
     return random.nextInt(max - min + 1) + min;
   }
 
-  public static final double getRandomDouble(final double min, final double max) {
+  public static final double getRandomDouble(final double min, final double max, final Random random) {
     Debug.checkParam(min > max, "min>max");
     double range = max - min + 1;
     return range * random.nextDouble() + min;
@@ -60,7 +55,7 @@ public final class Calc {
    */
 
   public static final int getRandomIntWithHigherChanceTowardsMin(final int min, final int max,
-      final double power) {
+      final double power, final Random random) {
     Debug.checkParam(min > max, "min>max");
     Debug.checkParam(power < 1 || power > 9, "power<2 || power>9:", power);
 
@@ -75,7 +70,7 @@ public final class Calc {
     // check for overflow
     Debug.errorOnTrue(strechedRange < 0, "overflow error at range:", range, " & power:", power);
     // get evenly spread random
-    double randomDoubleFromStrechedRange = getRandomDouble(0, strechedRange);
+    double randomDoubleFromStrechedRange = getRandomDouble(0, strechedRange, random);
     // Shrink range stronger at the max-end than at the min-end
     // to get more hits at the max-end.
     // Getting the power of 1/2 is the same as sqrt()
@@ -86,7 +81,7 @@ public final class Calc {
     return rangeValue + min;
   }
 
-  public static final float getRandomFloat(final float min, final float max) {
+  public static final float getRandomFloat(final float min, final float max, final Random random) {
     Debug.checkParam(min > max, "min>max");
     // add 1 cause in nextInt(n) n is exclusive,
     return random.nextFloat() * (max - min) + min;
@@ -126,6 +121,7 @@ public final class Calc {
     Assert.assertEquals(truncDecimals(3.141595, 0), 3, 0.0001);
     Assert.assertEquals(truncDecimals(3.141595, 1), 3.1, 0.0001);
     test(0);
+    final Random random = new Random();
     for (int i = 0; i < 10000; i++) {
       int r = random.nextInt();
       test(r);
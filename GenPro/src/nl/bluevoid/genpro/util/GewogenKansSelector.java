@@ -21,6 +21,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import nl.bluevoid.genpro.Setup;
 /**
@@ -28,8 +29,6 @@ import nl.bluevoid.genpro.Setup;
  * @since 1.0
  */
 public class GewogenKansSelector<T>  {//TODO rename
-  private Random r = new Random(System.currentTimeMillis());
-
   HashMap<Double, ArrayList<T>> scoresMap = new HashMap<Double, ArrayList<T>>(300);
   // stores the maxnumber of the object,
   // the range of an object is from the max number of the preceding object to this one
@@ -37,7 +36,7 @@ public class GewogenKansSelector<T>  {//TODO rename
   // it will construct: 50, 110, 120, 160
   ArrayList<Integer> numbers = new ArrayList<Integer>();
   ArrayList<T> items = new ArrayList<T>();
-  ArrayList<Integer> chosen = new ArrayList<Integer>();
+  ArrayList<AtomicInteger> chosen = new ArrayList<AtomicInteger>();
   ArrayList<Double> scores = new ArrayList<Double>();
 
   private int highestNumber = 0;
@@ -56,7 +55,7 @@ public class GewogenKansSelector<T>  {//TODO rename
       items.add(o);
       highestNumber += gewicht;
       numbers.add(highestNumber);
-      chosen.add(0);//
+      chosen.add(new AtomicInteger());
       scores.add(score);
     }
   }
@@ -75,14 +74,16 @@ public class GewogenKansSelector<T>  {//TODO rename
     return items.size();
   }
 
-  public T getRandomItem() {
-    int choice = r.nextInt(highestNumber);
+  /**
+   * Can be called by several threads at once, each with its own Random.
+   */
+  public T getRandomItem(final Random random) {
+    int choice = random.nextInt(highestNumber);
     int index = Collections.binarySearch(numbers, choice);//TODO make faster with int array
     // System.out.println("choice is:" + choice + " index=" + index);
     int item = index < 0 ? Math.abs(index) - 1 : index;//TODO verify this!!!
     // count
-    int val = chosen.get(item);
-    chosen.set(item, ++val);
+    chosen.get(item).incrementAndGet();
     return items.get(item);
   }
 
@@ -96,7 +97,7 @@ public class GewogenKansSelector<T>  {//TODO rename
       sorted[i] = ic;
 
       ic.weigth = numbers.get(i) - last;
-      ic.nr = chosen.get(i);
+      ic.nr = chosen.get(i).get();
       ic.score = scores.get(i);
       last = numbers.get(i);
     }
@@ -44,7 +44,7 @@ public abstract class ParallelLoopExecutor implements Runnable {
   protected int groupSize;
 
   protected Scheduling schedulingMode = Scheduling.STATIC_SCHEDULING;
-  protected static boolean continuRunning = true;
+  protected volatile boolean continuRunning = true;
 
   public ParallelLoopExecutor(int start, int end, int threads) {
     if (threads < 1)
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long living pool of threads executing loops. A loop range is split in halves as long as the executing thread
+ * has little work queued, idle threads steal the halves. Every range has its own result, results are combined
+ * pair by pair, so a loop needs no locking to collect them.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class ParallelLoopPool {
+
+  /**
+   * splitting stops when a thread has more queued ranges than this, the others can steal those
+   */
+  private static final int MAX_SURPLUS_RANGES = 3;
+
+  private final ForkJoinPool pool;
+
+  public abstract static class Loop<R> {
+    /**
+     * implement this method for your job
+     * 
+     * @return the result of the range, may be null
+     */
+    public abstract R loopDoRange(int start, int end);
+
+    /**
+     * @param left
+     *          result of the range before right, may be null
+     * @return the result of both ranges
+     */
+    public abstract R combine(R left, R right);
+  }
+
+  public ParallelLoopPool(final String name, final int threads) {
+    if (threads < 1)
+      throw new IllegalArgumentException("Thread number to small:" + threads);
+    final AtomicInteger threadNr = new AtomicInteger();
+    pool = new ForkJoinPool(threads, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+      public ForkJoinWorkerThread newThread(final ForkJoinPool p) {
+        final ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+        t.setName(name + " " + threadNr.getAndIncrement());
+        return t;
+      }
+    }, null, false);
+  }
+
+  public int getThreads() {
+    return pool.getParallelism();
+  }
+
+  /**
+   * Executes the loop from start to end over the threads and waits for it. Exceptions thrown by the loop are
+   * thrown here, when thrown by another thread wrapped in an exception of the same type.
+   * 
+   * @param minRange
+   *          ranges of this size are not split further
+   * @return the combined results of all ranges, null for an empty loop
+   */
+  public <R> R execute(final int start, final int end, final int minRange, final Loop<R> loop) {
+    if (end < start)
+      throw new IllegalArgumentException("End (" + end + ") cannot be smaller than start(" + start + ")");
+    if (pool.isShutdown())
+      throw new IllegalStateException("pool is shut down");
+    if (start == end)
+      return null;
+    return pool.invoke(new RangeTask<R>(loop, start, end, Math.max(1, minRange)));
+  }
+
+  /**
+   * Stops accepting loops and waits for the running ones to finish.
+   */
+  public void shutdown() {
+    pool.shutdown();
+    try {
+      while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+        Debug.println("waiting for loops to finish");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public boolean isShutdown() {
+    return pool.isShutdown();
+  }
+
+  private static class RangeTask<R> extends RecursiveTask<R> {
+    private static final long serialVersionUID = 1L;
+
+    private final Loop<R> loop;
+    private final int start, end, minRange;
+
+    RangeTask(final Loop<R> loop, final int start, final int end, final int minRange) {
+      this.loop = loop;
+      this.start = start;
+      this.end = end;
+      this.minRange = minRange;
+    }
+
+    @Override
+    protected R compute() {
+      if (end - start > minRange && getSurplusQueuedTaskCount() <= MAX_SURPLUS_RANGES) {
+        final int middle = (start + end) >>> 1;
+        final RangeTask<R> right = new RangeTask<R>(loop, middle, end, minRange);
+        right.fork();
+        final R left = new RangeTask<R>(loop, start, middle, minRange).compute();
+        return loop.combine(left, right.join());
+      }
+      return loop.loopDoRange(start, end);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.util;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Random numbers for the genetic operators. Every thread gets its own stream, so threads do not contend on one
+ * seed. The seeds of the streams are derived from one seed. A runner creates the streams of its run and
+ * passes them to its generations, which pass a stream to the operators of the grids.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class RandomStreams {
+
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+  private final long seed;
+  private final SplittableRandom seeds;
+
+  private final ThreadLocal<Random> streams = new ThreadLocal<Random>() {
+    @Override
+    protected Random initialValue() {
+      return new Stream(nextStreamSeed());
+    }
+  };
+
+  public RandomStreams(final long seed) {
+    this.seed = seed;
+    seeds = new SplittableRandom(seed);
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * @return the stream of the calling thread, only to be used by that thread
+   */
+  public Random getStream() {
+    return streams.get();
+  }
+
+  /**
+   * Seeds the stream of the calling thread with a seed derived from the seed of these streams and the given
+   * numbers, so the numbers drawn depend on those only and not on the thread.
+   * 
+   * @return the stream of the calling thread
+   */
+  public Random getStream(final long a, final long b) {
+    final Random stream = streams.get();
+    stream.setSeed(mix(mix(seed + GOLDEN_GAMMA * (a + 1)) + GOLDEN_GAMMA * (b + 1)));
+    return stream;
+  }
+
+  /**
+   * the finalizer of SplittableRandom, spreads every bit of z over the result
+   */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  private synchronized long nextStreamSeed() {
+    return seeds.nextLong();
+  }
+
+  /**
+   * A Random without synchronization, backed by a SplittableRandom.
+   */
+  private static class Stream extends Random {
+    private static final long serialVersionUID = 1L;
+
+    private SplittableRandom random;
+
+    Stream(final long seed) {
+      // calls setSeed
+      super(seed);
+    }
+
+    @Override
+    public void setSeed(final long seed) {
+      random = new SplittableRandom(seed);
+    }
+
+    @Override
+    protected int next(final int bits) {
+      return random.nextInt() >>> (32 - bits);
+    }
+
+    @Override
+    public int nextInt() {
+      return random.nextInt();
+    }
+
+    @Override
+    public int nextInt(final int bound) {
+      return random.nextInt(bound);
+    }
+
+    @Override
+    public long nextLong() {
+      return random.nextLong();
+    }
+
+    @Override
+    public double nextDouble() {
+      return random.nextDouble();
+    }
+
+    @Override
+    public boolean nextBoolean() {
+      return random.nextBoolean();
+    }
+  }
+}
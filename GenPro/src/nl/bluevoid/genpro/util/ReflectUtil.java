@@ -28,7 +28,6 @@ import nl.bluevoid.genpro.NoCallTarget;
  * @since 1.0
  */
 public class ReflectUtil {
-  private static Random random = new Random(System.currentTimeMillis());
 
   public static ArrayList<Method> getAllMethods(final Class<?> clazz, final boolean staticOnly) {
     // Debug.println("getAllMethods called for:" + clazz + " staticOnly:" + staticOnly);
@@ -46,7 +45,7 @@ public class ReflectUtil {
     return ms;
   }
 
-  public static Method getRandomMethod(final ArrayList<Method> methods) {
+  public static Method getRandomMethod(final ArrayList<Method> methods, final Random random) {
     return methods.get(random.nextInt(methods.size()));
   }
 
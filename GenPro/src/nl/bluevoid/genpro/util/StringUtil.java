@@ -32,8 +32,6 @@ import java.util.regex.Pattern;
  */
 public class StringUtil {
 
-  public static final Random r = new Random();
-
   private StringUtil() {
   }
 
@@ -290,19 +288,20 @@ public class StringUtil {
     // 0000=4a7d1ed414474e4033ac29ccb8653d9b
     // 2222=6cb4aca7ff4e34570695a28d08d0e9ef or
     // 934b535800b1cba8f96a5d72f72f1611
-    String v=getRandomString(6);
+    final Random random = new Random();
+    String v=getRandomString(6, random);
     for (int i = 0; i < 300; i++) {
       System.out.println(v);
-      v=mutateString(v, 6);
+      v=mutateString(v, 6, random);
     }
   }
 
   public static final String letters = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
 
-  public static String getRandomMime64String(int length) {
+  public static String getRandomMime64String(int length, final Random random) {
     StringBuilder b = new StringBuilder();
     for (int i = 0; i < length; i++) {
-      int index = r.nextInt(letters.length());
+      int index = random.nextInt(letters.length());
       b.append(letters.charAt(index));
     }
     return b.toString();
@@ -357,38 +356,38 @@ public class StringUtil {
       return text;
   }
 
-  public static String getRandomString(int length) {
+  public static String getRandomString(int length, final Random random) {
     StringBuilder b = new StringBuilder();
     for (int i = 0; i < length; i++) {
-      b.append(getRandomLetter());
+      b.append(getRandomLetter(random));
     }
     return b.toString();
   }
 
-  public static char getRandomLetter() {
-    return letters.charAt(r.nextInt(letters.length()));
+  public static char getRandomLetter(final Random random) {
+    return letters.charAt(random.nextInt(letters.length()));
   }
 
-  public static String mutateString(String value, int maxLength) {
-    switch (r.nextInt(3)) {
+  public static String mutateString(String value, int maxLength, final Random random) {
+    switch (random.nextInt(3)) {
     // add letter
     case 0:
       //System.out.println("add");
       if (value.length() < maxLength) {
-        int cut = r.nextInt(value.length());
-        return value.substring(0,cut) + getRandomLetter() + value.substring(cut, value.length());
+        int cut = random.nextInt(value.length());
+        return value.substring(0,cut) + getRandomLetter(random) + value.substring(cut, value.length());
       }
     case 1:
       //System.out.println("delete");
       if (value.length() > 1) {
-        int cut = r.nextInt(value.length() - 1);
+        int cut = random.nextInt(value.length() - 1);
         return value.substring(0, cut) + value.substring(cut + 1, value.length());
       }
       // delete letter
     case 2:
      // System.out.println("change");
       char[] chars = value.toCharArray();
-      chars[r.nextInt(chars.length)] = getRandomLetter();
+      chars[random.nextInt(chars.length)] = getRandomLetter(random);
       return new String(chars);
       // change letter
     default:
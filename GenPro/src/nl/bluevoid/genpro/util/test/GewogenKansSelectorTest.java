@@ -16,6 +16,8 @@
 
 package nl.bluevoid.genpro.util.test;
 
+import java.util.Random;
+
 import junit.framework.Assert;
 import junit.framework.TestCase;
 import nl.bluevoid.genpro.Setup;
@@ -36,9 +38,10 @@ public class GewogenKansSelectorTest extends TestCase {
     int found50 = 0;
     int found10 = 0;
     int found40 = 0;
+    Random random = new Random();
 
     for (int i = 0; i < 100000; i++) {
-      String item = gks.getRandomItem();
+      String item = gks.getRandomItem(random);
       if (item.equals("50")) {
         found50++;
       } else if (item.equals("10")) {
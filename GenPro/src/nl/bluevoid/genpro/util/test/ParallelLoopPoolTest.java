@@ -0,0 +1,139 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.util.test;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.util.ParallelLoopPool;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class ParallelLoopPoolTest extends TestCase {
+
+  private ParallelLoopPool pool;
+
+  @Override
+  protected void setUp() throws Exception {
+    pool = new ParallelLoopPool("test", 4);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    pool.shutdown();
+  }
+
+  public void testEveryIndexOnce() {
+    final AtomicIntegerArray done = new AtomicIntegerArray(99999);
+    final Long sum = pool.execute(0, done.length(), 100, new ParallelLoopPool.Loop<Long>() {
+      @Override
+      public Long loopDoRange(int start, int end) {
+        long sum = 0;
+        for (int i = start; i < end; i++) {
+          done.incrementAndGet(i);
+          sum += i;
+        }
+        return sum;
+      }
+
+      @Override
+      public Long combine(Long left, Long right) {
+        return left + right;
+      }
+    });
+    for (int i = 0; i < done.length(); i++) {
+      assertEquals(1, done.get(i));
+    }
+    assertEquals(99999L * 99998L / 2, sum.longValue());
+  }
+
+  public void testCombinesInOrder() {
+    final String s = pool.execute(0, 20, 1, new ParallelLoopPool.Loop<String>() {
+      @Override
+      public String loopDoRange(int start, int end) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = start; i < end; i++) {
+          sb.append((char) ('a' + i));
+        }
+        return sb.toString();
+      }
+
+      @Override
+      public String combine(String left, String right) {
+        return left + right;
+      }
+    });
+    assertEquals("abcdefghijklmnopqrst", s);
+  }
+
+  public void testEmptyLoop() {
+    assertNull(pool.execute(5, 5, 1, new ParallelLoopPool.Loop<Object>() {
+      @Override
+      public Object loopDoRange(int start, int end) {
+        fail();
+        return null;
+      }
+
+      @Override
+      public Object combine(Object left, Object right) {
+        return null;
+      }
+    }));
+  }
+
+  public void testExceptionIsThrown() {
+    try {
+      pool.execute(0, 100, 1, new ParallelLoopPool.Loop<Object>() {
+        @Override
+        public Object loopDoRange(int start, int end) {
+          if (start <= 50 && 50 < end) {
+            throw new IllegalStateException("fifty");
+          }
+          return null;
+        }
+
+        @Override
+        public Object combine(Object left, Object right) {
+          return null;
+        }
+      });
+      fail();
+    } catch (IllegalStateException e) {
+      // thrown in another thread it is wrapped in one of the same type
+      Throwable t = e;
+      while (t.getCause() != null) {
+        t = t.getCause();
+      }
+      assertEquals("fifty", t.getMessage());
+    }
+  }
+
+  public void testShutdown() {
+    assertEquals(4, pool.getThreads());
+    pool.shutdown();
+    assertTrue(pool.isShutdown());
+    try {
+      pool.execute(0, 10, 1, null);
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.util.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import nl.bluevoid.genpro.util.RandomStreams;
+
+/**
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class RandomStreamsTest extends TestCase {
+
+  public void testSameSeedSameStream() {
+    Random r1 = new RandomStreams(42).getStream();
+    Random r2 = new RandomStreams(42).getStream();
+    for (int i = 0; i < 100; i++) {
+      assertEquals(r1.nextInt(1000), r2.nextInt(1000));
+      assertEquals(r1.nextDouble(), r2.nextDouble(), 0);
+    }
+  }
+
+  public void testStreamPerThread() throws InterruptedException {
+    final RandomStreams streams = new RandomStreams(42);
+    final Random[] other = new Random[1];
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        other[0] = streams.getStream();
+      }
+    };
+    t.start();
+    t.join();
+    Random mine = streams.getStream();
+    assertSame(mine, streams.getStream());
+    assertNotSame(mine, other[0]);
+    assertFalse(mine.nextLong() == other[0].nextLong());
+  }
+
+  public void testSetSeed() {
+    Random r = new RandomStreams(1).getStream();
+    r.setSeed(7);
+    long first = r.nextLong();
+    int bounded = r.nextInt(10);
+    r.setSeed(7);
+    assertEquals(first, r.nextLong());
+    assertEquals(bounded, r.nextInt(10));
+  }
+}
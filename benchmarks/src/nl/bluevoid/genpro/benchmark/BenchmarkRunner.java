@@ -0,0 +1,55 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks of this package and writes the results as JSON to genpro-benchmarks-[version].json,
+ * so the throughput of releases can be compared. Takes the options of the JMH command line, -rf and -rff
+ * replace the JSON file, a regular expression selects the benchmarks to run.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class BenchmarkRunner {
+
+  public static void main(final String[] args) throws Exception {
+    final CommandLineOptions commandLine = new CommandLineOptions(args);
+    if (commandLine.shouldHelp()) {
+      commandLine.showHelp();
+      return;
+    }
+    final ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+    final List<String> arguments = Arrays.asList(args);
+    if (!arguments.contains("-rf") && !arguments.contains("-rff")) {
+      options.resultFormat(ResultFormatType.JSON);
+      options.result("genpro-benchmarks-" + Problems.getVersion() + ".json");
+    }
+    if (commandLine.getIncludes().isEmpty()) {
+      options.include(BenchmarkRunner.class.getPackage().getName() + ".*");
+    }
+    new Runner(options.build()).run();
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.GridExecutionError;
+import nl.bluevoid.genpro.JavaMethodGenerator;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSet;
+import nl.bluevoid.genpro.TestSetSolutionEvaluator;
+import nl.bluevoid.genpro.cell.InputCell;
+import nl.bluevoid.genpro.cell.NoCellFoundException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The operations on single grids of a run. Every invocation takes the next of a fixed set of random grids of
+ * the problem, so no benchmark measures one grid shape only.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmarks {
+
+  private static final int GRIDS = 64;
+
+  @Param( { Problems.EGG_WEIGHT, Problems.CELCIUS_FAHRENHEIT, Problems.ROMAN_FIGURES })
+  public String problem;
+
+  private Setup setup;
+  private TestSetSolutionEvaluator evaluator;
+  private Grid[] grids;
+  private int next = 0;
+  private Random random;
+
+  @org.openjdk.jmh.annotations.Setup
+  public void createGrids() {
+    setup = Problems.createSetup(problem);
+    evaluator = Problems.createEvaluator(problem, setup);
+    random = new Random(Problems.SEED);
+    // calc uses the inputs of the first test case, grids failing on them are replaced
+    final TestSet testSet = evaluator.getTestSet();
+    grids = new Grid[GRIDS];
+    for (int i = 0; i < GRIDS;) {
+      final Grid grid = Problems.createGrids(setup, evaluator, 1, random)[0];
+      for (final InputCell input : grid.getInputCells()) {
+        input.setValue(testSet.getValue(input.getName(), 0));
+      }
+      try {
+        grid.calc();
+        grids[i++] = grid;
+      } catch (GridExecutionError e) {
+        // next
+      }
+    }
+  }
+
+  private Grid nextGrid() {
+    next = (next + 1) % GRIDS;
+    return grids[next];
+  }
+
+  @Benchmark
+  public Grid calc() throws GridExecutionError {
+    final Grid grid = nextGrid();
+    grid.calc();
+    return grid;
+  }
+
+  @Benchmark
+  public double evaluate() {
+    return evaluator.evaluate(nextGrid());
+  }
+
+  @Benchmark
+  public Grid cloneGrid() {
+    return nextGrid().clone();
+  }
+
+  @Benchmark
+  public Grid[] cross() {
+    return nextGrid().cross(nextGrid(), 1, random);
+  }
+
+  /**
+   * Mutates a clone, so this includes cloneGrid.
+   */
+  @Benchmark
+  public Grid mutate() {
+    final Grid grid = nextGrid().clone();
+    try {
+      grid.mutate("", random);
+    } catch (NoCellFoundException e) {
+      // counts like a mutation that succeeded, a run skips the grid
+    }
+    return grid;
+  }
+
+  @Benchmark
+  public Grid generateSolution() {
+    return setup.generateSolution(random);
+  }
+
+  @Benchmark
+  public String getJavaProgram() {
+    return JavaMethodGenerator.getJavaProgram(nextGrid(), "Benchmark", "nl.bluevoid.gp", null, "", false,
+        false);
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.benchmark;
+
+import java.util.Random;
+
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSetSolutionEvaluator;
+import nl.bluevoid.genpro.example.celciusfahrenheit.CelciusFahrenheitDefinition;
+import nl.bluevoid.genpro.example.eggweight.EggWeightDefinition;
+import nl.bluevoid.genpro.example.eggweight.EggWeightWidthDefinition;
+import nl.bluevoid.genpro.example.mathproblem.MathProblemDefinition;
+import nl.bluevoid.genpro.example.roman.RomanFiguresDefinition;
+
+/**
+ * The example problems the benchmarks run on, with a fixed random seed so every run measures the same
+ * grids.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class Problems {
+
+  public static final String EGG_WEIGHT = "EggWeight";
+  public static final String CELCIUS_FAHRENHEIT = "CelciusFahrenheit";
+  public static final String ROMAN_FIGURES = "RomanFigures";
+  public static final String EGG_WEIGHT_WIDTH = "EggWeightWidth";
+  public static final String MATH = "Math";
+
+  public static final String[] ALL = { EGG_WEIGHT, CELCIUS_FAHRENHEIT, ROMAN_FIGURES, EGG_WEIGHT_WIDTH, MATH };
+
+  public static final long SEED = 42;
+
+  /**
+   * system property with the version in the name of the result files
+   */
+  public static final String VERSION_PROPERTY = "genpro.version";
+
+  /**
+   * system property with the egg data file, default the file in the examples directory
+   */
+  public static final String EGG_DATA_PROPERTY = "genpro.eggData";
+  private static final String EGG_DATA = "../examples/" + EggWeightDefinition.DATA_FILE;
+
+  /**
+   * Creates the setup of the problem with the fixed seed.
+   */
+  public static Setup createSetup(final String problem) {
+    return createSetup(problem, SEED);
+  }
+
+  /**
+   * Creates the setup of the problem with the seed, runners draw from it.
+   */
+  public static Setup createSetup(final String problem, final long seed) {
+    final Setup setup;
+    if (problem.equals(EGG_WEIGHT)) {
+      setup = EggWeightDefinition.createSetup();
+    } else if (problem.equals(CELCIUS_FAHRENHEIT)) {
+      setup = CelciusFahrenheitDefinition.createSetup();
+    } else if (problem.equals(ROMAN_FIGURES)) {
+      setup = RomanFiguresDefinition.createSetup();
+    } else if (problem.equals(EGG_WEIGHT_WIDTH)) {
+      setup = EggWeightWidthDefinition.createSetup();
+    } else if (problem.equals(MATH)) {
+      setup = MathProblemDefinition.createSetup();
+    } else {
+      throw new IllegalArgumentException("unknown problem:" + problem);
+    }
+    setup.setRandomSeed(seed);
+    return setup;
+  }
+
+  /**
+   * The test cases of the MathProblem are drawn from the random seed of the setup.
+   */
+  public static TestSetSolutionEvaluator createEvaluator(final String problem, final Setup setup) {
+    if (problem.equals(EGG_WEIGHT)) {
+      return EggWeightDefinition.createEvaluator(setup, getEggData());
+    } else if (problem.equals(CELCIUS_FAHRENHEIT)) {
+      return CelciusFahrenheitDefinition.createEvaluator(setup);
+    } else if (problem.equals(ROMAN_FIGURES)) {
+      return RomanFiguresDefinition.createEvaluator(setup);
+    } else if (problem.equals(EGG_WEIGHT_WIDTH)) {
+      return EggWeightWidthDefinition.createEvaluator(setup, getEggData());
+    } else if (problem.equals(MATH)) {
+      return MathProblemDefinition.createEvaluator(setup, new Random(setup.getRandomSeed()));
+    }
+    throw new IllegalArgumentException("unknown problem:" + problem);
+  }
+
+  /**
+   * @return a best score most runs reach within a few hundred generations
+   */
+  public static double getTargetScore(final String problem) {
+    if (problem.equals(EGG_WEIGHT)) {
+      return 5.5;
+    } else if (problem.equals(CELCIUS_FAHRENHEIT)) {
+      return 2;
+    } else if (problem.equals(ROMAN_FIGURES)) {
+      return 190;
+    } else if (problem.equals(EGG_WEIGHT_WIDTH)) {
+      return 10;
+    } else if (problem.equals(MATH)) {
+      return 6;
+    }
+    throw new IllegalArgumentException("unknown problem:" + problem);
+  }
+
+  public static String getVersion() {
+    return System.getProperty(VERSION_PROPERTY, "dev");
+  }
+
+  private static String getEggData() {
+    return System.getProperty(EGG_DATA_PROPERTY, EGG_DATA);
+  }
+
+  /**
+   * @return random solutions with their score
+   */
+  public static Grid[] createGrids(final Setup setup, final TestSetSolutionEvaluator evaluator,
+      final int count, final Random random) {
+    final Grid[] grids = new Grid[count];
+    for (int i = 0; i < count; i++) {
+      grids[i] = setup.generateSolution(random);
+      grids[i].setScore(evaluator.evaluate(grids[i]));
+    }
+    return grids;
+  }
+}
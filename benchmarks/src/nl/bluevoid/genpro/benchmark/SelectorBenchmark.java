@@ -0,0 +1,74 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.util.GewogenKansSelector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Selecting parents from generations of the given size, weighted like Generation does.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectorBenchmark {
+
+  @Param( { "100", "1000", "10000" })
+  public int size;
+
+  private GewogenKansSelector<Grid> selector;
+  private Random random;
+
+  @org.openjdk.jmh.annotations.Setup
+  public void createSelector() {
+    final Setup setup = Problems.createSetup(Problems.CELCIUS_FAHRENHEIT);
+    random = new Random(Problems.SEED);
+    final Grid grid = setup.generateSolution(random);
+    selector = new GewogenKansSelector<Grid>(setup);
+    for (int i = 0; i < size; i++) {
+      // sorted scores, weighted like Generation.scoreWeigth
+      final double zeroTo1 = i / (double) size;
+      selector.add(grid, Math.max(1, (int) Math.pow(100 - zeroTo1 * 100, 2)), i);
+    }
+  }
+
+  @Benchmark
+  public Grid getRandomItem() {
+    return selector.getRandomItem(random);
+  }
+}
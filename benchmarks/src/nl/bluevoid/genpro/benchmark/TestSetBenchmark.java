@@ -0,0 +1,72 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading all values of the TestSet of the problem, by column and row like the evaluators do.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TestSetBenchmark {
+
+  @Param( { Problems.EGG_WEIGHT, Problems.CELCIUS_FAHRENHEIT, Problems.ROMAN_FIGURES })
+  public String problem;
+
+  private TestSet testSet;
+  private int columns;
+
+  @org.openjdk.jmh.annotations.Setup
+  public void createTestSet() {
+    final Setup setup = Problems.createSetup(problem);
+    testSet = Problems.createEvaluator(problem, setup).getTestSet();
+    columns = testSet.getInputColumnIndices().length + testSet.getOutputColumnIndices().length;
+  }
+
+  @Benchmark
+  public void getValue(final Blackhole blackhole) {
+    final int rows = testSet.getNumberOfTestCases();
+    for (int column = 0; column < columns; column++) {
+      for (int row = 0; row < rows; row++) {
+        blackhole.consume(testSet.getValue(column, row));
+      }
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.benchmark.macro;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nl.bluevoid.genpro.benchmark.Problems;
+import nl.bluevoid.genpro.util.StringUtil;
+
+/**
+ * Runs the example problems headless from the start generation to their target score, for several seeds
+ * and thread counts, and prints the distributions of the MacroResult metrics. Each run is appended to
+ * genpro-macro-[version].csv. Compare prints the change of the medians of two such files and exits with 1 if
+ * a median got worse by more than the tolerance.
+ * 
+ * <pre>
+ * run [-problems EggWeight,Math] [-seeds 5] [-threads 1,4] [-generations 200] [-out results.csv]
+ * compare baseline.csv results.csv [-tolerance 10]
+ * </pre>
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class MacroBenchmark {
+
+  private static final double[] PERCENTILES = { 0, 0.5, 0.9, 1 };
+  private static final String[] PERCENTILE_NAMES = { "min", "median", "p90", "max" };
+
+  public static void main(final String[] args) throws Exception {
+    if (args.length > 0 && args[0].equals("compare")) {
+      if (args.length < 3) {
+        usage();
+      }
+      final double tolerance = Double.parseDouble(getOption(args, "-tolerance", "10"));
+      final boolean regressed = compare(MacroResult.read(new File(args[1])),
+          MacroResult.read(new File(args[2])), tolerance);
+      System.exit(regressed ? 1 : 0);
+    } else if (args.length == 0 || args[0].equals("run")) {
+      final String[] problems = getOption(args, "-problems", StringUtil.join(",", Problems.ALL)).split(",");
+      final int seeds = Integer.parseInt(getOption(args, "-seeds", "5"));
+      final String[] threads = getOption(args, "-threads",
+          "1," + Runtime.getRuntime().availableProcessors()).split(",");
+      final int generations = Integer.parseInt(getOption(args, "-generations", "200"));
+      final File out = new File(getOption(args, "-out", "genpro-macro-" + Problems.getVersion() + ".csv"));
+
+      final List<MacroResult> results = new ArrayList<MacroResult>();
+      for (final String problem : problems) {
+        for (final String thread : threads) {
+          for (int i = 0; i < seeds; i++) {
+            final MacroRun run = new MacroRun(problem, Integer.parseInt(thread), Problems.SEED + i,
+                generations);
+            final MacroResult result = run.run();
+            result.append(out);
+            results.add(result);
+          }
+        }
+      }
+      printDistributions(results);
+      System.out.println("results appended to " + out.getAbsolutePath());
+    } else {
+      usage();
+    }
+  }
+
+  private static void usage() {
+    System.err.println("usage: run [-problems " + StringUtil.join(",", Problems.ALL)
+        + "] [-seeds 5] [-threads 1,4] [-generations 200] [-out results.csv]");
+    System.err.println("       compare baseline.csv results.csv [-tolerance 10]");
+    System.exit(2);
+  }
+
+  private static String getOption(final String[] args, final String name, final String defaultValue) {
+    final int index = Arrays.asList(args).indexOf(name);
+    if (index == -1) {
+      return defaultValue;
+    }
+    if (index == args.length - 1) {
+      throw new IllegalArgumentException("no value for option:" + name);
+    }
+    return args[index + 1];
+  }
+
+  /**
+   * @return the results by MacroResult.getGroup, in the order of the runs
+   */
+  static Map<String, List<MacroResult>> group(final List<MacroResult> results) {
+    final Map<String, List<MacroResult>> groups = new LinkedHashMap<String, List<MacroResult>>();
+    for (final MacroResult result : results) {
+      List<MacroResult> group = groups.get(result.getGroup());
+      if (group == null) {
+        group = new ArrayList<MacroResult>();
+        groups.put(result.getGroup(), group);
+      }
+      group.add(result);
+    }
+    return groups;
+  }
+
+  /**
+   * @return the sorted values of the metric, runs that did not reach the target take infinitely long. Empty
+   *         if the metric was not measured.
+   */
+  static double[] getValues(final List<MacroResult> results, final int metric) {
+    final double[] values = new double[results.size()];
+    for (int i = 0; i < values.length; i++) {
+      final MacroResult result = results.get(i);
+      if (metric == MacroResult.SECONDS_TO_TARGET && !result.isTargetReached()) {
+        values[i] = Double.POSITIVE_INFINITY;
+      } else {
+        values[i] = result.getMetric(metric);
+        if (values[i] < 0) {
+          return new double[0];
+        }
+      }
+    }
+    Arrays.sort(values);
+    return values;
+  }
+
+  /**
+   * @return the nearest rank percentile of sorted values
+   */
+  static double getPercentile(final double[] sorted, final double fraction) {
+    final int rank = (int) Math.ceil(fraction * sorted.length);
+    return sorted[Math.max(rank - 1, 0)];
+  }
+
+  static int countTargetReached(final List<MacroResult> results) {
+    int reached = 0;
+    for (final MacroResult result : results) {
+      if (result.isTargetReached()) {
+        reached++;
+      }
+    }
+    return reached;
+  }
+
+  static void printDistributions(final List<MacroResult> results) {
+    for (final Map.Entry<String, List<MacroResult>> group : group(results).entrySet()) {
+      final List<MacroResult> runs = group.getValue();
+      System.out.println(group.getKey() + ": " + runs.size() + " runs, " + countTargetReached(runs)
+          + " reached the target");
+      for (int metric = 0; metric < MacroResult.METRICS.length; metric++) {
+        final double[] values = getValues(runs, metric);
+        final StringBuilder b = new StringBuilder(String.format("  %-22s", MacroResult.METRICS[metric]));
+        if (values.length == 0) {
+          b.append(" not measured");
+        }
+        for (int i = 0; i < PERCENTILES.length && values.length > 0; i++) {
+          b.append(String.format(" %s %10.3f", PERCENTILE_NAMES[i], getPercentile(values, PERCENTILES[i])));
+        }
+        System.out.println(b);
+      }
+    }
+  }
+
+  /**
+   * Prints the change of the median of each metric of the groups in both results.
+   * 
+   * @param tolerance
+   *          the percentage a median may get worse
+   * @return true if a median got worse by more than the tolerance, or fewer runs reached the target
+   */
+  static boolean compare(final List<MacroResult> baseline, final List<MacroResult> results,
+      final double tolerance) {
+    final Map<String, List<MacroResult>> baselineGroups = group(baseline);
+    boolean regressed = false;
+    for (final Map.Entry<String, List<MacroResult>> group : group(results).entrySet()) {
+      final List<MacroResult> baselineRuns = baselineGroups.get(group.getKey());
+      if (baselineRuns == null) {
+        System.out.println(group.getKey() + ": not in baseline");
+        continue;
+      }
+      final List<MacroResult> runs = group.getValue();
+      final double baselineReached = countTargetReached(baselineRuns) / (double) baselineRuns.size();
+      final double reached = countTargetReached(runs) / (double) runs.size();
+      final boolean fewerReached = reached < baselineReached * (1 - tolerance / 100);
+      System.out.println(group.getKey() + ": reached the target " + Math.round(baselineReached * 100)
+          + "% -> " + Math.round(reached * 100) + "%" + (fewerReached ? "  REGRESSION" : ""));
+      regressed |= fewerReached;
+      for (int metric = 0; metric < MacroResult.METRICS.length; metric++) {
+        final double[] baselineValues = getValues(baselineRuns, metric);
+        final double[] values = getValues(runs, metric);
+        if (baselineValues.length == 0 || values.length == 0) {
+          continue;
+        }
+        final double before = getPercentile(baselineValues, 0.5);
+        final double after = getPercentile(values, 0.5);
+        if (Double.isInfinite(before) && Double.isInfinite(after)) {
+          continue;
+        }
+        // only the time to the target is infinite, when the median run did not reach it
+        final double change = Double.isInfinite(after) ? Double.POSITIVE_INFINITY : Double
+            .isInfinite(before) ? -100 : (after - before) / before * 100;
+        final boolean worse = MacroResult.HIGHER_IS_BETTER[metric] ? change < -tolerance : change > tolerance;
+        System.out.println(String.format("  %-22s median %10.3f -> %10.3f %+7.1f%%%s",
+            MacroResult.METRICS[metric], before, after, change, worse ? "  REGRESSION" : ""));
+        regressed |= worse;
+      }
+    }
+    return regressed;
+  }
+}
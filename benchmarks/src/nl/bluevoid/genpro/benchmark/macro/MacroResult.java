@@ -0,0 +1,167 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.benchmark.macro;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The measurements of one run of a problem, stored as a row of a CSV file. Metrics that can not be measured
+ * on the JVM, and the time to the target of a run that did not reach it, are -1.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class MacroResult {
+
+  public static final String[] METRICS = { "generationsPerSecond", "evaluationsPerSecond", "secondsToTarget",
+      "peakHeapMb", "allocationMbPerSecond" };
+  public static final boolean[] HIGHER_IS_BETTER = { true, true, false, false, false };
+  public static final int SECONDS_TO_TARGET = 2;
+
+  private static final String HEADER = "problem,threads,seed,generations,evaluations,seconds,bestScore,"
+      + "generationsPerSecond,evaluationsPerSecond,secondsToTarget,peakHeapMb,allocationMbPerSecond";
+
+  final String problem;
+  final int threads;
+  final long seed;
+  final int generations;
+  final long evaluations;
+  final double seconds;
+  final double bestScore;
+  final double secondsToTarget;
+  final double peakHeapMb;
+  final double allocatedMb;
+
+  MacroResult(final String problem, final int threads, final long seed, final int generations,
+      final long evaluations, final double seconds, final double bestScore, final double secondsToTarget,
+      final double peakHeapMb, final double allocatedMb) {
+    this.problem = problem;
+    this.threads = threads;
+    this.seed = seed;
+    this.generations = generations;
+    this.evaluations = evaluations;
+    this.seconds = seconds;
+    this.bestScore = bestScore;
+    this.secondsToTarget = secondsToTarget;
+    this.peakHeapMb = peakHeapMb;
+    this.allocatedMb = allocatedMb;
+  }
+
+  /**
+   * @return the runs of the same problem and thread count have the same group
+   */
+  public String getGroup() {
+    return problem + " threads=" + threads;
+  }
+
+  public boolean isTargetReached() {
+    return secondsToTarget >= 0;
+  }
+
+  /**
+   * @param metric
+   *          index in METRICS
+   */
+  public double getMetric(final int metric) {
+    switch (metric) {
+    case 0:
+      return generations / seconds;
+    case 1:
+      return evaluations / seconds;
+    case SECONDS_TO_TARGET:
+      return secondsToTarget;
+    case 3:
+      return peakHeapMb;
+    case 4:
+      return allocatedMb < 0 ? -1 : allocatedMb / seconds;
+    default:
+      throw new IllegalArgumentException("unknown metric:" + metric);
+    }
+  }
+
+  /**
+   * Appends the row of this result, a header is written when the file is empty.
+   */
+  public void append(final File file) throws IOException {
+    final boolean header = !file.exists() || file.length() == 0;
+    final Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+    try {
+      if (header) {
+        out.write(HEADER);
+        out.write('\n');
+      }
+      out.write(toCsv());
+      out.write('\n');
+    } finally {
+      out.close();
+    }
+  }
+
+  String toCsv() {
+    final StringBuilder b = new StringBuilder();
+    b.append(problem).append(',').append(threads).append(',').append(seed).append(',').append(generations);
+    b.append(',').append(evaluations).append(',').append(seconds).append(',').append(bestScore);
+    for (int i = 0; i < METRICS.length; i++) {
+      b.append(',').append(getMetric(i));
+    }
+    return b.toString();
+  }
+
+  /**
+   * @return the results in a file written by append
+   */
+  public static List<MacroResult> read(final File file) throws IOException {
+    final List<MacroResult> results = new ArrayList<MacroResult>();
+    final BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+        StandardCharsets.UTF_8));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.length() > 0 && !line.equals(HEADER)) {
+          results.add(parse(line));
+        }
+      }
+    } finally {
+      in.close();
+    }
+    return results;
+  }
+
+  static MacroResult parse(final String line) {
+    final String[] values = line.split(",");
+    if (values.length != HEADER.split(",").length) {
+      throw new IllegalArgumentException("not a result row:" + line);
+    }
+    final double seconds = Double.parseDouble(values[5]);
+    final double allocationRate = Double.parseDouble(values[11]);
+    final double allocatedMb = allocationRate < 0 ? -1 : allocationRate * seconds;
+    return new MacroResult(values[0], Integer.parseInt(values[1]), Long.parseLong(values[2]),
+        Integer.parseInt(values[3]), Long.parseLong(values[4]), seconds, Double.parseDouble(values[6]),
+        Double.parseDouble(values[9]), Double.parseDouble(values[10]), allocatedMb);
+  }
+}
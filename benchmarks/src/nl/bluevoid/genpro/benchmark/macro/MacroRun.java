@@ -0,0 +1,149 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package nl.bluevoid.genpro.benchmark.macro;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+import nl.bluevoid.genpro.GenerationRunner;
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.ResultListener;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSetSolutionEvaluator;
+import nl.bluevoid.genpro.benchmark.Problems;
+
+/**
+ * Runs a problem until the best score is below the target or the maximum number of generations is reached.
+ * The allocation is counted for the threads that are alive at the last generation, the peak heap is the sum
+ * of the peaks of the heap pools.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class MacroRun implements ResultListener {
+
+  private static final double MB = 1024 * 1024;
+
+  private final String problem;
+  private final int threads;
+  private final long seed;
+  private final int maxGenerations;
+
+  private double target;
+  private long start;
+  private int generations;
+  private double bestScore = Double.MAX_VALUE;
+  private long targetNanos = -1;
+  private Map<Long, Long> startAllocated;
+  private Map<Long, Long> lastAllocated;
+
+  public MacroRun(final String problem, final int threads, final long seed, final int maxGenerations) {
+    this.problem = problem;
+    this.threads = threads;
+    this.seed = seed;
+    this.maxGenerations = maxGenerations;
+  }
+
+  public MacroResult run() {
+    final Setup setup = Problems.createSetup(problem, seed);
+    target = Problems.getTargetScore(problem);
+    setup.setStopAtScore(target);
+    setup.setStopAtGeneration(maxGenerations);
+    setup.setEvaluateMultiThreaded(threads > 1);
+    setup.setEvaluationThreads(threads);
+    final TestSetSolutionEvaluator evaluator = Problems.createEvaluator(problem, setup);
+    // load the test set before measuring
+    evaluator.getTestSet();
+
+    System.gc();
+    for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      pool.resetPeakUsage();
+    }
+    startAllocated = getAllocatedBytes();
+    lastAllocated = startAllocated;
+    start = System.nanoTime();
+    final GenerationRunner runner = new GenerationRunner(setup, evaluator);
+    runner.addResultListener(this);
+    runner.runGenerations();
+    final double seconds = (System.nanoTime() - start) / 1e9;
+
+    long peakHeap = 0;
+    for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peakHeap += pool.getPeakUsage().getUsed();
+      }
+    }
+    double allocatedMb = -1;
+    if (lastAllocated != null) {
+      long allocated = 0;
+      for (final Map.Entry<Long, Long> entry : lastAllocated.entrySet()) {
+        final Long before = startAllocated.get(entry.getKey());
+        allocated += entry.getValue() - (before == null ? 0 : before);
+      }
+      allocatedMb = allocated / MB;
+    }
+    final long evaluations = (long) generations * setup.getGenerationSize();
+    return new MacroResult(problem, threads, seed, generations, evaluations, seconds, bestScore,
+        targetNanos < 0 ? -1 : targetNanos / 1e9, peakHeap / MB, allocatedMb);
+  }
+
+  /**
+   * @return the bytes allocated by each live thread, null if the JVM does not count them
+   */
+  private static Map<Long, Long> getAllocatedBytes() {
+    final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      return null;
+    }
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+      return null;
+    }
+    final long[] ids = threads.getAllThreadIds();
+    final long[] bytes = threads.getThreadAllocatedBytes(ids);
+    final Map<Long, Long> allocated = new HashMap<Long, Long>();
+    for (int i = 0; i < ids.length; i++) {
+      if (bytes[i] >= 0) {
+        allocated.put(ids[i], bytes[i]);
+      }
+    }
+    return allocated;
+  }
+
+  public void newBestResult(final Grid g) {
+    bestScore = g.getScore();
+    if (targetNanos < 0 && bestScore < target) {
+      targetNanos = System.nanoTime() - start;
+    }
+  }
+
+  public void startUpProgress(final int createdIndividuals) {
+  }
+
+  public void newStats(final int generationnr, final long millisPerGeneration) {
+    generations++;
+    // the evaluation threads are alive until the run ends
+    if (lastAllocated != null) {
+      lastAllocated = getAllocatedBytes();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.bluevoid.genpro.example.celciusfahrenheit;
+
+import nl.bluevoid.genpro.Grid;
+import nl.bluevoid.genpro.GridSolutionEvaluator;
+import nl.bluevoid.genpro.Setup;
+import nl.bluevoid.genpro.TestSet;
+import nl.bluevoid.genpro.cell.ConstantCell;
+import nl.bluevoid.genpro.cell.LibraryCell;
+import nl.bluevoid.genpro.cell.ReferenceCell;
+import nl.bluevoid.genpro.operations.NumberOperations;
+
+/**
+ * The setup and evaluator of the CelciusFahrenheit example, without the visual part so benchmarks can use
+ * them.
+ * 
+ * @author Rob van der Veer
+ * @since 1.0
+ */
+public class CelciusFahrenheitDefinition {
+
+  public static Setup createSetup() {
+    Setup setup = new Setup();
+
+    // define inputs and outputs
+    setup.addInputCell("fahrenheit", Double.class);
+    setup.addOutputCell("celcius", Double.class);
+
+    // define searchspace (constants, libraries(operations) and nr of callcells)
+    ConstantCell cCell = new ConstantCell("const1", Double.class, -100, 100);
+    ConstantCell cCell2 = new ConstantCell("const2", Double.class, -100, 100);
+    ConstantCell cCell3 = new ConstantCell("const3", Double.class, -100, 100);
+    setup.setConstantCells(new ConstantCell[] { cCell, cCell2, cCell3 });
+
+    setup.setLibraryCells(new LibraryCell(NumberOperations.class));
+    // , new LibraryCell(Math.class) });
+    setup.setCallCells(5, "c", new Class[] { Double.class });
+
+    // define search parameters
+    setup.setGenerationSize(1000);
+    setup.setMutatePercentage(20);
+    setup.setMaxIndividualsWithSameScore(30);
+    setup.setGridHistoryTracking(true);
+    return setup;
+  }
+
+  public static GridSolutionEvaluator createEvaluator(final Setup setup) {
+    return new GridSolutionEvaluator() {
+      @Override
+      public double scoreOutput(ReferenceCell outputCell, Object calculated, Object expected) {
+        if (calculated == null)
+          return 100;
+        return getAbsoluteNumberDifference((Number) calculated, (Number) expected);
+      }
+
+      @Override
+      public double scoreGrid(Grid g) {
+        return 0;
+      }
+
+      @Override
+      public double scoreGridException(Throwable t) {
+        return 0;
+      }
+
+      @Override
+      public TestSet createTestSet() {
+        TestSet testSet = new TestSet(setup, new String[] { "fahrenheit", "celcius" });
+        testSet.addCellValues(33.8, 1d);
+        testSet.addCellValues(39.2, 4d);
+        testSet.addCellValues(64.4, 18d);
+        testSet.addCellValues(71.6, 22d);
+        testSet.addCellValues(98.60000000000001, 37d);
+        testSet.addCellValues(113d, 45d);
+        testSet.addCellValues(212d, 100d);
+        testSet.addCellValues(392d, 200d);
+        testSet.addCellValues(752d, 400d);
+        testSet.addCellValues(32d, 0.0);
+        return testSet;
+      }
+    };
+  }
+}